@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Compares the results of a benchmark run against a baseline run, both in the JSON result format of JMH. A benchmark has regressed when its
+ * score got worse by more than the threshold and by more than the combined error margins of both runs, so noisy benchmarks do not fail a
+ * comparison on their own. Time based modes are worse when higher, throughput is worse when lower.
+ */
+public class BaselineComparison {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final List<Row> _rows = new ArrayList<>();
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new BaselineComparison object.
+     *
+     * @param  baseline          The scores of the baseline run keyed by benchmark and parameters. Cannot be null.
+     * @param  current           The scores of the current run keyed by benchmark and parameters. Cannot be null.
+     * @param  thresholdPercent  The relative change in percent above which a benchmark is reported as regressed or improved. Cannot be negative.
+     */
+    public BaselineComparison(Map<String, Score> baseline, Map<String, Score> current, double thresholdPercent) {
+        requireArgument(baseline != null && current != null, "Results cannot be null.");
+        requireArgument(thresholdPercent >= 0, "Threshold cannot be negative.");
+
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            _rows.add(new Row(entry.getKey(), baseline.get(entry.getKey()), entry.getValue(), thresholdPercent));
+        }
+        for (Map.Entry<String, Score> entry : baseline.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                _rows.add(new Row(entry.getKey(), entry.getValue(), null, thresholdPercent));
+            }
+        }
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Reads the scores from a JMH result file.
+     *
+     * @param   file  The result file in JSON format. Cannot be null.
+     *
+     * @return  The scores keyed by benchmark and parameters, in the order of the file.
+     *
+     * @throws  IOException  If the file cannot be read or parsed.
+     */
+    public static Map<String, Score> read(File file) throws IOException {
+        requireArgument(file != null, "Result file cannot be null.");
+        return read(MAPPER.readTree(file));
+    }
+
+    /**
+     * Reads the scores from JMH results.
+     *
+     * @param   results  The JSON array of results. Cannot be null.
+     *
+     * @return  The scores keyed by benchmark and parameters, in the order of the results.
+     */
+    public static Map<String, Score> read(JsonNode results) {
+        requireArgument(results != null && results.isArray(), "Results must be a JSON array.");
+
+        Map<String, Score> scores = new LinkedHashMap<>();
+
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            Map<String, String> params = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            if (!params.isEmpty()) {
+                key.append(params);
+            }
+
+            JsonNode metric = result.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble(0);
+
+            scores.put(key.toString(), new Score(result.path("mode").asText(), metric.path("score").asDouble(), Double.isNaN(error) ? 0 : error,
+                    metric.path("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    /**
+     * Returns the compared benchmarks.
+     *
+     * @return  The rows of the comparison, benchmarks of the current run first.
+     */
+    public List<Row> getRows() {
+        return _rows;
+    }
+
+    /**
+     * Indicates whether any benchmark regressed.
+     *
+     * @return  True if at least one benchmark regressed.
+     */
+    public boolean hasRegressions() {
+        for (Row row : _rows) {
+            if (row.getStatus() == Status.REGRESSED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Formats the comparison as a plain text table.
+     *
+     * @return  The report.
+     */
+    public String toReport() {
+        int width = "Benchmark".length();
+
+        for (Row row : _rows) {
+            width = Math.max(width, row.getName().length());
+        }
+
+        String format = "%-" + width + "s  %14s  %14s  %9s  %-10s  %s%n";
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, format, "Benchmark", "Baseline", "Current", "Change", "Status", "Unit"));
+
+        for (Row row : _rows) {
+            Score score = row.getCurrent() != null ? row.getCurrent() : row.getBaseline();
+
+            report.append(String.format(Locale.ROOT, format, row.getName(), _format(row.getBaseline()), _format(row.getCurrent()),
+                    Double.isNaN(row.getChangePercent()) ? "" : String.format(Locale.ROOT, "%+.1f%%", row.getChangePercent()), row.getStatus(),
+                    score.getUnit()));
+        }
+        return report.toString();
+    }
+
+    private static String _format(Score score) {
+        return score == null ? "-" : String.format(Locale.ROOT, "%.3f", score.getScore());
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The outcome of the comparison of a benchmark.
+     */
+    public enum Status {
+
+        /** The score got worse by more than the threshold. */
+        REGRESSED,
+        /** The score got better by more than the threshold. */
+        IMPROVED,
+        /** The change is within the threshold or the error margins. */
+        UNCHANGED,
+        /** The benchmark is not part of the baseline. */
+        NEW,
+        /** The benchmark is not part of the current run. */
+        MISSING
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The primary score of a benchmark.
+     */
+    public static final class Score {
+
+        private final String _mode;
+        private final double _score;
+        private final double _error;
+        private final String _unit;
+
+        /**
+         * Creates a new Score object.
+         *
+         * @param  mode   The JMH benchmark mode, e.g. <tt>avgt</tt> or <tt>thrpt</tt>.
+         * @param  score  The score.
+         * @param  error  The error margin of the score.
+         * @param  unit   The unit of the score.
+         */
+        public Score(String mode, double score, double error, String unit) {
+            _mode = mode;
+            _score = score;
+            _error = error;
+            _unit = unit;
+        }
+
+        public String getMode() {
+            return _mode;
+        }
+
+        public double getScore() {
+            return _score;
+        }
+
+        public double getError() {
+            return _error;
+        }
+
+        public String getUnit() {
+            return _unit;
+        }
+
+        /**
+         * Indicates whether a higher score is better, which is only the case for throughput.
+         *
+         * @return  True for throughput.
+         */
+        public boolean isHigherBetter() {
+            return "thrpt".equals(_mode);
+        }
+    }
+
+    /**
+     * The comparison of a single benchmark.
+     */
+    public static final class Row {
+
+        private final String _name;
+        private final Score _baseline;
+        private final Score _current;
+        private final double _changePercent;
+        private final Status _status;
+
+        private Row(String name, Score baseline, Score current, double thresholdPercent) {
+            _name = name;
+            _baseline = baseline;
+            _current = current;
+            if (baseline == null) {
+                _changePercent = Double.NaN;
+                _status = Status.NEW;
+            } else if (current == null) {
+                _changePercent = Double.NaN;
+                _status = Status.MISSING;
+            } else {
+                double delta = current.getScore() - baseline.getScore();
+
+                _changePercent = baseline.getScore() == 0 ? Double.NaN : delta / baseline.getScore() * 100;
+
+                boolean significant = Math.abs(delta) > baseline.getError() + current.getError()
+                    && (Double.isNaN(_changePercent) || Math.abs(_changePercent) > thresholdPercent);
+
+                if (!significant) {
+                    _status = Status.UNCHANGED;
+                } else {
+                    _status = (delta > 0) == current.isHigherBetter() ? Status.IMPROVED : Status.REGRESSED;
+                }
+            }
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public Score getBaseline() {
+            return _baseline;
+        }
+
+        public Score getCurrent() {
+            return _current;
+        }
+
+        /**
+         * Returns the relative change of the score.
+         *
+         * @return  The change in percent of the baseline score, or NaN if either score is missing.
+         */
+        public double getChangePercent() {
+            return _changePercent;
+        }
+
+        public Status getStatus() {
+            return _status;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks and optionally compares the results against a baseline. Arguments other than the ones below are passed on to JMH, e.g. a
+ * regular expression selecting the benchmarks to run or <tt>-p series=100</tt> to restrict a parameter.
+ *
+ * <pre>
+ * java -jar argus-benchmarks-jar-with-dependencies.jar [--result FILE] [--baseline FILE] [--threshold PERCENT] [--compare-only] [JMH options]
+ *
+ *   --result FILE        The JSON result file of the run. Defaults to jmh-result.json.
+ *   --baseline FILE      The JSON result file of an earlier run to compare against, e.g. the result of the target branch.
+ *   --threshold PERCENT  The relative change above which a benchmark is reported as regressed or improved. Defaults to 10.
+ *   --compare-only       Compares an existing result file against the baseline without running the benchmarks.
+ * </pre>
+ *
+ * <p>The process exits with status 1 if a benchmark regressed against the baseline, so the comparison can gate a build.</p>
+ */
+public class BenchmarkRunner {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * The entry point.
+     *
+     * @param   args  The command line arguments.
+     *
+     * @throws  Exception  If the benchmarks cannot be run or the results cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+        File result = new File("jmh-result.json");
+        File baseline = null;
+        double threshold = DEFAULT_THRESHOLD_PERCENT;
+        boolean compareOnly = false;
+        List<String> jmhArgs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--result":
+                    result = new File(_value(args, ++i));
+                    break;
+                case "--baseline":
+                    baseline = new File(_value(args, ++i));
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(_value(args, ++i));
+                    break;
+                case "--compare-only":
+                    compareOnly = true;
+                    break;
+                default:
+                    jmhArgs.add(args[i]);
+            }
+        }
+        if (!compareOnly) {
+            CommandLineOptions options = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+
+            new Runner(new OptionsBuilder().parent(options).resultFormat(ResultFormatType.JSON).result(result.getPath()).build()).run();
+        }
+        if (baseline != null) {
+            BaselineComparison comparison = new BaselineComparison(BaselineComparison.read(baseline), BaselineComparison.read(result), threshold);
+
+            System.out.println();
+            System.out.print(comparison.toReport());
+            if (comparison.hasRegressions()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static String _value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
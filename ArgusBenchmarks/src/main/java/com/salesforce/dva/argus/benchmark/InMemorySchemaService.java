@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.benchmark;
+
+import com.salesforce.dva.argus.entity.KeywordQuery;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.entity.MetricSchemaRecord;
+import com.salesforce.dva.argus.entity.MetricSchemaRecordQuery;
+import com.salesforce.dva.argus.service.DefaultService;
+import com.salesforce.dva.argus.service.SchemaService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Schema service holding its records in memory, so the discovery benchmarks measure query expansion rather than the latency of a schema store.
+ * Records are grouped by scope and metric, which is roughly what the indexed stores do, and wildcards are matched using the same regular
+ * expression translation as the Elasticsearch schema service.
+ */
+public class InMemorySchemaService extends DefaultService implements SchemaService {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Map<String, List<MetricSchemaRecord>> _records = new LinkedHashMap<>();
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new InMemorySchemaService object.
+     *
+     * @param  records  The schema records to serve.
+     */
+    public InMemorySchemaService(List<MetricSchemaRecord> records) {
+        super(new SystemConfiguration(new Properties()));
+        for (MetricSchemaRecord record : records) {
+            _records.computeIfAbsent(_key(record.getScope(), record.getMetric()), k -> new ArrayList<>()).add(record);
+        }
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    private static String _key(String scope, String metric) {
+        return scope + '\u0000' + metric;
+    }
+
+    private static Pattern _pattern(String value) {
+        return value == null || "*".equals(value) ? null : Pattern.compile(SchemaService.convertToRegex(value));
+    }
+
+    private static boolean _matches(Pattern pattern, String value) {
+        return pattern == null || (value != null && pattern.matcher(value).matches());
+    }
+
+    @Override
+    public void put(Metric metric) {
+        throw new UnsupportedOperationException(InMemorySchemaService.class.getName() + " does not support puts");
+    }
+
+    @Override
+    public void put(List<Metric> metrics) {
+        throw new UnsupportedOperationException(InMemorySchemaService.class.getName() + " does not support puts");
+    }
+
+    @Override
+    public List<MetricSchemaRecord> get(MetricSchemaRecordQuery query) {
+        Pattern namespace = _pattern(query.getNamespace());
+        Pattern scope = _pattern(query.getScope());
+        Pattern metric = _pattern(query.getMetric());
+        Pattern tagKey = _pattern(query.getTagKey());
+        Pattern tagValue = _pattern(query.getTagValue());
+        List<List<MetricSchemaRecord>> candidates = new ArrayList<>();
+
+        if (SchemaService.containsWildcard(query.getScope()) || SchemaService.containsWildcard(query.getMetric())) {
+            candidates.addAll(_records.values());
+        } else if (_records.containsKey(_key(query.getScope(), query.getMetric()))) {
+            candidates.add(_records.get(_key(query.getScope(), query.getMetric())));
+        }
+
+        List<MetricSchemaRecord> result = new ArrayList<>();
+
+        for (List<MetricSchemaRecord> records : candidates) {
+            MetricSchemaRecord first = records.get(0);
+
+            if (!_matches(scope, first.getScope()) || !_matches(metric, first.getMetric())) {
+                continue;
+            }
+            for (MetricSchemaRecord record : records) {
+                if (_matches(namespace, record.getNamespace()) && _matches(tagKey, record.getTagKey()) && _matches(tagValue, record.getTagValue())) {
+                    result.add(record);
+                    if (query.getLimit() > 0 && result.size() == query.getLimit()) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<MetricSchemaRecord> getUnique(MetricSchemaRecordQuery query, RecordType type) {
+        throw new UnsupportedOperationException(InMemorySchemaService.class.getName() + " does not support unique queries");
+    }
+
+    @Override
+    public List<String> browseUnique(MetricSchemaRecordQuery query, RecordType type, int indexLevel) {
+        throw new UnsupportedOperationException(InMemorySchemaService.class.getName() + " does not support browsing");
+    }
+
+    @Override
+    public List<MetricSchemaRecord> keywordSearch(KeywordQuery query) {
+        throw new UnsupportedOperationException(InMemorySchemaService.class.getName() + " does not support keyword search");
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.benchmark;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.entity.MetricSchemaRecord;
+import com.salesforce.dva.argus.service.tsdb.AbstractTSDBService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates reproducible synthetic data for the benchmarks. Every generator is seeded, so two runs of a benchmark with the same parameters
+ * operate on identical series and schema records and their scores can be compared against a baseline.
+ *
+ * <p>Series follow a daily sine wave with gaussian noise and rare spikes, which is close enough to host metrics for the transforms and
+ * anomaly detectors to take their usual code paths. Every series of a scope has a unique <tt>host</tt> tag and hosts are spread across four
+ * <tt>dc</tt> tag values.</p>
+ */
+public final class SyntheticData {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The default seed used by the benchmarks. */
+    public static final long SEED = 0x5EEDL;
+
+    /** The timestamp of the first data point of every generated series, aligned to a day. */
+    public static final long START = 1500076800000L;
+
+    /** The number of distinct values of the <tt>dc</tt> tag. */
+    public static final int DATACENTERS = 4;
+
+    private static final long DAY_MILLIS = 86400000L;
+    private static final double SPIKE_PROBABILITY = 0.001;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Random _random;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /** Creates a new SyntheticData object using the default seed. */
+    public SyntheticData() {
+        this(SEED);
+    }
+
+    /**
+     * Creates a new SyntheticData object.
+     *
+     * @param  seed  The seed of the generators.
+     */
+    public SyntheticData(long seed) {
+        _random = new Random(seed);
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the host tag value of the series with the given index.
+     *
+     * @param   index  The index of the series.
+     *
+     * @return  The host name.
+     */
+    public static String host(int index) {
+        return String.format("host-%05d", index);
+    }
+
+    /**
+     * Returns the data center tag value of the series with the given index.
+     *
+     * @param   index  The index of the series.
+     *
+     * @return  The data center name.
+     */
+    public static String datacenter(int index) {
+        return "dc-" + (index % DATACENTERS);
+    }
+
+    /**
+     * Creates a deep copy of a list of series, for benchmarks of code that modifies its input.
+     *
+     * @param   metrics  The series to copy.
+     *
+     * @return  The copies.
+     */
+    public static List<Metric> copy(List<Metric> metrics) {
+        List<Metric> copies = new ArrayList<>(metrics.size());
+
+        for (Metric metric : metrics) {
+            copies.add(new Metric(metric));
+        }
+        return copies;
+    }
+
+    /**
+     * Generates series of equally spaced data points.
+     *
+     * @param   scope         The scope of the series.
+     * @param   metric        The metric name of the series.
+     * @param   seriesCount   The number of series, one per host.
+     * @param   pointCount    The number of data points per series.
+     * @param   periodMillis  The time between two data points.
+     *
+     * @return  The series.
+     */
+    public List<Metric> metrics(String scope, String metric, int seriesCount, int pointCount, long periodMillis) {
+        List<Metric> metrics = new ArrayList<>(seriesCount);
+
+        for (int i = 0; i < seriesCount; i++) {
+            Metric m = new Metric(scope, metric);
+
+            m.setTag("host", host(i));
+            m.setTag("dc", datacenter(i));
+            m.setDatapoints(datapoints(pointCount, periodMillis));
+            metrics.add(m);
+        }
+        return metrics;
+    }
+
+    /**
+     * Generates the data points of a single series.
+     *
+     * @param   pointCount    The number of data points.
+     * @param   periodMillis  The time between two data points.
+     *
+     * @return  The data points keyed by timestamp.
+     */
+    public Map<Long, Double> datapoints(int pointCount, long periodMillis) {
+        Map<Long, Double> datapoints = new TreeMap<>();
+        double base = 50 + _random.nextDouble() * 50;
+        double amplitude = base * (0.1 + _random.nextDouble() * 0.3);
+
+        for (int i = 0; i < pointCount; i++) {
+            long timestamp = START + i * periodMillis;
+            double value = base + amplitude * Math.sin(2 * Math.PI * (timestamp % DAY_MILLIS) / DAY_MILLIS) + _random.nextGaussian() * base * 0.05;
+
+            if (_random.nextDouble() < SPIKE_PROBABILITY) {
+                value *= 5;
+            }
+            datapoints.put(timestamp, value);
+        }
+        return datapoints;
+    }
+
+    /**
+     * Generates the schema records of a metric system with a host tag record per series and a data center tag record per
+     * distinct data center of every metric.
+     *
+     * @param   scopeCount        The number of scopes.
+     * @param   metricsPerScope   The number of metric names per scope.
+     * @param   seriesPerMetric   The number of hosts reporting every metric.
+     *
+     * @return  The schema records.
+     */
+    public List<MetricSchemaRecord> schemaRecords(int scopeCount, int metricsPerScope, int seriesPerMetric) {
+        List<MetricSchemaRecord> records = new ArrayList<>(scopeCount * metricsPerScope * (seriesPerMetric + DATACENTERS));
+
+        for (int s = 0; s < scopeCount; s++) {
+            for (int m = 0; m < metricsPerScope; m++) {
+                for (int h = 0; h < seriesPerMetric; h++) {
+                    records.add(new MetricSchemaRecord(null, scope(s), metric(m), "host", host(h)));
+                    if (h < DATACENTERS) {
+                        records.add(new MetricSchemaRecord(null, scope(s), metric(m), "dc", datacenter(h)));
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns the name of the generated scope with the given index.
+     *
+     * @param   index  The index of the scope.
+     *
+     * @return  The scope name.
+     */
+    public static String scope(int index) {
+        return String.format("system.pod%03d.app", index);
+    }
+
+    /**
+     * Returns the name of the generated metric with the given index.
+     *
+     * @param   index  The index of the metric.
+     *
+     * @return  The metric name.
+     */
+    public static String metric(int index) {
+        return String.format("latency.p%02d", index);
+    }
+
+    /**
+     * Renders series in the format of an OpenTSDB query response.
+     *
+     * @param   metrics  The series.
+     *
+     * @return  The JSON response body.
+     */
+    public static String tsdbResponse(List<Metric> metrics) {
+        StringBuilder json = new StringBuilder("[");
+
+        for (int i = 0; i < metrics.size(); i++) {
+            Metric metric = metrics.get(i);
+
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"metric\":\"").append(AbstractTSDBService.constructTSDBMetricName(metric)).append("\",\"tags\":{");
+
+            String separator = "";
+
+            for (Map.Entry<String, String> tag : metric.getTags().entrySet()) {
+                json.append(separator).append('"').append(tag.getKey()).append("\":\"").append(tag.getValue()).append('"');
+                separator = ",";
+            }
+            json.append("},\"dps\":{");
+            separator = "";
+            for (Map.Entry<Long, Double> datapoint : metric.getDatapoints().entrySet()) {
+                json.append(separator).append('"').append(datapoint.getKey()).append("\":").append(datapoint.getValue());
+                separator = ",";
+            }
+            json.append("},\"tsuids\":[\"").append(String.format("%018X", i)).append("\"]}");
+        }
+        return json.append(']').toString();
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.benchmark.SyntheticData;
+import com.salesforce.dva.argus.entity.Alert;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.entity.PrincipalUser;
+import com.salesforce.dva.argus.entity.Trigger;
+import com.salesforce.dva.argus.entity.Trigger.TriggerType;
+import com.salesforce.dva.argus.service.MQService;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmarks the evaluation of a trigger against every series returned by an alert expression, as done by
+ * {@link DefaultAlertService#getTriggerFiredDatapointTime(Trigger, Metric, String, Long)}. The thresholds lie above the generated values, so
+ * the evaluation of a series scans all of its data points, which is the common case of an alert that is not firing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TriggerEvaluationBenchmark {
+
+    private static final String EXPRESSION = "-1d:system.pod001.app:latency.p99{host=*}:avg";
+    private static final long PERIOD_MILLIS = 60000L;
+    private static final int SERIES = 100;
+
+    @Param({ "GREATER_THAN", "NOT_BETWEEN" })
+    public String type;
+
+    @Param({ "0", "600000" })
+    public long inertia;
+
+    @Param({ "60", "1440" })
+    public int points;
+
+    private DefaultAlertService _alertService;
+    private Trigger _trigger;
+    private List<Metric> _metrics;
+    private long _evaluationTime;
+
+    @Setup
+    public void setup() {
+        PrincipalUser user = new PrincipalUser(null, "admin", "admin@salesforce.com");
+        Alert alert = new Alert(user, user, "benchmark", EXPRESSION, "* * * * *");
+
+        _alertService = new DefaultAlertService(new SystemConfiguration(new Properties()), mock(MQService.class), mock(MetricService.class), null,
+            mock(TSDBService.class), null, null, null, null, null, null);
+        _trigger = new Trigger(alert, TriggerType.fromString(type), "trigger", 1000.0, -1000.0, inertia);
+        _metrics = new SyntheticData().metrics("system.pod001.app", "latency.p99", SERIES, points, PERIOD_MILLIS);
+        _evaluationTime = SyntheticData.START + points * PERIOD_MILLIS;
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        for (Metric metric : _metrics) {
+            blackhole.consume(_alertService.getTriggerFiredDatapointTime(_trigger, metric, EXPRESSION, _evaluationTime));
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.DiscoveryService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.metric.transform.TransformFactory;
+import com.salesforce.dva.argus.util.QueryContextHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsing of metric expressions by {@link MetricReader}, from a single query to the deeply nested expressions typical of alerts.
+ * Parsing is syntax only, as done when validating an alert, so neither discovery nor the TSDB is involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricReaderBenchmark {
+
+    private static final long RELATIVE_TO = 1500076800000L;
+
+    @Param({ "QUERY", "TRANSFORM", "NESTED" })
+    public String expression;
+
+    private MetricReader<Metric> _reader;
+    private String _expression;
+
+    @Setup
+    public void setup() {
+        _reader = new MetricReader<>((TSDBService) null, (DiscoveryService) null, (TransformFactory) null);
+        switch (expression) {
+            case "QUERY":
+                _expression = "-1h:system.pod001.app:latency.p99{host=*,dc=dc-0}:avg:1m-avg";
+                break;
+            case "TRANSFORM":
+                _expression = "DOWNSAMPLE(GROUPBYTAG(-1d:system.pod*.app:latency.p99{host=host-0*}:avg:1m-max, #dc#, #MAX#), #10m-max#)";
+                break;
+            case "NESTED":
+                _expression = "SCALE(SUM(DIVIDE(DIFF(DOWNSAMPLE(SUM(CULL_BELOW(DERIVATIVE(-1h:-40m:system.pod*.app:requests.count{host=host-*}:sum:1m-max),"
+                    + " #0.001#, #value#), #union#), #10m-sum#), DOWNSAMPLE(SUM(CULL_BELOW(DERIVATIVE(-2h:-40m:system.pod*.app:errors.count"
+                    + "{host=host-*}:sum:1m-max), #0.01#, #value#), #union#), #10m-sum#), #union#), CULL_BELOW(DOWNSAMPLE(SUM(CULL_BELOW("
+                    + "DERIVATIVE(-40m:system.pod*.app:requests.count{host=host-*}:sum:1m-max), #0.001#, #value#), #union#), #10m-sum#), #1000#,"
+                    + " #value#)), #-1#), #-100#)";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown expression " + expression);
+        }
+    }
+
+    @Benchmark
+    public List<Metric> parse() throws ParseException {
+        return _reader.parse(_expression, RELATIVE_TO, Metric.class, new QueryContextHolder(), true);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.salesforce.dva.argus.benchmark.SyntheticData;
+import com.salesforce.dva.argus.entity.Metric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the anomaly detection transforms on a single series of one day or one week of minutely data points. The <tt>_CONTEXTUAL</tt>
+ * detectors score every data point against a moving interval of the series instead of the whole series.
+ *
+ * <p>The anomaly detection transforms do not modify their input, so the generated series is shared by all invocations.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnomalyDetectionBenchmark {
+
+    private static final long PERIOD_MILLIS = 60000L;
+
+    @Param(
+        {
+            "ANOMALY_DENSITY", "ANOMALY_ZSCORE", "ANOMALY_KMEANS", "ANOMALY_RPCA", "ANOMALY_STL", "ANOMALY_DENSITY_CONTEXTUAL",
+            "ANOMALY_ZSCORE_CONTEXTUAL"
+        }
+    )
+    public String detector;
+
+    @Param({ "1440", "10080" })
+    public int points;
+
+    private Transform _transform;
+    private List<String> _constants;
+    private List<Metric> _input;
+
+    @Setup
+    public void setup() {
+        String function = detector.replace("_CONTEXTUAL", "");
+
+        _transform = new TransformFactory(null).getTransform(function);
+        _constants = constants(detector);
+        _input = new SyntheticData().metrics("system.pod001.app", "latency.p99", 1, points, PERIOD_MILLIS);
+    }
+
+    /**
+     * Returns the constants the benchmark passes to an anomaly detection transform.
+     *
+     * @param   detector  The name of the transform, suffixed with <tt>_CONTEXTUAL</tt> for contextual detection.
+     *
+     * @return  The constants, may be empty.
+     */
+    static List<String> constants(String detector) {
+        switch (detector) {
+            case "ANOMALY_KMEANS":
+                return Collections.singletonList("3");
+            case "ANOMALY_RPCA":
+                return Collections.singletonList("1h");
+            case "ANOMALY_STL":
+                return Collections.singletonList("60");
+            case "ANOMALY_DENSITY_CONTEXTUAL":
+            case "ANOMALY_ZSCORE_CONTEXTUAL":
+                // The interval is added to millisecond timestamps as seconds, so 100d spans 144 minutely data points.
+                return Collections.singletonList("100d");
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    @Benchmark
+    public List<Metric> transform() {
+        return _constants.isEmpty() ? _transform.transform(null, _input) : _transform.transform(null, _input, _constants);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.salesforce.dva.argus.benchmark.SyntheticData;
+import com.salesforce.dva.argus.entity.Metric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks transforms created by the {@link TransformFactory} at varying numbers of series and data points per series. Several transforms
+ * modify their input, so every invocation operates on a fresh copy of the generated series.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformBenchmark {
+
+    private static final long PERIOD_MILLIS = 60000L;
+
+    /* MOVING_MEDIAN and MOVING_P95 run the moving transform with the order statistic reducers instead of the running average. */
+    @Param({ "SUM", "AVERAGE", "DOWNSAMPLE", "MOVING", "MOVING_MEDIAN", "MOVING_P95", "GROUPBYTAG" })
+    public String function;
+
+    @Param({ "10", "100", "1000" })
+    public int series;
+
+    @Param({ "60", "1440" })
+    public int points;
+
+    private Transform _transform;
+    private List<String> _constants;
+    private List<Metric> _generated;
+    private List<Metric> _input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _transform = new TransformFactory(null).getTransform(transformName(function));
+        _constants = constants(function);
+        _generated = new SyntheticData().metrics("system.pod001.app", "latency.p99", series, points, PERIOD_MILLIS);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyInput() {
+        _input = SyntheticData.copy(_generated);
+    }
+
+    /**
+     * Returns the name of the transform a benchmark function runs.
+     *
+     * @param   function  The benchmark function.
+     *
+     * @return  The transform name.
+     */
+    static String transformName(String function) {
+        return function.startsWith("MOVING") ? "MOVING" : function;
+    }
+
+    /**
+     * Returns the constants the benchmark passes to a transform.
+     *
+     * @param   function  The benchmark function.
+     *
+     * @return  The constants, may be empty.
+     */
+    static List<String> constants(String function) {
+        switch (function) {
+            case "DOWNSAMPLE":
+                return Collections.singletonList("1h-avg");
+            case "MOVING":
+                return Arrays.asList("10m", "avg");
+            case "MOVING_MEDIAN":
+                return Arrays.asList("10m", "median");
+            case "MOVING_P95":
+                return Arrays.asList("10m", "p95");
+            case "GROUPBYTAG":
+                return Arrays.asList("dc", "SUM");
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    @Benchmark
+    public List<Metric> transform() {
+        return _constants.isEmpty() ? _transform.transform(null, _input) : _transform.transform(null, _input, _constants);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.mq.kafka;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.benchmark.SyntheticData;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the encoding of a metric batch into a Kafka record value by the {@link DefaultProducer} and its decoding by the
+ * {@link DefaultConsumer}, as done for every message on the metric collection queue. No broker is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KafkaMessageBenchmark {
+
+    private static final long PERIOD_MILLIS = 60000L;
+
+    @Param({ "1", "50", "500" })
+    public int metricsPerMessage;
+
+    @Param({ "1", "60" })
+    public int pointsPerMetric;
+
+    private DefaultProducer _producer;
+    private DefaultConsumer _consumer;
+    private JavaType _type;
+    private ArrayList<Metric> _batch;
+    private byte[] _record;
+
+    @Setup
+    public void setup() throws IOException {
+        SystemConfiguration config = new SystemConfiguration(new Properties());
+        ObjectMapper mapper = new ObjectMapper();
+
+        _producer = new DefaultProducer(config, null, null, mapper);
+        _consumer = new DefaultConsumer(config, mapper, 1);
+        _type = mapper.getTypeFactory().constructCollectionType(ArrayList.class, Metric.class);
+        _batch = new ArrayList<>(new SyntheticData().metrics("system.pod001.app", "latency.p99", metricsPerMessage, pointsPerMetric, PERIOD_MILLIS));
+        _record = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return _producer.serialize(_batch).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Metric> decode() throws IOException {
+        return _consumer.deserialize(_record, _type);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
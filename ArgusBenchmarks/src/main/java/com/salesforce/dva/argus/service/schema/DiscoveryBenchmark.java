@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.schema;
+
+import com.salesforce.dva.argus.benchmark.InMemorySchemaService;
+import com.salesforce.dva.argus.benchmark.SyntheticData;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the expansion of wildcard queries by {@link DefaultDiscoveryService#getMatchingQueries(MetricQuery)} over an in-memory schema of
+ * 20 scopes with 10 metrics each, every metric reported by the given number of hosts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscoveryBenchmark {
+
+    private static final int SCOPES = 20;
+    private static final int METRICS_PER_SCOPE = 10;
+    private static final long START = SyntheticData.START;
+    private static final long END = START + 3600000L;
+
+    @Param({ "100", "1000" })
+    public int hosts;
+
+    private DefaultDiscoveryService _discoveryService;
+    private MetricQuery _tagWildcardQuery;
+    private MetricQuery _scopeWildcardQuery;
+    private MetricQuery _untaggedQuery;
+
+    @Setup
+    public void setup() {
+        InMemorySchemaService schemaService = new InMemorySchemaService(new SyntheticData().schemaRecords(SCOPES, METRICS_PER_SCOPE, hosts));
+
+        _discoveryService = new DefaultDiscoveryService(schemaService, new SystemConfiguration(new Properties()), null);
+        _tagWildcardQuery = new MetricQuery(SyntheticData.scope(0), SyntheticData.metric(0), Collections.singletonMap("host", "*"), START, END);
+        _scopeWildcardQuery = new MetricQuery("system.pod*.app", SyntheticData.metric(0), Collections.singletonMap("dc", SyntheticData.datacenter(0)),
+            START, END);
+        _untaggedQuery = new MetricQuery(SyntheticData.scope(0), "latency.*", null, START, END);
+    }
+
+    @Benchmark
+    public List<MetricQuery> tagWildcard() {
+        return _discoveryService.getMatchingQueries(_tagWildcardQuery);
+    }
+
+    @Benchmark
+    public List<MetricQuery> scopeWildcard() {
+        return _discoveryService.getMatchingQueries(_scopeWildcardQuery);
+    }
+
+    @Benchmark
+    public List<MetricQuery> untagged() {
+        return _discoveryService.getMatchingQueries(_untaggedQuery);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
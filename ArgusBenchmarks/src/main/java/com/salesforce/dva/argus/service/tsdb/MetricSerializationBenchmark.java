@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.salesforce.dva.argus.benchmark.SyntheticData;
+import com.salesforce.dva.argus.entity.Metric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Jackson (de)serialization of metrics: the OpenTSDB put and query response formats written and read by the TSDB service, and
+ * the plain bean format of {@link Metric} used by the message queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricSerializationBenchmark {
+
+    private static final long PERIOD_MILLIS = 60000L;
+
+    @Param({ "10", "100" })
+    public int series;
+
+    @Param({ "60", "1440" })
+    public int points;
+
+    private ObjectMapper _tsdbMapper;
+    private ObjectMapper _mapper;
+    private JavaType _metricListType;
+    private List<Metric> _metrics;
+    private byte[] _queryResponse;
+    private byte[] _metricsJson;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        SimpleModule module = new SimpleModule();
+
+        module.addSerializer(Metric.class, new MetricTransform.Serializer());
+        module.addDeserializer(ResultSet.class, new MetricTransform.MetricListDeserializer());
+        _tsdbMapper = new ObjectMapper();
+        _tsdbMapper.registerModule(module);
+        _mapper = new ObjectMapper();
+        _metricListType = _mapper.getTypeFactory().constructCollectionType(List.class, Metric.class);
+        _metrics = new SyntheticData().metrics("system.pod001.app", "latency.p99", series, points, PERIOD_MILLIS);
+        _queryResponse = SyntheticData.tsdbResponse(_metrics).getBytes(StandardCharsets.UTF_8);
+        _metricsJson = _mapper.writeValueAsBytes(_metrics);
+    }
+
+    @Benchmark
+    public byte[] tsdbPut() throws JsonProcessingException {
+        return _tsdbMapper.writeValueAsBytes(_metrics);
+    }
+
+    @Benchmark
+    public ResultSet tsdbQueryResponse() throws IOException {
+        return _tsdbMapper.readValue(_queryResponse, ResultSet.class);
+    }
+
+    @Benchmark
+    public byte[] metricWrite() throws JsonProcessingException {
+        return _mapper.writeValueAsBytes(_metrics);
+    }
+
+    @Benchmark
+    public List<Metric> metricRead() throws IOException {
+        return _mapper.readValue(_metricsJson, _metricListType);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
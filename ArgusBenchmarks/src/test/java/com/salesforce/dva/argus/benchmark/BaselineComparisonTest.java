@@ -0,0 +1,82 @@
+package com.salesforce.dva.argus.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.benchmark.BaselineComparison.Row;
+import com.salesforce.dva.argus.benchmark.BaselineComparison.Score;
+import com.salesforce.dva.argus.benchmark.BaselineComparison.Status;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BaselineComparisonTest {
+
+    @Test
+    public void testReadKeysResultsByBenchmarkAndParameters() throws Exception {
+        String json = "[{\"benchmark\":\"a.TransformBenchmark.transform\",\"mode\":\"avgt\",\"params\":{\"series\":\"10\",\"function\":\"SUM\"},"
+            + "\"primaryMetric\":{\"score\":1.5,\"scoreError\":0.1,\"scoreUnit\":\"ms/op\"}},"
+            + "{\"benchmark\":\"a.KafkaMessageBenchmark.encode\",\"mode\":\"thrpt\","
+            + "\"primaryMetric\":{\"score\":200.0,\"scoreError\":\"NaN\",\"scoreUnit\":\"ops/s\"}}]";
+        Map<String, Score> scores = BaselineComparison.read(new ObjectMapper().readTree(json));
+
+        assertEquals(2, scores.size());
+
+        Score transform = scores.get("a.TransformBenchmark.transform{function=SUM, series=10}");
+
+        assertEquals(1.5, transform.getScore(), 0.0);
+        assertEquals(0.1, transform.getError(), 0.0);
+        assertEquals("ms/op", transform.getUnit());
+        assertFalse(transform.isHigherBetter());
+
+        Score encode = scores.get("a.KafkaMessageBenchmark.encode");
+
+        assertEquals(0.0, encode.getError(), 0.0);
+        assertTrue(encode.isHigherBetter());
+    }
+
+    @Test
+    public void testCompare() {
+        Map<String, Score> baseline = new LinkedHashMap<>();
+        Map<String, Score> current = new LinkedHashMap<>();
+
+        baseline.put("slower", new Score("avgt", 100, 1, "us/op"));
+        current.put("slower", new Score("avgt", 120, 1, "us/op"));
+        baseline.put("faster", new Score("avgt", 100, 1, "us/op"));
+        current.put("faster", new Score("avgt", 80, 1, "us/op"));
+        baseline.put("noisy", new Score("avgt", 100, 15, "us/op"));
+        current.put("noisy", new Score("avgt", 125, 15, "us/op"));
+        baseline.put("within", new Score("avgt", 100, 1, "us/op"));
+        current.put("within", new Score("avgt", 105, 1, "us/op"));
+        baseline.put("throughput", new Score("thrpt", 100, 1, "ops/s"));
+        current.put("throughput", new Score("thrpt", 50, 1, "ops/s"));
+        current.put("added", new Score("avgt", 1, 0, "us/op"));
+        baseline.put("removed", new Score("avgt", 1, 0, "us/op"));
+
+        BaselineComparison comparison = new BaselineComparison(baseline, current, 10);
+        Map<String, Row> rows = new LinkedHashMap<>();
+
+        for (Row row : comparison.getRows()) {
+            rows.put(row.getName(), row);
+        }
+        assertEquals(Status.REGRESSED, rows.get("slower").getStatus());
+        assertEquals(20.0, rows.get("slower").getChangePercent(), 1e-9);
+        assertEquals(Status.IMPROVED, rows.get("faster").getStatus());
+        assertEquals(Status.UNCHANGED, rows.get("noisy").getStatus());
+        assertEquals(Status.UNCHANGED, rows.get("within").getStatus());
+        assertEquals(Status.REGRESSED, rows.get("throughput").getStatus());
+        assertEquals(Status.NEW, rows.get("added").getStatus());
+        assertEquals(Status.MISSING, rows.get("removed").getStatus());
+        assertTrue(comparison.hasRegressions());
+        assertTrue(comparison.toReport().contains("+20.0%"));
+    }
+
+    @Test
+    public void testSyntheticDataIsReproducible() {
+        assertEquals(new SyntheticData().metrics("scope", "metric", 3, 100, 60000L).get(2).getDatapoints(),
+            new SyntheticData().metrics("scope", "metric", 3, 100, 60000L).get(2).getDatapoints());
+    }
+}
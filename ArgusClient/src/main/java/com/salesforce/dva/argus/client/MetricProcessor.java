@@ -12,7 +12,7 @@ public class MetricProcessor implements Runnable {
 
     //~ Static fields/initializers *******************************************************************************************************************
 
-    private static final long POLL_INTERVAL_MS = 500;
+    private static final long ERROR_BACKOFF_MS = 500;
     private static final Logger LOGGER = LoggerFactory.getLogger(MetricProcessor.class);
 
     //~ Instance fields ******************************************************************************************************************************
@@ -32,6 +32,10 @@ public class MetricProcessor implements Runnable {
 
     //~ Methods **************************************************************************************************************************************
 
+    /**
+     * Evaluates batch queries until interrupted. The next query is dequeued as soon as the previous one finished, since dequeuing already blocks
+     * until a query is available or the dequeue timeout elapses. After a failure the processor backs off before dequeuing again.
+     */
     @Override
     public void run() {
         while (!Thread.currentThread().isInterrupted()) {
@@ -40,15 +44,16 @@ public class MetricProcessor implements Runnable {
                 if (query != null) {
                     LOGGER.info("Finished processing " + query.getExpression() + " of batch " + query.getBatchId());
                 }
-                Thread.sleep(POLL_INTERVAL_MS);
-            } catch (InterruptedException ex) {
-                LOGGER.info("Execution was interrupted.");
-                Thread.currentThread().interrupt();
-                break;
             } catch (Throwable ex) {
                 LOGGER.warn("Exception in MetricProcessor: {}", ex.toString());
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
+        LOGGER.info("Execution was interrupted.");
     }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -62,6 +62,7 @@ public class Histogram extends TSDBEntity implements Serializable {
     private Long _underflow = 0L;
     private Long _overflow = 0L;
     private Long _timestamp;
+    private byte[] _sketch;
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -79,6 +80,7 @@ public class Histogram extends TSDBEntity implements Serializable {
         setBuckets(histogram.getBuckets());
         setDisplayName(histogram.getDisplayName());
         setUnits(histogram.getUnits());
+        setSketch(histogram.getSketch());
     }
 
     /**
@@ -188,6 +190,25 @@ public class Histogram extends TSDBEntity implements Serializable {
         _buckets.clear();
     }
 
+    /**
+     * Returns the encoded quantile sketch the histogram was submitted as. When present, the buckets are derived from the sketch when the
+     * histogram is committed.
+     *
+     * @return  The encoded {@link QuantileSketch}. Can be null.
+     */
+    public byte[] getSketch() {
+        return _sketch;
+    }
+
+    /**
+     * Sets the encoded quantile sketch for the histogram.
+     *
+     * @param  sketch  The encoded {@link QuantileSketch}. Can be null.
+     */
+    public void setSketch(byte[] sketch) {
+        _sketch = sketch;
+    }
+
     /**
      * Sets the display name for the histogram.
      *
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * A mergeable quantile sketch with a relative error guarantee. Values are counted in logarithmically sized bins so that every quantile estimate is
+ * within the configured relative accuracy of the true value, and the number of bins is bounded by collapsing the bins of the smallest magnitudes
+ * once the limit is reached. Two sketches with the same relative accuracy share the same bin boundaries, which makes merging them exact and
+ * allows the bins to be stored as histogram buckets that line up across hosts.
+ */
+public class QuantileSketch {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The default relative accuracy of quantile estimates. */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    /** The default maximum number of bins kept for each sign. */
+    public static final int DEFAULT_MAX_BINS = 512;
+    /** The largest maximum number of bins accepted when decoding a sketch. */
+    public static final int MAX_BINS = 2048;
+    /** Values of a smaller magnitude are counted as zero. */
+    static final double MIN_INDEXABLE_VALUE = 1e-9;
+    /** Values of a larger magnitude are counted in the bin of this value. */
+    static final double MAX_INDEXABLE_VALUE = 1e30;
+    private static final byte ENCODING_VERSION = 1;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final double _relativeAccuracy;
+    private final double _logGamma;
+    private final int _maxBins;
+    private final Store _positive = new Store();
+    private final Store _negative = new Store();
+    private long _zeroCount;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /** Creates a new QuantileSketch object with the default relative accuracy and bin limit. */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+    }
+
+    /**
+     * Creates a new QuantileSketch object.
+     *
+     * @param  relativeAccuracy  The relative accuracy of quantile estimates. Must be between 0 and 1 exclusive.
+     * @param  maxBins           The maximum number of bins kept for each sign. Must be between 1 and {@link #MAX_BINS}.
+     */
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        requireArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "Relative accuracy must be between 0 and 1.");
+        requireArgument(maxBins > 0 && maxBins <= MAX_BINS, "Max bins must be between 1 and " + MAX_BINS + ".");
+        _relativeAccuracy = relativeAccuracy;
+        _logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+        _maxBins = maxBins;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Decodes a sketch from its binary encoding.
+     *
+     * @param   bytes  The encoded sketch. Cannot be null.
+     *
+     * @return  The decoded sketch.
+     *
+     * @throws  IllegalArgumentException  If the encoding is malformed. Any other failure to decode is reported as this exception too.
+     */
+    public static QuantileSketch decode(byte[] bytes) {
+        requireArgument(bytes != null, "Encoded sketch cannot be null.");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        try {
+            requireArgument(buffer.get() == ENCODING_VERSION, "Unsupported sketch encoding version.");
+
+            QuantileSketch sketch = new QuantileSketch(buffer.getDouble(), (int) _readVarLong(buffer));
+
+            sketch._zeroCount = _readCount(buffer);
+            sketch._decodeStore(buffer, sketch._positive);
+            sketch._decodeStore(buffer, sketch._negative);
+            requireArgument(!buffer.hasRemaining(), "Trailing bytes after the encoded sketch.");
+            return sketch;
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated sketch encoding.", ex);
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Malformed sketch encoding.", ex);
+        }
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param  value  The value to add. Must be finite.
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value to the sketch a number of times.
+     *
+     * @param  value  The value to add. Must be finite.
+     * @param  count  The number of occurrences. Cannot be negative.
+     */
+    public void add(double value, long count) {
+        requireArgument(!Double.isNaN(value) && !Double.isInfinite(value), "Value must be finite.");
+        requireArgument(count >= 0, "Count cannot be negative.");
+        if (count == 0) {
+            return;
+        }
+        if (value >= MIN_INDEXABLE_VALUE) {
+            _positive.add(_index(value), count, _maxBins);
+        } else if (value <= -MIN_INDEXABLE_VALUE) {
+            _negative.add(_index(-value), count, _maxBins);
+        } else {
+            _zeroCount += count;
+        }
+    }
+
+    /**
+     * Merges another sketch into this one. Both sketches must have the same relative accuracy.
+     *
+     * @param  other  The sketch to merge. Cannot be null.
+     */
+    public void merge(QuantileSketch other) {
+        requireArgument(other != null, "Sketch to merge cannot be null.");
+        requireArgument(other._relativeAccuracy == _relativeAccuracy, "Sketches with different relative accuracies cannot be merged.");
+        _zeroCount += other._zeroCount;
+        for (int i = other._positive._minIndex; i <= other._positive._maxIndex; i++) {
+            long count = other._positive.get(i);
+
+            if (count > 0) {
+                _positive.add(i, count, _maxBins);
+            }
+        }
+        for (int i = other._negative._minIndex; i <= other._negative._maxIndex; i++) {
+            long count = other._negative.get(i);
+
+            if (count > 0) {
+                _negative.add(i, count, _maxBins);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values added to the sketch.
+     *
+     * @return  The number of values.
+     */
+    public long getCount() {
+        return _zeroCount + _positive.getTotal() + _negative.getTotal();
+    }
+
+    /**
+     * Returns the relative accuracy of the quantile estimates.
+     *
+     * @return  The relative accuracy.
+     */
+    public double getRelativeAccuracy() {
+        return _relativeAccuracy;
+    }
+
+    /**
+     * Estimates the value at a quantile.
+     *
+     * @param   quantile  The quantile. Must be between 0 and 1 inclusive.
+     *
+     * @return  The estimated value, or NaN if the sketch is empty.
+     */
+    public double getQuantile(double quantile) {
+        requireArgument(quantile >= 0 && quantile <= 1, "Quantile must be between 0 and 1.");
+
+        long count = getCount();
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+
+        for (int i = _negative._maxIndex; i >= _negative._minIndex; i--) {
+            seen += _negative.get(i);
+            if (seen > rank) {
+                return -_value(i);
+            }
+        }
+        seen += _zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = _positive._minIndex; i <= _positive._maxIndex; i++) {
+            seen += _positive.get(i);
+            if (seen > rank) {
+                return _value(i);
+            }
+        }
+        return _value(_positive._maxIndex);
+    }
+
+    /**
+     * Returns the bins of the sketch as histogram buckets. Bucket boundaries only depend on the relative accuracy, so buckets produced by different
+     * sketches line up.
+     *
+     * @return  The non empty buckets and their counts. Never null.
+     */
+    public Map<HistogramBucket, Long> toBuckets() {
+        Map<HistogramBucket, Long> buckets = new TreeMap<>();
+
+        for (int i = _negative._minIndex; i <= _negative._maxIndex; i++) {
+            long count = _negative.get(i);
+
+            if (count > 0) {
+                buckets.merge(new HistogramBucket(-(float) _upperBound(i), -(float) _upperBound(i - 1)), count, Long::sum);
+            }
+        }
+        if (_zeroCount > 0) {
+            buckets.put(new HistogramBucket(-(float) MIN_INDEXABLE_VALUE, (float) MIN_INDEXABLE_VALUE), _zeroCount);
+        }
+        for (int i = _positive._minIndex; i <= _positive._maxIndex; i++) {
+            long count = _positive.get(i);
+
+            if (count > 0) {
+                buckets.merge(new HistogramBucket((float) _upperBound(i - 1), (float) _upperBound(i)), count, Long::sum);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns the bins of the sketch as at most a given number of histogram buckets. When the sketch has more non empty bins, runs of adjacent
+     * bins are collapsed into a single bucket spanning them, which loses accuracy but keeps every count.
+     *
+     * @param   maxBuckets  The maximum number of buckets. Must be positive.
+     *
+     * @return  The non empty buckets and their counts. Never null.
+     */
+    public Map<HistogramBucket, Long> toBuckets(int maxBuckets) {
+        requireArgument(maxBuckets > 0, "Max buckets must be positive.");
+
+        Map<HistogramBucket, Long> buckets = toBuckets();
+
+        if (buckets.size() <= maxBuckets) {
+            return buckets;
+        }
+
+        Map<HistogramBucket, Long> collapsed = new TreeMap<>();
+        int binsPerBucket = (buckets.size() + maxBuckets - 1) / maxBuckets;
+        Iterator<Map.Entry<HistogramBucket, Long>> iterator = buckets.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<HistogramBucket, Long> first = iterator.next();
+            float upperBound = first.getKey().getUpperBound();
+            long count = first.getValue();
+
+            for (int i = 1; i < binsPerBucket && iterator.hasNext(); i++) {
+                Map.Entry<HistogramBucket, Long> next = iterator.next();
+
+                upperBound = next.getKey().getUpperBound();
+                count += next.getValue();
+            }
+            collapsed.put(new HistogramBucket(first.getKey().getLowerBound(), upperBound), count);
+        }
+        return collapsed;
+    }
+
+    /**
+     * Returns the number of non empty bins.
+     *
+     * @return  The number of non empty bins.
+     */
+    public int getBinCount() {
+        return _positive.getNonEmpty() + _negative.getNonEmpty() + (_zeroCount > 0 ? 1 : 0);
+    }
+
+    /**
+     * Encodes the sketch. Only non empty bins are written, with their indexes delta encoded.
+     *
+     * @return  The encoded sketch.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + 4 * getBinCount());
+        ByteBuffer header = ByteBuffer.allocate(9);
+
+        header.put(ENCODING_VERSION).putDouble(_relativeAccuracy);
+        out.write(header.array(), 0, 9);
+        _writeVarLong(out, _maxBins);
+        _writeVarLong(out, _zeroCount);
+        _encodeStore(out, _positive);
+        _encodeStore(out, _negative);
+        return out.toByteArray();
+    }
+
+    private int _index(double value) {
+        return (int) Math.ceil(Math.log(Math.min(value, MAX_INDEXABLE_VALUE)) / _logGamma);
+    }
+
+    /* The upper bound of bin i, i.e. bin i holds the values in (gamma^(i-1), gamma^i]. */
+    private double _upperBound(int index) {
+        return Math.exp(index * _logGamma);
+    }
+
+    /* The estimate with the smallest worst case relative error for the values of bin i. */
+    private double _value(int index) {
+        return 2 * _upperBound(index) / (1 + Math.exp(_logGamma));
+    }
+
+    private void _decodeStore(ByteBuffer buffer, Store store) {
+        long bins = _readVarLong(buffer);
+        long index = 0;
+
+        // Only indexes a value can map to are accepted, away from the ends of the int range so that bin loops terminate.
+        long minIndex = Math.max(_index(MIN_INDEXABLE_VALUE), Integer.MIN_VALUE + 1L);
+        long maxIndex = Math.min(_index(MAX_INDEXABLE_VALUE), Integer.MAX_VALUE - 1L);
+
+        requireArgument(bins >= 0 && bins <= MAX_BINS, "Invalid number of sketch bins.");
+        for (long i = 0; i < bins; i++) {
+            long delta = _readVarLong(buffer);
+
+            index += (delta >>> 1) ^ -(delta & 1);
+            requireArgument(index >= minIndex && index <= maxIndex, "Sketch bin index out of range.");
+            store.add((int) index, _readCount(buffer), _maxBins);
+        }
+    }
+
+    private static void _encodeStore(ByteArrayOutputStream out, Store store) {
+        long previous = 0;
+
+        _writeVarLong(out, store.getNonEmpty());
+        for (int i = store._minIndex; i <= store._maxIndex; i++) {
+            long count = store.get(i);
+
+            if (count > 0) {
+                long delta = i - previous;
+
+                _writeVarLong(out, (delta << 1) ^ (delta >> 63));
+                _writeVarLong(out, count);
+                previous = i;
+            }
+        }
+    }
+
+    private static long _readCount(ByteBuffer buffer) {
+        long count = _readVarLong(buffer);
+
+        requireArgument(count >= 0, "Sketch counts cannot be negative.");
+        return count;
+    }
+
+    private static void _writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long _readVarLong(ByteBuffer buffer) {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer in sketch encoding.");
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The counts of contiguous bins, held in a primitive array. When the bins would span more than the limit, the lowest bins are collapsed into
+     * the lowest bin that is kept.
+     */
+    private static final class Store {
+
+        private static final int MARGIN = 16;
+
+        private long[] _counts = new long[0];
+        private int _offset;
+        private int _minIndex = 0;
+        private int _maxIndex = -1;
+        private long _total;
+
+        long get(int index) {
+            return index < _minIndex || index > _maxIndex ? 0 : _counts[index - _offset];
+        }
+
+        long getTotal() {
+            return _total;
+        }
+
+        int getNonEmpty() {
+            int bins = 0;
+
+            for (int i = _minIndex; i <= _maxIndex; i++) {
+                if (_counts[i - _offset] > 0) {
+                    bins++;
+                }
+            }
+            return bins;
+        }
+
+        void add(int index, long count, int maxBins) {
+            if (_total == 0) {
+                _extend(index, index);
+            } else if (index < _minIndex) {
+                index = (int) Math.max(index, (long) _maxIndex - maxBins + 1);
+                if (index < _minIndex) {
+                    _extend(index, _maxIndex);
+                }
+            } else if (index > _maxIndex) {
+                int minIndex = (int) Math.max(_minIndex, (long) index - maxBins + 1);
+                long collapsed = 0;
+
+                for (int i = _minIndex; i < minIndex && i <= _maxIndex; i++) {
+                    collapsed += _counts[i - _offset];
+                    _counts[i - _offset] = 0;
+                }
+                _extend(minIndex, index);
+                _counts[minIndex - _offset] += collapsed;
+            }
+            _counts[index - _offset] += count;
+            _total += count;
+        }
+
+        /* Makes the bins cover [minIndex, maxIndex]. Bins outside the new range must already be empty. */
+        private void _extend(int minIndex, int maxIndex) {
+            if (_counts.length == 0 || minIndex < _offset || maxIndex >= (long) _offset + _counts.length) {
+                // The bound math is done in long as the margin may not fit next to bins near the ends of the int range.
+                int offset = (int) Math.max(Integer.MIN_VALUE, (long) minIndex - MARGIN);
+                long[] counts = new long[(int) ((long) maxIndex - offset + 1 + MARGIN)];
+
+                for (int i = Math.max(_minIndex, minIndex); i <= Math.min(_maxIndex, maxIndex); i++) {
+                    counts[i - offset] = _counts[i - _offset];
+                }
+                _counts = counts;
+                _offset = offset;
+            }
+            _minIndex = minIndex;
+            _maxIndex = maxIndex;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
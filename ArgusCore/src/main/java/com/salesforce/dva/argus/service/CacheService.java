@@ -31,6 +31,8 @@
 
 package com.salesforce.dva.argus.service;
 
+import com.salesforce.dva.argus.system.SystemException;
+
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -197,6 +199,31 @@ public interface CacheService extends Service {
      */
     <V> Map<String, V> getRange(Set<String> keys, int startOffset, int endOffset);
 
+    /**
+     * Atomically adds a member to the set stored at a key, creating the set if it does not exist, and sets the timeout of the key. Adding a member
+     * that is already in the set leaves the set unchanged.
+     *
+     * @param   key     The cache key.  Cannot be null or empty.
+     * @param   member  The member to add.  Cannot be null.
+     * @param   ttl     The timeout in seconds.  Must be greater than zero.
+     *
+     * @return  The number of members in the set after the addition.
+     *
+     * @throws  SystemException  If the member could not be added.
+     */
+    long addToSet(String key, String member, int ttl);
+
+    /**
+     * Returns the number of members in the sets stored at the given keys.
+     *
+     * @param   keys  The cache keys.  Cannot be null.
+     *
+     * @return  The number of members per key, zero for keys that do not exist.  Will never return null.
+     *
+     * @throws  SystemException  If the sets could not be read.
+     */
+    Map<String, Long> getSetSizes(Set<String> keys);
+
     /**
      * Return the global cache expiration time in seconds.
      *
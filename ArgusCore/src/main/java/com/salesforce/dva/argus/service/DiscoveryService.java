@@ -43,6 +43,7 @@ import com.salesforce.dva.argus.util.RequestContextHolder;
 
 import java.text.MessageFormat;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -72,6 +73,15 @@ public interface DiscoveryService extends Service {
      */
     List<MetricSchemaRecord> filterRecords(SchemaQuery query);
 
+    /**
+     * Returns an iterator over the metric schema records which match the filtering criteria. Records may be fetched lazily as the iterator is
+     * consumed.
+     *
+     * @param query 	The query to filter by
+     * @return An iterator over the metric schema records matching the filtering criteria.  Will never return null.
+     */
+    Iterator<MetricSchemaRecord> iterateRecords(MetricSchemaRecordQuery query);
+
     /**
      * @param query             The query
      * @param type            The field to return.  Cannot be null.
@@ -64,6 +64,18 @@ public interface MQService extends Service {
      */
     <T extends Serializable> void enqueue(String queueName, List<T> objects);
 
+    /**
+     * Enqueues messages that share a partition key. Messages with the same partition key are delivered in order to the same consumer of a
+     * consumer group, which lets consumers own a consistent subset of the data. This method blocks until initialization is complete and the
+     * queue is available.
+     *
+     * @param  <T>           The serializable type of the objects.
+     * @param  queueName     The queue name to use. Cannot be null or empty.
+     * @param  partitionKey  The partition key. If null, messages are spread across partitions.
+     * @param  objects       The serializable objects to enqueue. Cannot be null or empty.
+     */
+    <T extends Serializable> void enqueue(String queueName, String partitionKey, List<T> objects);
+
     /**
      * Dequeues a message.
      *
@@ -36,6 +36,7 @@ import com.salesforce.dva.argus.service.metric.MetricQueryResult;
 import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides methods for reading/transforming time series metrics.
@@ -97,6 +98,17 @@ public interface MetricService extends Service {
      */
 	MetricQueryResult getMetrics(String expression, long relativeTo);
 
+    /**
+     * Evaluates groups of expressions, such as the queries of the charts on a dashboard, at the same relative time. Sub-expressions that are
+     * identical across the groups, such as the same series read by several charts or the same transform applied to them, are evaluated only
+     * once. The result of each group is passed to the handler as soon as the group has been evaluated, in the iteration order of the groups.
+     *
+     * @param   expressionGroups  The expressions to evaluate keyed by group identifier. Cannot be null.
+     * @param   relativeTo        The timestamp from which the start and end times should be relative to.
+     * @param   handler           The handler receiving the result or the error of each group. Cannot be null.
+     */
+    void getMetrics(Map<String, List<String>> expressionGroups, long relativeTo, MetricQueryResultHandler handler);
+
     /**
      * Batch and enqueue the given expressions and return the batch ID.
      *
@@ -196,5 +208,28 @@ public interface MetricService extends Service {
      */
     String extractDCFromMetric(Metric m);
 
+    //~ Inner Interfaces *****************************************************************************************************************************
+
+    /**
+     * Receives the results of groups of expressions evaluated together.
+     */
+    public static interface MetricQueryResultHandler {
+
+        /**
+         * Called when a group has been evaluated.
+         *
+         * @param  groupId  The group identifier.
+         * @param  result   The result of the group.
+         */
+        void onResult(String groupId, MetricQueryResult result);
+
+        /**
+         * Called when a group could not be evaluated. The remaining groups are still evaluated.
+         *
+         * @param  groupId  The group identifier.
+         * @param  ex       The cause of the failure.
+         */
+        void onError(String groupId, RuntimeException ex);
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -100,6 +100,25 @@ public interface MonitorService extends Service {
      */
     double modifyCustomCounter(String name, double delta, Map<String, String> tags);
 
+    /**
+     * Records a value into a histogram counter. The count, the 50th, 90th and 99th percentiles and the maximum of the values recorded during each
+     * publishing interval are published as metrics suffixed with <tt>.count</tt>, <tt>.p50</tt>, <tt>.p90</tt>, <tt>.p99</tt> and <tt>.max</tt>.
+     *
+     * @param  counter  The histogram counter to record into. Cannot be null and must be of type {@link Counter.MetricType#HISTOGRAM}.
+     * @param  value    The value, typically a latency in milliseconds.
+     * @param  tags     The tags representing the TSDB metric for this counter.
+     */
+    void recordHistogram(Counter counter, long value, Map<String, String> tags);
+
+    /**
+     * Records a value into a custom histogram counter, published the same way as {@link #recordHistogram(Counter, long, Map)}.
+     *
+     * @param  name   The name of the histogram to record into. Cannot be null or empty.
+     * @param  value  The value, typically a latency in milliseconds.
+     * @param  tags   The tags representing the TSDB metric for this counter.
+     */
+    void recordCustomHistogram(String name, long value, Map<String, String> tags);
+
     /**
      * Returns the current value of a counter.
      *
@@ -214,6 +233,7 @@ public interface MonitorService extends Service {
         ALERTS_EVALUATION_DELAYED("argus.alerts", "evaluation.delayed", MetricType.COUNTER),
         ALERTS_FAILED("argus.core", "alerts.failed", MetricType.COUNTER),
         ALERTS_EVALUATION_LATENCY("argus.core", "alerts.evaluation.latency", MetricType.COUNTER),
+        ALERTS_EVALUATION_LATENCY_HISTOGRAM("argus.core", "alerts.evaluation.latency.histogram", MetricType.HISTOGRAM),
         ALERTS_UPDATE_LATENCY("argus.core","alerts.update.latency"),
         ALERTS_NEW_LATENCY("argus.core","alerts.new.latency"),
         ALERTS_UPDATED_COUNT("argus.core","alerts.updated", MetricType.COUNTER),
@@ -241,6 +261,8 @@ public interface MonitorService extends Service {
 
         // MORE FINE GRAIN ALERT EVALUATION TIMERS
         METRICQUERYPROCESSOR_EVALUATETSDBQUERY_LATENCY("argus.core", "metricqueryprocessor.evaluatetsdbquery.latency", MetricType.COUNTER),
+        METRICQUERYPROCESSOR_EVALUATETSDBQUERY_LATENCY_HISTOGRAM("argus.core", "metricqueryprocessor.evaluatetsdbquery.latency.histogram",
+            MetricType.HISTOGRAM),
         METRICQUERYPROCESSOR_EVALUATETSDBQUERY_COUNT("argus.core", "metricqueryprocessor.evaluatetsdbquery.count", MetricType.COUNTER),
         METRICS_GETMETRICS_LATENCY("argus.core", "metrics.getmetrics.latency", MetricType.COUNTER),
         METRICS_GETMETRICS_COUNT("argus.core", "metrics.getmetrics.count", MetricType.COUNTER),
@@ -279,6 +301,10 @@ public interface MonitorService extends Service {
         DATALAG_PER_DC_TIME_LAG("argus.core", "datalag.seconds"),
         DATALAG_PER_DC_OFFSET_LAG("argus.core", "datalag.offset"),
         QUERY_DATAPOINTS_LIMIT_EXCEEDED("argus.core", "query.datapoints.limit.exceeded"),
+        QUERY_COST_ESTIMATED_DATAPOINTS("argus.core", "query.cost.estimated.datapoints", MetricType.COUNTER),
+        QUERY_COST_ACTUAL_DATAPOINTS("argus.core", "query.cost.actual.datapoints", MetricType.COUNTER),
+        QUERY_ADMISSION_REJECTED("argus.core", "query.admission.rejected", MetricType.COUNTER),
+        QUERY_ADMISSION_WAIT_LATENCY("argus.core", "query.admission.wait.latency", MetricType.COUNTER),
 
         ELASTIC_SEARCH_GET_FAILURES("argus.core", "elastic.search.get.failures", MetricType.COUNTER),
 
@@ -379,7 +405,8 @@ public interface MonitorService extends Service {
         public static enum MetricType {
             COUNTER,
             GAUGE,
-            TIMER
+            TIMER,
+            HISTOGRAM
         }
     }
 }
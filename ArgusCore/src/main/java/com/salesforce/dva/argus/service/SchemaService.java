@@ -39,6 +39,7 @@ import com.salesforce.dva.argus.entity.MetricSchemaRecordQuery;
 import com.salesforce.dva.argus.system.SystemAssert;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -77,6 +78,18 @@ public interface SchemaService extends Service {
      */
     List<MetricSchemaRecord> get(MetricSchemaRecordQuery query);
 
+    /**
+     * Returns an iterator over the schema records matched by the given query, taking limit and page into account. Implementations may fetch the
+     * records one page at a time as the iterator is consumed, so that callers which stop early do not read the remaining records.
+     *
+     * @param   query  The query to evaluate.  Cannot be null.
+     *
+     * @return  An iterator over the matching schema records.
+     */
+    default Iterator<MetricSchemaRecord> getIterator(MetricSchemaRecordQuery query) {
+        return get(query).iterator();
+    }
+
     /**
      * Returns a list of unique names for the given record type.
      *
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2018, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.service.alert;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.Alert;
+import com.salesforce.dva.argus.service.AlertService;
+import com.salesforce.dva.argus.system.SystemException;
+
+/*
+ * This class maintains the evaluator side cache of alert definitions used when the alert queue carries only alert ids. Each definition is kept
+ * with its version, the last modified time of the alert, so that a work item enqueued for a newer version than the cached one falls back to the
+ * database. The cache is kept up to date incrementally from the alerts modified since the previous refresh.
+ *
+ * Definitions are held in their serialized form because evaluation mutates the alert graph, so every evaluation materializes its own copy.
+ */
+public class AlertDefinitionVersionCache {
+
+	private static final Logger _logger = LoggerFactory.getLogger(AlertDefinitionVersionCache.class);
+
+	// keeping the refresh interval at 1 minute, as this corresponds to the minimum alert execution interval based on cron expression
+	static final long REFRESH_INTERVAL_MILLIS = 60 * 1000L;
+
+	static final long LOOKBACK_PERIOD_FOR_REFRESH_MILLIS = 5 * REFRESH_INTERVAL_MILLIS;
+
+	private final ConcurrentMap<BigInteger/*alertId*/, Definition> definitionsById = new ConcurrentHashMap<>();
+
+	private final AlertService alertService;
+
+	private final ObjectMapper mapper;
+
+	private final ScheduledExecutorService refresher;
+
+	private long lastRefreshTime = 0L;
+
+	public AlertDefinitionVersionCache(AlertService alertService, ObjectMapper mapper) {
+		this(alertService, mapper, true);
+	}
+
+	// for unit testing
+	AlertDefinitionVersionCache(AlertService alertService, ObjectMapper mapper, boolean startRefresher) {
+		this.alertService = alertService;
+		this.mapper = mapper;
+		if (startRefresher) {
+			refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "alert-definition-version-cache-refresher");
+
+				thread.setDaemon(true);
+				return thread;
+			});
+			refresher.scheduleWithFixedDelay(this::refreshQuietly, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		} else {
+			refresher = null;
+		}
+	}
+
+	/**
+	 * Returns the version of an alert definition as carried on the alert queue.
+	 *
+	 * @param   alert  The alert.
+	 *
+	 * @return  The last modified time of the alert or 0 if the alert has never been persisted.
+	 */
+	public static long getVersion(Alert alert) {
+		Date modifiedDate = alert.getModifiedDate();
+
+		return modifiedDate == null ? 0L : modifiedDate.getTime();
+	}
+
+	/**
+	 * Returns the serialized definition of an alert that is at least as new as the requested version, reading the alert from the database if the
+	 * cached definition is missing or older.
+	 *
+	 * @param   alertId  The alert id.
+	 * @param   version  The definition version the alert was enqueued with.
+	 *
+	 * @return  The serialized alert or null if the alert no longer exists.
+	 */
+	public String getSerializedAlert(BigInteger alertId, long version) {
+		Definition cached = definitionsById.get(alertId);
+
+		if (cached != null && cached.version >= version) {
+			return cached.serializedAlert;
+		}
+		_logger.debug("Alert definition version miss for alert {}. Requested version {}, cached version {}.", alertId, version,
+				cached == null ? null : cached.version);
+
+		Alert alert = alertService.findAlertByPrimaryKey(alertId);
+
+		if (alert == null || alert.isDeleted()) {
+			definitionsById.remove(alertId);
+			return null;
+		}
+
+		Definition loaded = put(alert);
+
+		return loaded.serializedAlert;
+	}
+
+	/** Applies the alerts modified since the last refresh to the cache. */
+	public synchronized void refresh() {
+		long currentTime = System.currentTimeMillis();
+		long since = (lastRefreshTime == 0L ? currentTime : lastRefreshTime) - LOOKBACK_PERIOD_FOR_REFRESH_MILLIS;
+		List<Alert> modifiedAlerts = alertService.findAlertsModifiedAfterDate(new Date(since));
+		int updatedCount = 0;
+
+		if (modifiedAlerts != null) {
+			for (Alert alert : modifiedAlerts) {
+				if (alert.isDeleted() || !alert.isEnabled()) {
+					if (definitionsById.remove(alert.getId()) != null) {
+						updatedCount++;
+					}
+				} else {
+					Definition cached = definitionsById.get(alert.getId());
+
+					if (cached == null || cached.version < getVersion(alert)) {
+						put(alert);
+						updatedCount++;
+					}
+				}
+			}
+		}
+		lastRefreshTime = currentTime;
+		_logger.info("Alert definition version cache refreshed. Updated {} definitions, {} definitions in cache.", updatedCount, definitionsById.size());
+	}
+
+	public int size() {
+		return definitionsById.size();
+	}
+
+	public void dispose() {
+		if (refresher != null) {
+			refresher.shutdownNow();
+		}
+	}
+
+	private void refreshQuietly() {
+		try {
+			refresh();
+		} catch (Exception e) {
+			_logger.error("Exception occurred when trying to refresh alert definition version cache - " + ExceptionUtils.getFullStackTrace(e));
+		}
+	}
+
+	private Definition put(Alert alert) {
+		Definition definition;
+
+		try {
+			definition = new Definition(getVersion(alert), mapper.writeValueAsString(alert));
+		} catch (JsonProcessingException e) {
+			throw new SystemException("Failed to serialize alert " + alert.getId(), e);
+		}
+		return definitionsById.merge(alert.getId(), definition, (existing, candidate) -> existing.version > candidate.version ? existing : candidate);
+	}
+
+	/*
+	 * A serialized alert definition and its version.
+	 */
+	private static final class Definition {
+
+		private final long version;
+
+		private final String serializedAlert;
+
+		Definition(long version, String serializedAlert) {
+			this.version = version;
+			this.serializedAlert = serializedAlert;
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
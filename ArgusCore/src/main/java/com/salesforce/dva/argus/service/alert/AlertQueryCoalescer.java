@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.service.alert;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.metric.MetricQueryResult;
+import com.salesforce.dva.argus.system.SystemException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Shares metric query results between alerts evaluated in the same cycle. Results are keyed by the normalized expression and the evaluation time
+ * aligned down to the cycle boundary, so alerts that were cloned from a template or differ only in their triggers and notifications cost a single
+ * TSDB fetch and transform pipeline. Concurrent requests for the same key wait on the one in-flight evaluation. Failed evaluations are not
+ * cached. Each caller receives its own copy of the result since alert evaluation mutates the returned metrics.
+ *
+ * <p>The aligned time only groups requests. A group is evaluated at the actual evaluation time of the request that loads it, which is the
+ * earliest request of the group to arrive, so an alert whose query is not shared is evaluated exactly as it would be without coalescing, and
+ * alerts sharing a result see a query window that differs from their own by less than one cycle.</p>
+ */
+public class AlertQueryCoalescer {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	static final long CYCLE_MILLIS = 60 * 1000L;
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final MetricService _metricService;
+	private final long _cycleMillis;
+	private final Cache<QueryKey, MetricQueryResult> _results;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new AlertQueryCoalescer object.
+	 *
+	 * @param  metricService  The metric service used to evaluate expressions. Cannot be null.
+	 * @param  maxEntries     The maximum number of cached results. Must be greater than zero.
+	 */
+	public AlertQueryCoalescer(MetricService metricService, long maxEntries) {
+		this(metricService, maxEntries, CYCLE_MILLIS);
+	}
+
+	AlertQueryCoalescer(MetricService metricService, long maxEntries, long cycleMillis) {
+		requireArgument(metricService != null, "Metric service cannot be null.");
+		requireArgument(maxEntries > 0, "Max entries must be greater than zero.");
+		requireArgument(cycleMillis > 0, "Cycle length must be greater than zero.");
+		_metricService = metricService;
+		_cycleMillis = cycleMillis;
+		_results = CacheBuilder.newBuilder().maximumSize(maxEntries).expireAfterWrite(2 * cycleMillis, TimeUnit.MILLISECONDS).build();
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	/**
+	 * Evaluates an alert expression, reusing the result of an identical expression evaluated earlier in the same cycle.
+	 *
+	 * @param   expression      The alert expression. Cannot be null or empty.
+	 * @param   evaluationTime  The evaluation time. Requests whose evaluation times align down to the same cycle boundary share the result
+	 *                          evaluated at the time of the first of them.
+	 *
+	 * @return  A private copy of the query result.
+	 */
+	public MetricQueryResult getMetrics(String expression, long evaluationTime) {
+		return getMetrics(expression, evaluationTime, null);
+	}
+
+	/**
+	 * Evaluates an alert expression, reusing the result of an identical expression evaluated earlier in the same cycle.
+	 *
+	 * @param   expression      The alert expression. Cannot be null or empty.
+	 * @param   evaluationTime  The evaluation time. Requests whose evaluation times align down to the same cycle boundary share the result
+	 *                          evaluated at the time of the first of them.
+	 * @param   coalesced       Set to true if the result was produced by another caller. May be null.
+	 *
+	 * @return  A private copy of the query result.
+	 */
+	public MetricQueryResult getMetrics(String expression, long evaluationTime, AtomicBoolean coalesced) {
+		requireArgument(expression != null && !expression.isEmpty(), "Expression cannot be null or empty.");
+
+		long alignedTime = evaluationTime - Math.floorMod(evaluationTime, _cycleMillis);
+		QueryKey key = new QueryKey(normalize(expression), alignedTime);
+		AtomicBoolean loaded = new AtomicBoolean(false);
+		MetricQueryResult result;
+
+		try {
+			result = _results.get(key, () -> {
+				loaded.set(true);
+				return _metricService.getMetrics(expression, evaluationTime);
+			});
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+			Throwable cause = ex.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new SystemException(cause);
+		}
+		if (coalesced != null) {
+			coalesced.set(!loaded.get());
+		}
+		return copy(result);
+	}
+
+	/** Discards all cached results. */
+	public void clear() {
+		_results.invalidateAll();
+	}
+
+	/**
+	 * Removes whitespace that is not significant to the expression grammar. Whitespace inside <tt>#...#</tt> constants is preserved.
+	 *
+	 * @param   expression  The expression to normalize.
+	 *
+	 * @return  The normalized expression.
+	 */
+	static String normalize(String expression) {
+		StringBuilder sb = new StringBuilder(expression.length());
+		boolean inConstant = false;
+
+		for (int i = 0; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+
+			if (c == '#') {
+				inConstant = !inConstant;
+			}
+			if (inConstant || !Character.isWhitespace(c)) {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static MetricQueryResult copy(MetricQueryResult source) {
+		MetricQueryResult result = new MetricQueryResult();
+		List<Metric> metrics = new ArrayList<>(source.getMetricsList().size());
+
+		for (Metric metric : source.getMetricsList()) {
+			metrics.add(new Metric(metric));
+		}
+		result.setMetricsList(metrics);
+		result.setExpandedTimeSeriesRange(source.getExpandedTimeSeriesRange());
+		result.setQueryTimeWindow(source.getQueryTimeWindow());
+		result.setQueryStartTimeWindow(source.getQueryStartTimeWindow());
+		result.setNumDiscoveryResults(source.getNumDiscoveryResults());
+		result.setNumDiscoveryQueries(source.getNumDiscoveryQueries());
+		result.setQueryTimeRangeInMillis(source.getQueryTimeRangeInMillis());
+		result.setNumTSDBResults(source.getNumTSDBResults());
+		result.setQueryStartTimeMillis(source.getQueryStartTimeMillis());
+		result.addTransforms(source.getTransforms());
+		result.addInboundMetricQueries(source.getInboundMetricQueries());
+		return result;
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * Cache key made of the normalized expression and the aligned evaluation time.
+	 */
+	private static final class QueryKey {
+
+		private final String _expression;
+		private final long _evaluationTime;
+
+		QueryKey(String expression, long evaluationTime) {
+			_expression = expression;
+			_evaluationTime = evaluationTime;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof QueryKey)) {
+				return false;
+			}
+
+			QueryKey other = (QueryKey) obj;
+
+			return _evaluationTime == other._evaluationTime && _expression.equals(other._expression);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(_expression, _evaluationTime);
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -31,6 +31,7 @@
 
 package com.salesforce.dva.argus.service.alert;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -86,6 +87,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -93,11 +95,14 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static com.salesforce.dva.argus.service.MQService.MQQueue.ALERT;
@@ -132,6 +137,10 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 	private static final String STATUS_SUCCESS = "succeeded";
 	private static final String STATUS_FAILURE = "failed";
 	private static final Long EVALUATIONDELAY = 1000L * 60;
+	/* Notifiers that retry failed posts themselves, either inline or through the Refocus forwarder, and so are not retried by the dispatcher. */
+	private static final Set<SupportedNotifier> SELF_RETRYING_NOTIFIERS = Collections.unmodifiableSet(EnumSet.of(SupportedNotifier.GOC,
+			SupportedNotifier.GUS, SupportedNotifier.PAGERDUTY, SupportedNotifier.REFOCUS, SupportedNotifier.REFOCUS_BOOLEAN,
+			SupportedNotifier.REFOCUS_VALUE));
 	//~ Instance fields ******************************************************************************************************************************
 
 	private final Logger _logger = LoggerFactory.getLogger(DefaultAlertService.class);
@@ -147,6 +156,9 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 	private final NotifierFactory _notifierFactory;
 	private final ObjectMapper _mapper = new ObjectMapper();
 	private static NotificationsCache _notificationsCache = null;
+	private static volatile AlertQueryCoalescer _queryCoalescer = null;
+	private static volatile AlertDefinitionVersionCache _definitionVersionCache = null;
+	private static volatile NotificationDispatcher _notificationDispatcher = null;
 	private static List<Pattern> _whiteListedScopeRegexPatterns = null;
 	private static List<Pattern> _whiteListedUserRegexPatterns = null;
 	private static final String HOSTNAME;
@@ -405,6 +417,67 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 		}
 	}
 
+	/*
+	 * Evaluates the alert expression and updates the query perf counters. A result shared by alerts with the same coalesced query is attributed
+	 * once, to the owner of the alert whose evaluation ran the query, so that the counters reflect the queries actually executed.
+	 */
+	private MetricQueryResult _getAlertMetrics(Alert alert, Long alertEnqueueTimestamp)
+	{
+		if (!Boolean.valueOf(_configuration.getValue(Property.ALERT_QUERY_COALESCING_ENABLED.getName(), Property.ALERT_QUERY_COALESCING_ENABLED.getDefaultValue())))
+		{
+			MetricQueryResult queryResult = _metricService.getMetrics(alert.getExpression(), alertEnqueueTimestamp);
+
+			MonitoringUtils.updateAlertMetricQueryPerfCounters(_monitorService, queryResult, alert.getOwner().getUserName()); // NOTE - ian - TODO - call this for historical testing?
+			return queryResult;
+		}
+		AlertQueryCoalescer queryCoalescer = _queryCoalescer;
+
+		if (queryCoalescer == null)
+		{
+			synchronized (DefaultAlertService.class)
+			{
+				queryCoalescer = _queryCoalescer;
+				if (queryCoalescer == null)
+				{
+					queryCoalescer = new AlertQueryCoalescer(_metricService, Long.parseLong(_configuration.getValue(Property.ALERT_QUERY_COALESCING_MAX_ENTRIES.getName(), Property.ALERT_QUERY_COALESCING_MAX_ENTRIES.getDefaultValue())));
+					_queryCoalescer = queryCoalescer;
+				}
+			}
+		}
+
+		AtomicBoolean coalesced = new AtomicBoolean(false);
+		MetricQueryResult queryResult = queryCoalescer.getMetrics(alert.getExpression(), alertEnqueueTimestamp, coalesced);
+
+		if (coalesced.get())
+		{
+			_monitorService.modifyCustomCounter("alerts.query.coalesced", 1, new HashMap<>());
+		}
+		else
+		{
+			MonitoringUtils.updateAlertMetricQueryPerfCounters(_monitorService, queryResult, alert.getOwner().getUserName());
+		}
+		return queryResult;
+	}
+
+	private AlertDefinitionVersionCache _getDefinitionVersionCache()
+	{
+		AlertDefinitionVersionCache definitionVersionCache = _definitionVersionCache;
+
+		if (definitionVersionCache == null)
+		{
+			synchronized (DefaultAlertService.class)
+			{
+				definitionVersionCache = _definitionVersionCache;
+				if (definitionVersionCache == null)
+				{
+					definitionVersionCache = new AlertDefinitionVersionCache(this, _mapper);
+					_definitionVersionCache = definitionVersionCache;
+				}
+			}
+		}
+		return definitionVersionCache;
+	}
+
 	private void loadWhiteListRegexPatterns()
 	{
 		if (_whiteListedScopeRegexPatterns == null)
@@ -455,6 +528,23 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 		{
 			String serializedAlert = alertWithTimestamp.getSerializedAlert();
 
+			if (serializedAlert == null && alertWithTimestamp.getAlertId() != null)
+			{
+				try
+				{
+					serializedAlert = _getDefinitionVersionCache().getSerializedAlert(alertWithTimestamp.getAlertId(), alertWithTimestamp.getDefinitionVersion());
+				} catch (Exception e)
+				{
+					_logger.warn("Failed to resolve definition of alert {}. Reason {}", alertWithTimestamp.getAlertId(), e.getMessage());
+				}
+				if (serializedAlert == null)
+				{
+					_logger.warn("Skipping alert {} as its definition could not be resolved.", alertWithTimestamp.getAlertId());
+					logAlertStatsOnFailure(alertWithTimestamp.getAlertId(), DEFAULTUSER);
+					continue;
+				}
+			}
+
 			_logger.debug(MessageFormat.format("serializedAlert {0}", serializedAlert));
 
 			Alert alert;
@@ -569,8 +659,7 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 			try
 			{
 				alertEnqueueTimestamp = alertEnqueueTimestampsByAlertId.get(alert.getId());
-				MetricQueryResult queryResult = _metricService.getMetrics(alert.getExpression(), alertEnqueueTimestamp);
-				MonitoringUtils.updateAlertMetricQueryPerfCounters(_monitorService, queryResult, alert.getOwner().getUserName()); // NOTE - ian - TODO - call this for historical testing?
+				MetricQueryResult queryResult = _getAlertMetrics(alert, alertEnqueueTimestamp);
 				List<Metric> metrics = new ArrayList<>(queryResult.getMetricsList());
 				int initialMetricSize = metrics.size();
 				doesDatalagExistInAnyDC = datalagMonitorEnabled && doesDatalagExistsInAtLeastOneDC(queryResult, alert);
@@ -690,6 +779,7 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 				if (!alertSkipped)
 				{
 					_monitorService.modifyCounter(Counter.ALERTS_EVALUATION_LATENCY, System.currentTimeMillis() - jobStartTime, tags);
+					_monitorService.recordHistogram(Counter.ALERTS_EVALUATION_LATENCY_HISTOGRAM, System.currentTimeMillis() - jobStartTime, null);
 					if (evaluateEndTime == 0)
 					{
 						evaluateEndTime = System.currentTimeMillis();
@@ -1311,59 +1401,149 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 			triggerValue = metric.getDatapoints().get(triggerFiredTime);
 		}
 
-		Pair<String, byte[]> evaluatedMetricSnapshotDetails = null;
-		String evaluatedMetricSnapshotURL = null;
-		if (isImagesInNotificationsEnabled(action)) {
-			ImageDataRetrievalContext imageDataRetrievalContext = new ImageDataRetrievalContext(alert, trigger,
-					triggerFiredTime, metric, Notifier.NotificationStatus.TRIGGERED);
-			evaluatedMetricSnapshotDetails = getEvaluatedMetricSnapshotDetails(imageDataRetrievalContext);
-			if (evaluatedMetricSnapshotDetails != null) {
-				evaluatedMetricSnapshotURL = _imageDataRetriever.getImageURL(evaluatedMetricSnapshotDetails);
+		double firedValue = triggerValue;
+		Function<History, NotificationContext> contextFactory = contextHistory -> {
+			Pair<String, byte[]> evaluatedMetricSnapshotDetails = null;
+			String evaluatedMetricSnapshotURL = null;
+			if (isImagesInNotificationsEnabled(action)) {
+				ImageDataRetrievalContext imageDataRetrievalContext = new ImageDataRetrievalContext(alert, trigger,
+						triggerFiredTime, metric, Notifier.NotificationStatus.TRIGGERED);
+				evaluatedMetricSnapshotDetails = getEvaluatedMetricSnapshotDetails(imageDataRetrievalContext);
+				if (evaluatedMetricSnapshotDetails != null) {
+					evaluatedMetricSnapshotURL = _imageDataRetriever.getImageURL(evaluatedMetricSnapshotDetails);
+				}
 			}
+
+			Long timestamp = (alertEnqueueTime != null) ? alertEnqueueTime : System.currentTimeMillis();
+			String alertEvaluationTrackingID = getAlertEvaluationTrackingID(alert, timestamp);
+
+			NotificationContext context = new NotificationContext(alert, trigger, notification, triggerFiredTime,
+					firedValue, metric, contextHistory, evaluatedMetricSnapshotDetails, evaluatedMetricSnapshotURL, alertEvaluationTrackingID );
+			context.setAlertEnqueueTimestamp(alertEnqueueTime);
+			return context;
+		};
+
+		if (_isNotificationDispatchAsync()) {
+			_dispatchNotification(contextFactory, false, trigger, metric, history, notification, alert, action);
+			return;
 		}
 
-		Long timestamp = (alertEnqueueTime != null) ? alertEnqueueTime : System.currentTimeMillis();
-		String alertEvaluationTrackingID = getAlertEvaluationTrackingID(alert, timestamp);
+		NotificationContext context = contextFactory.apply(history);
+		boolean rc = _deliverNotification(context, false);
 
-		NotificationContext context = new NotificationContext(alert, trigger, notification, triggerFiredTime,
-				triggerValue, metric, history, evaluatedMetricSnapshotDetails, evaluatedMetricSnapshotURL, alertEvaluationTrackingID );
-		context.setAlertEnqueueTimestamp(alertEnqueueTime);
-		Notifier notifier = getNotifier(SupportedNotifier.fromClassName(notification.getNotifierName()));
+		_recordNotificationOutcome(rc, false, context.getNotificationRetries(), trigger, metric, history, notification, alert, action);
+	}
 
-		String alertId = (trigger != null) ? trigger.getAlert().getId().toString() : alert.getId().toString();
-		String notificationTarget = SupportedNotifier.fromClassName(notification.getNotifierName()).name();
+	private boolean _isNotificationDispatchAsync() {
+		return Boolean.valueOf(_configuration.getValue(Property.NOTIFICATION_DISPATCH_ASYNC_ENABLED.getName(), Property.NOTIFICATION_DISPATCH_ASYNC_ENABLED.getDefaultValue()));
+	}
 
-        Map<String, String> tags = new HashMap<>();
-		String logMessage;
-		boolean rc;
+	private NotificationDispatcher _getNotificationDispatcher() {
+		NotificationDispatcher notificationDispatcher = _notificationDispatcher;
+
+		if (notificationDispatcher == null) {
+			synchronized (DefaultAlertService.class) {
+				notificationDispatcher = _notificationDispatcher;
+				if (notificationDispatcher == null) {
+					notificationDispatcher = new NotificationDispatcher(_monitorService,
+							Integer.parseInt(_getPropertyValue(Property.NOTIFICATION_DISPATCH_QUEUE_CAPACITY)),
+							Integer.parseInt(_getPropertyValue(Property.NOTIFICATION_DISPATCH_WORKERS)),
+							Double.parseDouble(_getPropertyValue(Property.NOTIFICATION_DISPATCH_RATE_PER_SEC)),
+							Integer.parseInt(_getPropertyValue(Property.NOTIFICATION_DISPATCH_MAX_RETRIES)),
+							Long.parseLong(_getPropertyValue(Property.NOTIFICATION_DISPATCH_INITIAL_BACKOFF_MS)),
+							Integer.parseInt(_getPropertyValue(Property.NOTIFICATION_DISPATCH_FAILURE_THRESHOLD)),
+							Long.parseLong(_getPropertyValue(Property.NOTIFICATION_DISPATCH_CIRCUIT_OPEN_MS)));
+					_notificationDispatcher = notificationDispatcher;
+				}
+			}
+		}
+		return notificationDispatcher;
+	}
+
+	private String _getPropertyValue(Property property) {
+		return _configuration.getValue(property.getName(), property.getDefaultValue());
+	}
+
+	/*
+	 * Hands the notification to the dispatcher. The context, including any snapshot image, is built on the delivery thread. Since the evaluation
+	 * history is persisted before delivery completes, notifiers write to a history of their own, which is persisted as a follow-up history record
+	 * of the alert once the delivery has been sent, retried to exhaustion or dropped. Notifiers that retry on their own are not retried by the
+	 * dispatcher.
+	 */
+	private void _dispatchNotification(Function<History, NotificationContext> contextFactory, boolean clear, Trigger trigger, Metric metric,
+			History history, Notification notification, Alert alert, String action) {
+		SupportedNotifier notifier = SupportedNotifier.fromClassName(notification.getNotifierName());
+		String notificationTarget = notifier.name();
+		int maxRetries = SELF_RETRYING_NOTIFIERS.contains(notifier) ? 0 : Integer.parseInt(_getPropertyValue(Property.NOTIFICATION_DISPATCH_MAX_RETRIES));
+		History deliveryHistory = new History(History.addDateToMessage(MessageFormat.format("Delivering notification `{0}` to {1}.", notification.getName(),
+				notificationTarget)), HOSTNAME, alert.getId(), JobStatus.STARTED);
+		AtomicReference<NotificationContext> context = new AtomicReference<>();
+
+		boolean queued = _getNotificationDispatcher().dispatch(notificationTarget, maxRetries, () -> {
+			if (context.get() == null) {
+				context.set(contextFactory.apply(deliveryHistory));
+			}
+			return _deliverNotification(context.get(), clear);
+		}, (delivered, attempts, latencyMillis) -> {
+			int retries = context.get() == null ? 0 : context.get().getNotificationRetries();
+
+			_recordNotificationOutcome(delivered, clear, retries, trigger, metric, deliveryHistory, notification, alert, action);
+			deliveryHistory.appendMessageNUpdateHistory(MessageFormat.format("Delivery of notification `{0}` to {1} completed after {2} attempts in {3} ms.",
+					notification.getName(), notificationTarget, attempts, latencyMillis), delivered ? JobStatus.SUCCESS : JobStatus.FAILURE, latencyMillis);
+			try {
+				_historyService.createHistory(alert, deliveryHistory.getMessage(), deliveryHistory.getJobStatus(), deliveryHistory.getExecutionTime());
+			} catch (Exception ex) {
+				_logger.warn("Failed to record the delivery of notification {} for alert {} in its history.", notification.getName(), alert.getId(), ex);
+			}
+		});
+
+		if (queued) {
+			history.appendMessageNUpdateHistory(MessageFormat.format("Queued notification `{0}` for delivery to {1}.", notification.getName(), notificationTarget), null, 0);
+		}
+	}
+
+	private boolean _deliverNotification(NotificationContext context, boolean clear) {
+		Notifier notifier = getNotifier(SupportedNotifier.fromClassName(context.getNotification().getNotifierName()));
 
 		try {
-			rc = notifier.sendNotification(context);
+			return clear ? notifier.clearNotification(context) : notifier.sendNotification(context);
 		} catch (Exception e) {
-			_logger.error("sendNotification() hit exception", e);
-			rc = false;
+			_logger.error(clear ? "clearNotification() hit exception" : "sendNotification() hit exception", e);
+			return false;
 		}
+	}
+
+	private void _recordNotificationOutcome(boolean rc, boolean clear, int retries, Trigger trigger, Metric metric, History history,
+			Notification notification, Alert alert, String action) {
+		String alertId = (trigger != null) ? trigger.getAlert().getId().toString() : alert.getId().toString();
+		String notificationTarget = SupportedNotifier.fromClassName(notification.getNotifierName()).name();
+
+		Map<String, String> tags = new HashMap<>();
+		String logMessage;
 
 		// TODO - log alertId, triggerId, notificationId?
 		if (rc) {
 			tags.put(STATUSTAG, STATUS_SUCCESS);
-			if (trigger != null) {
-                logMessage = MessageFormat.format("Sent alert notification and updated the cooldown: {0}",
-                        getDateMMDDYYYY(notification.getCooldownExpirationByTriggerAndMetric(trigger, metric)));
-            }
-            else {
-                logMessage = MessageFormat.format("Sent notification to {0}",
+			if (clear) {
+				logMessage = MessageFormat.format("The notification {0} was cleared.", notification.getName());
+			} else if (trigger != null) {
+				logMessage = MessageFormat.format("Sent alert notification and updated the cooldown: {0}",
+						getDateMMDDYYYY(notification.getCooldownExpirationByTriggerAndMetric(trigger, metric)));
+			} else {
+				logMessage = MessageFormat.format("Sent notification to {0}",
 						notificationTarget);
-            }
+			}
 		} else {
 			tags.put(STATUSTAG, STATUS_FAILURE);
-			logMessage = MessageFormat.format("Failed to send notification to {0}",
+			logMessage = MessageFormat.format(clear ? "Failed to send clear notification to {0}" : "Failed to send notification to {0}",
 					notificationTarget);
 		}
 
 		tags.put(USERTAG, alert.getOwner().getUserName());
 		tags.put(ACTIONTAG, action);
-		tags.put(RETRIESTAG, Integer.toString(context.getNotificationRetries()));
+		if (!clear) {
+			tags.put(RETRIESTAG, Integer.toString(retries));
+		}
 		tags.put(NOTIFYTARGETTAG, notificationTarget);
 		// metric published every minute by monitor service. Fewer tags, faster for aggregated debugging
 		_monitorService.modifyCounter(Counter.NOTIFICATIONS_SENT, 1, tags);
@@ -1372,7 +1552,11 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 		tags.put(ALERTIDTAG, alertId);
 		publishAlertTrackingMetric(Counter.NOTIFICATIONS_SENT.getMetric(), 1.0, tags);
 
-		_logger.debug(logMessage);
+		if (clear) {
+			_logger.info(logMessage);
+		} else {
+			_logger.debug(logMessage);
+		}
 		history.appendMessageNUpdateHistory(logMessage, null, 0);
 	}
 
@@ -1396,60 +1580,37 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 
 
 	public void sendClearNotification(Trigger trigger, Metric metric, History history, Notification notification, Alert alert, Long alertEnqueueTime, String action) {
-		Pair<String, byte[]> evaluatedMetricSnapshotDetails = null;
-		String evaluatedMetricSnapshotURL = null;
-
-		if (isImagesInNotificationsEnabled(action)) {
-			ImageDataRetrievalContext imageDataRetrievalContext = new ImageDataRetrievalContext(alert, trigger, metric, Notifier.NotificationStatus.CLEARED);
-			evaluatedMetricSnapshotDetails = getEvaluatedMetricSnapshotDetails(imageDataRetrievalContext);
-			if (evaluatedMetricSnapshotDetails != null) {
-				evaluatedMetricSnapshotURL = _imageDataRetriever.getImageURL(evaluatedMetricSnapshotDetails);
+		Function<History, NotificationContext> contextFactory = contextHistory -> {
+			Pair<String, byte[]> evaluatedMetricSnapshotDetails = null;
+			String evaluatedMetricSnapshotURL = null;
+
+			if (isImagesInNotificationsEnabled(action)) {
+				ImageDataRetrievalContext imageDataRetrievalContext = new ImageDataRetrievalContext(alert, trigger, metric, Notifier.NotificationStatus.CLEARED);
+				evaluatedMetricSnapshotDetails = getEvaluatedMetricSnapshotDetails(imageDataRetrievalContext);
+				if (evaluatedMetricSnapshotDetails != null) {
+					evaluatedMetricSnapshotURL = _imageDataRetriever.getImageURL(evaluatedMetricSnapshotDetails);
+				}
 			}
-		}
 
-		Long timestamp = (alertEnqueueTime != null) ? alertEnqueueTime : System.currentTimeMillis();
-		String alertEvaluationTrackingID = getAlertEvaluationTrackingID(alert, timestamp);
+			Long timestamp = (alertEnqueueTime != null) ? alertEnqueueTime : System.currentTimeMillis();
+			String alertEvaluationTrackingID = getAlertEvaluationTrackingID(alert, timestamp);
 
-		NotificationContext context = new NotificationContext(alert, trigger, notification, System.currentTimeMillis(),
-				0.0, metric, history, evaluatedMetricSnapshotDetails, evaluatedMetricSnapshotURL,
-				alertEvaluationTrackingID);
-		context.setAlertEnqueueTimestamp(alertEnqueueTime);
-		Notifier notifier = getNotifier(SupportedNotifier.fromClassName(notification.getNotifierName()));
-
-		String alertId = (trigger != null) ? trigger.getAlert().getId().toString() : alert.getId().toString();
-		String notificationTarget = SupportedNotifier.fromClassName(notification.getNotifierName()).name();
-
-		Map<String, String> tags = new HashMap<>();
-		String logMessage;
-		boolean rc;
+			NotificationContext context = new NotificationContext(alert, trigger, notification, System.currentTimeMillis(),
+					0.0, metric, contextHistory, evaluatedMetricSnapshotDetails, evaluatedMetricSnapshotURL,
+					alertEvaluationTrackingID);
+			context.setAlertEnqueueTimestamp(alertEnqueueTime);
+			return context;
+		};
 
-		try {
-			rc = notifier.clearNotification(context);
-		} catch (Exception e) {
-			_logger.error("clearNotification() hit exception", e);
-			rc = false;
-		}
-
-		if (rc) {
-			tags.put(STATUSTAG, STATUS_SUCCESS);
-			logMessage = MessageFormat.format("The notification {0} was cleared.", notification.getName());
-		} else {
-			tags.put(STATUSTAG, STATUS_FAILURE);
-			logMessage = MessageFormat.format("Failed to send clear notification to {0}", notificationTarget);
+		if (_isNotificationDispatchAsync()) {
+			_dispatchNotification(contextFactory, true, trigger, metric, history, notification, alert, action);
+			return;
 		}
 
-		tags.put(USERTAG, alert.getOwner().getUserName());
-		tags.put(ACTIONTAG, action);
-		tags.put(NOTIFYTARGETTAG, notificationTarget);
-		// metric published every minute by monitor service. Fewer tags, faster for aggregated debugging
-		_monitorService.modifyCounter(Counter.NOTIFICATIONS_SENT, 1, tags);
-
-		tags.put(HOSTTAG, HOSTNAME);
-		tags.put(ALERTIDTAG, alertId);
-		publishAlertTrackingMetric(Counter.NOTIFICATIONS_SENT.getMetric(), 1.0, tags);
+		NotificationContext context = contextFactory.apply(history);
+		boolean rc = _deliverNotification(context, true);
 
-		_logger.info(logMessage);
-		history.appendMessageNUpdateHistory(logMessage, null, 0);
+		_recordNotificationOutcome(rc, true, context.getNotificationRetries(), trigger, metric, history, notification, alert, action);
 	}
 
 	private String getAlertEvaluationTrackingID(Alert alert, Long timestamp) {
@@ -1601,8 +1762,13 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 		requireArgument(alerts != null, "The list of alerts cannot be null.");
 
 		List<AlertWithTimestamp> alertsWithTimestamp = new ArrayList<>(alerts.size());
+		boolean idsOnly = Boolean.valueOf(_configuration.getValue(Property.ALERT_QUEUE_IDS_ONLY_ENABLED.getName(), Property.ALERT_QUEUE_IDS_ONLY_ENABLED.getDefaultValue()));
 		for (Alert alert : alerts) {
 			AlertWithTimestamp obj;
+			if (idsOnly) {
+				alertsWithTimestamp.add(new AlertWithTimestamp(alert.getId(), AlertDefinitionVersionCache.getVersion(alert), System.currentTimeMillis()));
+				continue;
+			}
 			try {
 				String serializedAlert = _mapper.writeValueAsString(alert);
 
@@ -2265,6 +2431,18 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 		super.dispose();
 		_metricService.dispose();
 		_notificationsCache.dispose();
+		// The lazily created statics are discarded so that a service created later builds them again over its own dependencies.
+		synchronized (DefaultAlertService.class) {
+			if (_definitionVersionCache != null) {
+				_definitionVersionCache.dispose();
+				_definitionVersionCache = null;
+			}
+			if (_notificationDispatcher != null) {
+				_notificationDispatcher.dispose();
+				_notificationDispatcher = null;
+			}
+			_queryCoalescer = null;
+		}
 	}
 
 	/**
@@ -2398,14 +2576,19 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 	/**
 	 * Used to enqueue alerts to evaluate.  The timestamp is used to reconcile lag between enqueue time
 	 * and evaluation time by adjusting relative times in the alert metric expression being evaluated.
+	 * The alert is carried either as its full serialized definition or as its id and definition version,
+	 * in which case the evaluator resolves the definition from its local definition cache.
 	 *
 	 * @author  Bhinav Sura (bhinav.sura@salesforce.com)
 	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
 	public static class AlertWithTimestamp implements Serializable {
 
 		/** The serial version UID. */
 		private static final long serialVersionUID = 1L;
 		protected String serializedAlert;
+		protected BigInteger alertId;
+		protected long definitionVersion;
 		protected long alertEnqueueTime;
 
 		/** Creates a new AlertIdWithTimestamp object. */
@@ -2422,6 +2605,19 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 			this.alertEnqueueTime = timestamp;
 		}
 
+		/**
+		 * Creates a new AlertIdWithTimestamp object that references the alert definition by id.
+		 *
+		 * @param  alertId            The alert id.
+		 * @param  definitionVersion  The version of the alert definition that was scheduled.
+		 * @param  timestamp          The epoch timestamp the alert was enqueued for evaluation.
+		 */
+		public AlertWithTimestamp(BigInteger alertId, long definitionVersion, long timestamp) {
+			this.alertId = alertId;
+			this.definitionVersion = definitionVersion;
+			this.alertEnqueueTime = timestamp;
+		}
+
 		public String getSerializedAlert() {
 			return serializedAlert;
 		}
@@ -2438,6 +2634,22 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 			this.alertEnqueueTime = alertEnqueueTime;
 		}
 
+		public BigInteger getAlertId() {
+			return alertId;
+		}
+
+		public void setAlertId(BigInteger alertId) {
+			this.alertId = alertId;
+		}
+
+		public long getDefinitionVersion() {
+			return definitionVersion;
+		}
+
+		public void setDefinitionVersion(long definitionVersion) {
+			this.definitionVersion = definitionVersion;
+		}
+
 	}
 
 
@@ -2686,5 +2898,62 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 	public void updateCounter(Counter counter, Double value) {
 		this._monitorService.updateCounter(counter, value, null);
 	}
+
+	//~ Enums ****************************************************************************************************************************************
+
+	/**
+	 * The implementation specific configuration properties.
+	 */
+	public enum Property {
+
+		/** Shares the result of identical alert expressions evaluated within the same minute. */
+		ALERT_QUERY_COALESCING_ENABLED("service.property.alert.query.coalescing.enabled", "false"),
+		/** The maximum number of coalesced query results held at a time. */
+		ALERT_QUERY_COALESCING_MAX_ENTRIES("service.property.alert.query.coalescing.max.entries", "1000"),
+		/** Enqueues only the alert id and definition version instead of the serialized alert. */
+		ALERT_QUEUE_IDS_ONLY_ENABLED("service.property.alert.queue.ids.only.enabled", "false"),
+		/** Delivers notifications on per notifier worker pools instead of the evaluation thread. */
+		NOTIFICATION_DISPATCH_ASYNC_ENABLED("service.property.alert.notification.dispatch.async.enabled", "false"),
+		/** The maximum number of pending deliveries per notifier. */
+		NOTIFICATION_DISPATCH_QUEUE_CAPACITY("service.property.alert.notification.dispatch.queue.capacity", "1000"),
+		/** The number of delivery threads per notifier. */
+		NOTIFICATION_DISPATCH_WORKERS("service.property.alert.notification.dispatch.workers", "4"),
+		/** The maximum deliveries per second per notifier. Zero disables rate limiting. */
+		NOTIFICATION_DISPATCH_RATE_PER_SEC("service.property.alert.notification.dispatch.rate.per.sec", "0"),
+		/** The number of times a failed delivery is retried. Notifiers that retry on their own, such as GOC, GUS and PagerDuty, are not retried. */
+		NOTIFICATION_DISPATCH_MAX_RETRIES("service.property.alert.notification.dispatch.max.retries", "3"),
+		/** The delay before the first retry of a failed delivery. */
+		NOTIFICATION_DISPATCH_INITIAL_BACKOFF_MS("service.property.alert.notification.dispatch.initial.backoff.ms", "1000"),
+		/** The number of consecutive failures after which deliveries to a notifier are held back. */
+		NOTIFICATION_DISPATCH_FAILURE_THRESHOLD("service.property.alert.notification.dispatch.failure.threshold", "5"),
+		/** The time deliveries to a failing notifier are held back. */
+		NOTIFICATION_DISPATCH_CIRCUIT_OPEN_MS("service.property.alert.notification.dispatch.circuit.open.ms", "30000");
+
+		private final String _name;
+		private final String _defaultValue;
+
+		private Property(String name, String defaultValue) {
+			_name = name;
+			_defaultValue = defaultValue;
+		}
+
+		/**
+		 * Returns the property name.
+		 *
+		 * @return  The property name.
+		 */
+		public String getName() {
+			return _name;
+		}
+
+		/**
+		 * Returns the default property value.
+		 *
+		 * @return  The default property value.
+		 */
+		public String getDefaultValue() {
+			return _defaultValue;
+		}
+	}
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.alert;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.salesforce.dva.argus.service.MonitorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Delivers notifications off the alert evaluation threads. Every notification target, i.e. notifier type, gets its own bounded queue and worker
+ * pool so that a slow endpoint only backs up its own deliveries. Deliveries to a target are rate limited, failed deliveries are retried with
+ * exponential backoff, and consecutive failures open a circuit that holds back deliveries to the target for a while. The outcome of every
+ * delivery is reported to its callback once it is known, including deliveries that are still pending when the dispatcher is disposed.
+ */
+class NotificationDispatcher {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	static final String QUEUE_DEPTH_COUNTER = "notifications.dispatch.queue.depth";
+	static final String LATENCY_COUNTER = "notifications.dispatch.latency";
+	static final String DROPPED_COUNTER = "notifications.dispatch.dropped";
+	private static final String TARGET_TAG = "notifyTarget";
+	private static final Logger _logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final MonitorService _monitorService;
+	private final int _queueCapacity;
+	private final int _workers;
+	private final double _permitsPerSecond;
+	private final int _maxRetries;
+	private final long _initialBackoffMillis;
+	private final int _failureThreshold;
+	private final long _circuitOpenMillis;
+	private final ConcurrentMap<String, Lane> _lanes = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService _retryScheduler;
+	private final Set<Task> _scheduled = ConcurrentHashMap.newKeySet();
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new NotificationDispatcher object.
+	 *
+	 * @param  monitorService        The monitor service used to publish queue depth and delivery latency. Cannot be null.
+	 * @param  queueCapacity         The maximum number of pending deliveries per target.
+	 * @param  workers               The number of delivery threads per target.
+	 * @param  permitsPerSecond      The maximum delivery rate per target. Zero or less disables rate limiting.
+	 * @param  maxRetries            The number of times a failed delivery is retried.
+	 * @param  initialBackoffMillis  The delay before the first retry. Doubles on every further retry.
+	 * @param  failureThreshold      The number of consecutive failures that open the circuit for a target.
+	 * @param  circuitOpenMillis     The time an open circuit holds back deliveries to its target.
+	 */
+	NotificationDispatcher(MonitorService monitorService, int queueCapacity, int workers, double permitsPerSecond, int maxRetries,
+			long initialBackoffMillis, int failureThreshold, long circuitOpenMillis) {
+		requireArgument(monitorService != null, "Monitor service cannot be null.");
+		requireArgument(queueCapacity > 0, "Queue capacity must be greater than zero.");
+		requireArgument(workers > 0, "Worker count must be greater than zero.");
+		requireArgument(maxRetries >= 0, "Max retries cannot be negative.");
+		requireArgument(failureThreshold > 0, "Failure threshold must be greater than zero.");
+		_monitorService = monitorService;
+		_queueCapacity = queueCapacity;
+		_workers = workers;
+		_permitsPerSecond = permitsPerSecond;
+		_maxRetries = maxRetries;
+		_initialBackoffMillis = initialBackoffMillis;
+		_failureThreshold = failureThreshold;
+		_circuitOpenMillis = circuitOpenMillis;
+		_retryScheduler = Executors.newSingleThreadScheduledExecutor(_threadFactory("notification-retry"));
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	/**
+	 * Queues a notification for delivery, retrying it up to the configured number of times. If the queue for the target is full the delivery is
+	 * dropped and its outcome is reported right away.
+	 *
+	 * @param   target    The notification target. Cannot be null.
+	 * @param   delivery  The delivery to perform. Cannot be null.
+	 * @param   outcome   Receives the result of the delivery. Cannot be null.
+	 *
+	 * @return  True if the notification was queued.
+	 */
+	boolean dispatch(String target, Delivery delivery, Outcome outcome) {
+		return dispatch(target, _maxRetries, delivery, outcome);
+	}
+
+	/**
+	 * Queues a notification for delivery. If the queue for the target is full the delivery is dropped and its outcome is reported right away.
+	 *
+	 * @param   target      The notification target. Cannot be null.
+	 * @param   maxRetries  The number of times a failed delivery is retried, or a delivery held back by an open circuit is requeued. Zero for
+	 *                      deliveries that retry on their own.
+	 * @param   delivery    The delivery to perform. Cannot be null.
+	 * @param   outcome     Receives the result of the delivery. Cannot be null.
+	 *
+	 * @return  True if the notification was queued.
+	 */
+	boolean dispatch(String target, int maxRetries, Delivery delivery, Outcome outcome) {
+		requireArgument(target != null, "Target cannot be null.");
+		requireArgument(maxRetries >= 0, "Max retries cannot be negative.");
+		requireArgument(delivery != null && outcome != null, "Delivery and outcome cannot be null.");
+
+		Lane lane = _lanes.computeIfAbsent(target, Lane::new);
+
+		return lane.submit(new Task(lane, delivery, outcome, maxRetries, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns the number of deliveries waiting for a worker.
+	 *
+	 * @param   target  The notification target.
+	 *
+	 * @return  The queue depth.
+	 */
+	int getQueueDepth(String target) {
+		Lane lane = _lanes.get(target);
+
+		return lane == null ? 0 : lane._executor.getQueue().size();
+	}
+
+	/** Stops all delivery threads. Deliveries that are queued or waiting for a retry are reported as not delivered. */
+	void dispose() {
+		_retryScheduler.shutdownNow();
+		for (Lane lane : _lanes.values()) {
+			for (Runnable queued : lane._executor.shutdownNow()) {
+				((Task) queued).complete(false);
+			}
+		}
+		for (Task task : _scheduled) {
+			task.complete(false);
+		}
+		_scheduled.clear();
+	}
+
+	private static ThreadFactory _threadFactory(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+
+		return r -> {
+			Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	//~ Inner Interfaces *****************************************************************************************************************************
+
+	/**
+	 * A single delivery attempt.
+	 */
+	interface Delivery {
+
+		/**
+		 * Attempts to deliver the notification.
+		 *
+		 * @return  True if the notification was delivered.
+		 *
+		 * @throws  Exception  If the delivery failed.
+		 */
+		boolean deliver() throws Exception;
+	}
+
+	/**
+	 * Receives the final result of a delivery.
+	 */
+	interface Outcome {
+
+		/**
+		 * Called once the delivery succeeded, exhausted its retries or was dropped.
+		 *
+		 * @param  delivered      True if the notification was delivered.
+		 * @param  attempts       The number of delivery attempts made. Times the delivery was held back by an open circuit are not counted.
+		 * @param  latencyMillis  The time from dispatch to completion.
+		 */
+		void completed(boolean delivered, int attempts, long latencyMillis);
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * The queue, workers, rate limiter and circuit state of one notification target.
+	 */
+	private class Lane {
+
+		private final String _target;
+		private final Map<String, String> _tags;
+		private final ThreadPoolExecutor _executor;
+		private final RateLimiter _rateLimiter;
+		private int _consecutiveFailures = 0;
+		private long _openUntil = 0;
+
+		Lane(String target) {
+			_target = target;
+			_tags = Collections.singletonMap(TARGET_TAG, target);
+			_executor = new ThreadPoolExecutor(_workers, _workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(_queueCapacity),
+					_threadFactory("notification-" + target.toLowerCase()));
+			_rateLimiter = _permitsPerSecond > 0 ? RateLimiter.create(_permitsPerSecond) : null;
+		}
+
+		boolean submit(Task task) {
+			try {
+				_executor.execute(task);
+			} catch (RejectedExecutionException ex) {
+				if (_executor.isShutdown()) {
+					task.complete(false);
+					return false;
+				}
+				_logger.warn("Dropping notification to {} as its delivery queue is full.", _target);
+				_monitorService.modifyCustomCounter(DROPPED_COUNTER, 1, _tags);
+				task.complete(false);
+				return false;
+			}
+			_monitorService.updateCustomCounter(QUEUE_DEPTH_COUNTER, _executor.getQueue().size(), _tags);
+			return true;
+		}
+
+		synchronized long getOpenMillis(long now) {
+			return Math.max(0, _openUntil - now);
+		}
+
+		synchronized void recordSuccess() {
+			_consecutiveFailures = 0;
+			_openUntil = 0;
+		}
+
+		synchronized void recordFailure(long now) {
+			_consecutiveFailures++;
+			if (_consecutiveFailures >= _failureThreshold) {
+				_openUntil = now + _circuitOpenMillis;
+			}
+		}
+	}
+
+	/**
+	 * A queued delivery together with its retry state.
+	 */
+	private class Task implements Runnable {
+
+		private final Lane _lane;
+		private final Delivery _delivery;
+		private final Outcome _outcome;
+		private final int _maxRetries;
+		private final long _dispatchTime;
+		private final AtomicBoolean _completed = new AtomicBoolean();
+		private int _attempts = 0;
+		private int _holdBacks = 0;
+
+		Task(Lane lane, Delivery delivery, Outcome outcome, int maxRetries, long dispatchTime) {
+			_lane = lane;
+			_delivery = delivery;
+			_outcome = outcome;
+			_maxRetries = maxRetries;
+			_dispatchTime = dispatchTime;
+		}
+
+		@Override
+		public void run() {
+			long openMillis = _lane.getOpenMillis(System.currentTimeMillis());
+
+			if (openMillis > 0) {
+				// Held back deliveries have a requeue budget of their own so that a circuit that keeps reopening does not hold them forever.
+				_retryOrComplete(++_holdBacks, openMillis);
+				return;
+			}
+			if (_lane._rateLimiter != null) {
+				_lane._rateLimiter.acquire();
+			}
+
+			boolean delivered;
+
+			_attempts++;
+			try {
+				delivered = _delivery.deliver();
+			} catch (Exception ex) {
+				_logger.warn("Notification delivery to {} failed. Reason {}", _lane._target, ex.getMessage());
+				delivered = false;
+			}
+			if (delivered) {
+				_lane.recordSuccess();
+				complete(true);
+			} else {
+				_lane.recordFailure(System.currentTimeMillis());
+				_retryOrComplete(_attempts, _initialBackoffMillis << Math.min(_attempts - 1, 20));
+			}
+		}
+
+		private void _retryOrComplete(int count, long delayMillis) {
+			if (count > _maxRetries) {
+				complete(false);
+				return;
+			}
+			_scheduled.add(this);
+			try {
+				_retryScheduler.schedule(() -> {
+					if (_scheduled.remove(this)) {
+						_lane.submit(this);
+					}
+				}, delayMillis, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException ex) {
+				_scheduled.remove(this);
+				complete(false);
+			}
+		}
+
+		/* Reports the outcome. Only the first call has an effect, since disposal may race with a delivery that is completing. */
+		void complete(boolean delivered) {
+			if (!_completed.compareAndSet(false, true)) {
+				return;
+			}
+
+			long latency = System.currentTimeMillis() - _dispatchTime;
+
+			_monitorService.updateCustomCounter(LATENCY_COUNTER, latency, _lane._tags);
+			try {
+				_outcome.completed(delivered, _attempts, latency);
+			} catch (Exception ex) {
+				_logger.warn("Failed to record the outcome of a notification delivery to {}. Reason {}", _lane._target, ex.getMessage());
+			}
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -73,6 +73,7 @@ public class AnnotationRecordList implements RecordFinder<Annotation> {
 
     private Map<String, Annotation> _idToAnnotationMap = new HashMap<>();
     private String _scrollID;
+    private JsonNode _lastSortValues;
     private static ObjectMapper mapper = new ObjectMapper();
 
     public AnnotationRecordList(List<Annotation> annotations, String scrollID) {
@@ -83,6 +84,11 @@ public class AnnotationRecordList implements RecordFinder<Annotation> {
         setScrollID(scrollID);
     }
 
+    private AnnotationRecordList(List<Annotation> annotations, String scrollID, JsonNode lastSortValues) {
+        this(annotations, scrollID);
+        _lastSortValues = lastSortValues;
+    }
+
     public AnnotationRecordList(List<Annotation> annotations, HashAlgorithm algorithm) {
         for(Annotation annotation : annotations) {
             String id = null;
@@ -126,6 +132,15 @@ public class AnnotationRecordList implements RecordFinder<Annotation> {
         this._scrollID = scrollID;
     }
 
+    /**
+     * Returns the sort values of the last hit of a sorted search, to be passed as <tt>search_after</tt> for the next page.
+     *
+     * @return  The sort values of the last hit or null if the search was not sorted or had no hits.
+     */
+    JsonNode getLastSortValues() {
+        return _lastSortValues;
+    }
+
     @Override
     public Annotation getRecord(String id) {
         return _idToAnnotationMap.get(id);
@@ -192,6 +207,7 @@ public class AnnotationRecordList implements RecordFinder<Annotation> {
                 throws IOException {
 
             String scrollID = null;
+            JsonNode lastSortValues = null;
             Annotation annotation;
             List<Annotation> records = Collections.emptyList();
 
@@ -207,6 +223,7 @@ public class AnnotationRecordList implements RecordFinder<Annotation> {
                 while(iter.hasNext()) {
                     JsonNode hit = iter.next();
                     JsonNode source = hit.get("_source");
+                    lastSortValues = hit.get("sort");
 
                     JsonNode scopeNode = source.get(AnnotationRecordType.SCOPE.getName());
                     JsonNode metricNode = source.get(AnnotationRecordType.METRIC.getName());
@@ -227,7 +244,7 @@ public class AnnotationRecordList implements RecordFinder<Annotation> {
                 }
             }
 
-            return new AnnotationRecordList(records, scrollID);
+            return new AnnotationRecordList(records, scrollID, lastSortValues);
         }
     }
 
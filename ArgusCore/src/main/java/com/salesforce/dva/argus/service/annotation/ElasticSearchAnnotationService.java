@@ -3,12 +3,20 @@ package com.salesforce.dva.argus.service.annotation;
 import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -27,8 +35,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -66,6 +76,7 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
     private static final String FIELD_TYPE_TEXT = "text";
     private static final String FIELD_TYPE_DATE ="date";
     public static final int  ANNOTATION_INDEX_MAX_RESULT_WINDOW = 10000;
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
     private RestClient esRestClient;
 
     /** Annotation index properties */
@@ -75,6 +86,13 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
     private final int numShardsForAnnotationIndex;
     private final ObjectMapper annotationMapper;
     public static String ANNOTATION_INDEX_TEMPLATE_PATTERN_START;
+    private static final DateTimeFormatter INDEX_MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final long INDEX_TIME_ZONE_PADDING_MILLIS = 86400000L;
+    static final int MAX_PRUNED_INDICES = 24;
+
+    /** Annotation query properties */
+    private final int queryPageSize;
+    private final int maxAnnotationsPerQuery;
     
     private static final String EXCEPTION_MESSAGE = "Your query returns {0} or more annotations."
             + " Please modify your query by reducing the time window.";
@@ -147,6 +165,11 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
                 config.getValue(Property.ANNOTATION_ES_NUM_REPLICAS.getName(), Property.ANNOTATION_ES_NUM_REPLICAS.getDefaultValue()));
         numShardsForAnnotationIndex = Integer.parseInt(
                 config.getValue(Property.ANNOTATION_ES_SHARDS_COUNT.getName(), Property.ANNOTATION_ES_SHARDS_COUNT.getDefaultValue()));
+        queryPageSize = Math.min(ANNOTATION_INDEX_MAX_RESULT_WINDOW, Integer.parseInt(
+                config.getValue(Property.ANNOTATION_ES_QUERY_PAGE_SIZE.getName(), Property.ANNOTATION_ES_QUERY_PAGE_SIZE.getDefaultValue())));
+        maxAnnotationsPerQuery = Integer.parseInt(
+                config.getValue(Property.ANNOTATION_ES_QUERY_MAX_RESULTS.getName(), Property.ANNOTATION_ES_QUERY_MAX_RESULTS.getDefaultValue()));
+        requireArgument(queryPageSize > 0, "Annotation query page size must be greater than zero.");
         esUtils.createIndexTemplate(esRestClient,
                 ANNOTATION_INDEX_TEMPLATE_NAME,
                 ANNOTATION_INDEX_TEMPLATE_PATTERN_START,
@@ -176,7 +199,11 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
         /** Index template name */
         ANNOTATION_ES_INDEX_TEMPLATE_NAME("service.property.annotation.elasticsearch.indextemplate.name", "argus-annotation-template"),
         /** Index template pattern match */
-        ANNOTATION_ES_INDEX_TEMPLATE_PATTERN_START("service.property.annotation.elasticsearch.indextemplate.patternstart", "argus-annotation");
+        ANNOTATION_ES_INDEX_TEMPLATE_PATTERN_START("service.property.annotation.elasticsearch.indextemplate.patternstart", "argus-annotation"),
+        /** The number of annotations requested per query and search round trip. Cannot exceed the index max result window. */
+        ANNOTATION_ES_QUERY_PAGE_SIZE("service.property.annotation.elasticsearch.query.page.size", "10000"),
+        /** The maximum number of annotations a single query may read before it is rejected. */
+        ANNOTATION_ES_QUERY_MAX_RESULTS("service.property.annotation.elasticsearch.query.max.results", "100000");
 
         private final String _name;
         private final String _defaultValue;
@@ -363,31 +390,48 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
         }
     }
 
+    /**
+     * Reads the annotations matching the given queries. Each query only searches the monthly indices overlapping its time range, and all queries
+     * are sent together in a single <tt>_msearch</tt> request. Queries having more matches than fit into a page are paged with
+     * <tt>search_after</tt> in further <tt>_msearch</tt> rounds, until all matches are read or a query exceeds the configured maximum.
+     *
+     * @param   queries  The annotation queries. Cannot be null.
+     *
+     * @return  The matching annotations. Will never be null.
+     */
     @Override
     public List<Annotation> getAnnotations(List<AnnotationQuery> queries) {
         requireNotDisposed();
         requireArgument(queries != null, "Annotation queries cannot be null.");
         List<Annotation> annotations = new ArrayList<>();
-        int from = 0, scrollSize = ANNOTATION_INDEX_MAX_RESULT_WINDOW;
-
-        String requestUrl = String.format("/%s-*/_search", ANNOTATION_INDEX_TEMPLATE_PATTERN_START);
-        try{
-            for (AnnotationQuery query : queries) {
-                String queryJson = constructTermQuery(query, from, scrollSize);
-                final long start = System.currentTimeMillis();
-                Request request = new Request(HttpMethod.POST.getName(), requestUrl);
-                request.setEntity(new StringEntity(queryJson, ContentType.APPLICATION_JSON));
-                Response response = esRestClient.performRequest(request);
-                final long time = System.currentTimeMillis() - start;
-                logger.info("ES get request completed in {} ms", time);
-                String str = ElasticSearchUtils.extractResponse(response);
-                AnnotationRecordList list = ElasticSearchUtils.toEntity(str, new TypeReference<AnnotationRecordList>() {}, annotationMapper);
-                annotations.addAll(list.getRecords());
-                
-                if(annotations.size() == scrollSize) {
-                    logger.error("Maximum annotations limit execeeded for query- " + query.toString());
-                    throw new RuntimeException(MessageFormat.format(EXCEPTION_MESSAGE, scrollSize));
+        List<PagedAnnotationQuery> pending = new ArrayList<>(queries.size());
+
+        for (AnnotationQuery query : queries) {
+            convertTimestampToMillis(query);
+            pending.add(new PagedAnnotationQuery(query));
+        }
+        try {
+            while (!pending.isEmpty()) {
+                List<AnnotationRecordList> pages = multiSearch(pending);
+                List<PagedAnnotationQuery> remaining = new ArrayList<>();
+
+                for (int i = 0; i < pending.size(); i++) {
+                    PagedAnnotationQuery pagedQuery = pending.get(i);
+                    AnnotationRecordList page = pages.get(i);
+                    List<Annotation> records = page.getRecords();
+
+                    annotations.addAll(records);
+                    pagedQuery.fetched += records.size();
+                    if (records.size() == queryPageSize) {
+                        if (pagedQuery.fetched >= maxAnnotationsPerQuery) {
+                            logger.error("Maximum annotations limit execeeded for query- " + pagedQuery.query.toString());
+                            throw new RuntimeException(MessageFormat.format(EXCEPTION_MESSAGE, maxAnnotationsPerQuery));
+                        }
+                        pagedQuery.searchAfter = page.getLastSortValues();
+                        remaining.add(pagedQuery);
+                    }
                 }
+                pending = remaining;
             }
         } catch(IOException ex) {
             throw new SystemException(ex);
@@ -395,15 +439,107 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
         return annotations;
     }
 
-    private String constructTermQuery(AnnotationQuery query, int from, int size) throws JsonProcessingException {
-        convertTimestampToMillis(query);
+    private List<AnnotationRecordList> multiSearch(List<PagedAnnotationQuery> queries) throws IOException {
+        StringBuilder requestBody = new StringBuilder();
+
+        for (PagedAnnotationQuery pagedQuery : queries) {
+            ObjectNode headerNode = genericObjectMapper.createObjectNode();
+            ArrayNode indexNode = headerNode.putArray("index");
+
+            for (String index : getIndexNames(pagedQuery.query.getStartTimestamp(), pagedQuery.query.getEndTimestamp())) {
+                indexNode.add(index);
+            }
+            // Monthly indices only exist once an annotation was written for that month.
+            headerNode.put("ignore_unavailable", true);
+            headerNode.put("allow_no_indices", true);
+            requestBody.append(headerNode.toString()).append('\n');
+            requestBody.append(constructSearchAfterQuery(pagedQuery.query, queryPageSize, pagedQuery.searchAfter)).append('\n');
+        }
+
+        final long start = System.currentTimeMillis();
+        Request request = new Request(HttpMethod.POST.getName(), "/_msearch");
+        request.setEntity(new StringEntity(requestBody.toString(), NDJSON));
+        Response response = esRestClient.performRequest(request);
+        final long time = System.currentTimeMillis() - start;
+        logger.info("ES multi search request for {} queries completed in {} ms", queries.size(), time);
+
+        List<AnnotationRecordList> pages = readMultiSearchResponse(response.getEntity().getContent());
+        if (pages.size() != queries.size()) {
+            throw new SystemException(MessageFormat.format("Expected {0} search responses, but received {1}.", queries.size(), pages.size()));
+        }
+        return pages;
+    }
+
+    /* Decodes the responses of a multi search one at a time from the response stream. */
+    private List<AnnotationRecordList> readMultiSearchResponse(InputStream content) throws IOException {
+        List<AnnotationRecordList> pages = new ArrayList<>();
+
+        try (JsonParser parser = annotationMapper.getFactory().createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new SystemException("Malformed multi search response.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+
+                parser.nextToken();
+                if (!"responses".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode responseNode = parser.readValueAsTree();
+
+                    if (responseNode.has("error")) {
+                        throw new SystemException("Failed to read annotations from ES: " + responseNode.get("error").toString());
+                    }
+                    pages.add(annotationMapper.treeToValue(responseNode, AnnotationRecordList.class));
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the names of the monthly annotation indices that may contain annotations in the given time range. Annotations are indexed by the
+     * month of their timestamp in the default time zone of the writer, so the range is widened by a day on both ends to cover writers running in
+     * another time zone. Ranges spanning more than {@link #MAX_PRUNED_INDICES} months search all annotation indices.
+     *
+     * @param   startMillis  The start of the range in milliseconds.
+     * @param   endMillis    The end of the range in milliseconds.
+     *
+     * @return  The index names or index pattern to search.
+     */
+    @VisibleForTesting
+    static List<String> getIndexNames(long startMillis, long endMillis) {
+        ZoneId zone = ZoneId.systemDefault();
+        YearMonth first = YearMonth.from(Instant.ofEpochMilli(startMillis - INDEX_TIME_ZONE_PADDING_MILLIS).atZone(zone));
+        YearMonth last = YearMonth.from(Instant.ofEpochMilli(endMillis + INDEX_TIME_ZONE_PADDING_MILLIS).atZone(zone));
+
+        if (last.isBefore(first) || first.until(last, ChronoUnit.MONTHS) >= MAX_PRUNED_INDICES) {
+            return Collections.singletonList(String.format("%s-*", ANNOTATION_INDEX_TEMPLATE_PATTERN_START));
+        }
 
+        List<String> indexNames = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            indexNames.add(String.format("%s-%s", ANNOTATION_INDEX_TEMPLATE_PATTERN_START, month.format(INDEX_MONTH_FORMAT)));
+        }
+        return indexNames;
+    }
+
+    private String constructSearchAfterQuery(AnnotationQuery query, int size, JsonNode searchAfter) throws JsonProcessingException {
         ObjectNode queryNode = constructSearchQueryNode(query, genericObjectMapper);
+
+        // The timestamp is part of the document id, so it is unique among the annotations sharing a search identifier.
+        ArrayNode sortNode = genericObjectMapper.createArrayNode();
+        sortNode.add(genericObjectMapper.createObjectNode().put(AnnotationRecordList.AnnotationRecordType.TIMESTAMP.getName(), "asc"));
+
         ObjectNode rootNode = annotationMapper.createObjectNode();
         rootNode.set("query", queryNode);
-        rootNode.put("from", from);
         rootNode.put("size", size);
-
+        rootNode.set("sort", sortNode);
+        if (searchAfter != null) {
+            rootNode.set("search_after", searchAfter);
+        }
         return rootNode.toString();
     }
 
@@ -446,4 +582,18 @@ public class ElasticSearchAnnotationService extends DefaultService implements An
                 .append(annotationQuery.getTags().toString()).append(annotationQuery.getType()).toString();
         return hf.newHasher().putString(searchIdentifier, Charset.defaultCharset()).hash().toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * An annotation query together with its paging state.
+     */
+    private static class PagedAnnotationQuery {
+
+        private final AnnotationQuery query;
+        private JsonNode searchAfter;
+        private int fetched;
+
+        PagedAnnotationQuery(AnnotationQuery query) {
+            this.query = query;
+        }
+    }
+}
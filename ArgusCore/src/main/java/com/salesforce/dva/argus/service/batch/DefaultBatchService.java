@@ -34,6 +34,9 @@ public class DefaultBatchService extends DefaultService implements BatchService
 
     private static final String ROOT = "batch/";
     private static final String QUERIES = "/queries/";
+    private static final String STARTED = "/started";
+    private static final String COMPLETED = "/completed";
+    private static final String FAILED = "/failed";
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final int DEFAULT_TTL = 2592000;
 
@@ -59,22 +62,29 @@ public class DefaultBatchService extends DefaultService implements BatchService
 
     @Override
     public BatchMetricQuery findBatchById(String id) {
-        String json = _cacheService.get(ROOT + id);
-        if (json == null) {
+        Map<String, Object> batchData = _findBatchDataById(id);
+        if (batchData == null) {
             return null;
         }
         try {
-            Map<String, Object> batchData = MAPPER.readValue(json, new TypeReference<HashMap<String, Object>>() {});
             Status status = BatchMetricQuery.Status.fromInt((Integer) batchData.get("status"));
             int ttl = Integer.valueOf(batchData.get("ttl").toString());
             long createdDate = Long.valueOf(batchData.get("createdDate").toString());
             String ownerName = (String) batchData.get("ownerName");
             String batchId = (String) batchData.get("batchId");
-            List<AsyncBatchedMetricQuery> queries = new ArrayList<>();
-
             int[] indices = MAPPER.readValue((String) batchData.get("indices"), int[].class);
+            Set<String> keys = new LinkedHashSet<>(indices.length);
+
             for (int index: indices) {
-                queries.add(_findQueryById(batchId, index));
+                keys.add(_getQueryKey(batchId, index));
+            }
+
+            Map<String, String> queriesJson = _cacheService.get(keys);
+            List<AsyncBatchedMetricQuery> queries = new ArrayList<>(indices.length);
+
+            for (int index: indices) {
+                String json = queriesJson == null ? null : queriesJson.get(_getQueryKey(batchId, index));
+                queries.add(json == null ? null : _deserializeQuery(batchId, index, json));
             }
             BatchMetricQuery batch = new BatchMetricQuery(status, ttl, createdDate, batchId, ownerName, queries);
             return batch;
@@ -91,13 +101,28 @@ public class DefaultBatchService extends DefaultService implements BatchService
         }
         try {
             Map<String, String> userBatches = MAPPER.readValue(userBatchesJson, new TypeReference<HashMap<String, String>>() {});
+            Set<String> keys = new HashSet<>();
+
+            for (String id: userBatches.keySet()) {
+                keys.add(ROOT + id);
+            }
+
+            Map<String, String> entries = _cacheService.get(keys);
+            Set<String> progressKeys = new HashSet<>();
+
+            for (String id: userBatches.keySet()) {
+                progressKeys.addAll(_getProgressKeys(id));
+            }
+
+            Map<String, Long> progress = _cacheService.getSetSizes(progressKeys);
             List<String> toRemove = new LinkedList<>();
             for (String id: userBatches.keySet()) {
-                BatchMetricQuery userBatch = findBatchById(id);
-                if (userBatch == null) {
+                String json = entries == null ? null : entries.get(ROOT + id);
+                if (json == null) {
                     toRemove.add(id);
                 } else {
-                    userBatches.put(id, String.valueOf(userBatch.getStatus().toInt()));
+                    Map<String, Object> batchData = MAPPER.readValue(json, new TypeReference<HashMap<String, Object>>() {});
+                    userBatches.put(id, String.valueOf(_getStatus(batchData, progress).toInt()));
                 }
             }
             for (String id: toRemove) {
@@ -117,6 +142,16 @@ public class DefaultBatchService extends DefaultService implements BatchService
         _mqService.enqueue(BATCH.getQueueName(), batch.getQueries());
     }
 
+    /**
+     * Evaluates the next queued query. Queries of the same batch are dequeued independently, so every processor thread calling this method
+     * evaluates a different query of the batch concurrently. Instead of reloading all sibling queries to compute the batch status, each finished
+     * query records its index in the completion sets of its batch, and the query that completes the batch finalizes the batch status and its TTL.
+     * Since the sets are keyed by the query index, a query that is redelivered and evaluated again is still counted once.
+     *
+     * @param   timeout  The maximum time in milliseconds to wait for a query.
+     *
+     * @return  The evaluated query or null if no query was available.
+     */
     @Override
     public AsyncBatchedMetricQuery executeNextQuery(int timeout) {
         AsyncBatchedMetricQuery query = _mqService.dequeue(BATCH.getQueueName(), AsyncBatchedMetricQuery.class, timeout);
@@ -125,66 +160,135 @@ public class DefaultBatchService extends DefaultService implements BatchService
         }
         query.setStatus(Status.PROCESSING);
         _updateQuery(query, DEFAULT_TTL);
+        _cacheService.addToSet(ROOT + query.getBatchId() + STARTED, String.valueOf(query.getIndex()), DEFAULT_TTL);
 
         MetricReader<Metric> reader = _metricReaderProviderForMetrics.get();
+        List<Metric> results;
         try {
-            List<Metric> results = reader.parse(query.getExpression(), query.getRelativeTo(), Metric.class, new QueryContextHolder(), false);
-            query.setStatus(Status.DONE);
-            if (results.size() != 0) {
-                query.setResult(results.get(0));
-            }
-            _updateQuery(query, DEFAULT_TTL);
-
-            BatchMetricQuery batch = findBatchById(query.getBatchId());
-            if (batch.getStatus() == Status.DONE || batch.getStatus() == Status.ERROR) {
-                _enforceTtl(batch);
-            }
-            return query;
+            results = reader.parse(query.getExpression(), query.getRelativeTo(), Metric.class, new QueryContextHolder(), false);
         } catch (Exception ex) {
             query.setStatus(Status.ERROR);
             query.setMessage(ex.toString());
             _updateQuery(query, DEFAULT_TTL);
-            BatchMetricQuery batch = findBatchById(query.getBatchId());
-            if (batch.getStatus() == Status.ERROR) {
-                _enforceTtl(batch);
-            }
+            _completeQuery(query);
             throw new SystemException("Failed to parse the given expression", ex);
         }
+        query.setStatus(Status.DONE);
+        if (results.size() != 0) {
+            query.setResult(results.get(0));
+        }
+        _updateQuery(query, DEFAULT_TTL);
+        _completeQuery(query);
+        return query;
     }
 
     @Override
     public void deleteBatch(String id) {
         String json = _cacheService.get(ROOT + id);
         requireArgument(json != null, "No such batch exists");
-        _cacheService.delete(ROOT + id);
         try {
             Map<String, Object> batchData = MAPPER.readValue(json, new TypeReference<HashMap<String, Object>>() {});
+            Set<String> keys = _getBatchKeys(id, MAPPER.readValue((String) batchData.get("indices"), int[].class));
 
-            int[] indices = MAPPER.readValue((String) batchData.get("indices"), int[].class);
-            for (int index: indices) {
-                _cacheService.delete(ROOT + id + QUERIES + index);
-            }
+            keys.add(ROOT + id);
+            _cacheService.delete(keys);
         } catch (IOException ex) {
             throw new SystemException(ex);
         }
     }
 
     private void _createBatch(BatchMetricQuery batch) {
-        String json = _serializeBatchToJson(batch);
-        _cacheService.put(ROOT + batch.getBatchId(), json, DEFAULT_TTL);
+        Map<String, String> entries = new HashMap<>();
+
+        entries.put(ROOT + batch.getBatchId(), _serializeBatchToJson(batch));
         for (AsyncBatchedMetricQuery query : batch.getQueries()) {
-            _updateQuery(query, DEFAULT_TTL);
+            entries.put(_getQueryKey(query.getBatchId(), query.getIndex()), _serializeQueryToJson(query));
         }
-
+        _cacheService.put(entries, DEFAULT_TTL);
         _updateUserBatches(batch);
     }
 
-    private void _enforceTtl(BatchMetricQuery batch) {
-        String json = _serializeBatchToJson(batch);
-        _cacheService.put(ROOT + batch.getBatchId(), json, batch.getTtl());
-        for (AsyncBatchedMetricQuery query : batch.getQueries()) {
-            _updateQuery(query, batch.getTtl());
+    private void _completeQuery(AsyncBatchedMetricQuery query) {
+        String batchId = query.getBatchId();
+        String index = String.valueOf(query.getIndex());
+
+        /* The failure set must be updated before the completion set, so that it is final once the last query completes. */
+        if (query.getStatus() == Status.ERROR) {
+            _cacheService.addToSet(ROOT + batchId + FAILED, index, DEFAULT_TTL);
+        }
+
+        long completed = _cacheService.addToSet(ROOT + batchId + COMPLETED, index, DEFAULT_TTL);
+        Map<String, Object> batchData = _findBatchDataById(batchId);
+
+        if (batchData == null) {
+            return;
+        }
+        try {
+            int[] indices = MAPPER.readValue((String) batchData.get("indices"), int[].class);
+
+            if (completed >= indices.length) {
+                String failedKey = ROOT + batchId + FAILED;
+                Long failed = _cacheService.getSetSizes(Collections.singleton(failedKey)).get(failedKey);
+                Status status = failed != null && failed > 0 ? Status.ERROR : Status.DONE;
+                int ttl = Integer.valueOf(batchData.get("ttl").toString());
+
+                batchData.put("status", status.toInt());
+                _cacheService.put(ROOT + batchId, MAPPER.writeValueAsString(batchData), ttl);
+                _cacheService.expire(_getBatchKeys(batchId, indices), ttl);
+            }
+        } catch (IOException ex) {
+            throw new SystemException(ex);
+        }
+    }
+
+    private Map<String, Object> _findBatchDataById(String id) {
+        String json = _cacheService.get(ROOT + id);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(json, new TypeReference<HashMap<String, Object>>() {});
+        } catch (IOException ex) {
+            throw new SystemException(ex);
+        }
+    }
+
+    private Status _getStatus(Map<String, Object> batchData, Map<String, Long> progress) throws IOException {
+        Status status = Status.fromInt((Integer) batchData.get("status"));
+        if (status == Status.DONE || status == Status.ERROR) {
+            return status;
+        }
+
+        String batchId = (String) batchData.get("batchId");
+        int size = MAPPER.readValue((String) batchData.get("indices"), int[].class).length;
+        long completed = _getSetSize(progress, ROOT + batchId + COMPLETED);
+
+        if (completed >= size) {
+            return _getSetSize(progress, ROOT + batchId + FAILED) > 0 ? Status.ERROR : Status.DONE;
         }
+        return completed > 0 || _getSetSize(progress, ROOT + batchId + STARTED) > 0 ? Status.PROCESSING : Status.QUEUED;
+    }
+
+    private static long _getSetSize(Map<String, Long> progress, String key) {
+        Long size = progress.get(key);
+        return size == null ? 0 : size;
+    }
+
+    private static String _getQueryKey(String batchId, int index) {
+        return ROOT + batchId + QUERIES + index;
+    }
+
+    private static Set<String> _getProgressKeys(String batchId) {
+        return new HashSet<>(Arrays.asList(ROOT + batchId + STARTED, ROOT + batchId + COMPLETED, ROOT + batchId + FAILED));
+    }
+
+    private static Set<String> _getBatchKeys(String batchId, int[] indices) {
+        Set<String> keys = _getProgressKeys(batchId);
+
+        for (int index: indices) {
+            keys.add(_getQueryKey(batchId, index));
+        }
+        return keys;
     }
 
     private String _serializeBatchToJson(BatchMetricQuery batch) {
@@ -224,11 +328,7 @@ public class DefaultBatchService extends DefaultService implements BatchService
         }
     }
 
-    private AsyncBatchedMetricQuery _findQueryById(String batchId, int index) {
-        String json = _cacheService.get(ROOT + batchId + QUERIES + index);
-        if (json == null) {
-            return null;
-        }
+    private AsyncBatchedMetricQuery _deserializeQuery(String batchId, int index, String json) {
         try {
             Map<String, Object> queryData = MAPPER.readValue(json, new TypeReference<HashMap<String, Object>>() {});
             String expression = (String) queryData.get("expression");
@@ -243,7 +343,7 @@ public class DefaultBatchService extends DefaultService implements BatchService
         }
     }
 
-    private void _updateQuery(AsyncBatchedMetricQuery query, int ttl) {
+    private String _serializeQueryToJson(AsyncBatchedMetricQuery query) {
         Map<String,Object> queryData = new HashMap<>();
         try {
             queryData.put("expression", query.getExpression());
@@ -253,10 +353,14 @@ public class DefaultBatchService extends DefaultService implements BatchService
             queryData.put("status", query.getStatus().toInt());
             queryData.put("message", query.getMessage());
             queryData.put("metric", MAPPER.writeValueAsString(query.getResult()));
-            _cacheService.put(ROOT + query.getBatchId() + QUERIES + query.getIndex(), MAPPER.writeValueAsString(queryData), ttl);
+            return MAPPER.writeValueAsString(queryData);
         } catch (IOException ex) {
             throw new SystemException(ex);
         }
     }
+
+    private void _updateQuery(AsyncBatchedMetricQuery query, int ttl) {
+        _cacheService.put(_getQueryKey(query.getBatchId(), query.getIndex()), _serializeQueryToJson(query), ttl);
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -130,6 +130,16 @@ public class NoOperationCacheService extends DefaultService implements CacheServ
         return null;
     }
 
+    @Override
+    public long addToSet(String key, String member, int ttl) {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Long> getSetSizes(Set<String> keys) {
+        return Collections.emptyMap();
+    }
+
     @Override
     public Set<String> getKeysByPattern(String pattern) {
         return null;
@@ -36,6 +36,7 @@ import com.google.inject.Singleton;
 import com.salesforce.dva.argus.service.CacheService;
 import com.salesforce.dva.argus.service.DefaultService;
 import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +64,12 @@ import java.util.TreeSet;
 @Singleton
 public class RedisCacheService extends DefaultService implements CacheService {
 
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	/* Adds a set member and sets the timeout of the set in one step, as a cluster client cannot run a transaction. */
+	private static final String ADD_TO_SET_SCRIPT = "redis.call('SADD', KEYS[1], ARGV[1]) "
+			+ "redis.call('EXPIRE', KEYS[1], ARGV[2]) return redis.call('SCARD', KEYS[1])";
+
 	//~ Instance fields ******************************************************************************************************************************
 
 	private final Logger _logger = LoggerFactory.getLogger(getClass());
@@ -256,6 +263,29 @@ public class RedisCacheService extends DefaultService implements CacheService {
 		return map;
 	}
 
+	@Override
+	public long addToSet(String key, String member, int ttl) {
+		try {
+			return (Long) _jedisClusterClient.eval(ADD_TO_SET_SCRIPT, 1, key, member, String.valueOf(ttl));
+		} catch (Exception ex) {
+			throw new SystemException("Failed to add to cache key " + key, ex);
+		}
+	}
+
+	@Override
+	public Map<String, Long> getSetSizes(Set<String> keys) {
+		Map<String, Long> map = new HashMap<String, Long>();
+
+		for (String key : keys) {
+			try {
+				map.put(key, _jedisClusterClient.scard(key));
+			} catch (Exception ex) {
+				throw new SystemException("Failed to read cache key " + key, ex);
+			}
+		}
+		return map;
+	}
+
 	@Override
 	public int getCacheExpirationTime() {
 		return Integer.parseInt(_config.getValue(CacheProperty.REDIS_CACHE_EXPIRY_IN_SEC.getName(), CacheProperty.REDIS_CACHE_EXPIRY_IN_SEC.getDefaultValue()));
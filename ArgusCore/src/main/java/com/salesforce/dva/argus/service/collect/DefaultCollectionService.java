@@ -59,6 +59,7 @@ import com.salesforce.dva.argus.entity.Histogram;
 import com.salesforce.dva.argus.entity.HistogramBucket;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.entity.PrincipalUser;
+import com.salesforce.dva.argus.entity.QuantileSketch;
 import com.salesforce.dva.argus.entity.TSDBEntity;
 import com.salesforce.dva.argus.service.AnnotationStorageService;
 import com.salesforce.dva.argus.service.AuditService;
@@ -73,6 +74,7 @@ import com.salesforce.dva.argus.service.WardenService;
 import com.salesforce.dva.argus.service.WardenService.PolicyCounter;
 import com.salesforce.dva.argus.service.WardenService.SubSystem;
 import com.salesforce.dva.argus.service.jpa.DefaultJPAService;
+import com.salesforce.dva.argus.service.metric.MetricRollups;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 
 /**
@@ -87,6 +89,9 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
     protected static final int MAX_ANNOTATION_SIZE_BYTES = 2000;
     private static final int BATCH_METRICS = 50;
     private static final int MAX_HISTOGRAM_BUCKETS = 100;
+    private static final String ROLLUP_WRITES_COUNTER = "collection.rollup.writes";
+    private static final String ROLLUP_DROPPED_LATE_COUNTER = "collection.rollup.dropped.late";
+    private static final String ROLLUP_DROPPED_PARTIAL_COUNTER = "collection.rollup.dropped.partial";
     private static final Logger _logger = LoggerFactory.getLogger(DefaultCollectionService.class);
 
     //~ Instance fields ******************************************************************************************************************************
@@ -100,6 +105,10 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
     private final WardenService _wardenService;
     private final MonitorService _monitorService;
     private final NamespaceService _namespaceService;
+    private final MetricRollupAggregator _rollupAggregator;
+    private final boolean _partitionMetrics;
+    private long _reportedDroppedLate = 0;
+    private long _reportedDroppedPartial = 0;
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -128,6 +137,17 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
         _wardenService = wardenService;
         _monitorService = monitorService;
         _namespaceService = namespaceService;
+        if (Boolean.parseBoolean(configuration.getValue(Property.COLLECTION_ROLLUP_ENABLED.getName(),
+                Property.COLLECTION_ROLLUP_ENABLED.getDefaultValue()))) {
+            _rollupAggregator = new MetricRollupAggregator(MetricRollups.parseIntervals(configuration.getValue(
+                    Property.COLLECTION_ROLLUP_INTERVALS.getName(), Property.COLLECTION_ROLLUP_INTERVALS.getDefaultValue())),
+                    Long.parseLong(configuration.getValue(Property.COLLECTION_ROLLUP_GRACE_MS.getName(),
+                    Property.COLLECTION_ROLLUP_GRACE_MS.getDefaultValue())), System.currentTimeMillis());
+        } else {
+            _rollupAggregator = null;
+        }
+        _partitionMetrics = Boolean.parseBoolean(configuration.getValue(Property.COLLECTION_METRIC_PARTITIONED.getName(),
+                Property.COLLECTION_METRIC_PARTITIONED.getDefaultValue()));
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -162,11 +182,31 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
                     metricData.getDataPointsSize(), metricData.getMinResolutionDataPointsAcrossAllMetrics());
         }
 
+        if (_partitionMetrics) {
+            for (Entry<String, List<Metric>> series : _groupMetricsBySeries(metrics).entrySet()) {
+                _mqService.enqueue(METRIC.getQueueName(), series.getKey(), _batchMetrics(series.getValue()));
+            }
+            return;
+        }
+
         List<ArrayList<Metric>> batches = _batchMetrics(metrics);
 
         _mqService.enqueue(METRIC.getQueueName(), batches);
     }
 
+    /*
+     * Groups metrics by their scope and metric name, which is used as the record key so that every schema key of a series is always enqueued to
+     * the same partition and is therefore committed by the same consumer.
+     */
+    private Map<String, List<Metric>> _groupMetricsBySeries(List<Metric> metrics) {
+        Map<String, List<Metric>> series = new HashMap<>();
+
+        for (Metric metric : metrics) {
+            series.computeIfAbsent(metric.getScope() + ':' + metric.getMetric(), k -> new ArrayList<>()).add(metric);
+        }
+        return series;
+    }
+
     @Override
     public void submitAnnotation(PrincipalUser submitter, Annotation annotation) {
         submitAnnotations(submitter, Arrays.asList(new Annotation[] { annotation }));
@@ -225,9 +265,37 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
             _tsdbService.putMetrics(dequeued);
             _logger.debug("Committed {} metrics.", dequeued.size());
         }
+        if (_rollupAggregator != null) {
+            _commitRollups(dequeued);
+        }
         return dequeued;
     }
 
+    private void _commitRollups(List<Metric> committed) {
+        _writeRollups(_rollupAggregator.aggregate(committed, System.currentTimeMillis()));
+    }
+
+    private void _writeRollups(List<Metric> rollups) {
+        if (!rollups.isEmpty()) {
+            _tsdbService.putMetrics(rollups);
+            _monitorService.modifyCustomCounter(ROLLUP_WRITES_COUNTER, rollups.size(), new HashMap<>());
+            _logger.debug("Committed {} rollup data points.", rollups.size());
+        }
+        synchronized (_rollupAggregator) {
+            long droppedLate = _rollupAggregator.getDroppedLate();
+            long droppedPartial = _rollupAggregator.getDroppedPartial();
+
+            if (droppedLate > _reportedDroppedLate) {
+                _monitorService.modifyCustomCounter(ROLLUP_DROPPED_LATE_COUNTER, droppedLate - _reportedDroppedLate, new HashMap<>());
+                _reportedDroppedLate = droppedLate;
+            }
+            if (droppedPartial > _reportedDroppedPartial) {
+                _monitorService.modifyCustomCounter(ROLLUP_DROPPED_PARTIAL_COUNTER, droppedPartial - _reportedDroppedPartial, new HashMap<>());
+                _reportedDroppedPartial = droppedPartial;
+            }
+        }
+    }
+
     @Override
     public int commitMetricSchema(int messageCount, int timeout) {
         requireNotDisposed();
@@ -272,8 +340,10 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
         List<Histogram> dequeued = _mqService.dequeue(HISTOGRAM.getQueueName(), Histogram.class, timeout, histogramCount);
 
         if (!dequeued.isEmpty()) {
-            _tsdbService.putHistograms(dequeued);
-            _logger.debug("Committed {} histograms.", dequeued.size());
+            List<Histogram> histograms = mergeSketches(dequeued);
+
+            _tsdbService.putHistograms(histograms);
+            _logger.debug("Committed {} histograms as {} series.", dequeued.size(), histograms.size());
         }
         return dequeued.size();
     }
@@ -294,7 +364,18 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
 
         /* Replace unsupported characters in histogram and validate bounds */
         for (Histogram histogram : histograms) {
-            if(histogram.getBuckets() == null || histogram.getBuckets().isEmpty()){
+            if (histogram.getSketch() != null) {
+                try {
+                    QuantileSketch.decode(histogram.getSketch());
+                } catch (IllegalArgumentException ex) {
+                    _logger.warn("Histogram sketch is malformed. Dropping this histogram. Reason {}", ex.getMessage());
+                    _monitorService.modifyCounter(Counter.HISTOGRAM_DROPPED, 1, null);
+                    continue;
+                }
+                histogram.clearBuckets();
+                _filterHistogramNames(histogram);
+                filteredHistograms.add(histogram);
+            } else if(histogram.getBuckets() == null || histogram.getBuckets().isEmpty()){
                 _logger.warn("Histogram buckets is null or empty. Dropping this histogram");
                 _monitorService.modifyCounter(Counter.HISTOGRAM_DROPPED, 1, null);
             } else if (histogram.getBuckets().size() > MAX_HISTOGRAM_BUCKETS) {
@@ -312,14 +393,7 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
                 }
                 if(boundsCheck == false) continue;
 
-                histogram.setScope(TSDBEntity.replaceUnsupportedChars(histogram.getScope()));
-                histogram.setMetric(TSDBEntity.replaceUnsupportedChars(histogram.getMetric()));
-                Map<String, String> filteredTags = new HashMap<>();
-                for (String tagKey : histogram.getTags().keySet()) {
-                    filteredTags.put(TSDBEntity.replaceUnsupportedChars(tagKey), TSDBEntity.replaceUnsupportedChars(histogram.getTags().get(tagKey)));
-                }
-                histogram.setTags(filteredTags);
-
+                _filterHistogramNames(histogram);
                 filteredHistograms.add(histogram);
             }
         }
@@ -328,8 +402,69 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
         _mqService.enqueue(HISTOGRAM.getQueueName(), filteredHistograms);
     }
 
+    private void _filterHistogramNames(Histogram histogram) {
+        histogram.setScope(TSDBEntity.replaceUnsupportedChars(histogram.getScope()));
+        histogram.setMetric(TSDBEntity.replaceUnsupportedChars(histogram.getMetric()));
+        Map<String, String> filteredTags = new HashMap<>();
+        for (String tagKey : histogram.getTags().keySet()) {
+            filteredTags.put(TSDBEntity.replaceUnsupportedChars(tagKey), TSDBEntity.replaceUnsupportedChars(histogram.getTags().get(tagKey)));
+        }
+        histogram.setTags(filteredTags);
+    }
+
+    /*
+     * Merges the sketches submitted for the same series and time stamp and replaces them with a single histogram whose buckets are the bins of
+     * the merged sketch, collapsed to the bucket limit of histograms submitted with explicit buckets. Those are passed through unchanged.
+     */
+    static List<Histogram> mergeSketches(List<Histogram> histograms) {
+        List<Histogram> result = new ArrayList<>(histograms.size());
+        Map<String, Histogram> merged = new HashMap<>();
+        Map<String, QuantileSketch> sketches = new HashMap<>();
+
+        for (Histogram histogram : histograms) {
+            if (histogram.getSketch() == null) {
+                result.add(histogram);
+                continue;
+            }
+
+            QuantileSketch sketch;
+
+            try {
+                sketch = QuantileSketch.decode(histogram.getSketch());
+            } catch (IllegalArgumentException ex) {
+                _logger.warn("Dropping histogram with malformed sketch {}. Reason {}", histogram.getIdentifier(), ex.getMessage());
+                continue;
+            }
+
+            String key = histogram.getIdentifier() + '@' + histogram.getTimestamp() + '@' + sketch.getRelativeAccuracy();
+            QuantileSketch existing = sketches.get(key);
+
+            if (existing == null) {
+                sketches.put(key, sketch);
+                merged.put(key, histogram);
+                result.add(histogram);
+            } else {
+                existing.merge(sketch);
+            }
+        }
+        for (Map.Entry<String, Histogram> entry : merged.entrySet()) {
+            Histogram histogram = entry.getValue();
+
+            histogram.setBuckets(sketches.get(entry.getKey()).toBuckets(MAX_HISTOGRAM_BUCKETS));
+            histogram.setSketch(null);
+        }
+        return result;
+    }
+
     @Override
     public void dispose() {
+        if (_rollupAggregator != null) {
+            try {
+                _writeRollups(_rollupAggregator.close(System.currentTimeMillis()));
+            } catch (RuntimeException ex) {
+                _logger.warn("Failed to write the open rollup windows on dispose.", ex);
+            }
+        }
         super.dispose();
     }
 
@@ -448,6 +583,52 @@ public class DefaultCollectionService extends DefaultJPAService implements Colle
         return batches;
     }
 
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The set of implementation specific configuration properties.
+     */
+    public enum Property {
+
+        /** Enables the pre-aggregation of committed metrics into rollup series. */
+        COLLECTION_ROLLUP_ENABLED("service.property.collection.rollup.enabled", "false"),
+        /** The comma separated rollup intervals to keep. Supported values are 1m and 1h. */
+        COLLECTION_ROLLUP_INTERVALS("service.property.collection.rollup.intervals", "1m,1h"),
+        /** The time after the end of a rollup window during which late data points are still aggregated. */
+        COLLECTION_ROLLUP_GRACE_MS("service.property.collection.rollup.grace.ms", "60000"),
+        /**
+         * Enqueues metrics keyed by scope and metric name. Every series then goes to the same partition, so each metric and schema committer
+         * owns a stable subset of series. When disabled metrics are spread randomly.
+         */
+        COLLECTION_METRIC_PARTITIONED("service.property.collection.metric.partitioned", "false");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
+
     //~ Inner Classes ********************************************************************************************************************************
 
     /**
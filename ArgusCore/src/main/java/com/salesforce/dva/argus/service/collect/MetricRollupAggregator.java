@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.collect;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.metric.MetricRollups;
+import com.salesforce.dva.argus.service.metric.MetricRollups.Interval;
+import com.salesforce.dva.argus.service.metric.MetricRollups.Statistic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Keeps the sum, count, minimum and maximum of the open windows of every series and rollup interval seen by the commit pipeline and emits them as
+ * rollup series once the windows close. A window stays open until the wall clock passes its end plus a grace period, so data points that arrive
+ * out of order within the grace period are aggregated into their own window. Data points for windows that have already closed are dropped as
+ * late.
+ *
+ * <p>A window that started before the aggregator did may already hold data points committed by a previous process, so its data points are
+ * dropped instead of being written as a rollup that looks complete but is not. For the same reason, {@link #close(long)} only emits the windows
+ * that have ended and drops the data points of the windows still in progress.</p>
+ *
+ * <p>The window state is held in parallel primitive arrays indexed by slot, so that the per data point work does not allocate. Every slot holds
+ * a small ring of windows large enough for all windows that can be open at the same time. Slots of series that stop reporting are recycled once
+ * their last window has been emitted.</p>
+ */
+class MetricRollupAggregator {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Interval[] _intervals;
+    private final long _graceMillis;
+    private final long _startedAt;
+    private final int _windows;
+    private final Map<String, Integer> _slots = new HashMap<>();
+    private int[] _freeSlots = new int[INITIAL_CAPACITY];
+    private int _freeCount = 0;
+    private int _nextSlot = 0;
+    private Metric[] _series = new Metric[INITIAL_CAPACITY];
+    private String[] _keys = new String[INITIAL_CAPACITY];
+    private int[] _intervalIndex = new int[INITIAL_CAPACITY];
+    private int[] _openWindows = new int[INITIAL_CAPACITY];
+    private long[] _lastEmitted = new long[INITIAL_CAPACITY];
+    private long[] _windowStart;
+    private long[] _windowEmitted;
+    private long[] _count;
+    private double[] _sum;
+    private double[] _min;
+    private double[] _max;
+    private long _droppedLate = 0;
+    private long _droppedPartial = 0;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new MetricRollupAggregator object.
+     *
+     * @param  intervals    The rollup intervals to keep. Cannot be null or empty.
+     * @param  graceMillis  The time after the end of a window during which late data points are still aggregated.
+     * @param  startedAt    The time the aggregator started. Windows that started earlier are not aggregated.
+     */
+    MetricRollupAggregator(List<Interval> intervals, long graceMillis, long startedAt) {
+        requireArgument(intervals != null && !intervals.isEmpty(), "Rollup intervals cannot be null or empty.");
+        requireArgument(graceMillis >= 0, "Grace period cannot be negative.");
+        _intervals = intervals.toArray(new Interval[intervals.size()]);
+        _graceMillis = graceMillis;
+        _startedAt = startedAt;
+
+        long windows = 0;
+
+        // A window is open from its start until its end plus the grace period, so this many consecutive windows can be open at once.
+        for (Interval interval : _intervals) {
+            windows = Math.max(windows, (graceMillis + interval.getMillis() - 1) / interval.getMillis() + 2);
+        }
+        _windows = (int) windows;
+        _windowStart = new long[INITIAL_CAPACITY * _windows];
+        _windowEmitted = new long[INITIAL_CAPACITY * _windows];
+        _count = new long[INITIAL_CAPACITY * _windows];
+        _sum = new double[INITIAL_CAPACITY * _windows];
+        _min = new double[INITIAL_CAPACITY * _windows];
+        _max = new double[INITIAL_CAPACITY * _windows];
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Aggregates committed metrics and returns the rollup series of every window that closed.
+     *
+     * @param   metrics  The committed metrics. Cannot be null.
+     * @param   now      The current time.
+     *
+     * @return  The rollup series to write. Never null.
+     */
+    synchronized List<Metric> aggregate(List<Metric> metrics, long now) {
+        requireArgument(metrics != null, "Metrics cannot be null.");
+
+        List<Metric> rollups = new ArrayList<>();
+
+        for (Metric metric : metrics) {
+            if (metric == null || MetricRollups.isRollupMetric(metric.getMetric()) || metric.getDatapoints().isEmpty()) {
+                continue;
+            }
+
+            String key = _key(metric);
+
+            for (int i = 0; i < _intervals.length; i++) {
+                int slot = _slot(key, i, metric);
+                long millis = _intervals[i].getMillis();
+
+                for (Map.Entry<Long, Double> datapoint : metric.getDatapoints().entrySet()) {
+                    Double value = datapoint.getValue();
+
+                    if (value == null || value.isNaN()) {
+                        continue;
+                    }
+                    _add(slot, Math.floorDiv(datapoint.getKey(), millis) * millis, value, now, rollups);
+                }
+            }
+        }
+        rollups.addAll(flush(now));
+        return rollups;
+    }
+
+    /**
+     * Emits every window whose end plus the grace period has passed and recycles the slots of series without an open window.
+     *
+     * @param   now  The current time.
+     *
+     * @return  The rollup series of the closed windows. Never null.
+     */
+    synchronized List<Metric> flush(long now) {
+        List<Metric> rollups = new ArrayList<>();
+
+        for (int slot = 0; slot < _nextSlot; slot++) {
+            if (_keys[slot] == null) {
+                continue;
+            }
+
+            long millis = _intervals[_intervalIndex[slot]].getMillis();
+
+            for (int window = slot * _windows; window < (slot + 1) * _windows && _openWindows[slot] > 0; window++) {
+                if (_windowStart[window] != EMPTY && _windowStart[window] + millis + _graceMillis <= now) {
+                    _emit(slot, window, rollups);
+                }
+            }
+            if (_openWindows[slot] == 0 && _lastEmitted[slot] + 2 * millis + _graceMillis <= now) {
+                _slots.remove(_keys[slot]);
+                _keys[slot] = null;
+                _series[slot] = null;
+                if (_freeCount == _freeSlots.length) {
+                    _freeSlots = Arrays.copyOf(_freeSlots, _freeCount * 2);
+                }
+                _freeSlots[_freeCount++] = slot;
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * Emits every window that has ended, without waiting for its grace period, and drops the data points of the windows still in progress, since
+     * they would only be written with part of their data. The aggregator is not used afterwards.
+     *
+     * @param   now  The current time.
+     *
+     * @return  The rollup series of the ended windows. Never null.
+     */
+    synchronized List<Metric> close(long now) {
+        List<Metric> rollups = new ArrayList<>();
+
+        for (int slot = 0; slot < _nextSlot; slot++) {
+            if (_keys[slot] == null) {
+                continue;
+            }
+
+            long millis = _intervals[_intervalIndex[slot]].getMillis();
+
+            for (int window = slot * _windows; window < (slot + 1) * _windows; window++) {
+                if (_windowStart[window] == EMPTY) {
+                    continue;
+                }
+                if (_windowStart[window] + millis <= now) {
+                    _emit(slot, window, rollups);
+                } else {
+                    _droppedPartial += _count[window];
+                    _windowStart[window] = EMPTY;
+                    _openWindows[slot]--;
+                }
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * Returns the number of series windows currently tracked.
+     *
+     * @return  The number of tracked windows.
+     */
+    synchronized int size() {
+        return _slots.size();
+    }
+
+    /**
+     * Returns the number of data points that arrived after their window was closed.
+     *
+     * @return  The number of late data points.
+     */
+    synchronized long getDroppedLate() {
+        return _droppedLate;
+    }
+
+    /**
+     * Returns the number of data points that were not aggregated because their window started before the aggregator or was still in progress when
+     * it closed.
+     *
+     * @return  The number of data points of partial windows.
+     */
+    synchronized long getDroppedPartial() {
+        return _droppedPartial;
+    }
+
+    private void _add(int slot, long windowStart, double value, long now, List<Metric> rollups) {
+        if (windowStart + _intervals[_intervalIndex[slot]].getMillis() + _graceMillis <= now) {
+            _droppedLate++;
+            return;
+        }
+        if (windowStart < _startedAt) {
+            _droppedPartial++;
+            return;
+        }
+
+        int window = slot * _windows + (int) Math.floorMod(Math.floorDiv(windowStart, _intervals[_intervalIndex[slot]].getMillis()), (long) _windows);
+
+        if (windowStart <= _windowEmitted[window]) {
+            _droppedLate++;
+            return;
+        }
+        if (_windowStart[window] != EMPTY && windowStart != _windowStart[window]) {
+            // Only data points ahead of the clock can wrap around the ring onto a window that is still open.
+            if (windowStart < _windowStart[window]) {
+                _droppedLate++;
+                return;
+            }
+            _emit(slot, window, rollups);
+        }
+        if (_windowStart[window] == EMPTY) {
+            _windowStart[window] = windowStart;
+            _count[window] = 0;
+            _sum[window] = 0;
+            _min[window] = Double.POSITIVE_INFINITY;
+            _max[window] = Double.NEGATIVE_INFINITY;
+            _openWindows[slot]++;
+        }
+        _count[window]++;
+        _sum[window] += value;
+        if (value < _min[window]) {
+            _min[window] = value;
+        }
+        if (value > _max[window]) {
+            _max[window] = value;
+        }
+    }
+
+    private void _emit(int slot, int window, List<Metric> rollups) {
+        Interval interval = _intervals[_intervalIndex[slot]];
+        long windowStart = _windowStart[window];
+
+        rollups.add(_rollup(slot, interval, Statistic.SUM, windowStart, _sum[window]));
+        rollups.add(_rollup(slot, interval, Statistic.COUNT, windowStart, _count[window]));
+        rollups.add(_rollup(slot, interval, Statistic.MIN, windowStart, _min[window]));
+        rollups.add(_rollup(slot, interval, Statistic.MAX, windowStart, _max[window]));
+        rollups.add(_rollup(slot, interval, Statistic.AVG, windowStart, _sum[window] / _count[window]));
+        _windowEmitted[window] = windowStart;
+        _lastEmitted[slot] = Math.max(_lastEmitted[slot], windowStart);
+        _windowStart[window] = EMPTY;
+        _openWindows[slot]--;
+    }
+
+    private Metric _rollup(int slot, Interval interval, Statistic statistic, long window, double value) {
+        Metric series = _series[slot];
+        Metric rollup = new Metric(series.getScope(), MetricRollups.getRollupMetric(series.getMetric(), interval, statistic));
+
+        rollup.setNamespace(series.getNamespace());
+        rollup.setTags(series.getTags());
+        rollup.addDatapoint(window, value);
+        return rollup;
+    }
+
+    private int _slot(String key, int intervalIndex, Metric metric) {
+        String slotKey = intervalIndex + key;
+        Integer slot = _slots.get(slotKey);
+
+        if (slot != null) {
+            return slot;
+        }
+
+        int created = _freeCount > 0 ? _freeSlots[--_freeCount] : _nextSlot++;
+
+        if (created == _keys.length) {
+            _grow(created * 2);
+        }
+        _keys[created] = slotKey;
+        _series[created] = _template(metric);
+        _intervalIndex[created] = intervalIndex;
+        _openWindows[created] = 0;
+        _lastEmitted[created] = EMPTY;
+        Arrays.fill(_windowStart, created * _windows, (created + 1) * _windows, EMPTY);
+        Arrays.fill(_windowEmitted, created * _windows, (created + 1) * _windows, EMPTY);
+        _slots.put(slotKey, created);
+        return created;
+    }
+
+    private static Metric _template(Metric metric) {
+        Metric template = new Metric(metric.getScope(), metric.getMetric());
+
+        template.setNamespace(metric.getNamespace());
+        template.setTags(metric.getTags());
+        return template;
+    }
+
+    private void _grow(int capacity) {
+        _series = Arrays.copyOf(_series, capacity);
+        _keys = Arrays.copyOf(_keys, capacity);
+        _intervalIndex = Arrays.copyOf(_intervalIndex, capacity);
+        _openWindows = Arrays.copyOf(_openWindows, capacity);
+        _lastEmitted = Arrays.copyOf(_lastEmitted, capacity);
+        _windowStart = Arrays.copyOf(_windowStart, capacity * _windows);
+        _windowEmitted = Arrays.copyOf(_windowEmitted, capacity * _windows);
+        _count = Arrays.copyOf(_count, capacity * _windows);
+        _sum = Arrays.copyOf(_sum, capacity * _windows);
+        _min = Arrays.copyOf(_min, capacity * _windows);
+        _max = Arrays.copyOf(_max, capacity * _windows);
+    }
+
+    private static String _key(Metric metric) {
+        StringBuilder key = new StringBuilder();
+
+        key.append(':').append(metric.getNamespace()).append(':').append(metric.getScope()).append(':').append(metric.getMetric());
+        for (Map.Entry<String, String> tag : metric.getTags().entrySet()) {
+            key.append(',').append(tag.getKey()).append('=').append(tag.getValue());
+        }
+        return key.toString();
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -27,8 +27,9 @@ public class AsyncMetricService extends DefaultMetricService {
     @Inject
     protected AsyncMetricService(MonitorService monitorService, Provider<MetricReader<Metric>> metricsprovider,
                                  Provider<MetricReader<MetricQuery>> queryprovider,
-                                 BatchService batchService, MetricQueryProcessor queryProcessor, SystemConfiguration config) {
-        super(monitorService, queryProcessor, metricsprovider, queryprovider, config);
+                                 BatchService batchService, MetricQueryProcessor queryProcessor, SystemConfiguration config,
+                                 QueryAdmissionController admissionController) {
+        super(monitorService, queryProcessor, metricsprovider, queryprovider, config, admissionController);
         _batchService = batchService;
     }
 
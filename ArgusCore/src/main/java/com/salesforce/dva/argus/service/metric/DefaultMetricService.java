@@ -47,6 +47,10 @@ import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemException;
 import com.salesforce.dva.argus.util.QueryContext;
 import com.salesforce.dva.argus.util.QueryContextHolder;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
+import com.salesforce.dva.argus.util.RequestContext;
+import com.salesforce.dva.argus.util.RequestContextHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +85,7 @@ public class DefaultMetricService extends DefaultService implements MetricServic
 	private final Provider<MetricReader<MetricQuery>> _metricReaderProviderForQueries;
 	private final SystemConfiguration _configuration;
 	private MetricQueryProcessor _queryProcessor;
+	private final QueryAdmissionController _admissionController;
 	private String dcListRegex;
 	private Double DOUBLE_ZERO=0.0d;
 
@@ -94,10 +99,11 @@ public class DefaultMetricService extends DefaultService implements MetricServic
 	 * @param  metricsprovider  The metric reader provider used to perform metric operations.  Cannot be null.
 	 * @param  queryprovider    The metric reader provider used to construct metric queries without fetching data. Cannot be null.
 	 * @param  config           The system configuration.  Cannot be null.
+	 * @param  admissionController  The controller used to admit expressions based on their estimated cost. May be null.
 	 */
 	@Inject
 	public DefaultMetricService(MonitorService monitorService, MetricQueryProcessor queryProcessor, Provider<MetricReader<Metric>> metricsprovider,
-			Provider<MetricReader<MetricQuery>> queryprovider, SystemConfiguration config) {
+			Provider<MetricReader<MetricQuery>> queryprovider, SystemConfiguration config, QueryAdmissionController admissionController) {
 		super(config);
 		requireArgument(monitorService != null, "Monitor service cannot be null.");
 		_monitorService = monitorService;
@@ -105,6 +111,7 @@ public class DefaultMetricService extends DefaultService implements MetricServic
 		_metricReaderProviderForQueries = queryprovider;
 		_configuration = config;
 		_queryProcessor = queryProcessor;
+		_admissionController = admissionController;
 		dcListRegex = _configuration.getValue(com.salesforce.dva.argus.system.SystemConfiguration.Property.DC_LIST).replaceAll(",", "|");
 	}
 
@@ -134,41 +141,92 @@ public class DefaultMetricService extends DefaultService implements MetricServic
 		SystemAssert.requireArgument(MetricReader.isValid(expressions), "Illegal metric expression found: " + expressions);
 
 		final long start = System.currentTimeMillis();
+		MetricQueryResult queryResult = _evaluate(_parse(expressions, relativeTo), relativeTo, null);
+
+		final long time = System.currentTimeMillis() - start;
+		_monitorService.modifyCounter(Counter.METRICS_GETMETRICS_LATENCY, time, null);
+		_monitorService.modifyCounter(Counter.METRICS_GETMETRICS_COUNT, expressions.size(), null);
+		return queryResult;
+	}
+
+	@Override
+	public void getMetrics(Map<String, List<String>> expressionGroups, long relativeTo, MetricQueryResultHandler handler) {
+		requireNotDisposed();
+		requireArgument(expressionGroups != null, "Expression groups cannot be null.");
+		requireArgument(handler != null, "Result handler cannot be null.");
+
+		// Sub-expressions shared by the groups are evaluated once and reused for the remaining groups.
+		Map<String, MetricQueryResult> evaluated = new HashMap<>();
+
+		for (Entry<String, List<String>> group : expressionGroups.entrySet()) {
+			final long start = System.currentTimeMillis();
+			MetricQueryResult queryResult;
+
+			try {
+				SystemAssert.requireArgument(MetricReader.isValid(group.getValue()), "Illegal metric expression found: " + group.getValue());
+				queryResult = _evaluate(_parse(group.getValue(), relativeTo), relativeTo, evaluated);
+			} catch (RuntimeException ex) {
+				_logger.debug("Failed to evaluate expressions of group {}", group.getKey(), ex);
+				handler.onError(group.getKey(), ex);
+				continue;
+			}
+			_monitorService.modifyCounter(Counter.METRICS_GETMETRICS_LATENCY, System.currentTimeMillis() - start, null);
+			_monitorService.modifyCounter(Counter.METRICS_GETMETRICS_COUNT, group.getValue().size(), null);
+			handler.onResult(group.getKey(), queryResult);
+		}
+	}
+
+	private List<QueryContext> _parse(List<String> expressions, long relativeTo) {
 		MetricReader<Metric> reader = _metricReaderProviderForMetrics.get();
-		MetricQueryResult queryResult = new MetricQueryResult();
-		try {
+		List<QueryContext> contexts = new ArrayList<>(expressions.size());
+		try (QueryTrace.Span span = QueryTrace.startSpan(Stage.PARSE)) {
 			for (String expression : expressions) {
 				_logger.debug("Reading metric for expression {}", expression);
 				QueryContextHolder currCtxHolder = new QueryContextHolder();
 				reader.parse(expression, relativeTo, Metric.class, currCtxHolder, true);
-				_queryProcessor.mergeQueryResults(queryResult, _queryProcessor.evaluateQuery(currCtxHolder.getCurrentQueryContext(), relativeTo));
+				contexts.add(currCtxHolder.getCurrentQueryContext());
 			}
 		} catch (ParseException ex) {
 			throw new SystemException("Failed to parse the given expression", ex);
 		}
-		// Removing metrics which has no datapoints and handle Default TSDB min value
-		List<Metric> metrics = queryResult.getMetricsList();
-		if (metrics!=null) {
-			Iterator<Metric> metricIterator = metrics.iterator();
-			while (metricIterator.hasNext()) {
-				Metric metric = metricIterator.next();
-				if (metric.getDatapoints()==null || metric.getDatapoints().size() == 0) {
-					metricIterator.remove();
-				}else if(metric.getDatapoints().values().contains(Double.MIN_VALUE)) {
-					metric.setDatapoints(setMinValuesToZero(metric.getDatapoints()));
+		return contexts;
+	}
+
+	private MetricQueryResult _evaluate(List<QueryContext> contexts, long relativeTo, Map<String, MetricQueryResult> evaluated) {
+		MetricQueryResult queryResult = new MetricQueryResult();
+
+		// Expressions are estimated and admitted before any data is read, so that expensive requests are rejected or queued up front.
+		QueryAdmissionController.Admission admission = _admissionController == null ? null : _admissionController.admit(_getUserName(), contexts);
+		long datapointReads = 0;
+		try {
+			for (QueryContext context : contexts) {
+				_queryProcessor.mergeQueryResults(queryResult, _queryProcessor.evaluateQuery(context, relativeTo, evaluated));
+			}
+			// Removing metrics which has no datapoints and handle Default TSDB min value
+			List<Metric> metrics = queryResult.getMetricsList();
+			if (metrics!=null) {
+				Iterator<Metric> metricIterator = metrics.iterator();
+				while (metricIterator.hasNext()) {
+					Metric metric = metricIterator.next();
+					if (metric.getDatapoints()==null || metric.getDatapoints().size() == 0) {
+						metricIterator.remove();
+					}else if(metric.getDatapoints().values().contains(Double.MIN_VALUE)) {
+						metric.setDatapoints(setMinValuesToZero(metric.getDatapoints()));
+					}
 				}
+				queryResult.setMetricsList(metrics);
+			}
+			datapointReads = _getDatapointsAcrossMetrics(queryResult.getMetricsList());
+		} finally {
+			if (admission != null) {
+				_admissionController.release(admission, datapointReads);
 			}
-			queryResult.setMetricsList(metrics);
 		}
-		
-		_monitorService.modifyCounter(Counter.DATAPOINT_READS, _getDatapointsAcrossMetrics(queryResult.getMetricsList()), null);
+
+		_monitorService.modifyCounter(Counter.DATAPOINT_READS, datapointReads, null);
 		queryResult.setExpandedTimeSeriesRange(QueryTimeSeriesExpansion.getExpandedTimeSeriesRange(queryResult.getNumTSDBResults()));
 		queryResult.setQueryStartTimeWindow(QueryStartTimeWindow.getWindow(relativeTo - queryResult.getQueryStartTimeMillis()));
 		queryResult.setQueryTimeWindow(QueryTimeWindow.getWindow(queryResult.getQueryTimeRangeInMillis()));
-
-		final long time = System.currentTimeMillis() - start;
-		_monitorService.modifyCounter(Counter.METRICS_GETMETRICS_LATENCY, time, null);
-		_monitorService.modifyCounter(Counter.METRICS_GETMETRICS_COUNT, expressions.size(), null);
 		return queryResult;
 	}
 
@@ -257,6 +315,12 @@ public class DefaultMetricService extends DefaultService implements MetricServic
 		return dataPointsSize;
 	}
 
+	private String _getUserName() {
+		RequestContext context = RequestContextHolder.getRequestContext();
+
+		return context == null ? null : context.getUserName();
+	}
+
 	private String getMatchedDCAgainstRegex(String scope, String regex) {
 
 		if(scope == null || scope.isEmpty()) {
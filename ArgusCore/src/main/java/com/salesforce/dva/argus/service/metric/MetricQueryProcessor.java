@@ -17,15 +17,21 @@ import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.util.QueryContext;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
 import com.salesforce.dva.argus.util.TSDBQueryExpression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /*
  * This class has methods which are used to evaluate the metric query expression once it is parsed
@@ -42,9 +48,21 @@ public class MetricQueryProcessor {
 
     private QueryStoreService _queryStoreService;
 
+    private QueryAdmissionController _admissionController;
+
     private TransformFactory _factory;
+
+    private List<MetricRollups.Interval> _rollupIntervals;
+
+    private long _rollupAvailableFrom;
+
+    private long _rollupLagMillis;
     
     private static final String HOSTNAME;
+
+    private static final String ROLLUP_QUERIES_COUNTER = "metric.query.rollup.routed";
+
+    private static final String SHARED_SUBEXPRESSIONS_COUNTER = "metric.query.shared.subexpressions";
     
     static {
         HOSTNAME = SystemConfiguration.getHostname();
@@ -52,19 +70,48 @@ public class MetricQueryProcessor {
 
 
     @Inject
-    public MetricQueryProcessor(TSDBService tsdbService, DiscoveryService discoveryService, MonitorService monitorService, TransformFactory factory, QueryStoreService queryStoreService) {
+    public MetricQueryProcessor(TSDBService tsdbService, DiscoveryService discoveryService, MonitorService monitorService, TransformFactory factory, QueryStoreService queryStoreService, SystemConfiguration config,
+            QueryAdmissionController admissionController) {
         _tsdbService = tsdbService;
         _discoveryService = discoveryService;
         _monitorService=monitorService;
         _queryStoreService=queryStoreService;
         _factory = factory;
+        _admissionController = admissionController;
+        if (Boolean.parseBoolean(config.getValue(Property.ROLLUP_QUERY_ENABLED.getName(), Property.ROLLUP_QUERY_ENABLED.getDefaultValue()))) {
+            _rollupIntervals = MetricRollups.parseIntervals(config.getValue(Property.ROLLUP_QUERY_INTERVALS.getName(), Property.ROLLUP_QUERY_INTERVALS.getDefaultValue()));
+            _rollupAvailableFrom = Long.parseLong(config.getValue(Property.ROLLUP_QUERY_AVAILABLE_FROM.getName(), Property.ROLLUP_QUERY_AVAILABLE_FROM.getDefaultValue()));
+            _rollupLagMillis = Long.parseLong(config.getValue(Property.ROLLUP_QUERY_LAG_MS.getName(), Property.ROLLUP_QUERY_LAG_MS.getDefaultValue()));
+        }
     }
 
     public MetricQueryResult evaluateQuery(QueryContext context, long relativeTo){
+        return evaluateQuery(context, relativeTo, null);
+    }
+
+    /**
+     * Evaluates a parsed expression, reusing the results of identical sub-expressions evaluated earlier with the same result map. This allows
+     * the expressions of several charts to be evaluated as one graph in which shared series and transforms are computed only once. Since
+     * transforms may modify their input, cached results are copied on the way in and out.
+     *
+     * @param   context     The root of the parsed expression. Cannot be null.
+     * @param   relativeTo  The time the expression is relative to.
+     * @param   evaluated   The results of the sub-expressions evaluated so far keyed by their canonical form, or null to disable reuse.
+     *
+     * @return  The query result.
+     */
+    public MetricQueryResult evaluateQuery(QueryContext context, long relativeTo, Map<String, MetricQueryResult> evaluated) {
+        String key = evaluated == null ? null : getCanonicalKey(context);
+
+        if (key != null && evaluated.containsKey(key)) {
+            _monitorService.modifyCustomCounter(SHARED_SUBEXPRESSIONS_COUNTER, 1, new HashMap<>());
+            return copyQueryResult(evaluated.get(key));
+        }
+
         MetricQueryResult queryResult = new MetricQueryResult();
         if(context.getChildContexts()!=null && context.getChildContexts().size()!=0) {
             for(QueryContext childCtx : context.getChildContexts()) {
-                mergeQueryResults(queryResult, evaluateQuery(childCtx, relativeTo));
+                mergeQueryResults(queryResult, evaluateQuery(childCtx, relativeTo, evaluated));
             }
         }
 
@@ -86,9 +133,70 @@ public class MetricQueryProcessor {
         queryResult.setExpandedTimeSeriesRange(QueryTimeSeriesExpansion.getExpandedTimeSeriesRange(queryResult.getNumTSDBResults()));
         queryResult.setQueryTimeWindow(QueryTimeWindow.getWindow(queryResult.getQueryTimeRangeInMillis()));
         queryResult.setQueryStartTimeWindow(QueryStartTimeWindow.getWindow(relativeTo - queryResult.getQueryStartTimeMillis()));
+        if (key != null) {
+            evaluated.put(key, copyQueryResult(queryResult));
+        }
         return queryResult;
     }
 
+    /**
+     * Returns a string that is equal for structurally identical expressions, i.e. expressions applying the same transforms with the same
+     * constants to the same TSDB queries over the same absolute time ranges.
+     *
+     * @param   context  The root of the parsed expression. Cannot be null.
+     *
+     * @return  The canonical form of the expression.
+     */
+    static String getCanonicalKey(QueryContext context) {
+        StringBuilder key = new StringBuilder();
+
+        _appendCanonicalKey(context, key);
+        return key.toString();
+    }
+
+    private static void _appendCanonicalKey(QueryContext context, StringBuilder key) {
+        if (context.getTransform() != null) {
+            key.append(context.getTransform().name());
+        }
+        key.append('(');
+        if (context.getChildContexts() != null) {
+            for (QueryContext child : context.getChildContexts()) {
+                _appendCanonicalKey(child, key);
+                key.append(',');
+            }
+        }
+
+        TSDBQueryExpression expression = context.getExpression();
+
+        if (expression != null) {
+            key.append(expression.getStartTimestamp()).append(':').append(expression.getEndTimestamp()).append(':')
+                .append(expression.getNamespace()).append(':').append(expression.getScope()).append(':').append(expression.getMetric())
+                .append(expression.getTags() == null ? "{}" : new TreeMap<>(expression.getTags())).append(':')
+                .append(expression.getAggregator()).append(':').append(expression.getDownsampler()).append(':')
+                .append(expression.getDownsamplingPeriod()).append(':').append(Arrays.toString(expression.getPercentile())).append(':')
+                .append(expression.isShowHistogramBuckets());
+        }
+        if (context.getConstants() != null && !context.getConstants().isEmpty()) {
+            key.append('#').append(context.getConstants());
+        }
+        key.append(')');
+    }
+
+    private MetricQueryResult copyQueryResult(MetricQueryResult source) {
+        MetricQueryResult copy = new MetricQueryResult();
+        List<Metric> metrics = new ArrayList<>(source.getMetricsList().size());
+
+        mergeQueryResults(copy, source);
+        for (Metric metric : source.getMetricsList()) {
+            metrics.add(new Metric(metric));
+        }
+        copy.setMetricsList(metrics);
+        copy.setExpandedTimeSeriesRange(source.getExpandedTimeSeriesRange());
+        copy.setQueryTimeWindow(source.getQueryTimeWindow());
+        copy.setQueryStartTimeWindow(source.getQueryStartTimeWindow());
+        return copy;
+    }
+
     public void mergeQueryResults(MetricQueryResult parentResult, MetricQueryResult childResult) {
         parentResult.getMetricsList().addAll(childResult.getMetricsList());
         parentResult.setNumTSDBResults(parentResult.getNumTSDBResults() + childResult.getNumTSDBResults());
@@ -137,7 +245,10 @@ public class MetricQueryProcessor {
 
 
         MetricQuery query = convertTSDBQueryToMetricQuery(expression);
-        List<MetricQuery> queries = _discoveryService.getMatchingQueries(query);
+        List<MetricQuery> queries;
+        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.DISCOVERY)) {
+            queries = _discoveryService.getMatchingQueries(query);
+        }
 
         if (queries.size() == 0) { // No metrics inflow to argus in last DEFAULT_RETENTION_DISCOVERY_DAYS days. Save the raw query processed within inBoundMetricQuery.
             queryResult.addInboundMetricQuery(query);
@@ -157,11 +268,7 @@ public class MetricQueryProcessor {
         {
             logger.warn("Inserting Queries to QueryStore failed due to "+e);
         }
-        List<Metric> metrics = new ArrayList<Metric>();
-        Map<MetricQuery, List<Metric>> metricsMap = _tsdbService.getMetrics(queries);
-        for(List<Metric> m : metricsMap.values()) {
-            metrics.addAll(m);
-        }
+        List<Metric> metrics = getMetrics(queries);
         Collections.sort(metrics);
         queryResult.setMetricsList(metrics);
         Long startTimestamp = expression.getStartTimestamp();
@@ -172,15 +279,59 @@ public class MetricQueryProcessor {
             queryResult.setNumDiscoveryQueries(1);
         }
         queryResult.setNumTSDBResults(metrics.size());
+        _admissionController.recordCardinality(expression, metrics.size());
 
         final long time = System.currentTimeMillis() - start;
         _monitorService.modifyCounter(Counter.METRICQUERYPROCESSOR_EVALUATETSDBQUERY_LATENCY, time, null);
+        _monitorService.recordHistogram(Counter.METRICQUERYPROCESSOR_EVALUATETSDBQUERY_LATENCY_HISTOGRAM, time, null);
         _monitorService.modifyCounter(Counter.METRICQUERYPROCESSOR_EVALUATETSDBQUERY_COUNT, 1, null);
 
 
         return queryResult;
     }
 
+    /*
+     * Reads the metrics for the given queries. Downsampled queries that can be answered from the pre-aggregated rollup series are rewritten to
+     * read the rollups for the closed windows and the raw data only for the rest of the time range.
+     */
+    private List<Metric> getMetrics(List<MetricQuery> queries) {
+        List<Metric> metrics = new ArrayList<Metric>();
+        List<MetricQuery> tsdbQueries = new ArrayList<>(queries.size());
+        List<MetricRollups.RollupPlan> plans = new ArrayList<>();
+        long closedBefore = System.currentTimeMillis() - _rollupLagMillis;
+
+        for (MetricQuery query : queries) {
+            MetricRollups.RollupPlan plan = _rollupIntervals == null ? null : MetricRollups.plan(query, _rollupIntervals, _rollupAvailableFrom, closedBefore);
+
+            if (plan == null) {
+                tsdbQueries.add(query);
+            } else {
+                plans.add(plan);
+                tsdbQueries.addAll(plan.getQueries());
+            }
+        }
+
+        Map<MetricQuery, List<Metric>> metricsMap;
+        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.TSDB)) {
+            metricsMap = _tsdbService.getMetrics(tsdbQueries);
+        }
+        Set<MetricQuery> plannedQueries = new HashSet<>();
+
+        for (MetricRollups.RollupPlan plan : plans) {
+            metrics.addAll(plan.merge(metricsMap));
+            plannedQueries.addAll(plan.getQueries());
+        }
+        for(Map.Entry<MetricQuery, List<Metric>> entry : metricsMap.entrySet()) {
+            if (!plannedQueries.contains(entry.getKey())) {
+                metrics.addAll(entry.getValue());
+            }
+        }
+        if (!plans.isEmpty()) {
+            _monitorService.modifyCustomCounter(ROLLUP_QUERIES_COUNTER, plans.size(), new HashMap<>());
+        }
+        return metrics;
+    }
+
     /*
      * We replace the aggregator to provide a non-interpolated default behavior for MIN, MAX and SUM
      */
@@ -214,8 +365,52 @@ public class MetricQueryProcessor {
         tags.put("host", HOSTNAME);
         tags.put("transform", function.getName());
         _monitorService.modifyCounter(Counter.TRANSFORMS_EVALUATED, 1, tags);
-        List<Metric> metrics = ((constants == null || constants.isEmpty()) ? transform.transform(currentQueryContext, result) : transform.transform(currentQueryContext, result, constants));
+        List<Metric> metrics;
+        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.TRANSFORM)) {
+            metrics = ((constants == null || constants.isEmpty()) ? transform.transform(currentQueryContext, result) : transform.transform(currentQueryContext, result, constants));
+        }
         Collections.sort(metrics);
         return metrics;
     }
+
+    /**
+     * The set of implementation specific configuration properties.
+     */
+    public enum Property {
+
+        /** Enables answering downsampled queries from the pre-aggregated rollup series. */
+        ROLLUP_QUERY_ENABLED("service.property.metric.rollup.query.enabled", "false"),
+        /** The comma separated rollup intervals written by the collection service. */
+        ROLLUP_QUERY_INTERVALS("service.property.metric.rollup.query.intervals", "1m,1h"),
+        /** The time in epoch milliseconds from which rollups have been written. Queries starting earlier read the raw data. */
+        ROLLUP_QUERY_AVAILABLE_FROM("service.property.metric.rollup.query.available.from", "0"),
+        /** The time after which a closed rollup window is assumed to have been written. */
+        ROLLUP_QUERY_LAG_MS("service.property.metric.rollup.query.lag.ms", "300000");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
 }
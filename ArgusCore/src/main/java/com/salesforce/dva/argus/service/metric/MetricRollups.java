@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
+import com.salesforce.dva.argus.system.SystemException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Naming and query routing for the pre-aggregated rollup series written by the collection service. For every raw series and rollup interval the
+ * commit pipeline writes one series per statistic, named <tt>&lt;metric&gt;__rollup_&lt;interval&gt;_&lt;statistic&gt;</tt>, with the same scope,
+ * namespace and tags as the raw series and one data point per closed window stamped with the window start.
+ *
+ * <p>A downsampled query whose period is a multiple of a rollup interval can be answered from the rollup series instead of the raw data. The
+ * windows the rollups may not have been written for yet, i.e. the partial leading period and the periods that are not yet closed, are still read
+ * from the raw series so that the merged result is the same as that of the raw query.</p>
+ *
+ * <p>A window that spans a restart of the collection service has only been seen in part by either process, so no rollup is written for it and
+ * the rollup query has no data point for that window. Rollups therefore only match the raw data between restarts.</p>
+ */
+public final class MetricRollups {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    static final String ROLLUP_INFIX = "__rollup_";
+
+    //~ Constructors *********************************************************************************************************************************
+
+    private MetricRollups() { }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the name of the rollup series for a metric.
+     *
+     * @param   metric     The raw metric name. Cannot be null.
+     * @param   interval   The rollup interval. Cannot be null.
+     * @param   statistic  The rollup statistic. Cannot be null.
+     *
+     * @return  The rollup metric name.
+     */
+    public static String getRollupMetric(String metric, Interval interval, Statistic statistic) {
+        return metric + ROLLUP_INFIX + interval.getName() + "_" + statistic.name().toLowerCase();
+    }
+
+    /**
+     * Indicates whether a metric is a rollup series.
+     *
+     * @param   metric  The metric name.
+     *
+     * @return  True if the metric is a rollup series.
+     */
+    public static boolean isRollupMetric(String metric) {
+        return metric != null && metric.contains(ROLLUP_INFIX);
+    }
+
+    /**
+     * Parses a comma separated list of rollup interval names, e.g. <tt>1m,1h</tt>.
+     *
+     * @param   value  The interval names. Cannot be null.
+     *
+     * @return  The intervals in ascending order.
+     *
+     * @throws  SystemException  If an interval name is not recognized.
+     */
+    public static List<Interval> parseIntervals(String value) {
+        requireArgument(value != null, "Rollup intervals cannot be null.");
+
+        List<Interval> intervals = new ArrayList<>();
+
+        for (String name : value.split(",")) {
+            if (!name.trim().isEmpty()) {
+                Interval interval = Interval.fromName(name.trim());
+
+                if (!intervals.contains(interval)) {
+                    intervals.add(interval);
+                }
+            }
+        }
+        Collections.sort(intervals);
+        return intervals;
+    }
+
+    /**
+     * Plans a query against the rollup series.
+     *
+     * @param   query          The raw query. Cannot be null.
+     * @param   intervals      The rollup intervals being written. Cannot be null.
+     * @param   availableFrom  The time from which rollups have been written.
+     * @param   closedBefore   The time before which rollup windows are known to have been written.
+     *
+     * @return  The plan, or null if the query cannot be answered from the rollups.
+     */
+    public static RollupPlan plan(MetricQuery query, List<Interval> intervals, long availableFrom, long closedBefore) {
+        requireArgument(query != null, "Query cannot be null.");
+        requireArgument(intervals != null, "Rollup intervals cannot be null.");
+
+        Long period = query.getDownsamplingPeriod();
+
+        if (query.getDownsampler() == null || period == null || period <= 0 || query.getPercentile() != null || query.getShowHistogramBuckets()
+                || isRollupMetric(query.getMetric()) || query.getStartTimestamp() < availableFrom) {
+            return null;
+        }
+        for (int i = intervals.size() - 1; i >= 0; i--) {
+            Interval interval = intervals.get(i);
+
+            if (period % interval.getMillis() != 0) {
+                continue;
+            }
+
+            Statistic statistic = _getStatistic(query.getDownsampler(), period == interval.getMillis());
+
+            if (statistic == null) {
+                continue;
+            }
+
+            long start = query.getStartTimestamp();
+            long rollupStart = ((start + period - 1) / period) * period;
+            long rollupEnd = (Math.min(closedBefore, query.getEndTimestamp() + 1) / period) * period;
+
+            if (rollupEnd <= rollupStart) {
+                return null;
+            }
+
+            MetricQuery rollup = _copy(query, getRollupMetric(query.getMetric(), interval, statistic), rollupStart, rollupEnd - 1);
+
+            // Counts are stored per window, so the count over a period is the sum of the window counts.
+            rollup.setDownsampler(statistic == Statistic.COUNT ? Aggregator.SUM : query.getDownsampler());
+
+            MetricQuery head = rollupStart > start ? _copy(query, query.getMetric(), start, rollupStart - 1) : null;
+            MetricQuery tail = rollupEnd <= query.getEndTimestamp() ? _copy(query, query.getMetric(), rollupEnd, query.getEndTimestamp()) : null;
+
+            return new RollupPlan(query, rollup, head, tail);
+        }
+        return null;
+    }
+
+    private static Statistic _getStatistic(Aggregator downsampler, boolean singleWindow) {
+        switch (downsampler) {
+            case MIN:
+            case IMIN:
+            case MIMMIN:
+                return Statistic.MIN;
+            case MAX:
+            case IMAX:
+            case MIMMAX:
+                return Statistic.MAX;
+            case SUM:
+            case ISUM:
+            case ZIMSUM:
+                return Statistic.SUM;
+            case COUNT:
+                return Statistic.COUNT;
+            case AVG:
+                // An average of averages is only exact when every period covers a single window.
+                return singleWindow ? Statistic.AVG : null;
+            default:
+                return null;
+        }
+    }
+
+    private static MetricQuery _copy(MetricQuery query, String metric, long start, long end) {
+        MetricQuery copy = new MetricQuery(query.getScope(), metric, query.getTags(), start, end);
+
+        copy.setNamespace(query.getNamespace());
+        copy.setAggregator(query.getAggregator());
+        copy.setDownsampler(query.getDownsampler());
+        copy.setDownsamplingPeriod(query.getDownsamplingPeriod());
+        copy.setMetricQueryContext(query.getMetricQueryContext());
+        return copy;
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The rollup intervals.
+     */
+    public enum Interval {
+
+        /** One minute windows. */
+        ONE_MINUTE("1m", 60000L),
+        /** One hour windows. */
+        ONE_HOUR("1h", 3600000L);
+
+        private final String _name;
+        private final long _millis;
+
+        private Interval(String name, long millis) {
+            _name = name;
+            _millis = millis;
+        }
+
+        /**
+         * Returns the interval for a name.
+         *
+         * @param   name  The interval name, e.g. <tt>1h</tt>.
+         *
+         * @return  The interval.
+         *
+         * @throws  SystemException  If the name is not recognized.
+         */
+        public static Interval fromName(String name) {
+            for (Interval interval : Interval.values()) {
+                if (interval._name.equals(name)) {
+                    return interval;
+                }
+            }
+            throw new SystemException("Unsupported rollup interval: " + name);
+        }
+
+        /**
+         * Returns the interval name used in rollup metric names.
+         *
+         * @return  The interval name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the interval length.
+         *
+         * @return  The interval length in milliseconds.
+         */
+        public long getMillis() {
+            return _millis;
+        }
+    }
+
+    /**
+     * The statistics kept for every rollup window.
+     */
+    public enum Statistic {
+
+        SUM,
+        COUNT,
+        MIN,
+        MAX,
+        AVG
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The queries that answer a raw query from the rollup series, together with the raw queries for the leading and trailing parts of the
+     * time range that are not covered by closed rollup windows.
+     */
+    public static final class RollupPlan {
+
+        private final MetricQuery _query;
+        private final MetricQuery _rollupQuery;
+        private final MetricQuery _headQuery;
+        private final MetricQuery _tailQuery;
+
+        RollupPlan(MetricQuery query, MetricQuery rollupQuery, MetricQuery headQuery, MetricQuery tailQuery) {
+            _query = query;
+            _rollupQuery = rollupQuery;
+            _headQuery = headQuery;
+            _tailQuery = tailQuery;
+        }
+
+        /**
+         * Returns the queries to run.
+         *
+         * @return  The rollup query followed by the raw head and tail queries, if any.
+         */
+        public List<MetricQuery> getQueries() {
+            List<MetricQuery> queries = new ArrayList<>(3);
+
+            queries.add(_rollupQuery);
+            if (_headQuery != null) {
+                queries.add(_headQuery);
+            }
+            if (_tailQuery != null) {
+                queries.add(_tailQuery);
+            }
+            return queries;
+        }
+
+        /**
+         * Merges the results of the planned queries into the result of the raw query. Rollup series are renamed back to the raw metric name and
+         * the head and tail data points are added to the series with the same tags.
+         *
+         * @param   results  The results of the planned queries. Cannot be null.
+         *
+         * @return  The merged series.
+         */
+        public List<Metric> merge(Map<MetricQuery, List<Metric>> results) {
+            Map<Map<String, String>, Metric> merged = new LinkedHashMap<>();
+
+            for (MetricQuery query : getQueries()) {
+                List<Metric> metrics = results.get(query);
+
+                if (metrics == null) {
+                    continue;
+                }
+                for (Metric metric : metrics) {
+                    Metric existing = merged.get(metric.getTags());
+
+                    if (existing == null) {
+                        Metric renamed = new Metric(metric);
+
+                        renamed.setMetric(_query.getMetric());
+                        renamed.setQuery(_query);
+                        merged.put(metric.getTags(), renamed);
+                    } else {
+                        existing.addDatapoints(metric.getDatapoints());
+                    }
+                }
+            }
+            return new ArrayList<>(merged.values());
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.MonitorService.Counter;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionException.Reason;
+import com.salesforce.dva.argus.service.metric.QueryCostEstimator.Estimate;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
+import com.salesforce.dva.argus.util.QueryContext;
+import com.salesforce.dva.argus.util.TSDBQueryExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.MessageFormat;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Admits metric expressions for evaluation based on their estimated cost. Expressions whose estimated cost exceeds the per query budget are
+ * rejected before any data is read. The remaining expressions share a budget of in flight cost: an expression waits until the cost of the
+ * expressions being evaluated leaves room for it, and waiting expressions are admitted in weighted fair queuing order, so that a user issuing
+ * many expensive queries does not delay the queries of other users.
+ *
+ * <p>Each user is assigned a weight, 1 unless configured otherwise. A waiting expression is tagged with a virtual finish time equal to the later
+ * of the current virtual time and the finish time of the previous expression of the same user, plus its cost divided by the user weight.
+ * Expressions are admitted in ascending order of their finish times.</p>
+ */
+@Singleton
+public class QueryAdmissionController {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final int MAX_IDLE_USERS = 1024;
+    private static final String UNKNOWN_USER = "unknown";
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Logger _logger = LoggerFactory.getLogger(QueryAdmissionController.class);
+    private final MonitorService _monitorService;
+    private final QueryCostEstimator _estimator;
+    private final boolean _enabled;
+    private final long _maxQueryCost;
+    private final long _capacity;
+    private final long _queueTimeoutMillis;
+    private final Map<String, Double> _userWeights;
+    private final Map<String, Double> _lastFinish = new HashMap<>();
+    private final PriorityQueue<Admission> _waiting = new PriorityQueue<>(
+        Comparator.comparingDouble((Admission admission) -> admission._finish).thenComparingLong(admission -> admission._sequence));
+    private double _virtualTime = 0;
+    private long _inFlight = 0;
+    private long _sequence = 0;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new QueryAdmissionController object.
+     *
+     * @param  config          The system configuration. Cannot be null.
+     * @param  monitorService  The monitor service used to export estimated and actual costs. Cannot be null.
+     */
+    @Inject
+    public QueryAdmissionController(SystemConfiguration config, MonitorService monitorService) {
+        requireArgument(config != null, "System configuration cannot be null.");
+        requireArgument(monitorService != null, "Monitor service cannot be null.");
+        _monitorService = monitorService;
+        _enabled = Boolean.parseBoolean(config.getValue(Property.ADMISSION_ENABLED.getName(), Property.ADMISSION_ENABLED.getDefaultValue()));
+        _maxQueryCost = Long.parseLong(config.getValue(Property.ADMISSION_MAX_QUERY_COST.getName(), Property.ADMISSION_MAX_QUERY_COST.getDefaultValue()));
+        _capacity = Long.parseLong(config.getValue(Property.ADMISSION_CAPACITY.getName(), Property.ADMISSION_CAPACITY.getDefaultValue()));
+        _queueTimeoutMillis = Long.parseLong(config.getValue(Property.ADMISSION_QUEUE_TIMEOUT_MS.getName(),
+                Property.ADMISSION_QUEUE_TIMEOUT_MS.getDefaultValue()));
+        _userWeights = _parseWeights(config.getValue(Property.ADMISSION_USER_WEIGHTS.getName(), Property.ADMISSION_USER_WEIGHTS.getDefaultValue()));
+        _estimator = new QueryCostEstimator(
+                Long.parseLong(config.getValue(Property.ADMISSION_WILDCARD_SERIES.getName(), Property.ADMISSION_WILDCARD_SERIES.getDefaultValue())),
+                Long.parseLong(config.getValue(Property.ADMISSION_CARDINALITY_CACHE_SIZE.getName(),
+                        Property.ADMISSION_CARDINALITY_CACHE_SIZE.getDefaultValue())),
+                Long.parseLong(config.getValue(Property.ADMISSION_CARDINALITY_TTL_MS.getName(), Property.ADMISSION_CARDINALITY_TTL_MS.getDefaultValue())));
+        requireArgument(_maxQueryCost > 0 && _capacity > 0, "Query cost budgets must be greater than zero.");
+        requireArgument(_queueTimeoutMillis >= 0, "Queue timeout cannot be negative.");
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Indicates whether admission control is enabled.
+     *
+     * @return  True if expressions are estimated and admitted.
+     */
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Estimates the cost of the parsed expressions of a request and waits until they can be evaluated. Every admission must be released once the
+     * expressions have been evaluated.
+     *
+     * @param   user      The user issuing the request. May be null.
+     * @param   contexts  The parsed expressions. Cannot be null.
+     *
+     * @return  The admission, or null if admission control is disabled.
+     *
+     * @throws  QueryAdmissionException  If the estimated cost exceeds the per query budget or the expressions could not be admitted in time.
+     */
+    public Admission admit(String user, List<QueryContext> contexts) {
+        requireArgument(contexts != null, "Query contexts cannot be null.");
+        if (!_enabled) {
+            return null;
+        }
+
+        Estimate estimate = new Estimate();
+
+        for (QueryContext context : contexts) {
+            estimate.add(_estimator.estimate(context));
+        }
+
+        String owner = user == null ? UNKNOWN_USER : user;
+        long cost = Math.max(1, estimate.getCost());
+
+        _monitorService.modifyCounter(Counter.QUERY_COST_ESTIMATED_DATAPOINTS, estimate.getDatapoints(), null);
+        if (cost > _maxQueryCost) {
+            _reject(owner, Reason.OVER_BUDGET);
+            throw new QueryAdmissionException(Reason.OVER_BUDGET, MessageFormat.format(
+                    "Your query is estimated to read {0} datapoints at a cost of {1}, which exceeds the allowed cost of {2}. Please reduce the time "
+                    + "window, narrow your wildcard search or use fewer transforms.", estimate.getDatapoints(), cost, _maxQueryCost));
+        }
+        return _enqueue(owner, cost, estimate.getDatapoints());
+    }
+
+    /**
+     * Releases the budget held by an admission and exports the actual cost of the evaluated expressions.
+     *
+     * @param  admission         The admission to release. May be null.
+     * @param  actualDatapoints  The number of data points the expressions returned.
+     */
+    public void release(Admission admission, long actualDatapoints) {
+        if (admission == null) {
+            return;
+        }
+        synchronized (this) {
+            if (admission._released) {
+                return;
+            }
+            admission._released = true;
+            _inFlight -= admission._cost;
+            notifyAll();
+        }
+        _monitorService.modifyCounter(Counter.QUERY_COST_ACTUAL_DATAPOINTS, actualDatapoints, null);
+    }
+
+    /**
+     * Records the number of series an expression matched, to be used when estimating later evaluations of the same expression.
+     *
+     * @param  expression  The evaluated expression. Cannot be null.
+     * @param  series      The number of series read.
+     */
+    public void recordCardinality(TSDBQueryExpression expression, int series) {
+        if (_enabled) {
+            _estimator.recordCardinality(expression, series);
+        }
+    }
+
+    /**
+     * Returns the total cost of the admitted expressions that have not been released yet.
+     *
+     * @return  The in flight cost.
+     */
+    synchronized long getInFlightCost() {
+        return _inFlight;
+    }
+
+    /**
+     * Returns the number of requests waiting to be admitted.
+     *
+     * @return  The number of waiting requests.
+     */
+    synchronized int getWaitingCount() {
+        return _waiting.size();
+    }
+
+    private Admission _enqueue(String user, long cost, long datapoints) {
+        long start = System.currentTimeMillis();
+        Admission admission;
+
+        synchronized (this) {
+            double weight = _userWeights.getOrDefault(user, 1.0);
+            double begin = Math.max(_virtualTime, _lastFinish.getOrDefault(user, 0.0));
+
+            admission = new Admission(user, cost, datapoints, begin, begin + cost / weight, _sequence++);
+            _lastFinish.put(user, admission._finish);
+            _waiting.add(admission);
+
+            long deadline = start + _queueTimeoutMillis;
+
+            try {
+                while (_waiting.peek() != admission || (_inFlight > 0 && _inFlight + cost > _capacity)) {
+                    long remaining = deadline - System.currentTimeMillis();
+
+                    if (remaining <= 0) {
+                        _waiting.remove(admission);
+                        notifyAll();
+                        _reject(user, Reason.QUEUE_TIMEOUT);
+                        throw new QueryAdmissionException(Reason.QUEUE_TIMEOUT, MessageFormat.format(
+                                "Your query could not be scheduled within {0} ms because the system is busy. Please retry later.", _queueTimeoutMillis));
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException ex) {
+                _waiting.remove(admission);
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new SystemException("Interrupted while waiting for query admission.", ex);
+            }
+            _waiting.poll();
+            _inFlight += cost;
+            _virtualTime = Math.max(_virtualTime, admission._begin);
+            if (_lastFinish.size() > MAX_IDLE_USERS) {
+                _pruneIdleUsers();
+            }
+            notifyAll();
+        }
+        _monitorService.modifyCounter(Counter.QUERY_ADMISSION_WAIT_LATENCY, System.currentTimeMillis() - start, null);
+        return admission;
+    }
+
+    private void _pruneIdleUsers() {
+        for (Iterator<Double> finishes = _lastFinish.values().iterator(); finishes.hasNext();) {
+            if (finishes.next() <= _virtualTime) {
+                finishes.remove();
+            }
+        }
+    }
+
+    private void _reject(String user, Reason reason) {
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("user", user);
+        tags.put("reason", reason.name());
+        _monitorService.modifyCounter(Counter.QUERY_ADMISSION_REJECTED, 1, tags);
+        _logger.warn("Rejected query of user {}: {}", user, reason);
+    }
+
+    private static Map<String, Double> _parseWeights(String value) {
+        Map<String, Double> weights = new HashMap<>();
+
+        for (String entry : value.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] parts = entry.split(":");
+
+            requireArgument(parts.length == 2, "Invalid user weight: " + entry);
+
+            double weight = Double.parseDouble(parts[1].trim());
+
+            requireArgument(weight > 0, "User weights must be greater than zero.");
+            weights.put(parts[0].trim(), weight);
+        }
+        return weights;
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The set of implementation specific configuration properties.
+     */
+    public enum Property {
+
+        /** Enables estimating and admitting metric expressions before they are evaluated. */
+        ADMISSION_ENABLED("service.property.metric.admission.enabled", "false"),
+        /** The maximum estimated cost of the expressions of a single request. */
+        ADMISSION_MAX_QUERY_COST("service.property.metric.admission.max.query.cost", "1000000000"),
+        /** The maximum total estimated cost of the expressions being evaluated at the same time. */
+        ADMISSION_CAPACITY("service.property.metric.admission.capacity", "5000000000"),
+        /** The maximum time a request waits to be admitted. */
+        ADMISSION_QUEUE_TIMEOUT_MS("service.property.metric.admission.queue.timeout.ms", "30000"),
+        /** Comma separated user:weight pairs. Users that are not listed have weight 1. */
+        ADMISSION_USER_WEIGHTS("service.property.metric.admission.user.weights", ""),
+        /** The number of series assumed for a wildcard expression that has not been evaluated yet. */
+        ADMISSION_WILDCARD_SERIES("service.property.metric.admission.wildcard.series", "100"),
+        /** The maximum number of observed expression series counts to keep. */
+        ADMISSION_CARDINALITY_CACHE_SIZE("service.property.metric.admission.cardinality.cache.size", "100000"),
+        /** The time after which an observed expression series count is discarded. */
+        ADMISSION_CARDINALITY_TTL_MS("service.property.metric.admission.cardinality.ttl.ms", "3600000");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The budget held by admitted expressions until they are released.
+     */
+    public static final class Admission {
+
+        private final String _user;
+        private final long _cost;
+        private final long _estimatedDatapoints;
+        private final double _begin;
+        private final double _finish;
+        private final long _sequence;
+        private boolean _released;
+
+        private Admission(String user, long cost, long estimatedDatapoints, double begin, double finish, long sequence) {
+            _user = user;
+            _cost = cost;
+            _estimatedDatapoints = estimatedDatapoints;
+            _begin = begin;
+            _finish = finish;
+            _sequence = sequence;
+        }
+
+        /**
+         * Returns the user the expressions were admitted for.
+         *
+         * @return  The user.
+         */
+        public String getUser() {
+            return _user;
+        }
+
+        /**
+         * Returns the estimated cost of the admitted expressions.
+         *
+         * @return  The estimated cost.
+         */
+        public long getCost() {
+            return _cost;
+        }
+
+        /**
+         * Returns the estimated number of data points the admitted expressions read.
+         *
+         * @return  The estimated data points.
+         */
+        public long getEstimatedDatapoints() {
+            return _estimatedDatapoints;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric;
+
+/**
+ * Indicates a metric query was not admitted for evaluation.
+ */
+@SuppressWarnings("serial")
+public class QueryAdmissionException extends RuntimeException {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Reason _reason;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new QueryAdmissionException object.
+     *
+     * @param  reason  The reason the query was rejected.
+     * @param  msg     The exception message.
+     */
+    public QueryAdmissionException(Reason reason, String msg) {
+        super(msg);
+        _reason = reason;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the reason the query was rejected.
+     *
+     * @return  The reason.
+     */
+    public Reason getReason() {
+        return _reason;
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The reasons a query is rejected.
+     */
+    public enum Reason {
+
+        /** The estimated cost of the query exceeds the per query budget. */
+        OVER_BUDGET,
+        /** The query could not be admitted before the queue timeout elapsed. */
+        QUEUE_TIMEOUT
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.salesforce.dva.argus.service.SchemaService;
+import com.salesforce.dva.argus.service.metric.transform.TransformFactory.Function;
+import com.salesforce.dva.argus.util.QueryContext;
+import com.salesforce.dva.argus.util.TSDBQueryExpression;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Estimates the cost of a parsed metric expression before any data is read. The cost of a TSDB expression is the number of raw data points it
+ * scans, i.e. the estimated number of series times the number of samples in its time range. The cost of a transform is the number of data points
+ * flowing into it times a weight reflecting its complexity. The cost of an expression tree is the sum of the costs of its nodes.
+ *
+ * <p>The number of series matched by an expression is taken from the series counts observed when the same expression was last evaluated. Until an
+ * expression has been evaluated, wildcard expressions are assumed to match a configurable number of series and other expressions one series per
+ * alternative tag value.</p>
+ */
+class QueryCostEstimator {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    static final long SAMPLING_PERIOD_MILLIS = 60 * 1000L;
+    private static final Map<Function, Double> TRANSFORM_WEIGHTS = new EnumMap<>(Function.class);
+
+    static {
+        for (Function function : new Function[] { Function.SORT, Function.HIGHEST, Function.LOWEST, Function.PERCENTILE, Function.DEVIATION,
+                Function.MOVING, Function.MOVINGAVERAGE, Function.GROUPBY, Function.GROUPBYTAG, Function.INTERPOLATE }) {
+            TRANSFORM_WEIGHTS.put(function, 2.0);
+        }
+        for (Function function : new Function[] { Function.HW_FORECAST, Function.HW_DEVIATION, Function.ANOMALY_STL, Function.ANOMALY_DENSITY,
+                Function.ANOMALY_ZSCORE }) {
+            TRANSFORM_WEIGHTS.put(function, 4.0);
+        }
+        TRANSFORM_WEIGHTS.put(Function.ANOMALY_KMEANS, 8.0);
+        TRANSFORM_WEIGHTS.put(Function.ANOMALY_RPCA, 8.0);
+    }
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final long _defaultWildcardSeries;
+    private final Cache<String, Integer> _cardinalities;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new QueryCostEstimator object.
+     *
+     * @param  defaultWildcardSeries  The number of series assumed for a wildcard expression that has not been evaluated yet.
+     * @param  maxCardinalities       The maximum number of observed series counts to keep.
+     * @param  cardinalityTtlMillis   The time after which an observed series count is discarded.
+     */
+    QueryCostEstimator(long defaultWildcardSeries, long maxCardinalities, long cardinalityTtlMillis) {
+        requireArgument(defaultWildcardSeries > 0, "Default wildcard series count must be greater than zero.");
+        _defaultWildcardSeries = defaultWildcardSeries;
+        _cardinalities = CacheBuilder.newBuilder().maximumSize(maxCardinalities).expireAfterWrite(cardinalityTtlMillis, TimeUnit.MILLISECONDS).build();
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Estimates the cost of an expression tree.
+     *
+     * @param   context  The root of the parsed expression. Cannot be null.
+     *
+     * @return  The estimate.
+     */
+    Estimate estimate(QueryContext context) {
+        requireArgument(context != null, "Query context cannot be null.");
+
+        Estimate estimate = new Estimate();
+
+        _estimate(context, estimate);
+        return estimate;
+    }
+
+    /**
+     * Records the number of series an expression matched when it was evaluated.
+     *
+     * @param  expression  The evaluated expression. Cannot be null.
+     * @param  series      The number of series read.
+     */
+    void recordCardinality(TSDBQueryExpression expression, int series) {
+        _cardinalities.put(_key(expression), Math.max(series, 1));
+    }
+
+    /**
+     * Returns the weight of a transform.
+     *
+     * @param   function  The transform.
+     *
+     * @return  The cost per input data point.
+     */
+    static double getWeight(Function function) {
+        Double weight = TRANSFORM_WEIGHTS.get(function);
+
+        return weight == null ? 1.0 : weight;
+    }
+
+    private double _estimate(QueryContext context, Estimate total) {
+        double datapoints = 0;
+
+        if (context.getChildContexts() != null) {
+            for (QueryContext child : context.getChildContexts()) {
+                datapoints += _estimate(child, total);
+            }
+        }
+        if (context.getExpression() != null) {
+            double scanned = _getSeries(context.getExpression()) * _getSamples(context.getExpression());
+
+            total._datapoints += scanned;
+            total._cost += scanned;
+            datapoints += scanned;
+        }
+        if (context.getTransform() != null) {
+            total._cost += datapoints * getWeight(context.getTransform());
+        }
+        return datapoints;
+    }
+
+    private long _getSeries(TSDBQueryExpression expression) {
+        Integer observed = _cardinalities.getIfPresent(_key(expression));
+
+        if (observed != null) {
+            return observed;
+        }
+        if (SchemaService.containsWildcard(expression.getScope()) || SchemaService.containsWildcard(expression.getMetric())
+                || SchemaService.containsWildcard(expression.getNamespace())) {
+            return _defaultWildcardSeries;
+        }
+
+        long series = 1;
+
+        if (expression.getTags() != null) {
+            for (String value : expression.getTags().values()) {
+                if ("*".equals(value) || (value != null && value.contains("*"))) {
+                    return _defaultWildcardSeries;
+                }
+                series *= value == null ? 1 : value.split("\\|").length;
+            }
+        }
+        return series;
+    }
+
+    private static long _getSamples(TSDBQueryExpression expression) {
+        if (expression.getStartTimestamp() == null || expression.getEndTimestamp() == null) {
+            return 1;
+        }
+        return Math.max(1, (expression.getEndTimestamp() - expression.getStartTimestamp()) / SAMPLING_PERIOD_MILLIS);
+    }
+
+    private static String _key(TSDBQueryExpression expression) {
+        StringBuilder key = new StringBuilder();
+
+        key.append(expression.getNamespace()).append(':').append(expression.getScope()).append(':').append(expression.getMetric());
+        if (expression.getTags() != null) {
+            key.append(new TreeMap<>(expression.getTags()));
+        }
+        return key.toString();
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The estimated cost of an expression.
+     */
+    static final class Estimate {
+
+        private double _datapoints;
+        private double _cost;
+
+        /**
+         * Returns the number of raw data points the expression is expected to read.
+         *
+         * @return  The estimated data points.
+         */
+        long getDatapoints() {
+            return (long) Math.min(_datapoints, Long.MAX_VALUE);
+        }
+
+        /**
+         * Returns the estimated cost, i.e. the data points read plus the weighted data points processed by transforms.
+         *
+         * @return  The estimated cost.
+         */
+        long getCost() {
+            return (long) Math.min(_cost, Long.MAX_VALUE);
+        }
+
+        void add(Estimate other) {
+            _datapoints += other._datapoints;
+            _cost += other._cost;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
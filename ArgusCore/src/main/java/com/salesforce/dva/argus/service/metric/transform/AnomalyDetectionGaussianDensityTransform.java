@@ -62,15 +62,19 @@ public class AnomalyDetectionGaussianDensityTransform extends AnomalyDetectionGa
      * anomaly score results.
      *
      * @param value the value of the data point
-     * @return the negative log of the probability density of the data point
+     * @param mean the mean of the distribution
+     * @param variance the variance of the distribution
+     * @return the negative log of the probability density of the data point,
+     *         or NaN if the probability density underflows
      */
     @Override
-    public double calculateAnomalyScore(double value) {
+    protected double calculateAnomalyScore(double value, double mean, double variance) {
+        double deviation = value - mean;
         double probabilityDensity = (1.0/Math.sqrt(2.0 * Math.PI * variance)) *
-                Math.exp((-1.0 * Math.pow((value - mean), 2.0)) / (2.0 * variance));
+                Math.exp((-1.0 * deviation * deviation) / (2.0 * variance));
 
         if (probabilityDensity == 0.0) {
-            throw new ArithmeticException("Cannot take the log of 0.");
+            return Double.NaN;
         }
 
         /**
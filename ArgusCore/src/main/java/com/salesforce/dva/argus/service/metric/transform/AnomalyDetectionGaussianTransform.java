@@ -35,10 +35,7 @@ import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.util.QueryContext;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * Abstract class for Gaussian distribution based anomaly detection transforms.
@@ -64,77 +61,136 @@ public abstract class AnomalyDetectionGaussianTransform extends AnomalyDetection
             throw new UnsupportedOperationException("Anomaly Detection Transform can only be used with one metric.");
         }
 
-        Metric metric = metrics.get(0);
-        Map<Long, Double> metricData = metric.getDatapoints();
-        if (metricData.size() == 0) {
+        AnomalySeries series = AnomalySeries.of(metrics.get(0).getDatapoints());
+        if (series.size() == 0) {
             throw new MissingDataException("Metric must contain data points to perform transforms.");
         }
 
-        fitParameters(metricData);
-        Metric predictions = predictAnomalies(metricData);
-        Metric predictionsNormalized = normalizePredictions(predictions);
+        fitParameters(series.values);
+        double[] scores = predictAnomalies(series.values);
+        AnomalySeries.normalize(scores);
 
         List<Metric> resultMetrics = new ArrayList<>();
-        resultMetrics.add(predictionsNormalized);
+        resultMetrics.add(series.toMetric(getResultScopeName(), getResultMetricName(), scores));
         return resultMetrics;
     }
 
-    //Fits the mean and variance parameters to the data
-    private void fitParameters(Map<Long, Double> metricData) {
-        mean = getMetricMean(metricData);
-        variance = getMetricVariance(metricData);
+    //Fits the mean and variance parameters to the data in a single pass
+    private void fitParameters(double[] values) {
+        AnomalySeries.Moments moments = AnomalySeries.Moments.of(values, 0, values.length);
+        mean = moments.getMean();
+        variance = moments.getVariance();
     }
 
     /**
      * Assigns an anomaly score to each data point, indicating how likely it is
-     * to be an anomaly relative to other points.
+     * to be an anomaly relative to other points. Data points that cannot be
+     * scored get a score of NaN.
      */
-    private Metric predictAnomalies(Map<Long, Double> metricData) {
-        Metric predictions = new Metric(getResultScopeName(), getResultMetricName());
-        Map<Long, Double> predictionDatapoints = new HashMap<>();
-
-        if (variance == 0.0) {
-            /**
-             * If variance is 0, there are no anomalies.
-             * Also, using 0 for variance would cause divide by zero operations
-             * in Gaussian anomaly formulas. This condition avoids such operations.
-             */
-            for (Entry<Long, Double> entry : metricData.entrySet()) {
-                Long timestamp = entry.getKey();
-                predictionDatapoints.put(timestamp, 0.0);
+    private double[] predictAnomalies(double[] values) {
+        double[] scores = new double[values.length];
+
+        /**
+         * If variance is 0, there are no anomalies.
+         * Also, using 0 for variance would cause divide by zero operations
+         * in Gaussian anomaly formulas. This condition avoids such operations.
+         */
+        if (variance != 0.0) {
+            for (int i = 0; i < values.length; i++) {
+                scores[i] = calculateAnomalyScore(values[i], mean, variance);
             }
-        } else {
-            for (Entry<Long, Double> entry : metricData.entrySet()) {
-                Long timestamp = entry.getKey();
-                double value = entry.getValue();
-                try {
-                    double anomalyScore = calculateAnomalyScore(value);
-                    predictionDatapoints.put(timestamp, anomalyScore);
-                } catch (ArithmeticException e) {
-                    continue;
+        }
+        return scores;
+    }
+
+    /**
+     * Scores the last data point of an interval against the mean and variance
+     * of the interval, without creating a metric for the interval or modifying
+     * the fitted parameters of this transform.
+     *
+     * Since scores do not decrease with the distance from the mean, the lowest
+     * and highest scores of the interval, which the score is normalized against,
+     * are the scores of the values nearest to and farthest from the mean.
+     */
+    @Override
+    protected double calculateContextualAnomalyScore(long[] timestamps, double[] values, int from, int to) {
+        AnomalySeries.Moments moments = AnomalySeries.Moments.of(values, from, to);
+        double intervalMean = moments.getMean();
+        double intervalVariance = moments.getVariance();
+
+        if (intervalVariance == 0.0) {
+            return 0.0;
+        }
+
+        double score = calculateAnomalyScore(values[to - 1], intervalMean, intervalVariance);
+        if (Double.isNaN(score)) {
+            return score;
+        }
+
+        int nearestIndex = to - 1;
+        int farthestIndex = to - 1;
+        for (int i = from; i < to; i++) {
+            double distance = Math.abs(values[i] - intervalMean);
+            if (distance < Math.abs(values[nearestIndex] - intervalMean)) {
+                nearestIndex = i;
+            } else if (distance > Math.abs(values[farthestIndex] - intervalMean)) {
+                farthestIndex = i;
+            }
+        }
+
+        double min = calculateAnomalyScore(values[nearestIndex], intervalMean, intervalVariance);
+        double max = calculateAnomalyScore(values[farthestIndex], intervalMean, intervalVariance);
+        if (Double.isNaN(max)) {
+            //The farthest values cannot be scored, so the highest score is among the values that can
+            max = min;
+            for (int i = from; i < to; i++) {
+                double intervalScore = calculateAnomalyScore(values[i], intervalMean, intervalVariance);
+                if (intervalScore > max) {
+                    max = intervalScore;
                 }
             }
         }
 
-        predictions.setDatapoints(predictionDatapoints);
-        return predictions;
+        if (max - min == 0.0) {
+            return 0.0;
+        }
+        return (score - min) * (100.0 / (max - min));
     }
 
-    private double getMetricMean(Map<Long, Double> metricData) {
-        double sum = 0;
-        for (Double value : metricData.values()) {
-            sum += value;
-        }
-        return sum/metricData.size();
+    @Override
+    protected boolean isContextualScoringThreadSafe() {
+        return true;
     }
 
-    private double getMetricVariance(Map<Long, Double> metricData) {
-        double sumSquareDiff = 0;
-        for (Double value : metricData.values()) {
-            sumSquareDiff += Math.pow((value - mean), 2);
+    /**
+     * Calculates the anomaly score of a data point using the fitted mean and
+     * variance parameters.
+     *
+     * @param value the value of the data point
+     * @return the anomaly score of the data point
+     * @throws ArithmeticException if the data point cannot be scored
+     */
+    @Override
+    public double calculateAnomalyScore(double value) {
+        double anomalyScore = calculateAnomalyScore(value, mean, variance);
+
+        if (Double.isNaN(anomalyScore)) {
+            throw new ArithmeticException("Cannot calculate the anomaly score of " + value);
         }
-        return sumSquareDiff/metricData.size();
+        return anomalyScore;
     }
 
+    /**
+     * Calculates the anomaly score of a data point in a Gaussian distribution.
+     * The score must not decrease as the distance of the value from the mean
+     * grows.
+     *
+     * @param value the value of the data point
+     * @param mean the mean of the distribution
+     * @param variance the variance of the distribution, which is not 0
+     * @return the anomaly score of the data point, or NaN if it cannot be scored
+     */
+    protected abstract double calculateAnomalyScore(double value, double mean, double variance);
+
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -56,10 +56,12 @@ public class AnomalyDetectionGaussianZScoreTransform extends AnomalyDetectionGau
      * standard deviations the data point is away from the mean.
      *
      * @param value the value of the data point
+     * @param mean the mean of the distribution
+     * @param variance the variance of the distribution
      * @return the absolute value of the z-score of the data point
      */
     @Override
-    public double calculateAnomalyScore(double value) {
+    protected double calculateAnomalyScore(double value, double mean, double variance) {
         double zScore = (value - mean) / Math.sqrt(variance);
         //Taking absolute value for a more human-readable anomaly score
         return Math.abs(zScore);
@@ -33,8 +33,8 @@ package com.salesforce.dva.argus.service.metric.transform;
 
 import com.salesforce.dva.argus.entity.Metric;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.util.QueryContext;
@@ -55,12 +55,12 @@ import weka.core.*;
 public class AnomalyDetectionKMeansTransform extends AnomalyDetectionTransform {
 
     private int k;
-    private List<Double> metricDataValues;
+    private double[] metricDataValues;
     private Instances trainingData;
     private SimpleKMeans model;
-    private Instances clusterCentroids;
+    private double[] clusterCentroids;
     private int[] centroidAssignments;
-    private Map<Instance, Double> meanDistancesToCentroids;
+    private double[] meanDistancesToCentroids;
     private static final String RESULT_METRIC_NAME = "K-means anomaly score";
 
     @Override
@@ -68,21 +68,21 @@ public class AnomalyDetectionKMeansTransform extends AnomalyDetectionTransform {
         SystemAssert.requireArgument(k > 0, "K-means anomaly detection transform requires a positive integer " +
                                             "k constant.");
 
-        Map<Long, Double> metricData = metrics.get(0).getDatapoints();
-        metricDataValues = metricData.values().stream().collect(Collectors.toList());
-        if (metricData.size() == 0) throw new MissingDataException("Metric must contain data points to perform transforms.");
+        AnomalySeries series = AnomalySeries.of(metrics.get(0).getDatapoints());
+        metricDataValues = series.values;
+        if (series.size() == 0) throw new MissingDataException("Metric must contain data points to perform transforms.");
 
         try {
-            trainModel(metricData);
+            trainModel(metricDataValues);
         } catch (Exception e) {
             throw new UnsupportedOperationException("Cluster creation unsuccessful");
         }
 
-        Metric predictions = predictAnomalies(metricData);
-        Metric predictionsNormalized = normalizePredictions(predictions);
+        double[] scores = predictAnomalies();
+        AnomalySeries.normalize(scores);
 
         List<Metric> resultMetrics = new ArrayList<>();
-        resultMetrics.add(predictionsNormalized);
+        resultMetrics.add(series.toMetric(getResultScopeName(), getResultMetricName(), scores));
         return resultMetrics;
     }
 
@@ -104,17 +104,15 @@ public class AnomalyDetectionKMeansTransform extends AnomalyDetectionTransform {
         return transform(null, metrics);
     }
 
-    private void trainModel(Map<Long, Double> metricData) throws Exception {
+    private void trainModel(double[] values) throws Exception {
         //Model has a single metric_value attribute
         Attribute value = new Attribute("metric_value");
         FastVector attributes = new FastVector();
         attributes.addElement(value);
 
-        trainingData = new Instances("metric_value_data", attributes, 0);
-        for (Double val : metricData.values()) {
-            double[] valArray = new double[] { val };
-            Instance instance = new Instance(1.0, valArray);
-            trainingData.add(instance);
+        trainingData = new Instances("metric_value_data", attributes, values.length);
+        for (double val : values) {
+            trainingData.add(new Instance(1.0, new double[] { val }));
         }
 
         //Create and train the model
@@ -124,7 +122,11 @@ public class AnomalyDetectionKMeansTransform extends AnomalyDetectionTransform {
         model.setPreserveInstancesOrder(true);
         model.buildClusterer(trainingData);
 
-        clusterCentroids = model.getClusterCentroids();
+        Instances centroids = model.getClusterCentroids();
+        clusterCentroids = new double[centroids.numInstances()];
+        for (int i = 0; i < clusterCentroids.length; i++) {
+            clusterCentroids[i] = centroids.instance(i).value(0);
+        }
         centroidAssignments = model.getAssignments();
         setMeanDistancesToCentroids();
     }
@@ -132,49 +134,33 @@ public class AnomalyDetectionKMeansTransform extends AnomalyDetectionTransform {
     /**
      * For each cluster, caches the mean distance from data points in the
      * cluster to the cluster centroid. Mean distances are used later in
-     * anomaly score calculations.
+     * anomaly score calculations. Sums for all clusters are accumulated in
+     * a single pass over the data points.
      */
     private void setMeanDistancesToCentroids() {
-        meanDistancesToCentroids = new HashMap<>();
-        for (int i = 0; i < clusterCentroids.numInstances(); i++) {    //For each centroid
-            int countAssignedInstances = 0;
-            double sumDistancesToCentroid = 0.0;
-            Instance centroidInstance = clusterCentroids.instance(i);
-            for (int j = 0; j < trainingData.numInstances(); j++) {       //For each data point
-                 if (i == centroidAssignments[j]) {
-                     Instance valueInstance = trainingData.instance(j);
-                     double distanceToCentroid = Math.abs(valueInstance.value(0) -
-                                                    centroidInstance.value(0));
-                     sumDistancesToCentroid += distanceToCentroid;
-                     countAssignedInstances++;
-                 }
-            }
-            double meanDistanceToCentroid = sumDistancesToCentroid / countAssignedInstances;
-            meanDistancesToCentroids.put(centroidInstance, meanDistanceToCentroid);
+        meanDistancesToCentroids = new double[clusterCentroids.length];
+        int[] countAssignedInstances = new int[clusterCentroids.length];
+        for (int j = 0; j < metricDataValues.length; j++) {       //For each data point
+            int cluster = centroidAssignments[j];
+            meanDistancesToCentroids[cluster] += Math.abs(metricDataValues[j] - clusterCentroids[cluster]);
+            countAssignedInstances[cluster]++;
+        }
+        for (int i = 0; i < clusterCentroids.length; i++) {    //For each centroid
+            meanDistancesToCentroids[i] /= countAssignedInstances[i];
         }
     }
 
     /**
      * Assigns an anomaly score to each data point, indicating how likely it is
-     * to be an anomaly relative to other points.
+     * to be an anomaly relative to other points. Data points that cannot be
+     * scored get a score of NaN.
      */
-    private Metric predictAnomalies(Map<Long, Double> metricData) {
-        Metric predictions = new Metric(getResultScopeName(), getResultMetricName());
-        Map<Long, Double> predictionDatapoints = new HashMap<>();
-
-        for (Map.Entry<Long, Double> entry : metricData.entrySet()) {
-            Long timestamp = entry.getKey();
-            double value = entry.getValue();
-            try {
-                double anomalyScore = calculateAnomalyScore(value);
-                predictionDatapoints.put(timestamp, anomalyScore);
-            } catch (ArithmeticException e) {
-                continue;
-            }
+    private double[] predictAnomalies() {
+        double[] scores = new double[metricDataValues.length];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = calculateAnomalyScore(i);
         }
-
-        predictions.setDatapoints(predictionDatapoints);
-        return predictions;
+        return scores;
     }
 
     @Override
@@ -201,17 +187,29 @@ public class AnomalyDetectionKMeansTransform extends AnomalyDetectionTransform {
      */
     @Override
     public double calculateAnomalyScore(double value) {
-        int instanceIndex = metricDataValues.indexOf(value);
-        Instance valueInstance = trainingData.instance(instanceIndex);
-        //Centroid that is assigned to valueInstance
-        Instance centroidInstance = clusterCentroids.instance(centroidAssignments[instanceIndex]);
+        int instanceIndex = 0;
+        while (instanceIndex < metricDataValues.length && Double.compare(metricDataValues[instanceIndex], value) != 0) {
+            instanceIndex++;
+        }
+        SystemAssert.requireArgument(instanceIndex < metricDataValues.length, "The value must be a data point of the transformed metric.");
 
-        if (meanDistancesToCentroids.get(centroidInstance) == 0.0) {
+        double relativeDistanceToCentroid = calculateAnomalyScore(instanceIndex);
+        if (Double.isNaN(relativeDistanceToCentroid)) {
             throw new ArithmeticException("Cannot divide by 0");
         }
-
-        double distanceToCentroid = Math.abs(valueInstance.value(0) - centroidInstance.value(0));
-        double relativeDistanceToCentroid = distanceToCentroid / meanDistancesToCentroids.get(centroidInstance);
         return relativeDistanceToCentroid;
     }
+
+    //Calculates the relative distance of the data point at the given index, or NaN if its cluster has no spread
+    private double calculateAnomalyScore(int instanceIndex) {
+        //Centroid that is assigned to the data point
+        int cluster = centroidAssignments[instanceIndex];
+
+        if (meanDistancesToCentroids[cluster] == 0.0) {
+            return Double.NaN;
+        }
+
+        double distanceToCentroid = Math.abs(metricDataValues[instanceIndex] - clusterCentroids[cluster]);
+        return distanceToCentroid / meanDistancesToCentroids[cluster];
+    }
 }
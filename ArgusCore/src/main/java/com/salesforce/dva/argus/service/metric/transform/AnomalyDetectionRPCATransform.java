@@ -35,7 +35,9 @@ import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.util.QueryContext;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Anomaly detection based on the Robust Principal Component Analysis (RPCA)
@@ -54,7 +56,8 @@ import java.util.*;
 public class AnomalyDetectionRPCATransform extends AnomalyDetectionTransform {
 
     private int frequency;
-    private Long[] timestamps;
+    private AnomalySeries series;
+    private long[] timestamps;
     private double[] metricValues;
     private RPCA rpca;
     private static final String RESULT_METRIC_NAME = "RPCA anomaly score";
@@ -68,30 +71,25 @@ public class AnomalyDetectionRPCATransform extends AnomalyDetectionTransform {
         SystemAssert.requireState(constants.size() == 1, "Anomaly Detection RPCA Transform can only be used with " +
                 "one constant for the length of a season");
 
-        //Create a sorted array of the metric's timestamps
-        Map<Long, Double> completeDatapoints = metrics.get(0).getDatapoints();
-        SystemAssert.requireState(completeDatapoints.size() != 0, "Cannot transform metric with no data points.");
-        timestamps = completeDatapoints.keySet().toArray(new Long[completeDatapoints.size()]);
-        Arrays.sort(timestamps);
+        //Create sorted arrays of the metric's timestamps and values
+        series = AnomalySeries.of(metrics.get(0).getDatapoints());
+        SystemAssert.requireState(series.size() != 0, "Cannot transform metric with no data points.");
+        timestamps = series.timestamps;
 
         String seasonLengthInput = constants.get(0);
         long seasonLengthInMilliseconds = super.getTimePeriodInSeconds(seasonLengthInput) * 1000;
         frequency = calculateFrequency(seasonLengthInMilliseconds);
 
         //Array of the metric's standardized values ordered by time
-        metricValues = new double[completeDatapoints.size()];
-        for (int i = 0; i < metricValues.length; i++) {
-            Double value = completeDatapoints.get(timestamps[i]);
-            metricValues[i] = value;
-        }
+        metricValues = series.values.clone();
         standardize(metricValues);
 
         trainModel();
-        Metric predictions = predictAnomalies();
-        Metric predictionsNormalized = normalizePredictions(predictions);
+        double[] scores = predictAnomalies();
+        AnomalySeries.normalize(scores);
 
         List<Metric> resultMetrics = new ArrayList<>();
-        resultMetrics.add(predictionsNormalized);
+        resultMetrics.add(series.toMetric(getResultScopeName(), getResultMetricName(), scores));
         return resultMetrics;
     }
 
@@ -133,24 +131,21 @@ public class AnomalyDetectionRPCATransform extends AnomalyDetectionTransform {
 
     /*
      * Assigns an anomaly score to each data point, indicating how likely it is
-     * to be an anomaly relative to other points and seasonality factors.
+     * to be an anomaly relative to other points and seasonality factors. Data
+     * points after the last complete season are not scored and get a score of NaN.
      */
-    private Metric predictAnomalies() {
-        Metric predictions = new Metric(getResultScopeName(), getResultMetricName());
-        Map<Long, Double> predictionDatapoints = new HashMap<>();
-
-        double[][] noiseMatrix = rpca.getE().getData();
-        double[] noiseVector = matrixToVector(noiseMatrix);
-
-        for (int i = 0; i < noiseVector.length; i++) {
-            Long timestamp = timestamps[i];
-            double noiseValue = noiseVector[i];
-            double anomalyScore = calculateAnomalyScore(noiseValue);
-            predictionDatapoints.put(timestamp, anomalyScore);
-        }
+    private double[] predictAnomalies() {
+        double[] scores = new double[timestamps.length];
+        Arrays.fill(scores, Double.NaN);
 
-        predictions.setDatapoints(predictionDatapoints);
-        return predictions;
+        double[][] noiseMatrix = rpca.getNoise();
+        int rows = noiseMatrix.length;
+        int cols = noiseMatrix[0].length;
+
+        for (int n = 0; n < rows * cols; n++) {
+            scores[n] = calculateAnomalyScore(noiseMatrix[n % rows][n / rows]);
+        }
+        return scores;
     }
 
     @Override
@@ -171,65 +166,33 @@ public class AnomalyDetectionRPCATransform extends AnomalyDetectionTransform {
     /*
      * Standardizes the values to have zero mean and unit variance.
      * Formula: standardizedValue = (rawValue - mean) / standardDeviation
+     * The mean and standard deviation are calculated in a single pass.
      */
     private void standardize(double[] values) {
-        double mean = calculateMean(values);
-        double stdDev = calculateStandardDeviation(values, mean);
+        AnomalySeries.Moments moments = AnomalySeries.Moments.of(values, 0, values.length);
+        double mean = moments.getMean();
+        double stdDev = Math.sqrt(moments.getVariance());
 
         /*
          * If standard deviation is 0, all values of the metric are
          * identical. Return vector of 0s.
          */
         if (stdDev == 0.0) {
-            for (int i = 0; i < values.length; i++) {
-                values[i] = 0.0;
-            }
+            Arrays.fill(values, 0.0);
             return;
-        };
-
-        for (int i = 0; i < values.length; i++) {
-            double standardizedValue = (values[i] - mean) / stdDev;
-            values[i] = standardizedValue;
         }
-    }
-
-    private double calculateMean(double[] values) {
-        double sum = 0.0;
-        for (double value : values) {
-            sum += value;
-        }
-        return sum/values.length;
-    }
 
-    private double calculateStandardDeviation(double[] values, double mean) {
-        double squaredSum = 0.0;
-        for (double value : values) {
-            squaredSum += Math.pow((value - mean), 2);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (values[i] - mean) / stdDev;
         }
-        double variance = squaredSum/values.length;
-        return Math.sqrt(variance);
     }
 
     private double[][] vectorToMatrix(double[] x, int rows, int cols) {
         double[][] input2DArray = new double[rows][cols];
         for (int n = 0; n < rows * cols; n++) {
-            int i = n % rows;
-            int j = (int) Math.floor(n / rows);
-            input2DArray[i][j] = x[n];
+            input2DArray[n % rows][n / rows] = x[n];
         }
         return input2DArray;
     }
 
-    private double[] matrixToVector(double[][] matrix) {
-        int rows = matrix.length;
-        int cols = matrix[0].length;
-        double[] outputVector = new double[rows * cols];
-        for (int n = 0; n < outputVector.length; n++) {
-            int i = n % rows;
-            int j = (int) Math.floor(n / rows);
-            outputVector[n] = matrix[i][j];
-        }
-        return outputVector;
-    }
-
 }
@@ -39,6 +39,9 @@ import com.salesforce.dva.argus.util.QueryContext;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Abstract class for anomaly detection transforms
@@ -47,6 +50,24 @@ import java.util.Map.Entry;
  */
 public abstract class AnomalyDetectionTransform implements Transform {
 
+    /**
+     * Contextual scores of a series are calculated in parallel once the intervals of all its data points hold this many data points in total.
+     * Below that, forking costs more than it saves.
+     */
+    static final long PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Parallel scoring stops splitting a series once a part holds fewer interval data points than this. */
+    private static final long PARALLEL_CHUNK = PARALLEL_THRESHOLD / 8;
+
+    /** Scores the intervals of contextual anomaly detection, which are independent of one another. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+
+            thread.setName("anomaly-detection-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+
     @Override
     /**
      * This implementation of transform() handles contextual anomaly detection, which
@@ -58,25 +79,18 @@ public abstract class AnomalyDetectionTransform implements Transform {
         SystemAssert.requireArgument(metrics != null, "Cannot transform null or empty metrics");
         SystemAssert.requireArgument(metrics.size() == 1, "Anomaly Detection Transform can only be used with one metric.");
 
-        Metric predictions = new Metric(getResultScopeName(), getResultMetricName());
-        Map<Long, Double> predictionDatapoints = new HashMap<>();
-
         long detectionIntervalInSeconds = getTimePeriodInSeconds(constants.get(0));
+        AnomalySeries series = AnomalySeries.of(metrics.get(0).getDatapoints());
+        if (series.size() == 0) {
+            throw new MissingDataException("Metric must contain data points to perform transforms.");
+        }
 
-        //Create a sorted array of the metric's timestamps
-        Map<Long, Double> completeDatapoints = metrics.get(0).getDatapoints();
-        Long[] timestamps = completeDatapoints.keySet().toArray(new Long[completeDatapoints.size()]);
-        Arrays.sort(timestamps);
+        double[] scores = new double[series.size()];
+        int currentIndex = advanceCurrentIndexByInterval(scores, series.timestamps, detectionIntervalInSeconds);
+        calculateContextualAnomalyScores(scores, series, currentIndex, detectionIntervalInSeconds);
 
-        int currentIndex = 0;
-        currentIndex = advanceCurrentIndexByInterval(currentIndex, predictionDatapoints,
-                        timestamps, detectionIntervalInSeconds);
-        calculateContextualAnomalyScores(predictionDatapoints, completeDatapoints, timestamps,
-                currentIndex, detectionIntervalInSeconds);
-
-        predictions.setDatapoints(predictionDatapoints);
         List<Metric> resultMetrics = new ArrayList<>();
-        resultMetrics.add(predictions);
+        resultMetrics.add(series.toMetric(getResultScopeName(), getResultMetricName(), scores));
         return resultMetrics;
     }
 
@@ -178,28 +192,21 @@ public abstract class AnomalyDetectionTransform implements Transform {
     /**
      * Advances currentIndex to a point where it is one anomaly detection
      * interval beyond the first timestamp. Sets the anomaly scores for
-     * these intermediate points to 0 in the predictions metric (since
-     * there is not enough data in its past for a complete interval).
+     * these intermediate points to 0 (since there is not enough data in
+     * its past for a complete interval).
      *
-     * @param currentIndex index that gets advanced to one anomaly detection interval
-     *                     beyond the first timestamp
-     * @param predictionDatapoints datapoints that get filled with anomaly scores of 0
+     * @param scores scores that get filled with anomaly scores of 0
      * @param timestamps sorted timestamps of the original metric
      * @param detectionIntervalInSeconds anomaly detection interval
-     * @return new advanced value of currentIndex
+     * @return index one anomaly detection interval beyond the first timestamp
      */
-    private int advanceCurrentIndexByInterval(int currentIndex, Map<Long, Double> predictionDatapoints,
-                                               Long[] timestamps, long detectionIntervalInSeconds) {
+    private int advanceCurrentIndexByInterval(double[] scores, long[] timestamps, long detectionIntervalInSeconds) {
         //Projected end of interval
         long firstIntervalEndTime = timestamps[0] + detectionIntervalInSeconds;
-        while (true) {
-            if (currentIndex >= timestamps.length || timestamps[currentIndex] > firstIntervalEndTime) {
-                //Stop once the interval ends (or the entire metric is exhausted)
-                break;
-            } else {
-                predictionDatapoints.put(timestamps[currentIndex], 0.0);
-                currentIndex += 1;
-            }
+        int currentIndex = 0;
+        //Stop once the interval ends (or the entire metric is exhausted)
+        while (currentIndex < timestamps.length && timestamps[currentIndex] <= firstIntervalEndTime) {
+            scores[currentIndex++] = 0.0;
         }
         return currentIndex;
     }
@@ -209,60 +216,82 @@ public abstract class AnomalyDetectionTransform implements Transform {
      * and calculates the anomaly score for that data point using only other data
      * points in that same interval, i.e. "a moving contextual anomaly score"
      *
-     * @param predictionDatapoints data points to fill with contextual anomaly scores
-     * @param completeDatapoints original metric data points
-     * @param timestamps sorted timestamps of the original metric
+     * Intervals are contiguous ranges of the sorted series, so they are found in a
+     * single pass and scored in place. Large series are scored in parallel if the
+     * transform supports it.
+     *
+     * @param scores scores to fill with contextual anomaly scores
+     * @param series original metric data points
      * @param currentIndex index at which to start contextual anomaly detection
      * @param detectionIntervalInSeconds anomaly detection interval
      */
-    private void calculateContextualAnomalyScores(Map<Long, Double> predictionDatapoints,
-                                                  Map<Long, Double> completeDatapoints,
-                                                  Long[] timestamps,
-                                                  int currentIndex, long detectionIntervalInSeconds) {
+    private void calculateContextualAnomalyScores(double[] scores, AnomalySeries series, int currentIndex, long detectionIntervalInSeconds) {
+        long[] timestamps = series.timestamps;
+        int[] intervalStarts = new int[timestamps.length];
+        long intervalPoints = 0;
+        int intervalStartIndex = 0;
+
         for (int i = currentIndex; i < timestamps.length; i++) {
-            long timestampAtCurrentIndex = timestamps[i];
-            long projectedIntervalStartTime = timestampAtCurrentIndex - detectionIntervalInSeconds;
-
-            Metric intervalMetric = createIntervalMetric(i, completeDatapoints, timestamps,
-                                        projectedIntervalStartTime);
-            List<Metric> intervalRawDataMetrics = new ArrayList<>();
-            intervalRawDataMetrics.add(intervalMetric);
-
-            //Apply the anomaly detection transform to each interval separately
-            Metric intervalAnomaliesMetric = transform(null, intervalRawDataMetrics).get(0);
-            Map<Long, Double> intervalAnomaliesMetricData = intervalAnomaliesMetric.getDatapoints();
-            predictionDatapoints.put(timestamps[i],
-                    intervalAnomaliesMetricData.get(timestamps[i]));
+            long projectedIntervalStartTime = timestamps[i] - detectionIntervalInSeconds;
+            while (intervalStartIndex < i && timestamps[intervalStartIndex] < projectedIntervalStartTime) {
+                intervalStartIndex++;
+            }
+            intervalStarts[i] = intervalStartIndex;
+            intervalPoints += i - intervalStartIndex + 1;
+        }
+
+        if (intervalPoints >= PARALLEL_THRESHOLD && isContextualScoringThreadSafe()) {
+            POOL.invoke(new ContextualScoringTask(scores, series, intervalStarts, currentIndex, timestamps.length));
+        } else {
+            calculateContextualAnomalyScores(scores, series, intervalStarts, currentIndex, timestamps.length);
+        }
+    }
+
+    private void calculateContextualAnomalyScores(double[] scores, AnomalySeries series, int[] intervalStarts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            scores[i] = calculateContextualAnomalyScore(series.timestamps, series.values, intervalStarts[i], i + 1);
         }
     }
 
     /**
-     * Creates an interval metric containing data points from a starting point
-     * (defined by the detection interval) to an ending point (currentDatapointIndex)
+     * Calculates the anomaly score of the last data point of an interval using only
+     * the data points in that interval. The score is normalized across the interval,
+     * as done by transform() for a complete metric.
+     *
+     * This implementation applies transform() to a metric created from the interval.
+     * Transforms that can score an interval directly should override it, along with
+     * isContextualScoringThreadSafe() if the override does not modify the transform.
      *
-     * @param currentDatapointIndex index of the current data point to create an interval for,
-     *                              will serve as the ending point of the interval
-     * @param completeDatapoints original metric data points
      * @param timestamps sorted timestamps of the original metric
-     * @param projectedIntervalStartTime starting point of the interval
-     * @return Metric containing data points for the interval
+     * @param values values of the original metric, in timestamp order
+     * @param from index of the first data point of the interval, inclusive
+     * @param to index of the last data point of the interval, exclusive
+     * @return the normalized anomaly score of the data point at (to - 1), or NaN if it cannot be scored
      */
-    private Metric createIntervalMetric(int currentDatapointIndex, Map<Long, Double> completeDatapoints,
-                                        Long[] timestamps, long projectedIntervalStartTime) {
+    protected double calculateContextualAnomalyScore(long[] timestamps, double[] values, int from, int to) {
         Metric intervalMetric = new Metric(getResultScopeName(), getResultMetricName());
         Map<Long, Double> intervalMetricData = new HashMap<>();
-
-        //Decrease intervalStartIndex until it's at the start of the interval
-        int intervalStartIndex = currentDatapointIndex;
-        while (intervalStartIndex >= 0 && timestamps[intervalStartIndex] >= projectedIntervalStartTime) {
-            long tempTimestamp = timestamps[intervalStartIndex];
-            //Fill in the intervalMetricData as we traverse backwards through the interval
-            intervalMetricData.put(tempTimestamp, completeDatapoints.get(tempTimestamp));
-            intervalStartIndex--;
+        for (int i = from; i < to; i++) {
+            intervalMetricData.put(timestamps[i], values[i]);
         }
-
         intervalMetric.setDatapoints(intervalMetricData);
-        return intervalMetric;
+
+        List<Metric> intervalRawDataMetrics = new ArrayList<>();
+        intervalRawDataMetrics.add(intervalMetric);
+
+        //Apply the anomaly detection transform to the interval
+        Double score = transform(null, intervalRawDataMetrics).get(0).getDatapoints().get(timestamps[to - 1]);
+        return score == null ? Double.NaN : score;
+    }
+
+    /**
+     * Indicates whether calculateContextualAnomalyScore() can be called concurrently
+     * for different intervals.
+     *
+     * @return false, since the default implementation goes through transform()
+     */
+    protected boolean isContextualScoringThreadSafe() {
+        return false;
     }
 
     @Override
@@ -274,5 +303,43 @@ public abstract class AnomalyDetectionTransform implements Transform {
     abstract public String getResultMetricName();
 
     abstract public double calculateAnomalyScore(double value);
+
+    /**
+     * Scores a range of data points, splitting it in halves while it holds enough
+     * interval data points to be worth scoring in parallel.
+     */
+    private class ContextualScoringTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[] scores;
+        private final AnomalySeries series;
+        private final int[] intervalStarts;
+        private final int from;
+        private final int to;
+
+        ContextualScoringTask(double[] scores, AnomalySeries series, int[] intervalStarts, int from, int to) {
+            this.scores = scores;
+            this.series = series;
+            this.intervalStarts = intervalStarts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            long intervalPoints = 0;
+            for (int i = from; i < to && intervalPoints < PARALLEL_CHUNK; i++) {
+                intervalPoints += i - intervalStarts[i] + 1;
+            }
+            if (to - from > 1 && intervalPoints >= PARALLEL_CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ContextualScoringTask(scores, series, intervalStarts, from, middle),
+                        new ContextualScoringTask(scores, series, intervalStarts, middle, to));
+            } else {
+                calculateContextualAnomalyScores(scores, series, intervalStarts, from, to);
+            }
+        }
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
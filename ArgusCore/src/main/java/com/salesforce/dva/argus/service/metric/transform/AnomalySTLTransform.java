@@ -37,7 +37,8 @@ import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.util.QueryContext;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -88,49 +89,38 @@ public class AnomalySTLTransform implements Transform {
         // argument passed in to determine what one "season" is; later passed to StlDecomposition
         int season = Integer.parseInt(constants.get(0));
 
-        Metric metric = metrics.get(0);
-        Map<Long, Double> datapoints = metric.getDatapoints();
+        AnomalySeries series = AnomalySeries.of(metrics.get(0).getDatapoints());
+        double[] times = new double[series.size()];
 
-        double[] values = new double[datapoints.size()];
-        List<Long> time_list = new ArrayList<>(datapoints.keySet());
-        Collections.sort(time_list);
-        double[] times = new double[datapoints.size()];
-
-        for (int i = 0; time_list.size() > i; i++) {
-            values[i] = datapoints.get(time_list.get(i));
-            times[i] = (double) time_list.get(i);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = (double) series.timestamps[i];
         }
 
         // The argument to StlDecomposition specifies what fraction of a year one season is
         // The decomposition then splits up the timeseries into trend, seasonal, and residual components
-        StlResult stl = new StlDecomposition(season).decompose(times, values);
+        StlResult stl = new StlDecomposition(season).decompose(times, series.values);
 
         // Trend and seasonal components of stl can also be accessed using stl.getTrend() and stl.getSeasonal() respectively
         double[] remainder = stl.getRemainder();
 
-        double mean = calcMean(remainder);
-        double sd = calcSD(remainder, mean);
+        // Mean and standard deviation of the remainder, calculated in a single pass
+        AnomalySeries.Moments moments = AnomalySeries.Moments.of(remainder, 0, remainder.length);
+        double mean = moments.getMean();
+        double sd = Math.sqrt(moments.getVariance());
 
-        HashMap<Long, Double> remainder_map = new HashMap<>();
+        double[] scores;
 
         if (constants.size() == 2 && constants.get(1).equals("resid")) {
-            for (int i = 0; i < time_list.size(); i++) {
-                remainder_map.put((long) times[i], remainder[i]);
-            }
-        } else if (constants.size() == 2 && constants.get(1).equals("anomalyScore")) {
-            for (int i = 0; i < time_list.size(); i++) {
-                remainder_map.put((long) times[i], anomalyScore(remainder[i], mean, sd));
-            }
+            scores = remainder;
         } else {
-            for (int i = 0; i < time_list.size(); i++) {
-                remainder_map.put((long) times[i], anomalyScore(remainder[i], mean, sd));
+            scores = new double[remainder.length];
+            for (int i = 0; i < remainder.length; i++) {
+                scores[i] = anomalyScore(remainder[i], mean, sd);
             }
         }
 
-        Metric remainder_metric = new Metric(getResultScopeName(), "STL Anomaly Score");
-        remainder_metric.setDatapoints(remainder_map);
         List<Metric> result = new ArrayList<>(metrics.size());
-        result.add(0, remainder_metric);
+        result.add(0, series.toMetric(getResultScopeName(), "STL Anomaly Score", scores));
 
         return result;
     }
@@ -153,30 +143,6 @@ public class AnomalySTLTransform implements Transform {
         return Math.exp(-x*x / 2) / (Math.sqrt(2 * Math.PI));
     }
 
-    // Calculates mean of array
-    // Input: array of doubles
-    // Output: mean of array
-    private double calcMean(double[] arr) {
-        double mean = 0;
-        for (double resid : arr) {
-            mean += resid;
-        }
-        mean /= arr.length;
-        return mean;
-    }
-
-    // Calculates standard deviation of array
-    // Input: array of doubles
-    // Output: standard deviation of array
-    private double calcSD(double[] arr, double mean) {
-        double sd = 0;
-        for (double resid : arr) {
-            sd += Math.pow(resid - mean, 2);
-        }
-        sd = Math.sqrt(sd/arr.length);
-        return sd;
-    }
-
     @Override
     public String getResultScopeName() {
         return TransformFactory.Function.ANOMALY_STL.name();
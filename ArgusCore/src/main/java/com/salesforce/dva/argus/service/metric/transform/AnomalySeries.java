@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.salesforce.dva.argus.entity.Metric;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A series unboxed into parallel primitive arrays of timestamps and values sorted by timestamp, as used by the anomaly detection transforms so
+ * that fitting and scoring run over arrays instead of maps of boxed values.
+ *
+ * <p>Scores are kept in arrays parallel to the series, where NaN marks a data point that could not be scored and is omitted from the result.</p>
+ */
+final class AnomalySeries {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    final long[] timestamps;
+    final double[] values;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    private AnomalySeries(long[] timestamps, double[] values) {
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Unboxes the data points of a series.
+     *
+     * @param   datapoints  The data points. Values cannot be null.
+     *
+     * @return  The series sorted by timestamp.
+     */
+    static AnomalySeries of(Map<Long, Double> datapoints) {
+        int size = datapoints.size();
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        boolean sorted = true;
+        int i = 0;
+
+        for (Map.Entry<Long, Double> entry : datapoints.entrySet()) {
+            timestamps[i] = entry.getKey();
+            values[i] = entry.getValue();
+            sorted &= i == 0 || timestamps[i - 1] < timestamps[i];
+            i++;
+        }
+        if (!sorted) {
+            _sort(timestamps, values);
+        }
+        return new AnomalySeries(timestamps, values);
+    }
+
+    /* Metric data points are kept in a tree map, so this only runs for series built from other map types. */
+    private static void _sort(long[] timestamps, double[] values) {
+        Map<Long, Double> sorted = new TreeMap<>();
+
+        for (int i = 0; i < timestamps.length; i++) {
+            sorted.put(timestamps[i], values[i]);
+        }
+
+        int i = 0;
+
+        for (Map.Entry<Long, Double> entry : sorted.entrySet()) {
+            timestamps[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * Rescales scores in place into the range [0, 100], the lowest score mapping to 0 and the highest to 100. If all scores are equal, they all
+     * become 0. NaN scores are left as they are.
+     *
+     * @param  scores  The scores.
+     */
+    static void normalize(double[] scores) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (double score : scores) {
+            if (score < min) {
+                min = score;
+            }
+            if (score > max) {
+                max = score;
+            }
+        }
+
+        double normalizationConstant = max - min == 0.0 ? 0.0 : 100.0 / (max - min);
+
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = (scores[i] - min) * normalizationConstant;
+        }
+    }
+
+    /**
+     * Creates the result metric of a transform.
+     *
+     * @param   scope   The scope of the result.
+     * @param   metric  The metric name of the result.
+     * @param   scores  The scores parallel to this series. Data points with a NaN score are omitted.
+     *
+     * @return  The result metric.
+     */
+    Metric toMetric(String scope, String metric, double[] scores) {
+        Map<Long, Double> datapoints = new HashMap<>(scores.length * 4 / 3 + 1);
+
+        for (int i = 0; i < scores.length; i++) {
+            if (!Double.isNaN(scores[i])) {
+                datapoints.put(timestamps[i], scores[i]);
+            }
+        }
+
+        Metric result = new Metric(scope, metric);
+
+        result.setDatapoints(datapoints);
+        return result;
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * Computes the mean and variance of values in a single pass using Welford's algorithm, which unlike summing squares does not lose precision
+     * when the variance is small relative to the mean.
+     */
+    static final class Moments {
+
+        private long _count;
+        private double _mean;
+        private double _m2;
+
+        /**
+         * Computes the moments of a range of values.
+         *
+         * @param   values  The values.
+         * @param   from    The index of the first value, inclusive.
+         * @param   to      The index of the last value, exclusive.
+         *
+         * @return  The moments.
+         */
+        static Moments of(double[] values, int from, int to) {
+            Moments moments = new Moments();
+
+            for (int i = from; i < to; i++) {
+                moments.add(values[i]);
+            }
+            return moments;
+        }
+
+        void add(double value) {
+            double delta = value - _mean;
+
+            _count++;
+            _mean += delta / _count;
+            _m2 += delta * (value - _mean);
+        }
+
+        double getMean() {
+            return _count == 0 ? Double.NaN : _mean;
+        }
+
+        /** Returns the population variance, i.e. the sum of squared deviations divided by the count. */
+        double getVariance() {
+            return _count == 0 ? Double.NaN : _m2 / _count;
+        }
+
+        /** Returns the sample variance, i.e. the sum of squared deviations divided by the count less one. */
+        double getSampleVariance() {
+            return _count < 2 ? (_count == 0 ? Double.NaN : 0.0) : _m2 / (_count - 1);
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
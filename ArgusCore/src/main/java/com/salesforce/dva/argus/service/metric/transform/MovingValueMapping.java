@@ -34,26 +34,24 @@ package com.salesforce.dva.argus.service.metric.transform;
 import com.salesforce.dva.argus.service.metric.MetricReader;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.system.SystemException;
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.math3.stat.descriptive.rank.Percentile;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
- * Evaluates input metrics using a moving window. calculate either median or average value of the window
+ * Evaluates input metrics using a moving window. Calculates either the average, sum, median, percentile, minimum or maximum value of the window.
+ *
+ * <p>The window always covers a contiguous range of the time ordered datapoints, so it is maintained incrementally over primitive arrays. Median and
+ * percentile use an order statistic tree over the value ranks and minimum and maximum use monotonic index deques, so each output point costs
+ * O(log n) rather than a sort of the whole window.</p>
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
 public class MovingValueMapping implements ValueMapping {
 
-    //~ Instance fields ******************************************************************************************************************************
-
-    private final Logger _logger = LoggerFactory.getLogger(MetricMappingTransform.class);
-
     //~ Methods **************************************************************************************************************************************
 
     @Override
@@ -68,48 +66,45 @@ public class MovingValueMapping implements ValueMapping {
         
         //Default is to perform Moving Average.
         InternalReducerType type = InternalReducerType.AVG;
+        double percentile = 50.0;
         if (constants.size() > 1) {
             SystemAssert.requireArgument(constants.size() == 2, "MOVING Transform can't have more than 2 contants!");
             
             type = InternalReducerType.fromString(constants.get(1));
-            SystemAssert.requireArgument((InternalReducerType.AVG.equals(type) ||
-                    InternalReducerType.MEDIAN.equals(type) || InternalReducerType.SUM.equals(type)), "Type can be one of <avg,median,sum>");
+            SystemAssert.requireArgument((InternalReducerType.AVG.equals(type) || InternalReducerType.MEDIAN.equals(type) ||
+                    InternalReducerType.SUM.equals(type) || InternalReducerType.MIN.equals(type) || InternalReducerType.MAX.equals(type) ||
+                    InternalReducerType.PERCENTILE.equals(type)), "Type can be one of <avg,median,sum,min,max,pNN>");
+            if (InternalReducerType.PERCENTILE.equals(type)) {
+                percentile = Double.parseDouble(constants.get(1).substring(1));
+                SystemAssert.requireArgument(percentile > 0, "Percentile must be greater than 0.");
+            }
         }
 
         long windowSizeInSeconds = getWindowInSeconds(constants.get(0));
         SystemAssert.requireArgument(windowSizeInSeconds != 0, "Time Interval cannot be 0 for Moving Average Transform");
         
         Map<Long, Double> movingDatapoints = new TreeMap<>();
-        Map<Long, Double> sortedDatapoints = new TreeMap<>(originalDatapoints);
+        int size = originalDatapoints.size();
 
-        for (Map.Entry<Long, Double> entry : originalDatapoints.entrySet()) {
-            if (entry.getValue() == null) {
-                sortedDatapoints.put(entry.getKey(), 0.0);
-            } else {
-                sortedDatapoints.put(entry.getKey(), entry.getValue());
-            }
+        if (size == 0) {
+            return movingDatapoints;
         }
 
-        Long[] timestamps = new Long[sortedDatapoints.size()];
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
 
-        sortedDatapoints.keySet().toArray(timestamps);
+        _toSortedArrays(originalDatapoints, timestamps, values);
 
-        double sum = 0.0;
-        double value = 0.0;
-        List<Double> numberArr = new ArrayList<Double>();
+        Window window = new Window(values, type, percentile);
+        double sum = values[0];
 
-        try {
-            sum = sortedDatapoints.get(timestamps[0]);
-            numberArr.add(sortedDatapoints.get(timestamps[0]));
-        } catch (NumberFormatException | NullPointerException e) {
-            _logger.warn("Failed to parse datapoint: " + sortedDatapoints.get(timestamps[0]));
-            throw new UnsupportedOperationException("Bad datapoint!");
-        }
+        window.add(0);
 
         // if only one point
-        movingDatapoints.put(timestamps[0], sortedDatapoints.get(timestamps[0]));
+        movingDatapoints.put(timestamps[0], values[0]);
 
-        Long firstTimestamp = timestamps[0];
+        long firstTimestamp = timestamps[0];
+        long windowSizeInMillis = windowSizeInSeconds * 1000;
         int count = 1;
 
         for (int head = 1, tail = 0; head < timestamps.length; head++) {
@@ -118,72 +113,62 @@ public class MovingValueMapping implements ValueMapping {
             // For first window, exclude timestamps[head]
             // For a regular window, exclude timestamps[tail]
             if (tail == 0) {
-                while (timestamps[head] - firstTimestamp < windowSizeInSeconds * 1000) {
-                    try {
-                        // run out of points before hitting the end of first window
-                        if (head >= timestamps.length - 1) {
-                            break;
-                        }
-                        value = _calculateValue(sum, numberArr, count, type);
-                        movingDatapoints.put(timestamps[head - 1], value);
-                        sum += sortedDatapoints.get(timestamps[head]);
-                        numberArr.add(sortedDatapoints.get(timestamps[head]));
-                    } catch (NumberFormatException | NullPointerException e) {
-                        _logger.warn("Failed to parse datapoint: " + sortedDatapoints.get(timestamps[head]));
-                        throw new IllegalArgumentException("Bad datapoint!");
+                while (timestamps[head] - firstTimestamp < windowSizeInMillis) {
+                    // run out of points before hitting the end of first window
+                    if (head >= timestamps.length - 1) {
+                        break;
                     }
+                    movingDatapoints.put(timestamps[head - 1], window.evaluate(sum, count));
+                    sum += values[head];
+                    window.add(head);
                     head++;
                     count++;
                 }
-                
-                value = _calculateValue(sum, numberArr, count, type);
-                movingDatapoints.put(timestamps[head - 1], value);
+                movingDatapoints.put(timestamps[head - 1], window.evaluate(sum, count));
             }
-            
-            try {
-                sum += sortedDatapoints.get(timestamps[head]);
-                numberArr.add(sortedDatapoints.get(timestamps[head]));
-                while (timestamps[head] - timestamps[tail] >= windowSizeInSeconds * 1000) {
-                    sum = _subtractWithinWindow(sum, sortedDatapoints, timestamps[tail], timestamps[head]);
-                    numberArr.remove(sortedDatapoints.get(timestamps[tail]));
-                    count--;
-                    tail++;
-                }
-            } catch (NumberFormatException | NullPointerException e) {
-                _logger.warn("Failed to parse datapoint: " + sortedDatapoints.get(timestamps[head]));
-                throw new UnsupportedOperationException("Bad datapoint!");
+            sum += values[head];
+            window.add(head);
+            while (timestamps[head] - timestamps[tail] >= windowSizeInMillis) {
+                sum -= values[tail];
+                window.remove(tail);
+                count--;
+                tail++;
             }
             count++;
-            value = _calculateValue(sum, numberArr, count, type);
-            movingDatapoints.put(timestamps[head], value);
+            movingDatapoints.put(timestamps[head], window.evaluate(sum, count));
         } // end for
         return movingDatapoints;
     }
 
-	private double _calculateValue(double sum, List<Double> numberArr, int count, InternalReducerType type) {
-			
-		if (InternalReducerType.MEDIAN.equals(type)) {
-		    double[] numbers = ArrayUtils.toPrimitive(numberArr.toArray(new Double[numberArr.size()]));
-		    return new Percentile().evaluate(numbers, 50.0);
-		} 
-		
-		if(InternalReducerType.AVG.equals(type)) {
-			return (sum / count);
-		}
-		
-		return sum;
-	}
+    /* Copies the datapoints into time ordered primitive arrays, treating null values as 0.0. */
+    private void _toSortedArrays(Map<Long, Double> datapoints, long[] timestamps, double[] values) {
+        boolean sorted = datapoints instanceof SortedMap && ((SortedMap<Long, Double>) datapoints).comparator() == null;
+        int i = 0;
+
+        for (Map.Entry<Long, Double> entry : datapoints.entrySet()) {
+            timestamps[i] = entry.getKey();
+            if (sorted) {
+                Double value = entry.getValue();
+
+                values[i] = value == null ? 0.0 : value;
+            }
+            i++;
+        }
+        if (!sorted) {
+            Arrays.sort(timestamps);
+            for (i = 0; i < timestamps.length; i++) {
+                Double value = datapoints.get(timestamps[i]);
+
+                values[i] = value == null ? 0.0 : value;
+            }
+        }
+    }
 
     @Override
     public String name() {
         return TransformFactory.Function.MOVING.name();
     }
 
-    private double _subtractWithinWindow(double sum, Map<Long, Double> sortedDatapoints, long end, long start) {
-        sum -= sortedDatapoints.get(end);
-        return sum;
-    }
-
     private long getWindowInSeconds(String window) {
         SystemAssert.requireArgument(!window.startsWith("-"), "Window size doesn't allow negative value.");
 
@@ -200,5 +185,161 @@ public class MovingValueMapping implements ValueMapping {
             throw new SystemException("Failed to parse time window.", nfe);
         }
     }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The contents of the moving window, identified by the index range [lo, hi] into the time ordered values. Points are always added at the head
+     * and removed from the tail, which is what allows the monotonic deques for minimum and maximum.
+     */
+    private static final class Window {
+
+        private final double[] values;
+        private final InternalReducerType type;
+        private final double percentile;
+        private final double quantile;
+        private int lo = 0;
+        private int hi = -1;
+
+        // Order statistics for median and percentile: a Fenwick tree of counts indexed by value rank.
+        private int[] ranks;
+        private double[] rankedValues;
+        private int[] tree;
+        private int highestBit;
+        private boolean hasNaN;
+
+        // Index deque for minimum or maximum. Head at dequeHead, values monotonic from head to tail.
+        private int[] deque;
+        private int dequeHead = 0;
+        private int dequeTail = 0;
+
+        Window(double[] values, InternalReducerType type, double percentile) {
+            this.values = values;
+            this.type = type;
+            this.percentile = percentile;
+            this.quantile = percentile / 100;
+            if (InternalReducerType.MEDIAN.equals(type) || InternalReducerType.PERCENTILE.equals(type)) {
+                _initRanks();
+            } else if (InternalReducerType.MIN.equals(type) || InternalReducerType.MAX.equals(type)) {
+                deque = new int[values.length];
+            }
+        }
+
+        void add(int index) {
+            hi = index;
+            if (tree != null) {
+                for (int i = ranks[index] + 1; i < tree.length; i += i & -i) {
+                    tree[i]++;
+                }
+            } else if (deque != null) {
+                boolean min = InternalReducerType.MIN.equals(type);
+
+                while (dequeTail > dequeHead && (min ? values[deque[dequeTail - 1]] >= values[index] : values[deque[dequeTail - 1]] <= values[index])) {
+                    dequeTail--;
+                }
+                deque[dequeTail++] = index;
+            }
+        }
+
+        void remove(int index) {
+            lo = index + 1;
+            if (tree != null) {
+                for (int i = ranks[index] + 1; i < tree.length; i += i & -i) {
+                    tree[i]--;
+                }
+            } else if (deque != null && dequeTail > dequeHead && deque[dequeHead] == index) {
+                dequeHead++;
+            }
+        }
+
+        double evaluate(double sum, int count) {
+            switch (type) {
+                case MEDIAN:
+                case PERCENTILE:
+                    return _percentile();
+                case MIN:
+                case MAX:
+                    return values[deque[dequeHead]];
+                case AVG:
+                    return sum / count;
+                default:
+                    return sum;
+            }
+        }
+
+        /* Ranks every value once so that the window can be maintained as counts per rank. */
+        private void _initRanks() {
+            for (double value : values) {
+                if (Double.isNaN(value)) {
+                    hasNaN = true;
+                    return;
+                }
+            }
+
+            double[] sorted = values.clone();
+
+            Arrays.sort(sorted);
+
+            int distinct = 0;
+
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || Double.compare(sorted[i], sorted[distinct - 1]) != 0) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            rankedValues = Arrays.copyOf(sorted, distinct);
+            ranks = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ranks[i] = Arrays.binarySearch(rankedValues, values[i]);
+            }
+            tree = new int[distinct + 1];
+            highestBit = Integer.highestOneBit(distinct);
+        }
+
+        /* Returns the value with the given zero based position in the sorted window. */
+        private double _select(int k) {
+            int position = 0;
+            int remaining = k + 1;
+
+            for (int step = highestBit; step > 0; step >>= 1) {
+                int next = position + step;
+
+                if (next < tree.length && tree[next] < remaining) {
+                    position = next;
+                    remaining -= tree[next];
+                }
+            }
+            return rankedValues[position];
+        }
+
+        /* Matches the default (legacy) estimation of commons-math Percentile so results are identical to sorting the window. */
+        private double _percentile() {
+            int length = hi - lo + 1;
+
+            if (hasNaN) {
+                return new Percentile().evaluate(values, lo, length, percentile);
+            }
+            if (length == 1) {
+                return _select(0);
+            }
+
+            double pos = quantile * (length + 1);
+            double fpos = Math.floor(pos);
+            int intPos = (int) fpos;
+            double dif = pos - fpos;
+
+            if (pos < 1) {
+                return _select(0);
+            }
+            if (pos >= length) {
+                return _select(length - 1);
+            }
+
+            double lower = _select(intPos - 1);
+            double upper = _select(intPos);
+
+            return lower + dif * (upper - lower);
+        }
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -31,22 +31,29 @@
 
 package com.salesforce.dva.argus.service.metric.transform;
 
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.SingularValueDecomposition;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+import java.util.Arrays;
 
 /**
  * RPCA code taken from Netflix Surus Project.
  * Source: https://github.com/Netflix/Surus/blob/master/src/main/java/org/surus/math/RPCA.java
  *
+ * The matrices are kept in arrays that are allocated once and updated in place
+ * on every iteration, instead of allocating new matrices for every operation.
+ *
  */
 public class RPCA {
 
-	private RealMatrix X;
-	private RealMatrix L;
-	private RealMatrix S;
-	private RealMatrix E;
+	private final double[][] X;
+	private final double[][] L;
+	private final double[][] S;
+	private final double[][] E;
+	/* Holds X - S, the input of the singular value decomposition. */
+	private final double[][] scratch;
 	
 	private double lpenalty;
 	private double spenalty;
@@ -54,30 +61,23 @@ public class RPCA {
 	private static final int MAX_ITERS = 228;
 	
 	public RPCA(double[][] data, double lpenalty, double spenalty) {
-		this.X = MatrixUtils.createRealMatrix(data);
+		this.X = copy(data);
 		this.lpenalty = lpenalty;
 		this.spenalty = spenalty;
-		initMatrices();
+		this.L = new double[X.length][X[0].length];
+		this.S = new double[X.length][X[0].length];
+		this.E = new double[X.length][X[0].length];
+		this.scratch = new double[X.length][X[0].length];
 		computeRSVD();
 	}
 	
 	public RPCA(RealMatrix X, double lpenalty, double spenalty) {
-		this.X = X;
-		this.lpenalty = lpenalty;
-		this.spenalty = spenalty;
-		initMatrices();
-		computeRSVD();
-	}
-	
-	private void initMatrices() {
-		this.L = MatrixUtils.createRealMatrix(this.X.getRowDimension(), this.X.getColumnDimension());
-		this.S = MatrixUtils.createRealMatrix(this.X.getRowDimension(), this.X.getColumnDimension());
-		this.E = MatrixUtils.createRealMatrix(this.X.getRowDimension(), this.X.getColumnDimension());
+		this(X.getData(), lpenalty, spenalty);
 	}
 	
 	private void computeRSVD() {
-		double mu = X.getColumnDimension() * X.getRowDimension() / (4 * l1norm(X.getData()));
-		double objPrev = 0.5*Math.pow(X.getFrobeniusNorm(), 2);
+		double mu = X[0].length * X.length / (4 * l1norm(X));
+		double objPrev = 0.5*sumOfSquares(X);
 		double obj = objPrev;
 		double tol = 1e-8 * objPrev;
 		double diff = 2 * tol;
@@ -98,27 +98,8 @@ public class RPCA {
 		}
 	}
 		
-	private double[] softThreshold(double[] x, double penalty) {
-		for(int i = 0; i < x.length; i++) {
-			x[i] = Math.signum(x[i]) * Math.max(Math.abs(x[i]) - penalty, 0);
-		}
-		return x;
-	}
-	
-	private double[][] softThreshold(double[][] x, double penalty) {
-		for(int i = 0; i < x.length; i++) {
-			for(int j = 0; j < x[i].length; j++) {
-				x[i][j] = Math.signum(x[i][j]) * Math.max(Math.abs(x[i][j]) - penalty, 0);
-			}
-		}
-		return x;
-	}
-	
-	private double sum(double[] x) {
-		double sum = 0;
-		for (int i = 0; i < x.length; i++)
-			sum += x[i];
-		return (sum);
+	private double softThreshold(double x, double penalty) {
+		return Math.signum(x) * Math.max(Math.abs(x) - penalty, 0);
 	}
 	
 	private double l1norm(double[][] x) {
@@ -131,26 +112,69 @@ public class RPCA {
 		return l1norm;
 	}
 	
+	private double sumOfSquares(double[][] x) {
+		double sumOfSquares = 0;
+		for (int i = 0; i < x.length; i++) {
+			for (int j = 0; j < x[i].length; j++) {
+				sumOfSquares += x[i][j] * x[i][j];
+			}
+		}
+		return sumOfSquares;
+	}
+	
 	private double computeL(double mu) {
 		double LPenalty = lpenalty * mu;
-		SingularValueDecomposition svd = new SingularValueDecomposition(X.subtract(S));
-		double[] penalizedD = softThreshold(svd.getSingularValues(), LPenalty);
-		RealMatrix D_matrix = MatrixUtils.createRealDiagonalMatrix(penalizedD);
-		L = svd.getU().multiply(D_matrix).multiply(svd.getVT());
-		return sum(penalizedD) * LPenalty;
+		for (int i = 0; i < X.length; i++) {
+			for (int j = 0; j < X[i].length; j++) {
+				scratch[i][j] = X[i][j] - S[i][j];
+			}
+		}
+		SingularValueDecomposition svd = new SingularValueDecomposition(new Array2DRowRealMatrix(scratch, false));
+		double[] penalizedD = svd.getSingularValues();
+		double sum = 0;
+		for (int k = 0; k < penalizedD.length; k++) {
+			penalizedD[k] = softThreshold(penalizedD[k], LPenalty);
+			sum += penalizedD[k];
+		}
+		
+		// L = U * diag(penalizedD) * VT, skipping the singular values that were thresholded to 0
+		double[][] U = svd.getU().getData();
+		double[][] V = svd.getV().getData();
+		for (int i = 0; i < L.length; i++) {
+			double[] Li = L[i];
+			Arrays.fill(Li, 0);
+			for (int k = 0; k < penalizedD.length; k++) {
+				if (penalizedD[k] == 0) {
+					continue;
+				}
+				double uid = U[i][k] * penalizedD[k];
+				for (int j = 0; j < Li.length; j++) {
+					Li[j] += uid * V[j][k];
+				}
+			}
+		}
+		return sum * LPenalty;
 	}
 	
 	private double computeS(double mu) {
 		double SPenalty = spenalty * mu;
-		double[][] penalizedS = softThreshold(X.subtract(L).getData(), SPenalty);
-		S = MatrixUtils.createRealMatrix(penalizedS);
-		return l1norm(penalizedS) * SPenalty;
+		double l1norm = 0;
+		for (int i = 0; i < X.length; i++) {
+			for (int j = 0; j < X[i].length; j++) {
+				S[i][j] = softThreshold(X[i][j] - L[i][j], SPenalty);
+				l1norm += Math.abs(S[i][j]);
+			}
+		}
+		return l1norm * SPenalty;
 	}
 	
 	private double computeE() {
-		E = X.subtract(L).subtract(S);
-		double norm = E.getFrobeniusNorm();
-		return Math.pow(norm, 2);
+		for (int i = 0; i < X.length; i++) {
+			for (int j = 0; j < X[i].length; j++) {
+				E[i][j] = X[i][j] - L[i][j] - S[i][j];
+			}
+		}
+		return sumOfSquares(E);
 	}
 	
 	private double computeObjective(double nuclearnorm, double l1norm, double l2norm) {
@@ -158,32 +182,46 @@ public class RPCA {
 	}
 	
 	private double computeDynamicMu() {
-		int m = E.getRowDimension();
-		int n = E.getColumnDimension();
+		int m = E.length;
+		int n = E[0].length;
 		
-		double E_sd = standardDeviation(E.getData());
+		double E_sd = standardDeviation(E);
 		double mu = E_sd * Math.sqrt(2*Math.max(m,n));
 		
 		return Math.max(.01, mu);
 	}
 
+	/* The sample standard deviation, calculated in a single pass. */
 	private double standardDeviation(double[][] x) {
-		DescriptiveStatistics stats = new DescriptiveStatistics();
+		AnomalySeries.Moments moments = new AnomalySeries.Moments();
 		for (int i = 0; i < x.length; i ++)
 			for (int j = 0; j < x[i].length; j++)
-				stats.addValue(x[i][j]);
-		return stats.getStandardDeviation();
+				moments.add(x[i][j]);
+		return Math.sqrt(moments.getSampleVariance());
+	}
+
+	private static double[][] copy(double[][] x) {
+		double[][] copy = new double[x.length][];
+		for (int i = 0; i < x.length; i++) {
+			copy[i] = x[i].clone();
+		}
+		return copy;
 	}
 
 	public RealMatrix getL() {
-		return L;
+		return MatrixUtils.createRealMatrix(L);
 	}
 
 	public RealMatrix getS() {
-		return S;
+		return MatrixUtils.createRealMatrix(S);
 	}
 
 	public RealMatrix getE() {
+		return MatrixUtils.createRealMatrix(E);
+	}
+
+	/* Returns the noise matrix E without copying it. */
+	double[][] getNoise() {
 		return E;
 	}
 	
@@ -64,6 +64,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
@@ -120,6 +121,7 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 	private final MailService _mailService;
 	private final Map<Metric, GaugeMetric> _metrics;
 	private final Map<Metric, MetricMXBean> _registeredMetrics;
+	private final Map<Metric, HistogramMetric> _histograms;
 	private final PrincipalUser _adminUser;
 	private final SystemConfiguration _sysConfig;
 	private final MBeanServer _mbeanServer;
@@ -166,6 +168,7 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 		_mbeanServer = ManagementFactory.getPlatformMBeanServer();
 		_metrics = new ConcurrentHashMap<>();
 		_registeredMetrics = new ConcurrentHashMap<>();
+		_histograms = new ConcurrentHashMap<>();
 		_dataLagService = dataLagService;
 		// TODO: remove this after data lag consumer offset service verification is over.
 		_metricStorageService = metricStorageService;
@@ -338,6 +341,23 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 		return v;
 	}
 
+	@Override
+	public void recordHistogram(Counter counter, long value, Map<String, String> tags) {
+		requireNotDisposed();
+		requireArgument(counter != null, "Cannot record into a null counter.");
+		requireArgument(Counter.MetricType.HISTOGRAM.equals(counter.getMetricType()), "Cannot record into a counter that is not a histogram.");
+		Metric metric = _constructCounterKey(counter.getMetric(), tags);
+		_histograms.computeIfAbsent(metric, k -> _createAndRegisterHistogramMXBean(k)).record(value);
+	}
+
+	@Override
+	public void recordCustomHistogram(String name, long value, Map<String, String> tags) {
+		requireNotDisposed();
+		requireArgument(name != null && !name.isEmpty(), "Cannot record into a histogram with null or empty name.");
+		Metric metric = _constructCounterKey(name, tags);
+		_histograms.computeIfAbsent(metric, k -> _createAndRegisterHistogramMXBean(k)).record(value);
+	}
+
 	@Override
 	public double getCounter(Counter counter, Map<String, String> tags) {
 		requireArgument(counter != null, "Cannot get value for a null counter.");
@@ -461,6 +481,12 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 				_metrics.remove(metric);
 			}
 		}
+		for (Metric metric : _histograms.keySet()) {
+			if (scope.equalsIgnoreCase(metric.getScope())) {
+				_logger.debug("Resetting histogram {}.", metric);
+				_unregisterMBean(_histograms.remove(metric));
+			}
+		}
 	}
 
 	private void _updateJVMStatsCounters() {
@@ -647,6 +673,13 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 		return b;
 	}
 
+	private HistogramMetric _createAndRegisterHistogramMXBean(Metric m) {
+		HistogramMetric b = new HistogramMetric(m);
+		_registerMBean(b);
+		_logger.debug("Created and registered HistogramMetric=" + b.getObjectName());
+		return b;
+	}
+
 	private void _registerMBean(MetricMXBean b) {
 		try {
 			_mbeanServer.registerMBean(b, new ObjectName(b.getObjectName()));
@@ -656,6 +689,32 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 		}
 	}
 
+	private void _unregisterMBean(MetricMXBean b) {
+		if (b == null) {
+			return;
+		}
+		try {
+			_mbeanServer.unregisterMBean(new ObjectName(b.getObjectName()));
+		} catch (InstanceNotFoundException | MBeanRegistrationException | MalformedObjectNameException e) {
+			_logger.error("Error unregistering MetricMXBean with name={}:", b.getObjectName(), e);
+		}
+	}
+
+	/* Publishes each histogram statistic as its own metric, e.g. alerts.evaluation.latency.histogram.p99. */
+	private static List<Metric> _getHistogramMetrics(HistogramMetric histogram, HistogramMetric.Snapshot snapshot, long timestamp) {
+		List<Metric> metrics = new ArrayList<>();
+		Metric metric = histogram.getMetric();
+
+		for (Entry<String, Double> statistic : snapshot.getStatistics().entrySet()) {
+			Metric published = new Metric(metric.getScope(), metric.getMetric() + "." + statistic.getKey());
+
+			published.setTags(metric.getTags());
+			published.setDatapoints(Collections.singletonMap(timestamp, statistic.getValue()));
+			metrics.add(published);
+		}
+		return metrics;
+	}
+
 	/**
 	 * Determines if an alert exists, creates it if it doesn't and then sets it to be enabled or disabled, as required.
 	 *
@@ -799,9 +858,19 @@ public class DefaultMonitorService extends DefaultJPAService implements MonitorS
 				dataPoints.put(timestamp, value);
 				entry.getKey().setDatapoints(dataPoints);
 			}
+
+			List<Metric> metrics = new ArrayList<>(counters.keySet());
+
+			for (HistogramMetric histogram : _histograms.values()) {
+				HistogramMetric.Snapshot snapshot = histogram.computeNewSnapshotAndReset();
+
+				if (snapshot.getCount() > 0) {
+					metrics.addAll(_getHistogramMetrics(histogram, snapshot, timestamp));
+				}
+			}
 			if (!isDisposed()) {
-				_logger.info("Pushing {} monitoring metrics to TSDB.", counters.size());
-				_tsdbService.putMetrics(new ArrayList<>(counters.keySet()));
+				_logger.info("Pushing {} monitoring metrics to TSDB.", metrics.size());
+				_tsdbService.putMetrics(metrics);
 			}
 		}
 
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.monitor;
+
+/**
+ * Read-only MXBean exporting the latency distribution of a histogram metric to JMX. All values describe the values recorded during the last
+ * completed publishing interval of the monitor service. The inherited value is the 99th percentile.
+ */
+public interface HistogramMXBean extends MetricMXBean {
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return  The count.
+     */
+    long getCount();
+
+    /**
+     * Returns the median of the recorded values.
+     *
+     * @return  The 50th percentile.
+     */
+    long getP50();
+
+    /**
+     * Returns the 90th percentile of the recorded values.
+     *
+     * @return  The 90th percentile.
+     */
+    long getP90();
+
+    /**
+     * Returns the 99th percentile of the recorded values.
+     *
+     * @return  The 99th percentile.
+     */
+    long getP99();
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return  The maximum.
+     */
+    long getMax();
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.monitor;
+
+import com.salesforce.dva.argus.entity.Metric;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram using HDR style log-linear buckets. Values below 64 have a bucket of their own, larger values are grouped into 32 buckets
+ * per power of two, so any reported percentile is within about 3% of the recorded value. Values are clamped to the range between zero and
+ * {@link #HIGHEST_TRACKABLE_VALUE}.
+ *
+ * <p>Recording is lock-free and does not allocate. The buckets start out as a single array and are striped by thread, up to one array per
+ * available processor, once concurrent recordings are seen to contend. The monitor thread merges and resets the stripes once per publishing
+ * interval via {@link #computeNewSnapshotAndReset()}, and the resulting snapshot is what JMX reports until the next interval.</p>
+ */
+public class HistogramMetric implements HistogramMXBean {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The largest value that is tracked, roughly 795 days in milliseconds. Larger values are recorded as this value. */
+    public static final long HIGHEST_TRACKABLE_VALUE = (1L << 36) - 1;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 2 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = _indexOf(HIGHEST_TRACKABLE_VALUE) + 1;
+    private static final int MAX_STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Metric metric;
+    private final String jmxName;
+    private final AtomicLong max = new AtomicLong();
+    private volatile AtomicLongArray[] stripes = { new AtomicLongArray(BUCKET_COUNT) };
+    private volatile Snapshot snapshot = new Snapshot(new long[BUCKET_COUNT], 0);
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new HistogramMetric object.
+     *
+     * @param  metric  The metric the histogram is published as.
+     */
+    public HistogramMetric(Metric metric) {
+        this.metric = metric;
+        this.jmxName = GaugeMetric._createJMXObjectNameForMetric(metric, "", MetricType.HISTOGRAM_METRIC);
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    private static int _indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static int _shiftOf(int index) {
+        return index < SUB_BUCKET_COUNT ? 0 : (index >> SUB_BUCKET_BITS) - 1;
+    }
+
+    private static long _lowestValueAt(int index) {
+        int shift = _shiftOf(index);
+
+        return (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+    }
+
+    private static long _highestValueAt(int index) {
+        return _lowestValueAt(index) + (1L << _shiftOf(index)) - 1;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param  value  The value, typically a latency in milliseconds.
+     */
+    public void record(long value) {
+        long clamped = Math.min(Math.max(value, 0), HIGHEST_TRACKABLE_VALUE);
+        int index = _indexOf(clamped);
+        AtomicLongArray[] current = stripes;
+        AtomicLongArray counts = current[_probe() & (current.length - 1)];
+        long count = counts.get(index);
+
+        if (!counts.compareAndSet(index, count, count + 1)) {
+            counts.incrementAndGet(index);
+            _grow(current);
+        }
+
+        long currentMax = max.get();
+
+        while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Merges the values recorded since the last call into a new snapshot and resets the recorders.
+     *
+     * @return  The new snapshot.
+     */
+    public Snapshot computeNewSnapshotAndReset() {
+        long[] counts = new long[BUCKET_COUNT];
+
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (stripe.get(i) != 0) {
+                    counts[i] += stripe.getAndSet(i, 0);
+                }
+            }
+        }
+        snapshot = new Snapshot(counts, max.getAndSet(0));
+        return snapshot;
+    }
+
+    /**
+     * Returns the metric the histogram is published as.
+     *
+     * @return  The metric.
+     */
+    public Metric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public String getObjectName() {
+        return jmxName;
+    }
+
+    /**
+     * @return  the 99th percentile of the last published interval
+     */
+    @Override
+    public Double getValue() {
+        return (double) snapshot.getP99();
+    }
+
+    @Override
+    public long getCount() {
+        return snapshot.getCount();
+    }
+
+    @Override
+    public long getP50() {
+        return snapshot.getP50();
+    }
+
+    @Override
+    public long getP90() {
+        return snapshot.getP90();
+    }
+
+    @Override
+    public long getP99() {
+        return snapshot.getP99();
+    }
+
+    @Override
+    public long getMax() {
+        return snapshot.getMax();
+    }
+
+    /* Thread ids are handed out sequentially, so the multiplicative hash spreads neighbouring threads across stripes. */
+    private static int _probe() {
+        return (int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16);
+    }
+
+    private synchronized void _grow(AtomicLongArray[] seen) {
+        if (stripes == seen && seen.length < MAX_STRIPES) {
+            AtomicLongArray[] grown = new AtomicLongArray[seen.length * 2];
+
+            System.arraycopy(seen, 0, grown, 0, seen.length);
+            for (int i = seen.length; i < grown.length; i++) {
+                grown[i] = new AtomicLongArray(BUCKET_COUNT);
+            }
+            stripes = grown;
+        }
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The distribution of the values recorded during one publishing interval.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long max) {
+            long total = 0;
+            int highest = -1;
+
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i];
+                highest = counts[i] > 0 ? i : highest;
+            }
+            this.counts = counts;
+            this.count = total;
+            // A value recorded while the snapshot was taken may have been counted without its maximum.
+            this.max = highest < 0 ? 0 : Math.max(max, _lowestValueAt(highest));
+        }
+
+        /**
+         * Returns the value below which the given percentage of the recorded values fall.
+         *
+         * @param   percentile  The percentile, between 0 and 100.
+         *
+         * @return  The value at the percentile, or zero if no value was recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(_highestValueAt(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the published statistics keyed by the suffix appended to the metric name.
+         *
+         * @return  The count, the 50th, 90th and 99th percentiles and the maximum.
+         */
+        public Map<String, Double> getStatistics() {
+            Map<String, Double> statistics = new LinkedHashMap<>();
+
+            statistics.put("count", (double) count);
+            statistics.put("p50", (double) getP50());
+            statistics.put("p90", (double) getP90());
+            statistics.put("p99", (double) getP99());
+            statistics.put("max", (double) max);
+            return statistics;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return getValueAtPercentile(50);
+        }
+
+        public long getP90() {
+            return getValueAtPercentile(90);
+        }
+
+        public long getP99() {
+            return getValueAtPercentile(99);
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -58,7 +58,8 @@ public interface MetricMXBean {
 
 	public enum MetricType {
 		GAUGE_METRIC("Gauge"),
-		COUNTER_METRIC("Counter");
+		COUNTER_METRIC("Counter"),
+		HISTOGRAM_METRIC("Histogram");
 
 		private String type;
 
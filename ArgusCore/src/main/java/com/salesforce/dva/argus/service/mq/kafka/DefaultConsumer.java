@@ -51,9 +51,9 @@ import org.apache.kafka.common.errors.WakeupException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.validation.constraints.Null;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -83,6 +83,9 @@ public class DefaultConsumer implements Consumer {
     //~ Instance fields ******************************************************************************************************************************
 
     private final int MAX_BUFFER_SIZE;
+    private final long POLL_TIMEOUT_MS;
+    private final boolean DESERIALIZE_ON_POLL;
+    private final boolean CONSUME_FROM_KAFKA;
     // Number of abnormal exceptions allowed per X time-window minutes, within a topic's consumers, before the Consumer worker-thread stops altogether
     private final int ALLOWED_EXCEPTION_COUNT;
     private final int ALLOWED_EXCEPTION_TIME_WINDOW;
@@ -104,6 +107,11 @@ public class DefaultConsumer implements Consumer {
         this._mapper = new ObjectMapper();
         MAX_BUFFER_SIZE = Integer.parseInt(_configuration.getValue(Property.KAFKA_CONSUMER_MESSAGES_TO_BUFFER.getName(),
                 Property.KAFKA_CONSUMER_MESSAGES_TO_BUFFER.getDefaultValue()));
+        POLL_TIMEOUT_MS = Long.parseLong(_configuration.getValue(Property.KAFKA_CONSUMER_POLL_TIMEOUT_MS.getName(),
+                Property.KAFKA_CONSUMER_POLL_TIMEOUT_MS.getDefaultValue()));
+        DESERIALIZE_ON_POLL = Boolean.parseBoolean(_configuration.getValue(Property.KAFKA_CONSUMER_DESERIALIZE_ON_POLL.getName(),
+                Property.KAFKA_CONSUMER_DESERIALIZE_ON_POLL.getDefaultValue()));
+        CONSUME_FROM_KAFKA = true;
         ALLOWED_EXCEPTION_COUNT = Integer.parseInt(_configuration.getValue(Property.KAFKA_CONSUMER_ALLOWED_EXCEPTION_COUNT_PER_TIME_WINDOW.getName(),
                 Property.KAFKA_CONSUMER_ALLOWED_EXCEPTION_COUNT_PER_TIME_WINDOW.getDefaultValue()));
         ALLOWED_EXCEPTION_TIME_WINDOW = Integer.parseInt(_configuration.getValue(Property.KAFKA_CONSUMER_ALLOWED_EXCEPTION_TIME_WINDOW_MINUTES.getName(),
@@ -113,9 +121,18 @@ public class DefaultConsumer implements Consumer {
 
     @VisibleForTesting
     protected DefaultConsumer(SystemConfiguration configuration, ObjectMapper mapper, int maxBufferSize) {
+        this(configuration, mapper, maxBufferSize, false);
+    }
+
+    /* Creates a consumer whose topics are not consumed from Kafka, so that tests fill the buffer through bufferMessage. */
+    @VisibleForTesting
+    protected DefaultConsumer(SystemConfiguration configuration, ObjectMapper mapper, int maxBufferSize, boolean deserializeOnPoll) {
         _configuration = configuration;
         _mapper = mapper;
         MAX_BUFFER_SIZE = maxBufferSize;
+        POLL_TIMEOUT_MS = Long.parseLong(Property.KAFKA_CONSUMER_POLL_TIMEOUT_MS.getDefaultValue());
+        DESERIALIZE_ON_POLL = deserializeOnPoll;
+        CONSUME_FROM_KAFKA = false;
         ALLOWED_EXCEPTION_COUNT = 3;
         ALLOWED_EXCEPTION_TIME_WINDOW = 3;
     }
@@ -144,7 +161,7 @@ public class DefaultConsumer implements Consumer {
                             _configuration.getValue(Property.KAFKA_CONSUMER_GROUPID.getName(), Property.KAFKA_CONSUMER_GROUPID.getDefaultValue()));
                     props.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, _configuration.getValue(Property.KAFKA_CONSUMER_OFFSET_RESET.getName(), Property.KAFKA_CONSUMER_OFFSET_RESET.getDefaultValue()));
                     props.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
-                    props.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
+                    props.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer");
                     // Set security props
                     props.setProperty(CommonClientConfigs.SECURITY_PROTOCOL_CONFIG,
                             _configuration.getValue(Property.KAFKA_SECURITY_PROTOCOL.getName(), Property.KAFKA_SECURITY_PROTOCOL.getDefaultValue()));
@@ -190,37 +207,7 @@ public class DefaultConsumer implements Consumer {
      * @return  Messages of the given type belonging to the given topic. Empty list if no such topic exists or the method times out.
      */
     public <T extends Serializable> List<T> dequeueFromBuffer(String topic, Class<T> type, int timeout, int limit) {
-        initializeTopic(topic);
-
-        List<T> result = new ArrayList<T>();
-        long cutoff = System.currentTimeMillis() + timeout;
-        BlockingQueue<String> queue = _topics.get(topic).getMessages();
-
-        while (System.currentTimeMillis() < cutoff && (limit < 0 || result.size() < limit)) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
-            }
-            try {
-                String message = queue.poll(timeout, TimeUnit.MILLISECONDS);
-
-                if (message != null && !message.isEmpty()) {
-                    if (String.class.isAssignableFrom(type)) {
-                        result.add(type.cast(message));
-                    } else {
-                        result.add(deserialize(message, type));
-                    }
-                    if (result.size() % 1000 == 0) {
-                        _logger.debug("Dequeued {} messages from local buffer.", result.size());
-                    }
-                }
-            } catch (InterruptedException e) {
-                _logger.warn("Interrupted while waiting for poll() to return a message.");
-                Thread.currentThread().interrupt();
-            } catch (IOException e) {
-                _logger.warn("Exception while deserializing message to type: " + type + ". Skipping this message.", e);
-            }
-        }
-        return result;
+        return _dequeueFromBuffer(topic, _mapper.getTypeFactory().constructType(type), timeout, limit);
     }
 
     /**
@@ -237,36 +224,72 @@ public class DefaultConsumer implements Consumer {
      * @return  Messages of the given type belonging to the given topic. Empty list if no such topic exists or the method times out.
      */
     public <T extends Serializable> List<T> dequeueFromBuffer(String topic, JavaType type, int timeout, int limit) {
+        return _dequeueFromBuffer(topic, type, timeout, limit);
+    }
+
+    /*
+     * Waits for the first message, then drains whatever else is already buffered in a single handoff rather than acquiring the queue lock once
+     * per message.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Serializable> List<T> _dequeueFromBuffer(String topic, JavaType type, int timeout, int limit) {
         initializeTopic(topic);
+
+        Topic t = _topics.get(topic);
+        BlockingQueue<Message> queue = t.getMessages();
         List<T> result = new ArrayList<>();
+        List<Message> batch = new ArrayList<>();
         long cutoff = System.currentTimeMillis() + timeout;
-        BlockingQueue<String> queue = _topics.get(topic).getMessages();
 
-        while (System.currentTimeMillis() < cutoff && (limit < 0 || result.size() < limit)) {
-            if (Thread.currentThread().isInterrupted()) {
+        if (DESERIALIZE_ON_POLL && !type.hasRawClass(String.class)) {
+            t.registerMessageType(type);
+        }
+        while (limit < 0 || result.size() < limit) {
+            long remaining = cutoff - System.currentTimeMillis();
+
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
                 break;
             }
             try {
-                String message = queue.poll(timeout, TimeUnit.MILLISECONDS);
+                Message first = queue.poll(remaining, TimeUnit.MILLISECONDS);
 
-                if (message != null && !message.isEmpty()) {
-                    T object = _mapper.readValue(message, type);
-
-                    result.add(object);
-                    if (result.size() % 1000 == 0) {
-                        _logger.debug("Dequeued {} messages from local buffer.", result.size());
+                if (first == null) {
+                    continue;
+                }
+                batch.clear();
+                batch.add(first);
+                queue.drainTo(batch, limit < 0 ? Integer.MAX_VALUE : limit - result.size() - 1);
+                for (Message message : batch) {
+                    Object object = _decode(message, type);
+
+                    if (object != null) {
+                        result.add((T) object);
                     }
                 }
+                _logger.debug("Dequeued {} messages from local buffer.", result.size());
             } catch (InterruptedException e) {
                 _logger.warn("Interrupted while waiting for poll() to return a message.");
                 Thread.currentThread().interrupt();
-            } catch (IOException e) {
-                _logger.warn("Exception while deserializing message to type: " + type + ". Skipping this message.", e);
             }
         }
         return result;
     }
 
+    private Object _decode(Message message, JavaType type) {
+        if (message.getValue() != null && type.equals(message.getValueType())) {
+            return message.getValue();
+        }
+        try {
+            if (type.hasRawClass(String.class)) {
+                return new String(message.getBytes(), StandardCharsets.UTF_8);
+            }
+            return deserialize(message.getBytes(), type);
+        } catch (IOException e) {
+            _logger.warn("Exception while deserializing message to type: " + type + ". Skipping this message.", e);
+            return null;
+        }
+    }
+
     /** Enqueue un-flushed messages back on to Kafka. */
     public void shutdown() {
         for (Topic topic : _topics.values()) {
@@ -282,15 +305,19 @@ public class DefaultConsumer implements Consumer {
         }
         _logger.debug("Pushing unflushed messages back to Kafka.");
 
-        DefaultProducer producer = new DefaultProducer(_configuration);
+        Producer producer = createProducer();
 
         for (Map.Entry<String, Topic> entry : _topics.entrySet()) {
             String topicName = entry.getKey();
             Topic topic = entry.getValue();
+            List<Message> bufferedMessages = new ArrayList<>();
             List<String> unflushedMessages = new ArrayList<String>();
 
-            if (!topic.getMessages().isEmpty()) {
-                topic.getMessages().drainTo(unflushedMessages);
+            topic.getMessages().drainTo(bufferedMessages);
+            for (Message message : bufferedMessages) {
+                unflushedMessages.add(new String(message.getBytes(), StandardCharsets.UTF_8));
+            }
+            if (!unflushedMessages.isEmpty()) {
                 producer.enqueue(topicName, unflushedMessages);
             }
             _logger.debug("{} messages for topic {} enqueued on Kafka queue", unflushedMessages.size(), topicName);
@@ -298,11 +325,52 @@ public class DefaultConsumer implements Consumer {
         producer.shutdown();
     }
 
+    /**
+     * Buffers a message polled from a topic, deserializing it first when deserialization on poll is enabled.
+     *
+     * @param   topic    The topic the message was polled from.
+     * @param   message  The raw message.
+     *
+     * @throws  InterruptedException  If interrupted while waiting for space in the buffer.
+     */
+    @VisibleForTesting
+    void bufferMessage(String topic, byte[] message) throws InterruptedException {
+        initializeTopic(topic);
+
+        Topic t = _topics.get(topic);
+        JavaType type = DESERIALIZE_ON_POLL ? t.getMessageType() : null;
+        Object value = null;
+
+        if (type != null) {
+            try {
+                value = deserialize(message, type);
+            } catch (IOException e) {
+                _logger.debug("Could not deserialize message on poll, deferring to dequeue.", e);
+            }
+        }
+        t.getMessages().put(new Message(message, value, value != null ? type : null));
+    }
+
+    /**
+     * Creates the producer unflushed messages are enqueued back to on shutdown.
+     *
+     * @return  The producer.
+     */
+    @VisibleForTesting
+    protected Producer createProducer() {
+        return new DefaultProducer(_configuration);
+    }
+
     @VisibleForTesting
     protected <T extends Serializable> T deserialize(String message, Class<T> type) throws IOException {
         return _mapper.readValue(message, type);
     }
 
+    @VisibleForTesting
+    protected <T> T deserialize(byte[] message, JavaType type) throws IOException {
+        return _mapper.readValue(message, type);
+    }
+
     //~ Inner Classes ********************************************************************************************************************************
 
     /**
@@ -313,7 +381,7 @@ public class DefaultConsumer implements Consumer {
     private class ConsumerWorker implements Runnable {
         private final AtomicBoolean closed = new AtomicBoolean(false);
         private Properties consumerProps;
-        private KafkaConsumer<String, String> consumer;
+        private KafkaConsumer<String, byte[]> consumer;
         private Cache<Long, Exception> exceptionLog = CacheBuilder.newBuilder()
                 .expireAfterWrite(ALLOWED_EXCEPTION_TIME_WINDOW, TimeUnit.MINUTES).build();
         private final String topic;
@@ -359,21 +427,23 @@ public class DefaultConsumer implements Consumer {
                             break;
                         }
                         try {
-                            ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(Long.MAX_VALUE));
-                            for (ConsumerRecord<String, String> record : records) {
-                                String message = record.value();
+                            ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(POLL_TIMEOUT_MS));
+                            for (ConsumerRecord<String, byte[]> record : records) {
+                                byte[] message = record.value();
                                 String topic = record.topic();
 
-                                if (message != null) {
-                                    _topics.get(topic).getMessages().put(message);
+                                if (message != null && message.length > 0) {
+                                    Topic t = _topics.get(topic);
+
+                                    bufferMessage(topic, message);
 
                                     long c = count.incrementAndGet();
 
                                     if (c % 50000 == 0) {
                                         _logger.debug("Read {} messages.", count.get());
                                     }
-                                    if (_topics.get(topic).getMessages().size() % 1000 == 0) {
-                                        _logger.debug("Message queued. Queue size = {}", _topics.get(topic).getMessages().size());
+                                    if (t.getMessages().size() % 1000 == 0) {
+                                        _logger.debug("Message queued. Queue size = {}", t.getMessages().size());
                                     }
                                 }
                             }
@@ -406,6 +476,35 @@ public class DefaultConsumer implements Consumer {
         }
     }
 
+    /**
+     * A buffered message. Holds the raw record bytes and, when deserialized on the polling thread, the decoded object and its type. The raw bytes
+     * are kept so that a message dequeued as another type, or enqueued back to Kafka on shutdown, is read from the original record rather than
+     * from a re-serialization of the decoded object.
+     */
+    private static class Message {
+        private final byte[] bytes;
+        private final Object value;
+        private final JavaType valueType;
+
+        Message(byte[] bytes, Object value, JavaType valueType) {
+            this.bytes = bytes;
+            this.value = value;
+            this.valueType = valueType;
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        JavaType getValueType() {
+            return valueType;
+        }
+    }
+
     /**
      * Inner class that contains information about a particular topic. It includes a kafka consumer connector, an executor service for maintaining the
      * streaming threads and a blocking queue to store the actual messages.
@@ -413,8 +512,11 @@ public class DefaultConsumer implements Consumer {
      * @author  Bhinav Sura (bhinav.sura@salesforce.com)
      */
     private class Topic {
+        final String topicName;
         ExecutorService executorService;
-        BlockingQueue<String> messages;
+        BlockingQueue<Message> messages;
+        volatile JavaType messageType;
+        boolean mixedMessageTypes;
         List<ConsumerWorker> workers = new ArrayList<>();
 
         /**
@@ -425,6 +527,7 @@ public class DefaultConsumer implements Consumer {
          * @param  numStreams         The number of streams with which to consume the topic.
          */
         public Topic(final String topicName, Properties consumerProps, int numStreams) {
+            this.topicName = topicName;
             messages = new LinkedBlockingQueue<>(MAX_BUFFER_SIZE);
             executorService = Executors.newFixedThreadPool(numStreams, new ThreadFactory() {
                 AtomicInteger id = new AtomicInteger(0);
@@ -434,7 +537,7 @@ public class DefaultConsumer implements Consumer {
                     return new Thread(r, MessageFormat.format("{0}-consumerworker-{1}", topicName, id.getAndIncrement()));
                 }
             });
-            for (int i = 0; i < numStreams; i++) {
+            for (int i = 0; i < (CONSUME_FROM_KAFKA ? numStreams : 0); i++) {
                 ConsumerWorker worker = new ConsumerWorker(consumerProps, topicName);
                 workers.add(worker);
                 executorService.submit(worker);
@@ -464,9 +567,38 @@ public class DefaultConsumer implements Consumer {
          *
          * @return  The dequeued messages.
          */
-        public BlockingQueue<String> getMessages() {
+        public BlockingQueue<Message> getMessages() {
             return messages;
         }
+
+        /**
+         * Returns the type that polled messages are deserialized to, if known.
+         *
+         * @return  The message type or null.
+         */
+        public JavaType getMessageType() {
+            return messageType;
+        }
+
+        /**
+         * Registers a type the messages of the topic are dequeued as. Polled messages are deserialized to it as long as it is the only type
+         * requested for the topic. Once a different type is requested, messages are no longer deserialized on poll, since the type the next
+         * dequeuing thread asks for is unknown.
+         *
+         * @param  type  The requested type.
+         */
+        public synchronized void registerMessageType(JavaType type) {
+            if (mixedMessageTypes || type.equals(messageType)) {
+                return;
+            }
+            if (messageType == null) {
+                messageType = type;
+            } else {
+                _logger.info("Topic {} is dequeued as {} and {}, messages are no longer deserialized on poll.", topicName, messageType, type);
+                mixedMessageTypes = true;
+                messageType = null;
+            }
+        }
     }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -167,6 +167,20 @@ public class DefaultProducer implements Producer {
      * @return  The number of objects that were successfully added to the DefaultProducer Buffer.
      */
     public <T extends Serializable> int enqueue(final String topic, List<T> objects) {
+        return enqueue(topic, null, objects);
+    }
+
+    /**
+     * Adds the messages to the DefaultProducer Buffer with a partition key. Kafka assigns messages with the same key to the same partition.
+     *
+     * @param   <T>           The value type.
+     * @param   topic         The topic to produce onto.
+     * @param   partitionKey  The partition key. If null, the default partitioner spreads the messages.
+     * @param   objects       The list of objects to enqueue.
+     *
+     * @return  The number of objects that were successfully added to the DefaultProducer Buffer.
+     */
+    public <T extends Serializable> int enqueue(final String topic, String partitionKey, List<T> objects) {
         int messagesBuffered = 0;
 
         for (T object : objects) {
@@ -183,7 +197,7 @@ public class DefaultProducer implements Producer {
                 }
             }
             try {
-                boolean addedToBuffer = _executorService.submit(new ProducerWorker(topic, value)).get();
+                boolean addedToBuffer = _executorService.submit(new ProducerWorker(topic, partitionKey, value)).get();
 
                 if (addedToBuffer) {
                     messagesBuffered++;
@@ -230,22 +244,25 @@ public class DefaultProducer implements Producer {
     private class ProducerWorker implements Callable<Boolean> {
 
         private final String _topic;
+        private final String _key;
         private final String _message;
 
         /**
          * Creates a new DefaultProducer object.
          *
          * @param  topic    The topic to produce onto.
+         * @param  key      The partition key. Can be null.
          * @param  message  The message to enqueue.
          */
-        public ProducerWorker(String topic, String message) {
+        public ProducerWorker(String topic, String key, String message) {
             this._topic = topic;
+            this._key = key;
             this._message = message;
         }
 
         @Override
         public Boolean call() {
-            ProducerRecord<String, String> record = new ProducerRecord<>(_topic, _message);
+            ProducerRecord<String, String> record = new ProducerRecord<>(_topic, _key, _message);
 
             try {
                 _producer.send(record, new Callback() {
@@ -129,11 +129,16 @@ public class KafkaMessageService extends DefaultService implements MQService {
 
     @Override
     public <T extends Serializable> void enqueue(final String topic, List<T> objects) {
+        enqueue(topic, null, objects);
+    }
+
+    @Override
+    public <T extends Serializable> void enqueue(final String topic, String partitionKey, List<T> objects) {
         requireNotDisposed();
         requireProducerEnabled();
         requireArgument(topic != null && !topic.trim().isEmpty(), "Topic name cannot be null or empty.");
         requireArgument(objects != null, "The list of objects to enqueue cannot be null.");
-        _producer.enqueue(toKafkaTopic(topic), objects);
+        _producer.enqueue(toKafkaTopic(topic), partitionKey, objects);
     }
 
     @Override
@@ -230,6 +235,10 @@ public class KafkaMessageService extends DefaultService implements MQService {
         KAFKA_CONSUMER_GROUPID("service.property.mq.kafka.consumer.groupid", "argus-consumer-unit"),
         /** Where to start a new group.id from */
         KAFKA_CONSUMER_OFFSET_RESET("service.property.mq.kafka.consumer.auto.offset.reset", "earliest"),
+        /** Specifies the maximum time in milliseconds a consumer poll blocks.  Default is 1000. */
+        KAFKA_CONSUMER_POLL_TIMEOUT_MS("service.property.mq.kafka.consumer.poll.timeout.ms", "1000"),
+        /** Whether polling threads deserialize messages into the type requested for the topic, as long as a single type is requested.  Default is false. */
+        KAFKA_CONSUMER_DESERIALIZE_ON_POLL("service.property.mq.kafka.consumer.deserialize.on.poll", "false"),
         /** Number of abnormal exceptions allowed per X minutes before the Consumer worker-thread stops altogether */
         KAFKA_CONSUMER_ALLOWED_EXCEPTION_COUNT_PER_TIME_WINDOW("service.property.mq.kafka.consumer.allowed.exception.count", "3"),
         KAFKA_CONSUMER_ALLOWED_EXCEPTION_TIME_WINDOW_MINUTES("service.property.mq.kafka.consumer.allowed.exception.time.window.mins", "3"),
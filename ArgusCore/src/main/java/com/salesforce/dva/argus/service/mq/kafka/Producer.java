@@ -6,5 +6,7 @@ import java.util.List;
 public interface Producer {
     <T extends Serializable> int enqueue(final String topic, List<T> objects);
 
+    <T extends Serializable> int enqueue(final String topic, String partitionKey, List<T> objects);
+
     void shutdown();
 }
\ No newline at end of file
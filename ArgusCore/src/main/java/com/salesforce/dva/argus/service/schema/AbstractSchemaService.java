@@ -67,6 +67,7 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 	private boolean modifiedBloomClearingEnabled;
 	private int modifiedBloomClearingPeriodHours;
 	private int modifiedBloomFlushPeriodHours;
+	private final SchemaSeenIndex _seenIndex;
 
 	protected AbstractSchemaService(SystemConfiguration config, MonitorService monitorService) {
 		super(config);
@@ -94,6 +95,14 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 		modifiedBloomErrorRate = Double.parseDouble(config.getValue(Property.MODIFIED_BLOOM_ERROR_RATE.getName(),
 				Property.MODIFIED_BLOOM_ERROR_RATE.getDefaultValue()));
 		bloomFilter = createOrReadBloomFilter(modifiedBloomFileName, modifiedBloomExpectedNumberInsertions, modifiedBloomErrorRate);
+		if (Boolean.parseBoolean(config.getValue(Property.SEEN_INDEX_ENABLED.getName(), Property.SEEN_INDEX_ENABLED.getDefaultValue()))) {
+			_seenIndex = new SchemaSeenIndex(
+					TimeUnit.HOURS.toMillis(Long.parseLong(config.getValue(Property.SEEN_INDEX_WINDOW_HOURS.getName(),
+							Property.SEEN_INDEX_WINDOW_HOURS.getDefaultValue()))),
+					Integer.parseInt(config.getValue(Property.SEEN_INDEX_WINDOWS.getName(), Property.SEEN_INDEX_WINDOWS.getDefaultValue())));
+		} else {
+			_seenIndex = null;
+		}
 
 		_syncPut = Boolean.parseBoolean(
 				config.getValue(Property.SYNC_PUT.getName(), Property.SYNC_PUT.getDefaultValue()));
@@ -106,6 +115,33 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 
 	void clearBlooms() {
 		bloomFilter = BloomFilter.create(Funnels.stringFunnel(Charset.defaultCharset()), modifiedBloomExpectedNumberInsertions, modifiedBloomErrorRate);
+		if (_seenIndex != null) {
+			_seenIndex.clear();
+		}
+	}
+
+	/**
+	 * Indicates whether a schema record key was indexed recently, using the time windowed seen index when enabled and the bloom filter otherwise.
+	 *
+	 * @param   key  The schema record key.
+	 *
+	 * @return  True if the record does not need to be indexed again.
+	 */
+	boolean isSeen(String key) {
+		return _seenIndex != null ? _seenIndex.contains(key, System.currentTimeMillis()) : bloomFilter.mightContain(key);
+	}
+
+	/**
+	 * Records that a schema record key was indexed.
+	 *
+	 * @param  key  The schema record key.
+	 */
+	void markSeen(String key) {
+		if (_seenIndex != null) {
+			_seenIndex.put(key, System.currentTimeMillis());
+		} else {
+			bloomFilter.put(key);
+		}
 	}
 
 	@Override
@@ -128,12 +164,12 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 			// index the schema records that haven't been seen by the bloom
 			if(metric.getTags().isEmpty()) {
 				String key = AbstractSchemaRecord.constructKey(metric, null, null);
-				if (!bloomFilter.mightContain(key)) {
+				if (!isSeen(key)) {
 					metricsToIndex.add(metric);
 				}
 			} else {
 				metric.getTags().forEach((tagk, tagv) -> {String key = AbstractSchemaRecord.constructKey(metric, tagk, tagv);
-					if (!bloomFilter.mightContain(key)) {
+					if (!isSeen(key)) {
 						metricsToIndex.add(metric);
 					}
 				});
@@ -142,7 +178,7 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 			// index the scopes that haven't been seen by the bloom
 			String scopeName = metric.getScope();
 			String key = AbstractSchemaRecord.constructKey(scopeName);
-			if (!bloomFilter.mightContain(key)) {
+			if (!isSeen(key)) {
 				scopesToIndex.add(scopeName);
 			}
 
@@ -151,7 +187,7 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 			if(mtags != null) {
 				key = mtags.getKey();
 				if(key != null) {
-					if (!bloomFilter.mightContain(key)) {
+					if (!isSeen(key)) {
 						metatagsToIndex.add(mtags);
 					}
 				}
@@ -273,6 +309,11 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 		int hourHash = Math.abs(hf.newHasher().putString(toHash, Charset.defaultCharset()).hash().asInt());
 		scheduledExecutorService = Executors.newScheduledThreadPool(1);
 
+		if (_seenIndex != null) {
+			_logger.info("Schema seen index ages out keys by time window, bloom filter flushing and clearing are not scheduled");
+			return;
+		}
+
 		int nthFlushHour = hourHash % modifiedBloomFlushPeriodHours;
 		_logger.info("Bloom filter will flush to disk at hour {} of every day", nthFlushHour);
 		int flushDelaySeconds = getNumSecondsUntilNthHourOfDay(nthFlushHour, Calendar.getInstance());
@@ -319,7 +360,16 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 		MODIFIED_BLOOM_ERROR_RATE("service.property.schema.bloomfilter.modified.error.rate", "0.00001"),
 		MODIFIED_BLOOM_CLEARING_ENABLED("service.property.schema.bloomfilter.modified.clearing.enabled", "true"),
 		MODIFIED_BLOOM_CLEARING_PERIOD_HOURS("service.property.schema.bloomfilter.modified.clearing.period.hours", String.valueOf(7 * 24)),
-		MODIFIED_BLOOM_FLUSH_PERIOD_HOURS("service.property.schema.bloomfilter.modified.flush.period.hours", "24");
+		MODIFIED_BLOOM_FLUSH_PERIOD_HOURS("service.property.schema.bloomfilter.modified.flush.period.hours", "24"),
+
+		/*
+		 * Replaces the bloom filter with fingerprint sets kept per time window. A key is re-indexed once the window it was indexed in ages out,
+		 * so only the keys of one window are re-indexed at a time. Combine with service.property.collection.metric.partitioned so that
+		 * every schema committer only sees the keys it owns.
+		 */
+		SEEN_INDEX_ENABLED("service.property.schema.seen.index.enabled", "false"),
+		SEEN_INDEX_WINDOW_HOURS("service.property.schema.seen.index.window.hours", "24"),
+		SEEN_INDEX_WINDOWS("service.property.schema.seen.index.windows", "7");
 
 
 		private final String _name;
@@ -374,6 +424,10 @@ public abstract class AbstractSchemaService extends DefaultService implements Sc
 		}
 
 		private void _checkBloomFilterUsage() {
+			if (_seenIndex != null) {
+				_monitorService.modifyCounter(MonitorService.Counter.BLOOM_MODIFIED_APPROXIMATE_ELEMENT_COUNT, _seenIndex.size(), bloomFilterMonitorTags);
+				return;
+			}
 			_monitorService.modifyCounter(MonitorService.Counter.BLOOM_MODIFIED_APPROXIMATE_ELEMENT_COUNT, bloomFilter.approximateElementCount(), bloomFilterMonitorTags);
 
 			_logger.info("Bloom for modified-timestamp expected error rate = {}", bloomFilter.expectedFpp());
@@ -7,6 +7,7 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -37,6 +38,8 @@ import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemException;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
 
 @Singleton
 public class CachedDiscoveryService extends DefaultService implements DiscoveryService {
@@ -102,6 +105,11 @@ public class CachedDiscoveryService extends DefaultService implements DiscoveryS
 		return _discoveryService.filterRecords(query);
 	}
 
+	@Override
+	public Iterator<MetricSchemaRecord> iterateRecords(MetricSchemaRecordQuery query) {
+		return _discoveryService.iterateRecords(query);
+	}
+
 	@Override
 	public List<MetricSchemaRecord> getUniqueRecords(MetricSchemaRecordQuery query, RecordType type) {
 		return _discoveryService.getUniqueRecords(query, type);
@@ -121,7 +129,10 @@ public class CachedDiscoveryService extends DefaultService implements DiscoveryS
 		List<MetricQuery> queries = new ArrayList<>();
 		
 		if(DiscoveryService.isWildcardQuery(query)) {
-			String value = _cacheService.get(_getKey(query));
+			String value;
+			try (QueryTrace.Span span = QueryTrace.startSpan(Stage.CACHE)) {
+				value = _cacheService.get(_getKey(query));
+			}
 			if(value == null) { // Cache Miss
 				_logger.debug(MessageFormat.format("CACHE MISS for Wildcard Query: {0}. Will read from persistent storage.", query));
 				queries = _discoveryService.getMatchingQueries(query);
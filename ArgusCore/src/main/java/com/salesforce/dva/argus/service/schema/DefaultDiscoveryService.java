@@ -52,6 +52,7 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -110,6 +111,14 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
         
     }
 
+    @Override
+    public Iterator<MetricSchemaRecord> iterateRecords(MetricSchemaRecordQuery query) {
+        requireNotDisposed();
+        SystemAssert.requireArgument(query != null, "Query cannot be null.");
+        _logger.debug(query.toString());
+        return _schemaService.getIterator(query);
+    }
+
     @Override
     public List<MetricSchemaRecord> getUniqueRecords(MetricSchemaRecordQuery query, RecordType type) {
         requireNotDisposed();
@@ -167,8 +176,10 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
 																						            			  .page(1)
 																						            			  .build();
 
-                List<MetricSchemaRecord> records = _schemaService.get(schemaQuery);
-                for (MetricSchemaRecord record : records) {
+                // Records are paged in as they are consumed, so hitting the limit stops reading the remaining records.
+                Iterator<MetricSchemaRecord> records = _schemaService.getIterator(schemaQuery);
+                while (records.hasNext()) {
+                    MetricSchemaRecord record = records.next();
                     String identifier = _getIdentifier(record);
 
                     if (!queries.containsKey(identifier)) {
@@ -203,15 +214,16 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
                 							|| SchemaService.containsWildcard(tag.getKey())
                 							|| SchemaService.containsWildcard(tag.getValue());
 
-                    List<MetricSchemaRecord> records;
+                    Iterator<MetricSchemaRecord> records;
                     if(!containsWildcard) {
                         records = Arrays.asList(new MetricSchemaRecord(query.getNamespace(), query.getScope(), query.getMetric(),
-                                tag.getKey(), tag.getValue()));
+                                tag.getKey(), tag.getValue())).iterator();
                     } else {
-                        records = _schemaService.get(schemaQuery);
+                        records = _schemaService.getIterator(schemaQuery);
                     }
 
-                    for (MetricSchemaRecord record : records) {
+                    while (records.hasNext()) {
+                        MetricSchemaRecord record = records.next();
                         if (_getTotalTimeseriesCount(timeseriesCount) == noOfTimeseriesAllowed) {
                             DiscoveryService.throwMaximumDatapointsExceededException(query, _maxDataPointsPerQuery, _enforceDatapointsLimit, _monitorService, _logger);
                         }
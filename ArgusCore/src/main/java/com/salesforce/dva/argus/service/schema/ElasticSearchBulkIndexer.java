@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.schema;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.service.schema.ElasticSearchSchemaService.PutResponse;
+import com.salesforce.dva.argus.service.schema.ElasticSearchSchemaService.PutResponse.CreateItem;
+import com.salesforce.dva.argus.service.schema.ElasticSearchSchemaService.PutResponse.Item;
+import com.salesforce.dva.argus.system.SystemException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.ResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded concurrent pipeline for ElasticSearch <tt>_bulk</tt> requests. Records are serialized to NDJSON straight into batch buffers that are
+ * cut by byte size and sent from a fixed pool of workers as soon as they fill, so bulk requests for several indices are in flight at the same
+ * time and a request is on the wire while the next batch is still being written. Items rejected with HTTP 429 are retried on their own with
+ * exponential back-off; the rest of their batch is not resent. Back-off delays are timed by a scheduler rather than by sleeping workers.
+ */
+class ElasticSearchBulkIndexer {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	private static final Logger _logger = LoggerFactory.getLogger(ElasticSearchBulkIndexer.class);
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+	private static final byte[] ID_FIELD = "\"_id\"".getBytes(StandardCharsets.UTF_8);
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final ExecutorService _executor;
+	private final ScheduledExecutorService _scheduler;
+	private final long _maxBatchBytes;
+	private final int _maxRetries;
+	private final long _initialBackoffMillis;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new bulk indexer.
+	 *
+	 * @param  concurrency           The maximum number of bulk requests in flight.
+	 * @param  maxBatchBytes         The maximum size in bytes of a single bulk request body. A single document larger than this is sent alone.
+	 * @param  maxRetries            The number of times items rejected with HTTP 429 are retried.
+	 * @param  initialBackoffMillis  The delay before the first retry. Doubles on each subsequent retry.
+	 */
+	ElasticSearchBulkIndexer(int concurrency, long maxBatchBytes, int maxRetries, long initialBackoffMillis) {
+		AtomicInteger threadCount = new AtomicInteger();
+
+		_executor = Executors.newFixedThreadPool(concurrency, r -> {
+			Thread thread = new Thread(r, "es-bulk-indexer-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		_scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "es-bulk-indexer-backoff");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_maxBatchBytes = maxBatchBytes;
+		_maxRetries = maxRetries;
+		_initialBackoffMillis = initialBackoffMillis;
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	/**
+	 * Serializes the records and schedules their bulk requests. Returns once the records are serialized; use {@link BulkIndexResult#await()} to wait
+	 * for completion.
+	 *
+	 * @param   indexName     The index name.
+	 * @param   typeName      The type name.
+	 * @param   recordFinder  The records keyed by document id.
+	 * @param   mapper        The mapper whose serializer writes the records as bulk index NDJSON.
+	 * @param   client        Executes a single bulk request.
+	 * @param   <T>           The record type.
+	 *
+	 * @return  The pending result.
+	 */
+	<T> BulkIndexResult<T> submit(String indexName, String typeName, RecordFinder<T> recordFinder, ObjectMapper mapper, BulkClient client) {
+		String requestUrl = String.format("/%s/%s/_bulk", indexName, typeName);
+		BulkIndexResult<T> result = new BulkIndexResult<>(indexName, recordFinder);
+		BatchOutputStream out = new BatchOutputStream(batch -> result._add(_submitBatch(requestUrl, indexName, batch, client, result)));
+
+		try {
+			mapper.writeValue(out, recordFinder);
+		} catch (IOException ex) {
+			throw new SystemException(ex);
+		}
+		out.finish();
+		return result;
+	}
+
+	/** Stops the worker pool. Bulk requests already in flight are interrupted and pending retries are dropped. */
+	void shutdown() {
+		_scheduler.shutdownNow();
+		_executor.shutdownNow();
+	}
+
+	/* Finds the document id in a bulk action line, which the record list serializers write as a plain string without escapes. */
+	private static String _readId(byte[] body, int offset, int length) {
+		int end = offset + length;
+		int i = _indexOf(body, ID_FIELD, offset, end);
+
+		if (i >= 0) {
+			i += ID_FIELD.length;
+			while (i < end && body[i] != '"') {
+				i++;
+			}
+
+			int idStart = ++i;
+
+			while (i < end && body[i] != '"') {
+				i++;
+			}
+			if (i < end) {
+				return new String(body, idStart, i - idStart, StandardCharsets.UTF_8);
+			}
+		}
+		throw new SystemException("Malformed bulk action line: " + new String(body, offset, length, StandardCharsets.UTF_8));
+	}
+
+	private static int _indexOf(byte[] body, byte[] target, int from, int to) {
+		outer:
+		for (int i = from; i <= to - target.length; i++) {
+			for (int j = 0; j < target.length; j++) {
+				if (body[i + j] != target[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private CompletableFuture<Void> _submitBatch(String requestUrl, String indexName, Batch batch, BulkClient client, BulkIndexResult<?> result) {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+
+		done.whenComplete((v, ex) -> result._complete());
+		_execute(() -> _attempt(requestUrl, indexName, batch, client, result, 0, _initialBackoffMillis, done), done);
+		return done;
+	}
+
+	/* Sends the batch once and, if items were rejected, schedules the next attempt on the scheduler instead of holding a worker while backing off. */
+	private void _attempt(String requestUrl, String indexName, Batch batch, BulkClient client, BulkIndexResult<?> result, int attempt, long backoff,
+		CompletableFuture<Void> done) {
+		try {
+			Batch rejected = _send(requestUrl, indexName, batch, client, result);
+
+			if (rejected.documents.isEmpty()) {
+				done.complete(null);
+				return;
+			}
+			if (attempt >= _maxRetries) {
+				_logger.warn("{} records were still rejected by index {} after {} retries.", rejected.documents.size(), indexName, _maxRetries);
+				for (Document document : rejected.documents) {
+					result._fail(document.id);
+				}
+				done.complete(null);
+				return;
+			}
+			result._rejected.addAndGet(rejected.documents.size());
+			_logger.info("{} records were rejected by index {}. Retrying in {} ms.", rejected.documents.size(), indexName, backoff);
+			_scheduler.schedule(() -> _execute(() -> _attempt(requestUrl, indexName, rejected, client, result, attempt + 1, backoff * 2, done), done),
+				backoff, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ex) {
+			done.completeExceptionally(new SystemException("Bulk indexer was shut down while retrying records for " + indexName, ex));
+		} catch (RuntimeException ex) {
+			done.completeExceptionally(ex);
+		}
+	}
+
+	private void _execute(Runnable task, CompletableFuture<Void> done) {
+		try {
+			_executor.execute(task);
+		} catch (RejectedExecutionException ex) {
+			done.completeExceptionally(new SystemException("Bulk indexer was shut down.", ex));
+		}
+	}
+
+	/* Sends one bulk request and returns the documents that should be retried. */
+	private Batch _send(String requestUrl, String indexName, Batch batch, BulkClient client, BulkIndexResult<?> result) {
+		String strResponse;
+
+		try {
+			strResponse = client.execute(requestUrl, new NdjsonEntity(batch));
+		} catch (ResponseException ex) {
+			if (ex.getResponse().getStatusLine().getStatusCode() == SC_TOO_MANY_REQUESTS) {
+				return batch;
+			}
+			throw new SystemException(ex);
+		} catch (IOException ex) {
+			throw new SystemException(ex);
+		}
+
+		List<Document> rejected = new ArrayList<>();
+
+		try {
+			PutResponse putResponse = MAPPER.readValue(strResponse, PutResponse.class);
+
+			result._bytes.addAndGet(batch.length());
+			if (putResponse.isErrors()) {
+				Map<String, Document> documentsById = new HashMap<>();
+
+				for (Document document : batch.documents) {
+					documentsById.put(document.id, document);
+				}
+				for (Item item : putResponse.getItems()) {
+					CreateItem index = item.getIndex();
+
+					if (index == null || index.getStatus() == HttpStatus.SC_CREATED) {
+						continue;
+					}
+					if (index.getStatus() == SC_TOO_MANY_REQUESTS && documentsById.containsKey(index.get_id())) {
+						rejected.add(documentsById.get(index.get_id()));
+					} else {
+						_logger.warn("Failed to add record {} to index {}. Reason: {}", index.get_id(), indexName, MAPPER.writeValueAsString(index.getError()));
+						result._fail(index.get_id());
+					}
+				}
+			}
+			return new Batch(batch.body, rejected);
+		} catch (IOException ex) {
+			throw new SystemException("Failed to parse reponse of put metrics. The response was: " + strResponse, ex);
+		}
+	}
+
+	//~ Inner Interfaces *****************************************************************************************************************************
+
+	/**
+	 * Executes a single bulk request and returns the response body.
+	 */
+	interface BulkClient {
+
+		/**
+		 * Executes the request.
+		 *
+		 * @param   requestUrl  The bulk endpoint.
+		 * @param   entity      The NDJSON request body.
+		 *
+		 * @return  The response body.
+		 *
+		 * @throws  IOException  If the request fails. A {@link ResponseException} with status 429 causes the whole batch to be retried.
+		 */
+		String execute(String requestUrl, HttpEntity entity) throws IOException;
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * The outcome of indexing one set of records.
+	 *
+	 * @param  <T>  The record type.
+	 */
+	static class BulkIndexResult<T> {
+
+		private final String _indexName;
+		private final RecordFinder<T> _recordFinder;
+		private final List<CompletableFuture<Void>> _batches = new ArrayList<>();
+		private final Set<String> _failedIds = Collections.synchronizedSet(new HashSet<>());
+		private final AtomicLong _bytes = new AtomicLong();
+		private final AtomicInteger _rejected = new AtomicInteger();
+		private final long _submittedAt = System.currentTimeMillis();
+		private final AtomicLong _completedAt = new AtomicLong(_submittedAt);
+
+		BulkIndexResult(String indexName, RecordFinder<T> recordFinder) {
+			_indexName = indexName;
+			_recordFinder = recordFinder;
+		}
+
+		private void _add(CompletableFuture<Void> batch) {
+			_batches.add(batch);
+		}
+
+		private void _fail(String id) {
+			_failedIds.add(id);
+		}
+
+		private void _complete() {
+			_completedAt.accumulateAndGet(System.currentTimeMillis(), Math::max);
+		}
+
+		/**
+		 * Waits for every bulk request to complete.
+		 *
+		 * @return  The records that could not be indexed.
+		 *
+		 * @throws  SystemException  If a bulk request failed as a whole.
+		 */
+		Set<T> await() {
+			SystemException failure = null;
+
+			for (CompletableFuture<Void> batch : _batches) {
+				try {
+					batch.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new SystemException("Interrupted while indexing into " + _indexName, ex);
+				} catch (ExecutionException ex) {
+					if (failure == null) {
+						failure = ex.getCause() instanceof SystemException ? (SystemException) ex.getCause() : new SystemException(ex.getCause());
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+
+			Set<T> failedRecords = new HashSet<>();
+
+			synchronized (_failedIds) {
+				for (String id : _failedIds) {
+					T record = _recordFinder.getRecord(id);
+
+					if (record != null) {
+						failedRecords.add(record);
+					}
+				}
+			}
+			if (!failedRecords.isEmpty()) {
+				_logger.warn("{} records were not written to index {}", failedRecords.size(), _indexName);
+			}
+			return failedRecords;
+		}
+
+		String getIndexName() {
+			return _indexName;
+		}
+
+		int getBatchCount() {
+			return _batches.size();
+		}
+
+		long getBytes() {
+			return _bytes.get();
+		}
+
+		int getRejectedCount() {
+			return _rejected.get();
+		}
+
+		/**
+		 * Returns the time at which the records were submitted.
+		 *
+		 * @return  The submission time in milliseconds since the epoch.
+		 */
+		long getSubmittedAt() {
+			return _submittedAt;
+		}
+
+		/**
+		 * Returns the time at which the last bulk request of the records completed. Only meaningful once {@link #await()} has returned.
+		 *
+		 * @return  The completion time in milliseconds since the epoch.
+		 */
+		long getCompletedAt() {
+			return _completedAt.get();
+		}
+	}
+
+	/* One document's action and source lines, located in the body of its batch. */
+	private static class Document {
+
+		private final String id;
+		private final int offset;
+		private final int length;
+
+		Document(String id, int offset, int length) {
+			this.id = id;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/* Documents sharing one serialized body. Retries reference a subset of the documents of the original body. */
+	private static class Batch {
+
+		private final byte[] body;
+		private final List<Document> documents;
+
+		Batch(byte[] body, List<Document> documents) {
+			this.body = body;
+			this.documents = documents;
+		}
+
+		long length() {
+			long length = 0;
+
+			for (Document document : documents) {
+				length += document.length;
+			}
+			return length;
+		}
+	}
+
+	/*
+	 * Receives the serialized bulk body, locating the action and source line of each document as it is written, and hands off a batch as soon as
+	 * the next document would exceed the batch size. Each batch owns its buffer, so documents are never copied out of it.
+	 */
+	private class BatchOutputStream extends OutputStream {
+
+		private final Consumer<Batch> _sink;
+		private byte[] _buffer = new byte[(int) Math.min(_maxBatchBytes, 64 * 1024)];
+		private int _count;
+		private int _lineStart;
+		private int _documentStart;
+		private boolean _actionLine = true;
+		private String _id;
+		private List<Document> _documents = new ArrayList<>();
+
+		BatchOutputStream(Consumer<Batch> sink) {
+			_sink = sink;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (_count + len > _buffer.length) {
+				_buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length * 2, _count + len));
+			}
+			System.arraycopy(b, off, _buffer, _count, len);
+
+			int from = _count;
+
+			_count += len;
+			for (int i = from; i < _count; i++) {
+				if (_buffer[i] == '\n') {
+					i = _endLine(i + 1) - 1;
+				}
+			}
+		}
+
+		/* Returns the position of the line end, which moves when the preceding documents are handed off. */
+		private int _endLine(int lineEnd) {
+			if (_actionLine) {
+				_id = _readId(_buffer, _lineStart, lineEnd - _lineStart);
+			} else {
+				if (!_documents.isEmpty() && lineEnd > _maxBatchBytes) {
+					byte[] next = new byte[Math.max(_buffer.length, _count - _documentStart)];
+
+					System.arraycopy(_buffer, _documentStart, next, 0, _count - _documentStart);
+					_sink.accept(new Batch(_buffer, _documents));
+					_buffer = next;
+					_documents = new ArrayList<>();
+					_count -= _documentStart;
+					_lineStart -= _documentStart;
+					lineEnd -= _documentStart;
+					_documentStart = 0;
+				}
+				_documents.add(new Document(_id, _documentStart, lineEnd - _documentStart));
+				_documentStart = lineEnd;
+			}
+			_actionLine = !_actionLine;
+			_lineStart = lineEnd;
+			return lineEnd;
+		}
+
+		/* Hands off the last batch. */
+		void finish() {
+			if (!_documents.isEmpty()) {
+				_sink.accept(new Batch(_buffer, _documents));
+				_documents = new ArrayList<>();
+			}
+		}
+	}
+
+	/* Repeatable request entity that streams the documents of a batch from its body without concatenating them. */
+	private static class NdjsonEntity extends AbstractHttpEntity {
+
+		private final Batch _batch;
+		private final long _length;
+
+		NdjsonEntity(Batch batch) {
+			_batch = batch;
+			_length = batch.length();
+			setContentType(ContentType.create("application/x-ndjson").toString());
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return _length;
+		}
+
+		@Override
+		public InputStream getContent() {
+			List<InputStream> streams = new ArrayList<>(_batch.documents.size());
+
+			for (Document document : _batch.documents) {
+				streams.add(new ByteArrayInputStream(_batch.body, document.offset, document.length));
+			}
+			return new SequenceInputStream(Collections.enumeration(streams));
+		}
+
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException {
+			for (Document document : _batch.documents) {
+				outstream.write(_batch.body, document.offset, document.length);
+			}
+			outstream.flush();
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -23,7 +23,7 @@ import com.salesforce.dva.argus.entity.ScopeOnlySchemaRecord;
 import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.MonitorService.Counter;
 import com.salesforce.dva.argus.service.SchemaService;
-import com.salesforce.dva.argus.service.schema.ElasticSearchSchemaService.PutResponse.Item;
+import com.salesforce.dva.argus.service.schema.ElasticSearchBulkIndexer.BulkIndexResult;
 import com.salesforce.dva.argus.service.schema.MetricSchemaRecordList.HashAlgorithm;
 import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 import com.salesforce.dva.argus.system.SystemAssert;
@@ -55,9 +55,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
@@ -83,9 +85,14 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 	private static final String FIELD_TYPE_TEXT = "text";
 	private static final String FIELD_TYPE_DATE ="date";
 	private static final String FIELD_TYPE_INTEGER = "integer";
+	private static final String BULK_THROUGHPUT_COUNTER = "schema.bulk.docs.per.sec";
+	private static final String BULK_REJECTED_COUNTER = "schema.bulk.rejected";
 	private RestClient _esRestClient;
 	private final int _bulkIndexingSize;
+	private final ElasticSearchBulkIndexer _bulkIndexer;
 	private HashAlgorithm _idgenHashAlgo;
+	private final boolean _searchAfterEnabled;
+	private final int _searchAfterPageSize;
 
 	/** Main index properties */
 	private static String TAGS_INDEX_NAME;
@@ -120,6 +127,19 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 		_logger.info("Using {} for Elasticsearch document id generation.", _idgenHashAlgo);
 		_bulkIndexingSize = Integer.parseInt(
 				config.getValue(Property.ELASTICSEARCH_INDEXING_BATCH_SIZE.getName(), Property.ELASTICSEARCH_INDEXING_BATCH_SIZE.getDefaultValue()));
+		_bulkIndexer = new ElasticSearchBulkIndexer(
+				Integer.parseInt(config.getValue(Property.ELASTICSEARCH_BULK_CONCURRENCY.getName(), Property.ELASTICSEARCH_BULK_CONCURRENCY.getDefaultValue())),
+				Long.parseLong(config.getValue(Property.ELASTICSEARCH_BULK_MAX_BYTES.getName(), Property.ELASTICSEARCH_BULK_MAX_BYTES.getDefaultValue())),
+				Integer.parseInt(config.getValue(Property.ELASTICSEARCH_BULK_MAX_RETRIES.getName(), Property.ELASTICSEARCH_BULK_MAX_RETRIES.getDefaultValue())),
+				Long.parseLong(config.getValue(Property.ELASTICSEARCH_BULK_INITIAL_BACKOFF_MS.getName(),
+						Property.ELASTICSEARCH_BULK_INITIAL_BACKOFF_MS.getDefaultValue())));
+
+		_searchAfterEnabled = Boolean.parseBoolean(
+				config.getValue(Property.ELASTICSEARCH_SEARCH_AFTER_ENABLED.getName(), Property.ELASTICSEARCH_SEARCH_AFTER_ENABLED.getDefaultValue()));
+		_searchAfterPageSize = Integer.parseInt(
+				config.getValue(Property.ELASTICSEARCH_SEARCH_AFTER_PAGE_SIZE.getName(), Property.ELASTICSEARCH_SEARCH_AFTER_PAGE_SIZE.getDefaultValue()));
+		requireArgument(_searchAfterPageSize > 0 && _searchAfterPageSize <= ElasticSearchUtils.INDEX_MAX_RESULT_WINDOW,
+				"Search after page size must be between 1 and " + ElasticSearchUtils.INDEX_MAX_RESULT_WINDOW);
 
 		String[] nodes = config.getValue(Property.ELASTICSEARCH_ENDPOINT.getName(), Property.ELASTICSEARCH_ENDPOINT.getDefaultValue()).split(",");
 		HttpHost[] httpHosts = new HttpHost[nodes.length];
@@ -224,6 +244,7 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 	@Override
 	public void dispose() {
 		super.dispose();
+		_bulkIndexer.shutdown();
 		try {
 			_esRestClient.close();
 			_logger.info("Shutdown of ElasticSearch RESTClient complete");
@@ -248,60 +269,84 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 											 Set<MetatagsRecord> metatagsToIndex) {
 		SystemAssert.requireArgument(metricsToIndex != null, "Metrics list cannot be null.");
 
-		// Push to metadata index
-		int successCount = 0;
-		long start = System.currentTimeMillis();
-		long timeTaken;
+		// Submit all three indices to the bulk pipeline up front so that their requests are in flight together
 		List<Set<MetricSchemaRecord>> fracturedSchemas = _fracture(metricsToIndex);
+		List<BulkIndexResult<MetricSchemaRecord>> schemaResults = new ArrayList<>();
 		for(Set<MetricSchemaRecord> records : fracturedSchemas) {
 			if(!records.isEmpty()) {
-				Set<MetricSchemaRecord> failedRecords = doBulkIndex(TAGS_INDEX_NAME, TAGS_TYPE_NAME, new MetricSchemaRecordList(records, _idgenHashAlgo), indexMetadataMapper);
-				records.removeAll(failedRecords);
-				_addToModifiedBloom(records);
-				successCount += records.size();
+				schemaResults.add(_submitBulkIndex(TAGS_INDEX_NAME, TAGS_TYPE_NAME, new MetricSchemaRecordList(records, _idgenHashAlgo), indexMetadataMapper));
 			}
 		}
-
-		timeTaken = System.currentTimeMillis() - start;
-		_monitorService.modifyCounter(MonitorService.Counter.SCHEMARECORDS_WRITTEN, successCount, null);
-		_monitorService.modifyCounter(MonitorService.Counter.SCHEMARECORDS_WRITE_LATENCY, timeTaken, null);
-		_logger.info("{} schema records sent to ES and bloomFilter in {} ms.", successCount, timeTaken);
-
-		// Push to scope-only index
-		successCount = 0;
-		start = System.currentTimeMillis();
 		List<Set<ScopeOnlySchemaRecord>> fracturedScopes = _fractureScopes(scopesToIndex);
+		List<BulkIndexResult<ScopeOnlySchemaRecord>> scopeResults = new ArrayList<>();
 		for(Set<ScopeOnlySchemaRecord> records : fracturedScopes) {
 			if(!records.isEmpty()) {
-				Set<ScopeOnlySchemaRecord> failedRecords = doBulkIndex(SCOPE_INDEX_NAME, SCOPE_TYPE_NAME, new ScopeOnlySchemaRecordList(records, _idgenHashAlgo), indexScopeOnlyMapper);
-				records.removeAll(failedRecords);
-				_addToModifiedBloom(records);
-				successCount += records.size();
+				scopeResults.add(_submitBulkIndex(SCOPE_INDEX_NAME, SCOPE_TYPE_NAME, new ScopeOnlySchemaRecordList(records, _idgenHashAlgo), indexScopeOnlyMapper));
+			}
+		}
+		List<Set<MetatagsRecord>> fracturedMetatags = _fractureMetatags(metatagsToIndex);
+		List<BulkIndexResult<MetatagsRecord>> metatagsResults = new ArrayList<>();
+		for(Set<MetatagsRecord> records : fracturedMetatags) {
+			if(!records.isEmpty()) {
+				metatagsResults.add(_submitBulkIndex(METATAGS_INDEX_NAME, METATAGS_TYPE_NAME, new MetatagsSchemaRecordList(records, _idgenHashAlgo), indexMetatagsMapper));
 			}
 		}
 
-		timeTaken = System.currentTimeMillis() - start;
-		_monitorService.modifyCounter(MonitorService.Counter.SCOPENAMES_WRITTEN, successCount, null);
-		_monitorService.modifyCounter(MonitorService.Counter.SCOPENAMES_WRITE_LATENCY, timeTaken, null);
-		_logger.info("{} scopes sent to ES and bloomFilter in {} ms.", successCount, timeTaken);
+		// Push to metadata index
+		_awaitBulkIndex(fracturedSchemas, schemaResults, Counter.SCHEMARECORDS_WRITTEN, Counter.SCHEMARECORDS_WRITE_LATENCY, "schema records");
+
+		// Push to scope-only index
+		_awaitBulkIndex(fracturedScopes, scopeResults, Counter.SCOPENAMES_WRITTEN, Counter.SCOPENAMES_WRITE_LATENCY, "scopes");
 
 		// Push to metatags index
-		successCount = 0;
-		start = System.currentTimeMillis();
-		List<Set<MetatagsRecord>> fracturedMetatags = _fractureMetatags(metatagsToIndex);
-		for(Set<MetatagsRecord> records : fracturedMetatags) {
+		_awaitBulkIndex(fracturedMetatags, metatagsResults, Counter.METATAGS_WRITTEN, Counter.METATAGS_WRITE_LATENCY, "metatags");
+	}
+
+	/*
+	 * Waits for the bulk requests of one index, adds the successfully indexed records to the bloom filter and reports the index counters. The
+	 * latency spans from the submission of the first request of the index to the completion of its last, so it does not include the time spent
+	 * waiting for the indices awaited before it. The non-empty fractures and the results are in the same order.
+	 */
+	private <T extends AbstractSchemaRecord> void _awaitBulkIndex(List<Set<T>> fractures, List<BulkIndexResult<T>> results, Counter writtenCounter,
+		Counter latencyCounter, String recordType) {
+		int successCount = 0;
+		int rejectedCount = 0;
+		long bytes = 0;
+		long start = Long.MAX_VALUE;
+		long end = 0;
+		String indexName = null;
+		int resultIndex = 0;
+
+		for(Set<T> records : fractures) {
 			if(!records.isEmpty()) {
-				Set<MetatagsRecord> failedRecords = doBulkIndex(METATAGS_INDEX_NAME, METATAGS_TYPE_NAME, new MetatagsSchemaRecordList(records, _idgenHashAlgo), indexMetatagsMapper);
+				BulkIndexResult<T> result = results.get(resultIndex++);
+				Set<T> failedRecords = result.await();
 				records.removeAll(failedRecords);
 				_addToModifiedBloom(records);
 				successCount += records.size();
+				rejectedCount += result.getRejectedCount();
+				bytes += result.getBytes();
+				start = Math.min(start, result.getSubmittedAt());
+				end = Math.max(end, result.getCompletedAt());
+				indexName = result.getIndexName();
 			}
 		}
 
-		timeTaken = System.currentTimeMillis() - start;
-		_monitorService.modifyCounter(MonitorService.Counter.METATAGS_WRITTEN, successCount, null);
-		_monitorService.modifyCounter(Counter.METATAGS_WRITE_LATENCY, timeTaken, null);
-		_logger.info("{} metatags sent to ES and bloomFilter in {} ms.", successCount, timeTaken);
+		long timeTaken = indexName != null ? end - start : 0;
+
+		_monitorService.modifyCounter(writtenCounter, successCount, null);
+		_monitorService.modifyCounter(latencyCounter, timeTaken, null);
+		_logger.info("{} {} sent to ES and bloomFilter in {} ms.", successCount, recordType, timeTaken);
+		if (indexName != null) {
+			timeTaken = Math.max(1, timeTaken);
+
+			Map<String, String> tags = Collections.singletonMap("index", indexName);
+			_monitorService.updateCustomCounter(BULK_THROUGHPUT_COUNTER, successCount * 1000.0 / timeTaken, tags);
+			if (rejectedCount > 0) {
+				_monitorService.modifyCustomCounter(BULK_REJECTED_COUNTER, rejectedCount, tags);
+			}
+			_logger.debug("Indexed {} records ({} bytes) into {} at {} docs/s.", successCount, bytes, indexName, successCount * 1000L / timeTaken);
+		}
 	}
 
 	/* Convert the given list of metrics to a list of metric schema records. At the same time, fracture the records list
@@ -472,6 +517,24 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 		return finalResult;
 	}
 
+	/**
+	 * Returns an iterator that pages through the matching records with <tt>search_after</tt> over a deterministic sort on the record fields. A page
+	 * is only requested once the previous one has been consumed and no scroll context is kept open on the cluster, so a caller that stops
+	 * iterating early does not pull or hold the remaining records. Falls back to {@link #get(MetricSchemaRecordQuery)} when search after paging is
+	 * disabled.
+	 */
+	@Override
+	public Iterator<MetricSchemaRecord> getIterator(MetricSchemaRecordQuery query) {
+		if (!_searchAfterEnabled) {
+			return super.getIterator(query);
+		}
+		requireNotDisposed();
+		SystemAssert.requireArgument(query != null, "MetricSchemaRecordQuery cannot be null.");
+		SystemAssert.requireArgument(query.getLimit() >= 0, "Limit must be >= 0");
+		SystemAssert.requireArgument(query.getPage() >= 1, "Page must be >= 1");
+		return new SearchAfterIterator(query);
+	}
+
 	MetricSchemaRecordList _getRecords(String requestUrl, String queryJson) throws IOException {
 		_logger.debug("get POST requestUrl {} queryJson {}", requestUrl, queryJson);
 		Request request = new Request(HttpMethod.POST.getName(), requestUrl);
@@ -779,46 +842,21 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 	 * @return
 	 */
 	<T> Set<T> doBulkIndex(String indexName, String typeName, RecordFinder<T> recordFinder, ObjectMapper mapper) {
-		String requestUrl = String.format("/%s/%s/_bulk", indexName, typeName);
-		String strResponse;
+		return _submitBulkIndex(indexName, typeName, recordFinder, mapper).await();
+	}
 
-		try {
-			String requestBody = mapper.writeValueAsString(recordFinder);
+	/* Schedules the bulk index requests for the records on the shared bulk pipeline. */
+	private <T> BulkIndexResult<T> _submitBulkIndex(String indexName, String typeName, RecordFinder<T> recordFinder, ObjectMapper mapper) {
+		return _bulkIndexer.submit(indexName, typeName, recordFinder, mapper, (requestUrl, entity) -> {
 			Request request = new Request(HttpMethod.POST.getName(), requestUrl);
-			request.setEntity(new StringEntity(requestBody, ContentType.APPLICATION_JSON));
-			Response response = _esRestClient.performRequest(request);
-			strResponse = extractResponse(response);
-		} catch (IOException e) {
-			//TODO: Retry with exponential back-off for handling EsRejectedExecutionException/RemoteTransportException/TimeoutException??
-			throw new SystemException(e);
-		}
-
-		try {
-			Set<T> failedRecords = new HashSet<>();
-			PutResponse putResponse = genericObjectMapper.readValue(strResponse, PutResponse.class);
-			//TODO: If response contains HTTP 429 Too Many Requests (EsRejectedExecutionException), then retry with exponential back-off.
-			if(putResponse.errors) {
-				for(Item item : putResponse.items) {
-					if (item.index !=null && item.index.status != HttpStatus.SC_CREATED) {
-						_logger.warn("Failed to add record {} to index {}. Reason: {}", recordFinder.getRecord(item.index._id), indexName, genericObjectMapper.writeValueAsString(item.index.error));
-
-						failedRecords.add(recordFinder.getRecord(item.index._id));
-					}
-				}
-
-				if (failedRecords.size() != 0) {
-					_logger.warn("{} records were not written to index {}", failedRecords.size(), indexName);
-				}
-			}
-			return failedRecords;
-		} catch(IOException e) {
-			throw new SystemException("Failed to parse reponse of put metrics. The response was: " + strResponse, e);
-		}
+			request.setEntity(entity);
+			return extractResponse(_esRestClient.performRequest(request));
+		});
 	}
 
 	protected void _addToModifiedBloom(Set<? extends AbstractSchemaRecord> records) {
 		for (AbstractSchemaRecord record : records) {
-			bloomFilter.put(record.toBloomFilterKey());
+			markSeen(record.toBloomFilterKey());
 		}
 	}
 
@@ -849,6 +887,25 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 		return rootNode.toString();
 	}
 
+	private String _constructSearchAfterQuery(MetricSchemaRecordQuery query, int size, JsonNode searchAfter) {
+		ObjectNode queryNode = _constructQueryNode(query, genericObjectMapper);
+
+		// Every document is unique on these fields, which gives search_after a total order to resume from.
+		ArrayNode sortNode = genericObjectMapper.createArrayNode();
+		for (RecordType type : new RecordType[] { RecordType.SCOPE, RecordType.METRIC, RecordType.TAGK, RecordType.TAGV, RecordType.NAMESPACE }) {
+			sortNode.add(genericObjectMapper.createObjectNode().put(type.getName() + ".raw", "asc"));
+		}
+
+		ObjectNode rootNode = genericObjectMapper.createObjectNode();
+		rootNode.set("query", queryNode);
+		rootNode.put("size", size);
+		rootNode.set("sort", sortNode);
+		if (searchAfter != null) {
+			rootNode.set("search_after", searchAfter);
+		}
+		return rootNode.toString();
+	}
+
 	private ObjectNode _constructSimpleQueryStringNode(List<String> tokens, RecordType... types) {
 
 		if(tokens.isEmpty()) {
@@ -1219,8 +1276,20 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 		 * https://www.elastic.co/guide/en/elasticsearch/guide/current/indexing-performance.html#_using_and_sizing_bulk_requests
 		 */
 		ELASTICSEARCH_INDEXING_BATCH_SIZE("service.property.schema.elasticsearch.indexing.batch.size", "10000"),
+		/** The maximum number of bulk indexing requests in flight across all schema indices. */
+		ELASTICSEARCH_BULK_CONCURRENCY("service.property.schema.elasticsearch.bulk.concurrency", "4"),
+		/** The maximum size in bytes of a single bulk indexing request body. */
+		ELASTICSEARCH_BULK_MAX_BYTES("service.property.schema.elasticsearch.bulk.max.bytes", "5242880"),
+		/** The number of times records rejected with HTTP 429 are retried. */
+		ELASTICSEARCH_BULK_MAX_RETRIES("service.property.schema.elasticsearch.bulk.max.retries", "5"),
+		/** The delay in milliseconds before the first retry of rejected records. Doubles on each retry. */
+		ELASTICSEARCH_BULK_INITIAL_BACKOFF_MS("service.property.schema.elasticsearch.bulk.initial.backoff.ms", "100"),
 		/** The hashing algorithm to use for generating document id. */
 		ELASTICSEARCH_IDGEN_HASH_ALGO("service.property.schema.elasticsearch.idgen.hash.algo", "MD5"),
+		/** Whether record iterators page through the tags index with search_after instead of reading all records up front. */
+		ELASTICSEARCH_SEARCH_AFTER_ENABLED("service.property.schema.elasticsearch.search.after.enabled", "false"),
+		/** The number of records requested per search_after page. */
+		ELASTICSEARCH_SEARCH_AFTER_PAGE_SIZE("service.property.schema.elasticsearch.search.after.page.size", "10000"),
 
 		/** Name of the main scope:metric:tagk:tagv index */
 		ELASTICSEARCH_TAGS_INDEX_NAME("service.property.schema.elasticsearch.index.name", "metadata_index"),
@@ -1277,6 +1346,76 @@ public class ElasticSearchSchemaService extends AbstractSchemaService {
 		}
 	}
 
+	/**
+	 * Pages through the records matched by a query with search_after, requesting the next page only once the current one has been consumed.
+	 */
+	private final class SearchAfterIterator implements Iterator<MetricSchemaRecord> {
+
+		private final MetricSchemaRecordQuery _query;
+		private final Map<String, String> _tags = new HashMap<>();
+		private long _skip;
+		private long _remaining;
+		private Iterator<MetricSchemaRecord> _page;
+		private JsonNode _searchAfter;
+		private boolean _exhausted;
+
+		SearchAfterIterator(MetricSchemaRecordQuery query) {
+			_query = query;
+			_skip = (long) query.getLimit() * (query.getPage() - 1);
+			_remaining = query.getLimit() == 0 ? Long.MAX_VALUE : query.getLimit();
+			_tags.put("type", "REGEXP_WITHOUT_AGGREGATION");
+			_tags.put("user", Optional.ofNullable(MDC.get("USER")).orElse("NULLUSER"));
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (_remaining > 0) {
+				if (_page != null && _page.hasNext()) {
+					if (_skip == 0) {
+						return true;
+					}
+					_page.next();
+					_skip--;
+				} else if (_exhausted) {
+					return false;
+				} else {
+					_fetch();
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public MetricSchemaRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			_remaining--;
+			return _page.next();
+		}
+
+		private void _fetch() {
+			long start = System.currentTimeMillis();
+			String requestUrl = String.format("/%s/%s/_search", TAGS_INDEX_NAME, TAGS_TYPE_NAME);
+
+			try {
+				MetricSchemaRecordList list = _getRecords(requestUrl, _constructSearchAfterQuery(_query, _searchAfterPageSize, _searchAfter));
+				List<MetricSchemaRecord> records = list.getOrderedRecords();
+
+				if (_searchAfter == null) {
+					_monitorService.modifyCounter(Counter.SCHEMARECORDS_QUERY_COUNT, 1, _tags);
+				}
+				_searchAfter = list.getLastSortValues();
+				_exhausted = records.size() < _searchAfterPageSize || _searchAfter == null;
+				_page = records.iterator();
+				_monitorService.modifyCounter(Counter.SCHEMARECORDS_DOCS_PULLED, records.size(), _tags);
+				_monitorService.modifyCounter(Counter.SCHEMARECORDS_QUERY_LATENCY, (System.currentTimeMillis() - start), _tags);
+			} catch (IOException e) {
+				throw new SystemException("IOException when trying to perform ES request" + e);
+			}
+		}
+	}
+
 	static class PutResponse {
 		private int took;
 		private boolean errors;
@@ -33,6 +33,7 @@ public class MetricSchemaRecordList implements RecordFinder<MetricSchemaRecord>
 	private Map<String, MetricSchemaRecord> _idToSchemaRecordMap = new HashMap<>();
 	private String _scrollID;
 	private long totalHits;
+	private JsonNode _lastSortValues;
 	
 	public MetricSchemaRecordList(Set<MetricSchemaRecord> records, HashAlgorithm algorithm) {
 		for(MetricSchemaRecord record : records) {
@@ -46,13 +47,14 @@ public class MetricSchemaRecordList implements RecordFinder<MetricSchemaRecord>
 		}
 	}
 	
-	private MetricSchemaRecordList(List<MetricSchemaRecord> records, String scrollID, long totalHits) {
+	private MetricSchemaRecordList(List<MetricSchemaRecord> records, String scrollID, long totalHits, JsonNode lastSortValues) {
 		int count = 0;
 		for(MetricSchemaRecord record : records) {
 			_idToSchemaRecordMap.put(String.valueOf(count++), record);
 		}
 		setScrollID(scrollID);
 		this.totalHits = totalHits;
+		this._lastSortValues = lastSortValues;
 	}
 
 	@Override
@@ -60,6 +62,28 @@ public class MetricSchemaRecordList implements RecordFinder<MetricSchemaRecord>
 		return new ArrayList<>(_idToSchemaRecordMap.values());
 	}
 
+	/**
+	 * Returns the records in the order of the search hits. Only lists read from a search response preserve the hit order.
+	 *
+	 * @return	The records in hit order.
+	 */
+	List<MetricSchemaRecord> getOrderedRecords() {
+		List<MetricSchemaRecord> records = new ArrayList<>(_idToSchemaRecordMap.size());
+		for(int i = 0; i < _idToSchemaRecordMap.size(); i++) {
+			records.add(_idToSchemaRecordMap.get(String.valueOf(i)));
+		}
+		return records;
+	}
+
+	/**
+	 * Returns the sort values of the last hit of a sorted search, to be passed as <tt>search_after</tt> for the next page.
+	 *
+	 * @return	The sort values of the last hit or null if the search was not sorted or had no hits.
+	 */
+	JsonNode getLastSortValues() {
+		return _lastSortValues;
+	}
+
 	@Override
 	public Set<String> getIdSet() {
 		return _idToSchemaRecordMap.keySet();
@@ -194,6 +218,7 @@ public class MetricSchemaRecordList implements RecordFinder<MetricSchemaRecord>
 				throws IOException, JsonProcessingException {
 			
 			String scrollID = null;
+			JsonNode lastSortValues = null;
 			List<MetricSchemaRecord> records = Collections.emptyList();
 			
 			JsonNode rootNode = jp.getCodec().readTree(jp);
@@ -209,6 +234,7 @@ public class MetricSchemaRecordList implements RecordFinder<MetricSchemaRecord>
 				while(iter.hasNext()) {
 					JsonNode hit = iter.next();
 					JsonNode source = hit.get("_source");
+					lastSortValues = hit.get("sort");
 
 					JsonNode namespaceNode = source.get(RecordType.NAMESPACE.getName());
 					JsonNode scopeNode = source.get(RecordType.SCOPE.getName());
@@ -226,7 +252,7 @@ public class MetricSchemaRecordList implements RecordFinder<MetricSchemaRecord>
 				}
 			}
 			
-			return new MetricSchemaRecordList(records, scrollID, totalHits);
+			return new MetricSchemaRecordList(records, scrollID, totalHits, lastSortValues);
 		}
 		
 	}
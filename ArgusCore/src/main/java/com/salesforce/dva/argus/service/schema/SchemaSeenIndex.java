@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.schema;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Remembers which schema keys have been indexed recently. Keys are stored as 64 bit fingerprints in a ring of time windows. A key is added to the
+ * window that is current when it is indexed and is considered seen while that window is among the most recent ones. The window boundaries of a
+ * key are shifted by an offset of up to one window length derived from its fingerprint, so keys indexed together, such as all keys indexed after
+ * a start, become unseen spread over a whole window instead of all at once when their window rotates out.
+ *
+ * <p>The index is held in memory only, so every key is indexed once again after a restart. Unlike the bloom filter it is not flushed to disk.</p>
+ */
+class SchemaSeenIndex {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	private static final int STRIPES = 16;
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final long _windowMillis;
+	private final int _windowCount;
+	private final AtomicReferenceArray<Window> _ring;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new SchemaSeenIndex object.
+	 *
+	 * @param  windowMillis  The length of a time window.
+	 * @param  windowCount   The number of windows a key is remembered for after it is indexed.
+	 */
+	SchemaSeenIndex(long windowMillis, int windowCount) {
+		requireArgument(windowMillis > 0, "Window length must be greater than zero.");
+		requireArgument(windowCount > 0, "Window count must be greater than zero.");
+		_windowMillis = windowMillis;
+		_windowCount = windowCount;
+		// Keys shifted by different offsets can be one window apart, so one more window than is retained is kept.
+		_ring = new AtomicReferenceArray<>(windowCount + 1);
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	/**
+	 * Indicates whether a key was indexed within the retained windows.
+	 *
+	 * @param   key  The schema key.
+	 * @param   now  The current time.
+	 *
+	 * @return  True if the key was seen.
+	 */
+	boolean contains(String key, long now) {
+		long fingerprint = _fingerprint(key);
+		long current = _windowId(fingerprint, now);
+
+		for (int i = 0; i < _ring.length(); i++) {
+			Window window = _ring.get(i);
+
+			if (window != null && window._id > current - _windowCount && window._id <= current && window.stripe(fingerprint).contains(fingerprint)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records that a key was indexed.
+	 *
+	 * @param  key  The schema key.
+	 * @param  now  The current time.
+	 */
+	void put(String key, long now) {
+		long fingerprint = _fingerprint(key);
+
+		_current(_windowId(fingerprint, now)).stripe(fingerprint).add(fingerprint);
+	}
+
+	/**
+	 * Returns the number of fingerprints held across all windows.
+	 *
+	 * @return  The number of fingerprints.
+	 */
+	long size() {
+		long size = 0;
+
+		for (int i = 0; i < _ring.length(); i++) {
+			Window window = _ring.get(i);
+
+			if (window != null) {
+				for (FingerprintSet stripe : window._stripes) {
+					size += stripe.size();
+				}
+			}
+		}
+		return size;
+	}
+
+	/** Forgets all keys. */
+	void clear() {
+		for (int i = 0; i < _ring.length(); i++) {
+			_ring.set(i, null);
+		}
+	}
+
+	/* Returns the window a key falls into, its window boundaries being shifted by an offset derived from its fingerprint. */
+	private long _windowId(long fingerprint, long now) {
+		return (now + Math.floorMod(fingerprint, _windowMillis)) / _windowMillis;
+	}
+
+	private Window _current(long id) {
+		int slot = (int) (id % _ring.length());
+		Window window = _ring.get(slot);
+
+		while (window == null || window._id < id) {
+			Window created = new Window(id);
+
+			if (_ring.compareAndSet(slot, window, created)) {
+				return created;
+			}
+			window = _ring.get(slot);
+		}
+		return window;
+	}
+
+	private static long _fingerprint(String key) {
+		long fingerprint = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * The fingerprints of the keys indexed during one time window, striped to reduce lock contention.
+	 */
+	private static final class Window {
+
+		private final long _id;
+		private final FingerprintSet[] _stripes = new FingerprintSet[STRIPES];
+
+		Window(long id) {
+			_id = id;
+			for (int i = 0; i < STRIPES; i++) {
+				_stripes[i] = new FingerprintSet();
+			}
+		}
+
+		FingerprintSet stripe(long fingerprint) {
+			return _stripes[(int) (fingerprint >>> 60) & (STRIPES - 1)];
+		}
+	}
+
+	/**
+	 * An open addressing set of non zero fingerprints.
+	 */
+	private static final class FingerprintSet {
+
+		private long[] _slots = new long[64];
+		private int _size;
+
+		synchronized boolean contains(long fingerprint) {
+			int mask = _slots.length - 1;
+
+			for (int i = (int) fingerprint & mask; _slots[i] != 0; i = (i + 1) & mask) {
+				if (_slots[i] == fingerprint) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		synchronized void add(long fingerprint) {
+			if (_insert(_slots, fingerprint)) {
+				_size++;
+				if (_size * 4 > _slots.length * 3) {
+					long[] slots = new long[_slots.length * 2];
+
+					for (long existing : _slots) {
+						if (existing != 0) {
+							_insert(slots, existing);
+						}
+					}
+					_slots = slots;
+				}
+			}
+		}
+
+		synchronized int size() {
+			return _size;
+		}
+
+		private static boolean _insert(long[] slots, long fingerprint) {
+			int mask = slots.length - 1;
+			int i = (int) fingerprint & mask;
+
+			while (slots[i] != 0) {
+				if (slots[i] == fingerprint) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			slots[i] = fingerprint;
+			return true;
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
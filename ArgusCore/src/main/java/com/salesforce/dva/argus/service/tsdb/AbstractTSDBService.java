@@ -34,12 +34,14 @@ package com.salesforce.dva.argus.service.tsdb;
 import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -47,6 +49,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -69,12 +73,20 @@ import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
@@ -107,6 +119,8 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 	private static final int TSDB_DATAPOINTS_WRITE_MAX_SIZE = 100;
 	private static final String QUERY_LATENCY_COUNTER = "query.latency";
 	private static final String QUERY_COUNT_COUNTER = "query.count";
+	private static final String SPOOL_APPENDED_COUNTER = "tsdb.spool.appended";
+	private static final String SPOOL_PENDING_BYTES_COUNTER = "tsdb.spool.pending.bytes";
 	static final String DELIMITER = "-__-";
 
 	//~ Instance fields ******************************************************************************************************************************
@@ -127,7 +141,10 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 
 	protected final ExecutorService _executorService;
 	protected final MonitorService _monitorService;
+	protected final boolean _asyncIoEnabled;
+	protected CloseableHttpAsyncClient _asyncHttpClient;
 	private final int RETRY_COUNT;
+	private TSDBWriteSpool _writeSpool;
 
 	/*
 		Given a key for an annotation, we cache its tuid obtained from TSDB
@@ -166,6 +183,9 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 				Property.TSD_ENDPOINT_SOCKET_TIMEOUT.getDefaultValue()));
 		int tsdbConnectionReuseCount=Integer.parseInt(config.getValue(Property.TSDB_READ_CONNECTION_REUSE_COUNT.getName(),
 				Property.TSDB_READ_CONNECTION_REUSE_COUNT.getDefaultValue()));
+		_asyncIoEnabled = Boolean.parseBoolean(config.getValue(Property.TSD_ASYNC_IO_ENABLED.getName(), Property.TSD_ASYNC_IO_ENABLED.getDefaultValue()));
+		int maxInFlight = Integer.parseInt(config.getValue(Property.TSD_ENDPOINT_MAX_IN_FLIGHT.getName(),
+				Property.TSD_ENDPOINT_MAX_IN_FLIGHT.getDefaultValue()));
 
 		_readEndPoints = Arrays.asList(config.getValue(Property.TSD_ENDPOINT_READ.getName(), Property.TSD_ENDPOINT_READ.getDefaultValue()).split(","));
 		requireArgument(_readEndPoints.size() > 0, "At least one TSD read endpoint required");
@@ -192,6 +212,7 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 
 		requireArgument(connCount >= 2, "At least two connections are required.");
 		requireArgument(connTimeout >= 1, "Timeout must be greater than 0.");
+		requireArgument(maxInFlight >= 1, "At least one in flight request per endpoint is required.");
 
 		_keyUidCache = CacheBuilder.newBuilder()
 				.maximumSize(1000000)
@@ -216,7 +237,19 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 
 			_roundRobinIterator = constructCyclingIterator(_writeEndpoints);
 			_executorService = Executors.newFixedThreadPool(connCount);
-		} catch (MalformedURLException ex) {
+			if (_asyncIoEnabled) {
+				_asyncHttpClient = getAsyncClient(maxInFlight, connTimeout, socketTimeout);
+				_asyncHttpClient.start();
+			}
+			if (Boolean.parseBoolean(config.getValue(Property.TSD_WRITE_SPOOL_ENABLED.getName(), Property.TSD_WRITE_SPOOL_ENABLED.getDefaultValue()))) {
+				_writeSpool = new TSDBWriteSpool(new File(config.getValue(Property.TSD_WRITE_SPOOL_DIR.getName(), Property.TSD_WRITE_SPOOL_DIR.getDefaultValue())),
+						Integer.parseInt(config.getValue(Property.TSD_WRITE_SPOOL_SEGMENT_BYTES.getName(), Property.TSD_WRITE_SPOOL_SEGMENT_BYTES.getDefaultValue())),
+						Integer.parseInt(config.getValue(Property.TSD_WRITE_SPOOL_MAX_SEGMENTS.getName(), Property.TSD_WRITE_SPOOL_MAX_SEGMENTS.getDefaultValue())),
+						Long.parseLong(config.getValue(Property.TSD_WRITE_SPOOL_INITIAL_BACKOFF_MS.getName(), Property.TSD_WRITE_SPOOL_INITIAL_BACKOFF_MS.getDefaultValue())),
+						Long.parseLong(config.getValue(Property.TSD_WRITE_SPOOL_MAX_BACKOFF_MS.getName(), Property.TSD_WRITE_SPOOL_MAX_BACKOFF_MS.getDefaultValue())),
+						this::_sendSpooledChunk, true);
+			}
+		} catch (MalformedURLException | IOReactorException ex) {
 			throw new SystemException("Error initializing the TSDB HTTP Client.", ex);
 		}
 
@@ -380,6 +413,16 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 	/** @see  TSDBService#dispose() */
 	@Override
 	public void dispose() {
+		if (_writeSpool != null) {
+			_writeSpool.dispose();
+		}
+		if (_asyncHttpClient != null) {
+			try {
+				_asyncHttpClient.close();
+			} catch (IOException ex) {
+				_logger.warn("The TSDB async HTTP client failed to shutdown properly.", ex);
+			}
+		}
 	}
 
 	/** @see  TSDBService#putMetrics(java.util.List) */
@@ -408,11 +451,11 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 			}
 		}
 
-		try {
-			put(fracturedList, endpoint + "/api/put", HttpMethod.POST, CHUNK_SIZE);
-		} catch(Exception ex) {
-			_logger.warn("Failure while trying to push metrics", ex);
-			retry(fracturedList, _roundRobinIterator, "/api/put", HttpMethod.POST, CHUNK_SIZE);
+		List<String> failedChunks = _putChunks(fracturedList, endpoint + "/api/put", HttpMethod.POST, CHUNK_SIZE);
+
+		if (!failedChunks.isEmpty()) {
+			_logger.warn("Failed to push {} of the metric chunks.", failedChunks.size());
+			_handleFailedChunks(failedChunks, "/api/put", HttpMethod.POST);
 		}
 	}
 	
@@ -427,33 +470,51 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
          List<Histogram> histogramList = new ArrayList<>();
          histogramList.addAll(histograms);
          
-         try {
-             put(histogramList, endpoint + "/api/histogram", HttpMethod.POST, CHUNK_SIZE);
-         } catch(Exception ex) {
-             _logger.warn("Failure while trying to push histograms", ex);
-             retry(histogramList, _roundRobinIterator, "/api/histogram", HttpMethod.POST, CHUNK_SIZE);
+         List<String> failedChunks = _putChunks(histogramList, endpoint + "/api/histogram", HttpMethod.POST, CHUNK_SIZE);
+
+         if (!failedChunks.isEmpty()) {
+             _logger.warn("Failed to push {} of the histogram chunks.", failedChunks.size());
+             _handleFailedChunks(failedChunks, "/api/histogram", HttpMethod.POST);
          }
      }	
 
-	<T> void retry(List<T> objects, Iterator<String> endPointIterator, String urlPath, HttpMethod httpMethod, int chunkSize) {
-		Exception failure = null;
+	/* Spools the failed chunks for asynchronous replay if the spool is enabled, otherwise retries them against the other endpoints. */
+	private void _handleFailedChunks(List<String> failedChunks, String urlPath, HttpMethod httpMethod) {
+		if (_writeSpool == null) {
+			retry(failedChunks, _roundRobinIterator, urlPath, httpMethod);
+			return;
+		}
+		for (String chunk : failedChunks) {
+			_writeSpool.append(urlPath, chunk);
+		}
+		_monitorService.modifyCustomCounter(SPOOL_APPENDED_COUNTER, failedChunks.size(), Collections.singletonMap("path", urlPath));
+		_monitorService.updateCustomCounter(SPOOL_PENDING_BYTES_COUNTER, _writeSpool.getPendingBytes(), Collections.emptyMap());
+	}
+
+	/* Retries only the chunks that failed. Every attempt re-sends the chunks that are still failing to the next endpoint. */
+	void retry(List<String> chunks, Iterator<String> endPointIterator, String urlPath, HttpMethod httpMethod) {
+		List<String> failedChunks = chunks;
 
 		for(int i=0;i<RETRY_COUNT;i++) {
-			try {
-				String endpoint = endPointIterator.next();
-				_logger.info("Retrying using endpoint {}.", endpoint);
-				put(objects, endpoint + urlPath, httpMethod, chunkSize);
+			String endpoint = endPointIterator.next();
+			_logger.info("Retrying {} chunks using endpoint {}.", failedChunks.size(), endpoint);
+			failedChunks = _sendChunks(failedChunks, endpoint + urlPath, httpMethod);
+			if (failedChunks.isEmpty()) {
 				return;
-			} catch(Exception ex) {
-				failure = ex;
-				_logger.info("Failed while trying to push data. We will retry for {} more times", RETRY_COUNT-i-1);
 			}
+			_logger.info("Failed while trying to push data. We will retry for {} more times", RETRY_COUNT-i-1);
 		}
 
-		_logger.error("Retried for {} times and we still failed. Dropping this chunk of data.", RETRY_COUNT);
-		if (failure != null) {
-			throw new SystemException(failure.getMessage(), failure);
-		}
+		_logger.error("Retried for {} times and we still failed. Dropping {} chunks of data.", RETRY_COUNT, failedChunks.size());
+		throw new SystemException("Failed to push " + failedChunks.size() + " chunks of data to " + urlPath);
+	}
+
+	/* Sends a chunk replayed from the write spool. Spooled chunks always go to the next write endpoint. */
+	private void _sendSpooledChunk(String urlPath, String body, long chunkId) throws IOException {
+		String endpoint = _roundRobinIterator.next();
+
+		_logger.debug("Replaying spooled chunk {} to {}.", chunkId, endpoint + urlPath);
+		extractResponse(executeHttpRequest(HttpMethod.POST, endpoint + urlPath, _writeHttpClient, new StringEntity(body)));
 	}
 
 	/** @see  TSDBService#putAnnotations(java.util.List) */
@@ -512,11 +573,11 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 
 				List<AnnotationWrapper> wrappers = new ArrayList<AnnotationWrapper>(wrapperMap.values());
 
-				try {
-					put(wrappers, endpoint + "/api/annotation/bulk", HttpMethod.POST, CHUNK_SIZE);
-				} catch (Exception ex) {
-					_logger.warn("Exception while trying to push annotations", ex);
-					retry(wrappers, _roundRobinIterator, "/api/annotation/bulk", HttpMethod.POST, CHUNK_SIZE);
+				List<String> failedChunks = _putChunks(wrappers, endpoint + "/api/annotation/bulk", HttpMethod.POST, CHUNK_SIZE);
+
+				if (!failedChunks.isEmpty()) {
+					_logger.warn("Failed to push {} of the annotation chunks.", failedChunks.size());
+					_handleFailedChunks(failedChunks, "/api/annotation/bulk", HttpMethod.POST);
 				}
 			}
 		}
@@ -663,32 +724,89 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 	}
 	*/
 
-	/* Writes objects in chunks. */
-	private <T> void put(List<T> objects, String endpoint, HttpMethod method, int chunkSize) throws IOException {
-		if (objects != null) {
-			int chunkEnd = 0;
+	/* Writes objects in chunks and returns the bodies of the chunks that failed. */
+	private <T> List<String> _putChunks(List<T> objects, String endpoint, HttpMethod method, int chunkSize) {
+		List<String> chunks = new ArrayList<>();
 
-			while (chunkEnd < objects.size()) {
-				int chunkStart = chunkEnd;
-
-				chunkEnd = Math.min(objects.size(), chunkStart + chunkSize);
-				try {
+		if (objects != null) {
+			for (int chunkStart = 0; chunkStart < objects.size(); chunkStart += chunkSize) {
+				chunks.add(fromEntity(objects.subList(chunkStart, Math.min(objects.size(), chunkStart + chunkSize))));
+			}
+		}
+		return _sendChunks(chunks, endpoint, method);
+	}
 
-					String createBody = fromEntity(objects.subList(chunkStart, chunkEnd));
+	/*
+	 * Sends serialized chunks, concurrently on the async client if enabled, and returns the chunks that failed. Responses are read on the executor
+	 * service so that the I/O dispatch threads are never blocked on them.
+	 */
+	private List<String> _sendChunks(List<String> chunks, String endpoint, HttpMethod method) {
+		List<String> failedChunks = new ArrayList<>();
 
-					StringEntity entity = new StringEntity(createBody);
+		if (_asyncIoEnabled) {
+			List<CompletableFuture<String>> futures = new ArrayList<>(chunks.size());
 
-					_logger.debug("createUrl {} createBody {}", endpoint, createBody);
+			for (String createBody : chunks) {
+				_logger.debug("createUrl {} createBody {}", endpoint, createBody);
+				try {
+					futures.add(executeHttpRequestAsync(method, endpoint, new StringEntity(createBody)).thenApplyAsync(this::extractResponse,
+							_executorService));
+				} catch (UnsupportedEncodingException ex) {
+					throw new SystemException("Error posting data", ex);
+				}
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).join();
+				} catch (CompletionException ex) {
+					_logger.warn("Failure while trying to push a chunk to {}. Reason {}", endpoint, ex.getCause() == null ? ex.getMessage() : ex.getCause().getMessage());
+					failedChunks.add(chunks.get(i));
+				}
+			}
+		} else {
+			for (int i = 0; i < chunks.size(); i++) {
+				String createBody = chunks.get(i);
 
-					HttpResponse response = executeHttpRequest(method, endpoint, _writeHttpClient, entity);
+				_logger.debug("createUrl {} createBody {}", endpoint, createBody);
+				try {
+					HttpResponse response = executeHttpRequest(method, endpoint, _writeHttpClient, new StringEntity(createBody));
 
 					extractResponse(response);
-
 				} catch (UnsupportedEncodingException ex) {
 					throw new SystemException("Error posting data", ex);
+				} catch (Exception ex) {
+					_logger.warn("Failure while trying to push a chunk to {}. Reason {}", endpoint, ex.getMessage());
+					failedChunks.add(createBody);
+					/*
+					 * Without a spool the failed chunks are retried against the next endpoint right away, and an endpoint that cannot be
+					 * connected to or times out would block on every remaining chunk, so the remaining chunks are not sent to this endpoint.
+					 */
+					if (_writeSpool == null || ex instanceof IOException) {
+						failedChunks.addAll(chunks.subList(i + 1, chunks.size()));
+						break;
+					}
 				}
 			}
 		}
+		return failedChunks;
+	}
+
+	/*
+	 * Helper to create the async client shared by reads and writes. Requests are bounded by the per endpoint connection limit rather than by
+	 * threads: requests beyond the limit wait for a connection lease without holding a thread.
+	 */
+	protected CloseableHttpAsyncClient getAsyncClient(int maxInFlight, int connTimeout, int socketTimeout) throws IOReactorException {
+		IOReactorConfig ioConfig = IOReactorConfig.custom().setConnectTimeout(connTimeout).setSoTimeout(socketTimeout).build();
+		PoolingNHttpClientConnectionManager connMgr = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioConfig));
+		int endpointCount = _readPortMap.size() + _writeEndpoints.length;
+
+		connMgr.setDefaultMaxPerRoute(maxInFlight);
+		connMgr.setMaxTotal(maxInFlight * endpointCount);
+
+		RequestConfig reqConfig = RequestConfig.custom().setConnectionRequestTimeout(socketTimeout).setConnectTimeout(connTimeout).setSocketTimeout(
+				socketTimeout).build();
+
+		return HttpAsyncClients.custom().setConnectionManager(connMgr).setDefaultRequestConfig(reqConfig).build();
 	}
 
 	/* Helper to create the read and write clients. */
@@ -830,6 +948,58 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 		return httpResponse;
 	}
 
+	/* Execute a request given by type requestType on the async client. The returned future completes on an I/O dispatch thread. */
+	protected CompletableFuture<HttpResponse> executeHttpRequestAsync(HttpMethod requestType, String url, StringEntity entity) {
+		HttpRequestBase request;
+
+		if (entity != null) {
+			entity.setContentType("application/json");
+		}
+		switch (requestType) {
+		case POST:
+			HttpPost post = new HttpPost(url);
+
+			post.setEntity(entity);
+			request = post;
+			break;
+		case GET:
+			request = new HttpGet(url);
+			break;
+		case DELETE:
+			request = new HttpDelete(url);
+			break;
+		case PUT:
+			HttpPut put = new HttpPut(url);
+
+			put.setEntity(entity);
+			request = put;
+			break;
+		default:
+			throw new SystemException(new MethodNotSupportedException(requestType.toString()));
+		}
+
+		CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+		_asyncHttpClient.execute(request, new FutureCallback<HttpResponse>() {
+
+				@Override
+				public void completed(HttpResponse response) {
+					result.complete(response);
+				}
+
+				@Override
+				public void failed(Exception ex) {
+					result.completeExceptionally(new SystemException("Failed to execute TSDB request " + url, ex));
+				}
+
+				@Override
+				public void cancelled() {
+					result.cancel(false);
+				}
+			});
+		return result;
+	}
+
 	/**
 	 * This method partitions data points of a given metric.
 	 *
@@ -888,7 +1058,41 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 		TSD_RETRY_COUNT("service.property.tsdb.retry.count", "3"),
 		/** The TSDB backup read endpoint. */
 		TSD_ENDPOINT_BACKUP_READ("service.property.tsdb.endpoint.backup.read", "http://localhost:4466,http://localhost:4467"),
-		TSDB_READ_CONNECTION_REUSE_COUNT("service.property.tsdb.read.connection.reuse.count", "2000");
+		TSDB_READ_CONNECTION_REUSE_COUNT("service.property.tsdb.read.connection.reuse.count", "2000"),
+		/** Whether TSDB reads and writes use the non-blocking HTTP client instead of a thread per request. */
+		TSD_ASYNC_IO_ENABLED("service.property.tsdb.async.io.enabled", "false"),
+		/** The maximum number of concurrent requests per TSDB endpoint when async I/O is enabled. */
+		TSD_ENDPOINT_MAX_IN_FLIGHT("service.property.tsdb.endpoint.max.in.flight", "1000"),
+		/** Whether chunks that fail to write are spooled to local disk and replayed instead of retried inline. */
+		TSD_WRITE_SPOOL_ENABLED("service.property.tsdb.write.spool.enabled", "false"),
+		/** The directory of the write spool. */
+		TSD_WRITE_SPOOL_DIR("service.property.tsdb.write.spool.dir", "/tmp/argus/tsdb-write-spool"),
+		/** The size of a write spool segment file. */
+		TSD_WRITE_SPOOL_SEGMENT_BYTES("service.property.tsdb.write.spool.segment.bytes", "67108864"),
+		/** The maximum number of write spool segment files. Bounds the disk used by the spool. */
+		TSD_WRITE_SPOOL_MAX_SEGMENTS("service.property.tsdb.write.spool.max.segments", "16"),
+		/** The delay before the first replay retry of a spooled chunk. */
+		TSD_WRITE_SPOOL_INITIAL_BACKOFF_MS("service.property.tsdb.write.spool.initial.backoff.ms", "1000"),
+		/** The upper bound for the replay retry delay. */
+		TSD_WRITE_SPOOL_MAX_BACKOFF_MS("service.property.tsdb.write.spool.max.backoff.ms", "60000"),
+		/** Whether sharded reads that are slower than the hedge percentile are also sent to the backup read endpoint. */
+		TSDB_READ_HEDGE_ENABLED("service.property.tsdb.read.hedge.enabled", "false"),
+		/** The per endpoint latency percentile after which a sharded read is hedged. */
+		TSDB_READ_HEDGE_PERCENTILE("service.property.tsdb.read.hedge.percentile", "95"),
+		/** The minimum delay in milliseconds before a sharded read is hedged. */
+		TSDB_READ_HEDGE_MIN_DELAY_MS("service.property.tsdb.read.hedge.min.delay.ms", "50"),
+		/** The number of consecutive read failures after which an endpoint is bypassed in favor of its backup. Only applies with hedging enabled. */
+		TSDB_READ_CIRCUIT_FAILURE_THRESHOLD("service.property.tsdb.read.circuit.failure.threshold", "5"),
+		/** The time in milliseconds an endpoint is bypassed once its circuit opens. */
+		TSDB_READ_CIRCUIT_OPEN_MS("service.property.tsdb.read.circuit.open.ms", "30000"),
+		/** Whether long range downsampled queries are split into time chunks that are queried concurrently. */
+		TSD_QUERY_CHUNKING_ENABLED("service.property.tsdb.query.chunking.enabled", "false"),
+		/** The number of downsampled samples per series a query chunk should return. */
+		TSD_QUERY_CHUNK_TARGET_SAMPLES("service.property.tsdb.query.chunk.target.samples", "1440"),
+		/** The maximum number of data points a query chunk should return, based on the response size last observed for the query. */
+		TSD_QUERY_CHUNK_MAX_DATAPOINTS("service.property.tsdb.query.chunk.max.datapoints", "1000000"),
+		/** The maximum number of chunks a query is split into. */
+		TSD_QUERY_MAX_CHUNKS("service.property.tsdb.query.max.chunks", "32");
 
 		private final String _name;
 		private final String _defaultValue;
@@ -1028,6 +1232,23 @@ public class AbstractTSDBService extends DefaultService implements TSDBService {
 				throw new SystemException("Failed to retrieve metrics.", e);
 			}
 		}
+
+		/**
+		 * Issues the query on the async client. The response is parsed on the executor service so that the I/O dispatch threads are never
+		 * blocked on deserialization.
+		 *
+		 * @return  The future metrics.
+		 */
+		public CompletableFuture<List<Metric>> callAsync() {
+			_logger.debug("TSDB async requestUrl {} requestBody {}", _requestUrl, _requestBody);
+
+			try {
+				return executeHttpRequestAsync(HttpMethod.POST, _requestUrl, new StringEntity(_requestBody)).thenApplyAsync(
+						response -> toEntity(extractResponse(response), new TypeReference<ResultSet>() { }).getMetrics(), _executorService);
+			} catch (UnsupportedEncodingException e) {
+				throw new SystemException("Failed to retrieve metrics.", e);
+			}
+		}
 	}
 
 	@Override
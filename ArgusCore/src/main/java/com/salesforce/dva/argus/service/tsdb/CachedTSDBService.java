@@ -44,6 +44,8 @@ import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.NamedBinding;
 import com.salesforce.dva.argus.service.TSDBService;
 import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -419,7 +421,10 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
             try {
             	beforeTime = System.currentTimeMillis();
             	
-                Map<String, List<String>> keyValueMap = _cacheService.getRange(new LinkedHashSet<String>(cacheMetricQueryKeys), 0, -1);
+                Map<String, List<String>> keyValueMap;
+                try (QueryTrace.Span span = QueryTrace.startSpan(Stage.CACHE)) {
+                    keyValueMap = _cacheService.getRange(new LinkedHashSet<String>(cacheMetricQueryKeys), 0, -1);
+                }
                 boolean allCachedKeysFound = true;
 
                 if (keyValueMap == null) {
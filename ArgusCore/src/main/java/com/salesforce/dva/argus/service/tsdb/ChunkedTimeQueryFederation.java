@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.salesforce.dva.argus.entity.Metric;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Federation by splitting long range downsampled queries into time chunks that can be executed concurrently.
+ *
+ * <p>Unlike {@link TimeQueryFederation}, chunk boundaries fall on multiples of the chunk size, which is itself a multiple of the downsampling
+ * period, so every downsampling bucket is computed by exactly one chunk. The TSDB request for a chunk is padded by a millisecond on either side,
+ * so the partial buckets it returns at its edges are dropped when the chunks are stitched.</p>
+ *
+ * <p>The chunk size targets a number of samples per series, derived from the downsampling period, and is reduced so that the response for a
+ * chunk stays below a number of data points, estimated from the response size observed the last time the same query was executed.</p>
+ */
+public class ChunkedTimeQueryFederation extends QueryFederation {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	static final long MIN_CHUNK_MILLIS = 3600000L;
+	private static final int MAX_RESPONSE_SIZES = 10000;
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final long _targetSamples;
+	private final long _maxDatapoints;
+	private final int _maxChunks;
+	private final Cache<String, Double> _datapointsPerMilli;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new ChunkedTimeQueryFederation object.
+	 *
+	 * @param  targetSamples  The number of samples per series a chunk should return.
+	 * @param  maxDatapoints  The maximum number of data points a chunk is expected to return across all series.
+	 * @param  maxChunks      The maximum number of chunks a query is split into.
+	 */
+	public ChunkedTimeQueryFederation(long targetSamples, long maxDatapoints, int maxChunks) {
+		requireArgument(targetSamples > 0, "Target samples per chunk must be greater than zero.");
+		requireArgument(maxDatapoints > 0, "Maximum data points per chunk must be greater than zero.");
+		requireArgument(maxChunks > 1, "Maximum chunks per query must be greater than one.");
+		_targetSamples = targetSamples;
+		_maxDatapoints = maxDatapoints;
+		_maxChunks = maxChunks;
+		_datapointsPerMilli = CacheBuilder.newBuilder().maximumSize(MAX_RESPONSE_SIZES).expireAfterWrite(1, TimeUnit.DAYS).build();
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	@Override
+	public Map<MetricQuery, List<MetricQuery>> federateQueries(List<MetricQuery> queries) {
+		Map<MetricQuery, List<MetricQuery>> mapQuerySubQueries = new HashMap<>();
+
+		for (MetricQuery query : queries) {
+			mapQuerySubQueries.put(query, _chunk(query));
+		}
+		return mapQuerySubQueries;
+	}
+
+	@Override
+	public Map<MetricQuery, List<Metric>> join(Map<MetricQuery, List<MetricQuery>> mapQuerySubQueries, Map<MetricQuery, List<Metric>> subQueryMetricsMap) {
+		Map<MetricQuery, List<Metric>> queryMetricsMap = new HashMap<>();
+
+		for (Map.Entry<MetricQuery, List<MetricQuery>> entry : mapQuerySubQueries.entrySet()) {
+			SeriesStitcher stitcher = new SeriesStitcher(entry.getKey(), entry.getValue());
+
+			for (int i = 0; i < entry.getValue().size(); i++) {
+				stitcher.add(i, subQueryMetricsMap.get(entry.getValue().get(i)));
+			}
+			queryMetricsMap.put(entry.getKey(), stitcher.getMetrics());
+		}
+		return queryMetricsMap;
+	}
+
+	/**
+	 * Records the number of data points returned for a query, used to size the chunks the next time the query is executed.
+	 *
+	 * @param  query       The executed query. Cannot be null.
+	 * @param  datapoints  The number of data points returned across all series.
+	 */
+	public void recordResponseSize(MetricQuery query, long datapoints) {
+		long range = query.getEndTimestamp() - query.getStartTimestamp();
+
+		if (range > 0) {
+			_datapointsPerMilli.put(_key(query), (double) datapoints / range);
+		}
+	}
+
+	/**
+	 * Returns the chunk size for a query.
+	 *
+	 * @param   query  The query.
+	 *
+	 * @return  The chunk size in milliseconds, a multiple of the downsampling period, or zero if the query should not be split.
+	 */
+	long getChunkMillis(MetricQuery query) {
+		if (query.getDownsampler() == null || query.getDownsamplingPeriod() == null || query.getDownsamplingPeriod() <= 0
+				|| query.getPercentile() != null || query.getShowHistogramBuckets()) {
+			return 0;
+		}
+
+		long period = query.getDownsamplingPeriod();
+		long range = query.getEndTimestamp() - query.getStartTimestamp();
+		long chunk = period * _targetSamples;
+		Double datapointsPerMilli = _datapointsPerMilli.getIfPresent(_key(query));
+
+		if (datapointsPerMilli != null && datapointsPerMilli > 0) {
+			chunk = Math.min(chunk, (long) (_maxDatapoints / datapointsPerMilli));
+		}
+		chunk = Math.max(Math.max(chunk, MIN_CHUNK_MILLIS), (range + _maxChunks - 1) / _maxChunks);
+		chunk = (chunk + period - 1) / period * period;
+		return range > chunk ? chunk : 0;
+	}
+
+	private List<MetricQuery> _chunk(MetricQuery query) {
+		long chunk = getChunkMillis(query);
+
+		if (chunk == 0) {
+			return Collections.singletonList(query);
+		}
+
+		List<MetricQuery> chunks = new ArrayList<>();
+		long start = query.getStartTimestamp();
+
+		while (start <= query.getEndTimestamp()) {
+			long boundary = (start / chunk + 1) * chunk;
+			MetricQuery mq = new MetricQuery(query);
+
+			mq.setStartTimestamp(start);
+			mq.setEndTimestamp(Math.min(boundary - 1, query.getEndTimestamp()));
+			chunks.add(mq);
+			start = boundary;
+		}
+		return chunks;
+	}
+
+	private static String _key(MetricQuery query) {
+		StringBuilder key = new StringBuilder();
+
+		key.append(query.getNamespace()).append(':').append(query.getScope()).append(':').append(query.getMetric());
+		key.append(new TreeMap<>(query.getTags())).append(':').append(query.getAggregator()).append(':').append(query.getDownsampler());
+		return key.append(':').append(query.getDownsamplingPeriod()).toString();
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * Stitches the partial series returned by the chunks of a query into whole series by tag set, one chunk at a time so the results of a chunk
+	 * can be released as soon as they are merged.
+	 */
+	public static final class SeriesStitcher {
+
+		private final MetricQuery _query;
+		private final List<MetricQuery> _chunks;
+		private final Map<String, Metric> _series = new LinkedHashMap<>();
+
+		/**
+		 * Creates a new SeriesStitcher object.
+		 *
+		 * @param  query   The query that was split.
+		 * @param  chunks  The chunks of the query, in time order.
+		 */
+		public SeriesStitcher(MetricQuery query, List<MetricQuery> chunks) {
+			_query = query;
+			_chunks = chunks;
+		}
+
+		/**
+		 * Merges the series returned by a chunk. Data points outside of the time range of the chunk belong to partial downsampling buckets and are
+		 * dropped, except at the outer edges of the query.
+		 *
+		 * @param  index    The index of the chunk.
+		 * @param  metrics  The series returned by the chunk. May be null.
+		 */
+		public void add(int index, List<Metric> metrics) {
+			if (metrics == null) {
+				return;
+			}
+
+			long from = index == 0 ? Long.MIN_VALUE : _chunks.get(index).getStartTimestamp();
+			long to = index == _chunks.size() - 1 ? Long.MAX_VALUE : _chunks.get(index).getEndTimestamp();
+
+			for (Metric metric : metrics) {
+				if (metric == null) {
+					continue;
+				}
+
+				Map<Long, Double> datapoints = metric.getDatapoints();
+
+				if (_chunks.size() > 1) {
+					datapoints = new HashMap<>(datapoints);
+					datapoints.keySet().removeIf(timestamp -> timestamp < from || timestamp > to);
+				}
+
+				Metric existing = _series.get(metric.getIdentifier());
+
+				if (existing != null) {
+					existing.addDatapoints(datapoints);
+				} else {
+					if (_chunks.size() > 1) {
+						metric.setDatapoints(datapoints);
+					}
+					metric.setQuery(_query);
+					_series.put(metric.getIdentifier(), metric);
+				}
+			}
+		}
+
+		/**
+		 * Returns the stitched series.
+		 *
+		 * @return  The series merged so far.
+		 */
+		public List<Metric> getMetrics() {
+			return new ArrayList<>(_series.values());
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -36,6 +36,7 @@ import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -58,6 +59,7 @@ import com.salesforce.dva.argus.entity.Annotation;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.tsdb.ChunkedTimeQueryFederation.SeriesStitcher;
 import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemException;
@@ -70,6 +72,10 @@ import com.salesforce.dva.argus.system.SystemException;
 @Singleton
 public class DefaultTSDBService extends AbstractTSDBService{
 
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final ChunkedTimeQueryFederation _chunkedFederation;
+
 	//~ Constructors *********************************************************************************************************************************
 
 	/**
@@ -83,6 +89,14 @@ public class DefaultTSDBService extends AbstractTSDBService{
 	@Inject
 	public DefaultTSDBService(SystemConfiguration config, MonitorService monitorService) {
 		super(config, monitorService);
+		if (Boolean.parseBoolean(config.getValue(Property.TSD_QUERY_CHUNKING_ENABLED.getName(), Property.TSD_QUERY_CHUNKING_ENABLED.getDefaultValue()))) {
+			_chunkedFederation = new ChunkedTimeQueryFederation(
+					Long.parseLong(config.getValue(Property.TSD_QUERY_CHUNK_TARGET_SAMPLES.getName(), Property.TSD_QUERY_CHUNK_TARGET_SAMPLES.getDefaultValue())),
+					Long.parseLong(config.getValue(Property.TSD_QUERY_CHUNK_MAX_DATAPOINTS.getName(), Property.TSD_QUERY_CHUNK_MAX_DATAPOINTS.getDefaultValue())),
+					Integer.parseInt(config.getValue(Property.TSD_QUERY_MAX_CHUNKS.getName(), Property.TSD_QUERY_MAX_CHUNKS.getDefaultValue())));
+		} else {
+			_chunkedFederation = null;
+		}
 	}
 
 	//~ Methods **************************************************************************************************************************************
@@ -120,46 +134,45 @@ public class DefaultTSDBService extends AbstractTSDBService{
         
         long start = System.currentTimeMillis();
         Map<MetricQuery, List<Metric>> metricsMap = new HashMap<>();
-        Map<MetricQuery, Future<List<Metric>>> futures = new HashMap<>();
+        Map<MetricQuery, List<Future<List<Metric>>>> futures = new HashMap<>();
         Map<MetricQuery, Long> queryStartExecutionTime = new HashMap<>();
+        Map<MetricQuery, List<MetricQuery>> chunks = _chunkedFederation != null ? _chunkedFederation.federateQueries(queries) : null;
         // Only one endpoint for DefaultTSDBService
         String requestUrl = _readEndPoints.get(0) + "/api/query";
 
         for (MetricQuery query : queries) {
-        	String requestBody = fromEntity(query);
+            List<Future<List<Metric>>> chunkFutures = new ArrayList<>();
+
+            for (MetricQuery chunk : chunks != null ? chunks.get(query) : Collections.singletonList(query)) {
+                String requestBody = fromEntity(chunk);
 
-            _logger.debug("requestUrl {} requestBody {}", requestUrl, requestBody);
+                _logger.debug("requestUrl {} requestBody {}", requestUrl, requestBody);
 
-            futures.put(query, _executorService.submit(new QueryWorker(requestUrl, _readEndPoints.get(0), requestBody)));
+                QueryWorker worker = new QueryWorker(requestUrl, _readEndPoints.get(0), requestBody);
+
+                chunkFutures.add(_asyncIoEnabled ? worker.callAsync() : _executorService.submit(worker));
+            }
+            futures.put(query, chunkFutures);
             queryStartExecutionTime.put(query, System.currentTimeMillis());
         }
 
-        for (Entry<MetricQuery, Future<List<Metric>>> entry : futures.entrySet()) {
+        for (Entry<MetricQuery, List<Future<List<Metric>>>> entry : futures.entrySet()) {
             try {
-                List<Metric> m = entry.getValue().get();
                 MetricQuery metricQuery = entry.getKey();
-                Set<String> tagsInQuery = new HashSet<String>();
-                if(metricQuery.getTags()!=null) {
-                	    tagsInQuery = metricQuery.getTags().keySet();
-                }
-                List<Metric> metrics = new ArrayList<>();
-
-                if (m != null) {
-                    for (Metric metric : m) {
-                        if (metric != null) {
-                            metric.setQuery(entry.getKey());
-                            if(metric.getQuery().getAggregator() != Aggregator.NONE){
-                                Set<String> tagKeys = metric.getTags().keySet();
-                                for(String tagKey : tagKeys) {
-                                    // removing tags that the user has not requested
-                                    if(!tagsInQuery.contains(tagKey)) {
-                                        metric.removeTag(tagKey);
-                                    }
-                                }
-                            }
-                            metrics.add(metric);
-                        }
+                List<Metric> metrics;
+
+                if (entry.getValue().size() == 1) {
+                    metrics = _filterTags(metricQuery, entry.getValue().get(0).get());
+                } else {
+                    SeriesStitcher stitcher = new SeriesStitcher(metricQuery, chunks.get(metricQuery));
+
+                    for (int i = 0; i < entry.getValue().size(); i++) {
+                        stitcher.add(i, _filterTags(metricQuery, entry.getValue().get(i).get()));
                     }
+                    metrics = stitcher.getMetrics();
+                }
+                if (_chunkedFederation != null) {
+                    _chunkedFederation.recordResponseSize(metricQuery, _countDatapoints(metrics));
                 }
                 
                 instrumentQueryLatency(_monitorService, entry.getKey(), queryStartExecutionTime.get(entry.getKey()), "metrics");
@@ -182,6 +195,43 @@ public class DefaultTSDBService extends AbstractTSDBService{
         return metricsMap;
     }
 
+    /* Sets the query of each series and removes the tags that the user has not requested from aggregated series. */
+    private static List<Metric> _filterTags(MetricQuery metricQuery, List<Metric> m) {
+        Set<String> tagsInQuery = new HashSet<String>();
+        if(metricQuery.getTags()!=null) {
+            tagsInQuery = metricQuery.getTags().keySet();
+        }
+        List<Metric> metrics = new ArrayList<>();
+
+        if (m != null) {
+            for (Metric metric : m) {
+                if (metric != null) {
+                    metric.setQuery(metricQuery);
+                    if(metric.getQuery().getAggregator() != Aggregator.NONE){
+                        Set<String> tagKeys = metric.getTags().keySet();
+                        for(String tagKey : tagKeys) {
+                            // removing tags that the user has not requested
+                            if(!tagsInQuery.contains(tagKey)) {
+                                metric.removeTag(tagKey);
+                            }
+                        }
+                    }
+                    metrics.add(metric);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private static long _countDatapoints(List<Metric> metrics) {
+        long datapoints = 0;
+
+        for (Metric metric : metrics) {
+            datapoints += metric.getDatapoints().size();
+        }
+        return datapoints;
+    }
+
 	/** @see  TSDBService#getAnnotations(java.util.List) */
 	@Override
     public List<Annotation> getAnnotations(List<AnnotationQuery> queries) {
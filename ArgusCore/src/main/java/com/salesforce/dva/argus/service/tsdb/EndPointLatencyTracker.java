@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.tsdb;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks recent read latencies and failures per TSDB endpoint. The latency distribution drives the delay after which a sub-query is hedged to a
+ * backup endpoint, and consecutive failures open a per endpoint circuit so that reads go straight to the backup until the endpoint recovers.
+ */
+class EndPointLatencyTracker {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	static final int SAMPLE_WINDOW = 1024;
+	static final int MIN_SAMPLES = 32;
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final ConcurrentMap<String, EndPointStats> _stats = new ConcurrentHashMap<>();
+	private final double _percentile;
+	private final long _minHedgeDelayMillis;
+	private final int _failureThreshold;
+	private final long _circuitOpenMillis;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new EndPointLatencyTracker object.
+	 *
+	 * @param  percentile           The latency percentile, in the range (0, 100], after which a read is hedged.
+	 * @param  minHedgeDelayMillis  The lower bound for the hedge delay.
+	 * @param  failureThreshold     The number of consecutive failures that open the circuit for an endpoint.
+	 * @param  circuitOpenMillis    The time an open circuit stays open before a trial request is let through.
+	 */
+	EndPointLatencyTracker(double percentile, long minHedgeDelayMillis, int failureThreshold, long circuitOpenMillis) {
+		_percentile = percentile;
+		_minHedgeDelayMillis = minHedgeDelayMillis;
+		_failureThreshold = failureThreshold;
+		_circuitOpenMillis = circuitOpenMillis;
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	/**
+	 * Records a successful read. Closes the circuit for the endpoint.
+	 *
+	 * @param  endPoint       The endpoint.
+	 * @param  latencyMillis  The read latency.
+	 */
+	void recordSuccess(String endPoint, long latencyMillis) {
+		_getStats(endPoint).recordSuccess(latencyMillis);
+	}
+
+	/**
+	 * Records a failed read.
+	 *
+	 * @param  endPoint  The endpoint.
+	 */
+	void recordFailure(String endPoint) {
+		_getStats(endPoint).recordFailure(System.currentTimeMillis(), _failureThreshold, _circuitOpenMillis);
+	}
+
+	/**
+	 * Indicates whether reads to the endpoint should be skipped in favor of its backup.
+	 *
+	 * @param   endPoint  The endpoint.
+	 *
+	 * @return  True if the circuit for the endpoint is open.
+	 */
+	boolean isCircuitOpen(String endPoint) {
+		EndPointStats stats = _stats.get(endPoint);
+
+		return stats != null && stats.isOpen(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the delay after which a read to the endpoint should be hedged, or a negative value if not enough samples have been recorded yet.
+	 *
+	 * @param   endPoint  The endpoint.
+	 *
+	 * @return  The hedge delay in milliseconds.
+	 */
+	long getHedgeDelayMillis(String endPoint) {
+		EndPointStats stats = _stats.get(endPoint);
+		long latency = stats == null ? -1 : stats.getPercentile(_percentile);
+
+		return latency < 0 ? -1 : Math.max(_minHedgeDelayMillis, latency);
+	}
+
+	/**
+	 * Returns the recorded latency percentile for the endpoint.
+	 *
+	 * @param   endPoint    The endpoint.
+	 * @param   percentile  The percentile in the range (0, 100].
+	 *
+	 * @return  The latency in milliseconds or a negative value if not enough samples have been recorded.
+	 */
+	long getLatencyPercentile(String endPoint, double percentile) {
+		EndPointStats stats = _stats.get(endPoint);
+
+		return stats == null ? -1 : stats.getPercentile(percentile);
+	}
+
+	private EndPointStats _getStats(String endPoint) {
+		return _stats.computeIfAbsent(endPoint, k -> new EndPointStats());
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * Latency samples in a fixed size ring plus the circuit state for one endpoint.
+	 */
+	private static class EndPointStats {
+
+		private final long[] _samples = new long[SAMPLE_WINDOW];
+		private int _next = 0;
+		private int _count = 0;
+		private int _consecutiveFailures = 0;
+		private long _openUntil = 0;
+
+		synchronized void recordSuccess(long latencyMillis) {
+			_samples[_next] = latencyMillis;
+			_next = (_next + 1) % _samples.length;
+			_count = Math.min(_count + 1, _samples.length);
+			_consecutiveFailures = 0;
+			_openUntil = 0;
+		}
+
+		synchronized void recordFailure(long now, int failureThreshold, long circuitOpenMillis) {
+			_consecutiveFailures++;
+			if (_consecutiveFailures >= failureThreshold) {
+				_openUntil = now + circuitOpenMillis;
+			}
+		}
+
+		synchronized boolean isOpen(long now) {
+			return now < _openUntil;
+		}
+
+		long getPercentile(double percentile) {
+			long[] sorted;
+
+			synchronized (this) {
+				if (_count < MIN_SAMPLES) {
+					return -1;
+				}
+				sorted = Arrays.copyOf(_samples, _count);
+			}
+			Arrays.sort(sorted);
+
+			int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+
+			return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -40,8 +40,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpResponse;
@@ -70,8 +73,15 @@ import com.salesforce.dva.argus.system.SystemException;
 @Singleton
 public class ShardedTSDBService extends AbstractTSDBService{
 
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	private static final String QUERY_HEDGED_COUNTER = "query.hedged";
+
 	//~ Instance fields ******************************************************************************************************************************
 	private final TransformFactory _transformFactory;
+	private final boolean _hedgeEnabled;
+	private final EndPointLatencyTracker _latencyTracker;
+	private final ScheduledExecutorService _hedgeScheduler;
 
 
 	//~ Constructors *********************************************************************************************************************************
@@ -88,6 +98,19 @@ public class ShardedTSDBService extends AbstractTSDBService{
 	public ShardedTSDBService(SystemConfiguration config, MonitorService monitorService, TransformFactory transformFactory) {
 		super(config, monitorService);
 		_transformFactory = transformFactory;
+		_hedgeEnabled = Boolean.parseBoolean(config.getValue(Property.TSDB_READ_HEDGE_ENABLED.getName(),
+				Property.TSDB_READ_HEDGE_ENABLED.getDefaultValue()));
+		_latencyTracker = new EndPointLatencyTracker(
+				Double.parseDouble(config.getValue(Property.TSDB_READ_HEDGE_PERCENTILE.getName(), Property.TSDB_READ_HEDGE_PERCENTILE.getDefaultValue())),
+				Long.parseLong(config.getValue(Property.TSDB_READ_HEDGE_MIN_DELAY_MS.getName(), Property.TSDB_READ_HEDGE_MIN_DELAY_MS.getDefaultValue())),
+				Integer.parseInt(config.getValue(Property.TSDB_READ_CIRCUIT_FAILURE_THRESHOLD.getName(),
+						Property.TSDB_READ_CIRCUIT_FAILURE_THRESHOLD.getDefaultValue())),
+				Long.parseLong(config.getValue(Property.TSDB_READ_CIRCUIT_OPEN_MS.getName(), Property.TSDB_READ_CIRCUIT_OPEN_MS.getDefaultValue())));
+		_hedgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "tsdb-read-hedge-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	//~ Methods **************************************************************************************************************************************
@@ -105,6 +128,7 @@ public class ShardedTSDBService extends AbstractTSDBService{
 				_logger.warn("A TSDB HTTP client failed to shutdown properly.", ex);
 			}
 		}
+		_hedgeScheduler.shutdownNow();
 		_executorService.shutdownNow();
 		try {
 			_executorService.awaitTermination(10, TimeUnit.SECONDS);
@@ -212,9 +236,7 @@ public class ShardedTSDBService extends AbstractTSDBService{
 		Map<MetricQuery, Future<List<Metric>>> queryFutureMap = new HashMap<>();
 
 		for (MetricQuery query : queries) {
-			String requestBody = fromEntity(query);
-			String requestUrl = query.getMetricQueryContext().getReadEndPoint() + "/api/query";
-			queryFutureMap.put(query, _executorService.submit(new QueryWorker(requestUrl, query.getMetricQueryContext().getReadEndPoint(), requestBody)));
+			queryFutureMap.put(query, readSubQuery(query));
 		}
 
 		Map<MetricQuery, List<Metric>> subQueryMetricsMap = new HashMap<>();
@@ -225,17 +247,8 @@ public class ShardedTSDBService extends AbstractTSDBService{
 			try {
 				m = entry.getValue().get();
 			} catch (InterruptedException | ExecutionException e) {
-				_logger.warn("Failed to get metrics from TSDB. Reason: " + e.getMessage());
-				try {
-					String readBackupEndPoint = _readBackupEndPointsMap.get(entry.getKey().getMetricQueryContext().getReadEndPoint()); 
-					if (!readBackupEndPoint.isEmpty()) {
-						_logger.warn("Trying to read from Backup endpoint");
-						m = new QueryWorker(readBackupEndPoint + "/api/query", readBackupEndPoint, fromEntity(entry.getKey())).call();
-					}
-				} catch (Exception ex) {
-					_logger.warn("Failed to get metrics from Backup TSDB. Reason: " + ex.getMessage());
-					continue;
-				}
+				_logger.warn("Failed to get metrics from TSDB and its Backup. Reason: " + e.getMessage());
+				continue;
 			}
 
 			if (m != null) {
@@ -252,6 +265,64 @@ public class ShardedTSDBService extends AbstractTSDBService{
 		return subQueryMetricsMap;
 	}
 
+	/*
+	 * Reads a sub-query from its endpoint. If the endpoint fails, or hedging is enabled and it has not answered within its hedge percentile latency,
+	 * the same sub-query is sent to the backup endpoint and whichever answers first wins. With hedging enabled, endpoints whose circuit is open are
+	 * skipped entirely.
+	 */
+	CompletableFuture<List<Metric>> readSubQuery(MetricQuery query) {
+		String readEndPoint = query.getMetricQueryContext().getReadEndPoint();
+		String readBackupEndPoint = _readBackupEndPointsMap.get(readEndPoint);
+		String requestBody = fromEntity(query);
+
+		if (readBackupEndPoint == null || readBackupEndPoint.isEmpty()) {
+			return read(readEndPoint, requestBody);
+		}
+		if (_hedgeEnabled && _latencyTracker.isCircuitOpen(readEndPoint)) {
+			_logger.debug("Circuit open for {}, reading from Backup endpoint {}", readEndPoint, readBackupEndPoint);
+			return read(readBackupEndPoint, requestBody);
+		}
+
+		HedgedRead hedgedRead = new HedgedRead(readEndPoint, readBackupEndPoint, requestBody);
+		long hedgeDelay = _hedgeEnabled ? _latencyTracker.getHedgeDelayMillis(readEndPoint) : -1;
+
+		hedgedRead.start();
+		if (hedgeDelay >= 0) {
+			_hedgeScheduler.schedule(hedgedRead::hedge, hedgeDelay, TimeUnit.MILLISECONDS);
+		}
+		return hedgedRead.getResult();
+	}
+
+	/* Issues a read on the async client or the shared executor and records its latency or failure against the endpoint. */
+	CompletableFuture<List<Metric>> read(String readEndPoint, String requestBody) {
+		if (_asyncIoEnabled) {
+			long start = System.currentTimeMillis();
+
+			return new QueryWorker(readEndPoint + "/api/query", readEndPoint, requestBody).callAsync().whenComplete((metrics, ex) -> {
+				if (ex == null) {
+					_latencyTracker.recordSuccess(readEndPoint, System.currentTimeMillis() - start);
+				} else {
+					_latencyTracker.recordFailure(readEndPoint);
+				}
+			});
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			long start = System.currentTimeMillis();
+			try {
+				List<Metric> metrics = new QueryWorker(readEndPoint + "/api/query", readEndPoint, requestBody).call();
+				_latencyTracker.recordSuccess(readEndPoint, System.currentTimeMillis() - start);
+				return metrics;
+			} catch (RuntimeException ex) {
+				_latencyTracker.recordFailure(readEndPoint);
+				throw ex;
+			}
+		}, _executorService);
+	}
+
+	EndPointLatencyTracker getLatencyTracker() {
+		return _latencyTracker;
+	}
+
 	@Override
 	public Properties getServiceProperties() {
 		Properties serviceProps= new Properties();
@@ -261,5 +332,71 @@ public class ShardedTSDBService extends AbstractTSDBService{
 		}
 		return serviceProps;
 	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * A sub-query read against a primary endpoint that may also be issued against its backup. The first successful response completes the result;
+	 * the result fails only once every issued read has failed. The losing read is left to finish and its response is discarded.
+	 */
+	private class HedgedRead {
+
+		private final CompletableFuture<List<Metric>> _result = new CompletableFuture<>();
+		private final String _readEndPoint;
+		private final String _readBackupEndPoint;
+		private final String _requestBody;
+		private int _pending = 0;
+		private boolean _backupStarted = false;
+
+		HedgedRead(String readEndPoint, String readBackupEndPoint, String requestBody) {
+			_readEndPoint = readEndPoint;
+			_readBackupEndPoint = readBackupEndPoint;
+			_requestBody = requestBody;
+		}
+
+		CompletableFuture<List<Metric>> getResult() {
+			return _result;
+		}
+
+		synchronized void start() {
+			_issue(_readEndPoint);
+		}
+
+		/* Invoked by the scheduler once the primary has exceeded its hedge delay. */
+		synchronized void hedge() {
+			if (!_result.isDone() && !_backupStarted) {
+				_logger.debug("Read from {} exceeded hedge delay, hedging to Backup endpoint {}", _readEndPoint, _readBackupEndPoint);
+				Map<String, String> tags = new HashMap<>();
+				tags.put("endpoint", _readEndPoint);
+				_monitorService.modifyCustomCounter(QUERY_HEDGED_COUNTER, 1, tags);
+				_startBackup();
+			}
+		}
+
+		private void _startBackup() {
+			_backupStarted = true;
+			_issue(_readBackupEndPoint);
+		}
+
+		private void _issue(String endPoint) {
+			_pending++;
+			read(endPoint, _requestBody).whenComplete((metrics, ex) -> _onComplete(endPoint, metrics, ex));
+		}
+
+		private synchronized void _onComplete(String endPoint, List<Metric> metrics, Throwable ex) {
+			_pending--;
+			if (ex == null) {
+				_result.complete(metrics);
+			} else if (!_result.isDone()) {
+				_logger.warn("Failed to get metrics from TSDB endpoint " + endPoint + ". Reason: " + ex.getMessage());
+				if (!_backupStarted) {
+					_logger.warn("Trying to read from Backup endpoint");
+					_startBackup();
+				} else if (_pending == 0) {
+					_result.completeExceptionally(ex);
+				}
+			}
+		}
+	}
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
\ No newline at end of file
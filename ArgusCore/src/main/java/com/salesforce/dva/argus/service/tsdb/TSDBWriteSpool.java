@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.salesforce.dva.argus.system.SystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Local write ahead spool for TSDB write chunks that could not be delivered. Chunks are appended to fixed size memory mapped segment files and
+ * replayed in order by a background thread with exponential backoff. Every chunk carries an id derived from its position in the spool and the
+ * replay position is persisted in the segment header after a chunk was accepted, so replayed chunks are not sent again across restarts. Delivery is
+ * at least once: the chunk id is not sent to TSDB, so a chunk that was accepted just before the process stopped, before its replay position was
+ * persisted, is sent again on the next start. TSDB writes are keyed by metric, tags and timestamp, so sending a chunk twice writes the same data
+ * points twice rather than duplicating them. Disk usage is bounded by the number of segments: when the spool is full the oldest segment is
+ * discarded.
+ *
+ * <p>Segment layout: an 8 byte header holding the read and write offsets followed by records of the form <tt>[int length][long chunk id][int
+ * crc][short path length][path][body]</tt>.</p>
+ */
+class TSDBWriteSpool {
+
+	//~ Static fields/initializers *******************************************************************************************************************
+
+	static final int HEADER_BYTES = 8;
+	private static final int RECORD_OVERHEAD = 4 + 8 + 4 + 2;
+	private static final Pattern SEGMENT_NAME = Pattern.compile("spool-(\\d+)\\.wal");
+	private static final Logger _logger = LoggerFactory.getLogger(TSDBWriteSpool.class);
+
+	//~ Instance fields ******************************************************************************************************************************
+
+	private final File _directory;
+	private final int _segmentBytes;
+	private final int _maxSegments;
+	private final long _initialBackoffMillis;
+	private final long _maxBackoffMillis;
+	private final ChunkSender _sender;
+	private final Deque<Segment> _segments = new ArrayDeque<>();
+	private final Thread _replayThread;
+	private long _droppedChunks = 0;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/**
+	 * Creates a new TSDBWriteSpool object, recovering any chunks left in the spool directory.
+	 *
+	 * @param  directory             The spool directory. Created if it does not exist.
+	 * @param  segmentBytes          The size of a segment file.
+	 * @param  maxSegments           The maximum number of segment files.
+	 * @param  initialBackoffMillis  The delay after the first failed replay. Doubles on every further failure.
+	 * @param  maxBackoffMillis      The upper bound for the replay delay.
+	 * @param  sender                Sends a spooled chunk to TSDB. Cannot be null.
+	 * @param  startReplay           Whether to start the background replay thread.
+	 */
+	TSDBWriteSpool(File directory, int segmentBytes, int maxSegments, long initialBackoffMillis, long maxBackoffMillis, ChunkSender sender,
+			boolean startReplay) {
+		requireArgument(segmentBytes > HEADER_BYTES + RECORD_OVERHEAD, "Segment size is too small.");
+		requireArgument(maxSegments > 0, "At least one segment is required.");
+		requireArgument(sender != null, "Chunk sender cannot be null.");
+		_directory = directory;
+		_segmentBytes = segmentBytes;
+		_maxSegments = maxSegments;
+		_initialBackoffMillis = initialBackoffMillis;
+		_maxBackoffMillis = maxBackoffMillis;
+		_sender = sender;
+		if (!_directory.isDirectory() && !_directory.mkdirs()) {
+			throw new SystemException("Failed to create TSDB write spool directory " + _directory);
+		}
+		_recover();
+		_replayThread = new Thread(this::_replay, "tsdb-write-spool-replay");
+		_replayThread.setDaemon(true);
+		if (startReplay) {
+			_replayThread.start();
+		}
+	}
+
+	//~ Methods **************************************************************************************************************************************
+
+	/**
+	 * Appends a chunk to the spool.
+	 *
+	 * @param   urlPath  The TSDB API path the chunk is posted to.
+	 * @param   body     The chunk body.
+	 *
+	 * @return  The chunk id or -1 if the chunk does not fit into a segment.
+	 */
+	synchronized long append(String urlPath, String body) {
+		byte[] path = urlPath.getBytes(StandardCharsets.UTF_8);
+		byte[] data = body.getBytes(StandardCharsets.UTF_8);
+		int recordBytes = RECORD_OVERHEAD + path.length + data.length;
+
+		if (recordBytes > _segmentBytes - HEADER_BYTES) {
+			_logger.error("Dropping a TSDB write chunk of {} bytes as it exceeds the spool segment size.", data.length);
+			_droppedChunks++;
+			return -1;
+		}
+
+		Segment tail = _segments.peekLast();
+
+		if (tail == null || tail.getWriteOffset() + recordBytes > tail._buffer.capacity()) {
+			tail = _roll(tail);
+		}
+
+		int offset = tail.getWriteOffset();
+		long chunkId = (tail._sequence << 32) | offset;
+		CRC32 crc = new CRC32();
+
+		crc.update(path);
+		crc.update(data);
+
+		MappedByteBuffer buffer = tail._buffer;
+
+		buffer.putInt(offset, recordBytes - 4);
+		buffer.putLong(offset + 4, chunkId);
+		buffer.putInt(offset + 12, (int) crc.getValue());
+		buffer.putShort(offset + 16, (short) path.length);
+		_put(buffer, offset + RECORD_OVERHEAD, path);
+		_put(buffer, offset + RECORD_OVERHEAD + path.length, data);
+		tail.setWriteOffset(offset + recordBytes);
+		notifyAll();
+		return chunkId;
+	}
+
+	/**
+	 * Returns the number of bytes waiting to be replayed.
+	 *
+	 * @return  The pending bytes.
+	 */
+	synchronized long getPendingBytes() {
+		long pending = 0;
+
+		for (Segment segment : _segments) {
+			pending += segment.getWriteOffset() - segment.getReadOffset();
+		}
+		return pending;
+	}
+
+	/**
+	 * Returns the number of chunks discarded because the spool was full or they did not fit into a segment.
+	 *
+	 * @return  The dropped chunk count.
+	 */
+	synchronized long getDroppedChunks() {
+		return _droppedChunks;
+	}
+
+	/** Stops the replay, waiting for a chunk being sent to complete, and flushes the spool to disk. Pending chunks are replayed on the next start. */
+	void dispose() {
+		_replayThread.interrupt();
+		try {
+			_replayThread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			for (Segment segment : _segments) {
+				segment.close();
+			}
+			_segments.clear();
+		}
+	}
+
+	/**
+	 * Replays the oldest pending chunk once.
+	 *
+	 * @return  True if a chunk was sent. False if the spool is empty.
+	 *
+	 * @throws  Exception  If the chunk could not be sent. The chunk stays in the spool.
+	 */
+	boolean replayOnce() throws Exception {
+		Chunk chunk = _peek();
+
+		if (chunk == null) {
+			return false;
+		}
+		_sender.send(chunk._urlPath, chunk._body, chunk._chunkId);
+		_commit(chunk);
+		return true;
+	}
+
+	private void _replay() {
+		long backoff = _initialBackoffMillis;
+
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				if (replayOnce()) {
+					backoff = _initialBackoffMillis;
+				} else {
+					synchronized (this) {
+						wait(1000);
+					}
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (Exception ex) {
+				_logger.warn("Failed to replay spooled TSDB write chunk. Retrying in {} ms. Reason {}", backoff, ex.getMessage());
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				backoff = Math.min(backoff * 2, _maxBackoffMillis);
+			}
+		}
+	}
+
+	private synchronized Chunk _peek() {
+		while (!_segments.isEmpty()) {
+			Segment head = _segments.peekFirst();
+			int offset = head.getReadOffset();
+
+			if (offset >= head.getWriteOffset()) {
+				if (head == _segments.peekLast()) {
+					return null;
+				}
+				_segments.pollFirst();
+				head.delete();
+				continue;
+			}
+
+			MappedByteBuffer buffer = head._buffer;
+			int length = buffer.getInt(offset);
+			int next = offset + 4 + length;
+
+			if (length < RECORD_OVERHEAD - 4 || next > head.getWriteOffset()) {
+				_logger.error("Discarding the corrupt remainder of TSDB write spool segment {}.", head._file);
+				head.setReadOffset(head.getWriteOffset());
+				continue;
+			}
+
+			long chunkId = buffer.getLong(offset + 4);
+			int checksum = buffer.getInt(offset + 12);
+			byte[] path = _get(buffer, offset + RECORD_OVERHEAD, buffer.getShort(offset + 16));
+			byte[] data = _get(buffer, offset + RECORD_OVERHEAD + path.length, next - offset - RECORD_OVERHEAD - path.length);
+			CRC32 crc = new CRC32();
+
+			crc.update(path);
+			crc.update(data);
+			if ((int) crc.getValue() != checksum) {
+				_logger.error("Skipping TSDB write spool chunk {} as its checksum does not match.", chunkId);
+				head.setReadOffset(next);
+				continue;
+			}
+			return new Chunk(head, offset, next, chunkId, new String(path, StandardCharsets.UTF_8), new String(data, StandardCharsets.UTF_8));
+		}
+		return null;
+	}
+
+	private synchronized void _commit(Chunk chunk) {
+		if (_segments.contains(chunk._segment) && chunk._segment.getReadOffset() == chunk._offset) {
+			chunk._segment.setReadOffset(chunk._next);
+		}
+	}
+
+	private Segment _roll(Segment tail) {
+		long sequence = tail == null ? 0 : tail._sequence + 1;
+
+		if (tail != null) {
+			tail._buffer.force();
+		}
+		while (_segments.size() >= _maxSegments) {
+			Segment oldest = _segments.pollFirst();
+			int dropped = oldest.countRecords();
+
+			_logger.warn("TSDB write spool is full. Discarding {} chunks in segment {}.", dropped, oldest._file);
+			_droppedChunks += dropped;
+			oldest.delete();
+		}
+
+		Segment segment = Segment.open(new File(_directory, "spool-" + sequence + ".wal"), sequence, _segmentBytes, true);
+
+		_segments.addLast(segment);
+		return segment;
+	}
+
+	private synchronized void _recover() {
+		File[] files = _directory.listFiles();
+		List<Segment> recovered = new ArrayList<>();
+
+		if (files != null) {
+			for (File file : files) {
+				Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+
+				if (matcher.matches()) {
+					recovered.add(Segment.open(file, Long.parseLong(matcher.group(1)), _segmentBytes, false));
+				}
+			}
+		}
+		recovered.sort((a, b) -> Long.compare(a._sequence, b._sequence));
+		_segments.addAll(recovered);
+		if (!recovered.isEmpty()) {
+			_logger.info("Recovered {} bytes of spooled TSDB writes from {} segments.", getPendingBytes(), recovered.size());
+		}
+	}
+
+	private static void _put(MappedByteBuffer buffer, int offset, byte[] bytes) {
+		ByteBuffer view = buffer.duplicate();
+
+		view.position(offset);
+		view.put(bytes);
+	}
+
+	private static byte[] _get(MappedByteBuffer buffer, int offset, int length) {
+		ByteBuffer view = buffer.duplicate();
+		byte[] bytes = new byte[length];
+
+		view.position(offset);
+		view.get(bytes);
+		return bytes;
+	}
+
+	//~ Inner Interfaces *****************************************************************************************************************************
+
+	/**
+	 * Sends a spooled chunk to TSDB.
+	 */
+	interface ChunkSender {
+
+		/**
+		 * Sends the chunk.
+		 *
+		 * @param   urlPath  The TSDB API path.
+		 * @param   body     The chunk body.
+		 * @param   chunkId  The chunk id.
+		 *
+		 * @throws  Exception  If the chunk was not accepted.
+		 */
+		void send(String urlPath, String body, long chunkId) throws Exception;
+	}
+
+	//~ Inner Classes ********************************************************************************************************************************
+
+	/**
+	 * A memory mapped segment file.
+	 */
+	private static class Segment {
+
+		private final File _file;
+		private final long _sequence;
+		private final RandomAccessFile _raf;
+		private final MappedByteBuffer _buffer;
+
+		private Segment(File file, long sequence, RandomAccessFile raf, MappedByteBuffer buffer) {
+			_file = file;
+			_sequence = sequence;
+			_raf = raf;
+			_buffer = buffer;
+		}
+
+		static Segment open(File file, long sequence, int segmentBytes, boolean create) {
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				int size = create ? segmentBytes : (int) Math.max(raf.length(), HEADER_BYTES);
+
+				raf.setLength(size);
+
+				Segment segment = new Segment(file, sequence, raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+
+				if (create || segment.getWriteOffset() < HEADER_BYTES || segment.getWriteOffset() > size) {
+					segment.setReadOffset(HEADER_BYTES);
+					segment.setWriteOffset(HEADER_BYTES);
+				}
+				return segment;
+			} catch (IOException ex) {
+				throw new SystemException("Failed to open TSDB write spool segment " + file, ex);
+			}
+		}
+
+		int getReadOffset() {
+			return _buffer.getInt(0);
+		}
+
+		void setReadOffset(int offset) {
+			_buffer.putInt(0, offset);
+		}
+
+		int getWriteOffset() {
+			return _buffer.getInt(4);
+		}
+
+		void setWriteOffset(int offset) {
+			_buffer.putInt(4, offset);
+		}
+
+		/* Counts the pending records. A record with a corrupt or torn length ends the count, as the rest of the segment cannot be read. */
+		int countRecords() {
+			int count = 0;
+			int writeOffset = getWriteOffset();
+			int offset = getReadOffset();
+
+			while (offset < writeOffset) {
+				int length = _buffer.getInt(offset);
+
+				if (length < RECORD_OVERHEAD - 4 || (long) offset + 4 + length > writeOffset) {
+					_logger.warn("TSDB write spool segment {} is truncated after {} chunks.", _file, count);
+					break;
+				}
+				offset += 4 + length;
+				count++;
+			}
+			return count;
+		}
+
+		void close() {
+			try {
+				_buffer.force();
+				_raf.close();
+			} catch (IOException ex) {
+				_logger.warn("Failed to close TSDB write spool segment {}.", _file, ex);
+			}
+		}
+
+		void delete() {
+			close();
+			if (!_file.delete()) {
+				_logger.warn("Failed to delete TSDB write spool segment {}.", _file);
+			}
+		}
+	}
+
+	/**
+	 * A chunk read from the spool that is awaiting delivery.
+	 */
+	private static class Chunk {
+
+		private final Segment _segment;
+		private final int _offset;
+		private final int _next;
+		private final long _chunkId;
+		private final String _urlPath;
+		private final String _body;
+
+		Chunk(Segment segment, int offset, int next, long chunkId, String urlPath, String body) {
+			_segment = segment;
+			_offset = offset;
+			_next = next;
+			_chunkId = chunkId;
+			_urlPath = urlPath;
+			_body = body;
+		}
+	}
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
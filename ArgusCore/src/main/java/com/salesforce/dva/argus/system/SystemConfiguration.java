@@ -318,6 +318,9 @@ public final class SystemConfiguration extends Properties {
         
         ENFORCE_DATAPOINTS_LIMIT("system.property.enforce.datapoints.limit", "false"),
 
+        // the fraction of web service requests traced by stage, requests sending the trace header are always traced
+        QUERY_TRACE_SAMPLE_RATE("system.property.query.trace.sample.rate", "0.0"),
+
         PKI_MONITORED_DIRECTORY("pki.monitored.directory", "/etc/pki_service/sfdc/argus-client"),
         PKI_CA_DIRECTORY("pki.ca.directory", "/etc/pki_service/ca");
 
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.salesforce.dva.argus.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the time a request spends in each stage of query evaluation. A trace is attached to the {@link RequestContext} of a sampled or
+ * explicitly traced request, and the evaluation code opens a {@link Span} around each stage through {@link #startSpan(Stage)}. When the current
+ * request is not traced, the shared no-op span is returned, so untraced requests pay only for a thread local lookup.
+ *
+ * <p>Stages may nest, e.g. cache lookups made while expanding a wildcard query are counted under both discovery and cache. Work submitted to other
+ * threads is not traced, since the request context is only visible to the request thread.</p>
+ */
+public class QueryTrace {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The response header carrying the stage breakdown, following the W3C Server Timing format. */
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final AtomicLongArray _nanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray _counts = new AtomicLongArray(Stage.values().length);
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Starts a span for the given stage of the request running on the current thread.
+     *
+     * @param   stage  The stage. Cannot be null.
+     *
+     * @return  The span to close once the stage completes. Will never be null.
+     */
+    public static Span startSpan(Stage stage) {
+        RequestContext context = RequestContextHolder.getRequestContext();
+        QueryTrace trace = context == null ? null : context.getQueryTrace();
+
+        return trace == null ? Span.NOOP : trace.start(stage);
+    }
+
+    /**
+     * Starts a span for the given stage of this trace.
+     *
+     * @param   stage  The stage. Cannot be null.
+     *
+     * @return  The span to close once the stage completes.
+     */
+    public Span start(Stage stage) {
+        return new Span(this, stage, System.nanoTime());
+    }
+
+    /**
+     * Adds the duration of a completed span to its stage.
+     *
+     * @param  stage  The stage.
+     * @param  nanos  The duration in nanoseconds.
+     */
+    public void record(Stage stage, long nanos) {
+        _nanos.addAndGet(stage.ordinal(), nanos);
+        _counts.incrementAndGet(stage.ordinal());
+    }
+
+    /**
+     * Returns the total time spent in a stage.
+     *
+     * @param   stage  The stage.
+     *
+     * @return  The total duration in nanoseconds.
+     */
+    public long getNanos(Stage stage) {
+        return _nanos.get(stage.ordinal());
+    }
+
+    /**
+     * Returns the number of spans recorded for a stage.
+     *
+     * @param   stage  The stage.
+     *
+     * @return  The number of spans.
+     */
+    public long getCount(Stage stage) {
+        return _counts.get(stage.ordinal());
+    }
+
+    /**
+     * Returns the recorded stages as a Server-Timing header value, e.g. <tt>discovery;dur=1.250;desc="2", tsdb;dur=35.000;desc="1"</tt>. The
+     * duration is in milliseconds and the description holds the number of spans. Stages that complete after the response headers are sent are
+     * left out, see {@link Stage#isInServerTiming()}.
+     *
+     * @return  The header value. Will be empty if no span was recorded.
+     */
+    public String toServerTiming() {
+        StringBuilder value = new StringBuilder();
+
+        for (Stage stage : Stage.values()) {
+            long count = getCount(stage);
+
+            if (count > 0 && stage.isInServerTiming()) {
+                if (value.length() > 0) {
+                    value.append(", ");
+                }
+                value.append(stage.getName()).append(";dur=").append(String.format(Locale.ROOT, "%.3f", getNanos(stage) / 1e6));
+                value.append(";desc=\"").append(count).append('"');
+            }
+        }
+        return value.toString();
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The traced stages of query evaluation.
+     */
+    public enum Stage {
+
+        /** Parsing of the metric expressions. */
+        PARSE("parse"),
+        /** Expansion of a query into the matching series by the discovery service. */
+        DISCOVERY("discovery"),
+        /** A lookup in the query or discovery cache. */
+        CACHE("cache"),
+        /** A read of raw series from the TSDB. */
+        TSDB("tsdb"),
+        /** The evaluation of a transform node. */
+        TRANSFORM("transform"),
+        /**
+         * The writing of the response body. The body is written after the response headers, so this stage is not part of the Server-Timing header
+         * and is only reported in the <tt>perf.ws.stage.*</tt> counters.
+         */
+        SERIALIZATION("serialization", false);
+
+        private final String _name;
+        private final boolean _inServerTiming;
+
+        Stage(String name) {
+            this(name, true);
+        }
+
+        Stage(String name, boolean inServerTiming) {
+            _name = name;
+            _inServerTiming = inServerTiming;
+        }
+
+        /**
+         * Returns the name of the stage.
+         *
+         * @return  The name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Indicates whether the stage completes before the response headers are sent and so is reported in the Server-Timing header.
+         *
+         * @return  True if the stage is reported in the Server-Timing header.
+         */
+        public boolean isInServerTiming() {
+            return _inServerTiming;
+        }
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * A timed stage, closed with try-with-resources.
+     */
+    public static final class Span implements AutoCloseable {
+
+        private static final Span NOOP = new Span(null, null, 0);
+
+        private final QueryTrace _trace;
+        private final Stage _stage;
+        private final long _start;
+
+        private Span(QueryTrace trace, Stage stage, long start) {
+            _trace = trace;
+            _stage = stage;
+            _start = start;
+        }
+
+        @Override
+        public void close() {
+            if (_trace != null) {
+                _trace.record(_stage, System.nanoTime() - _start);
+            }
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
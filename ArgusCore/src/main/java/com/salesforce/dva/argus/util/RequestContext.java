@@ -6,6 +6,7 @@ package com.salesforce.dva.argus.util;
 public class RequestContext {
     
     private String userName = "NULLUSER";
+    private QueryTrace queryTrace;
 
     public RequestContext(String userName) {
         this.userName = userName;
@@ -18,4 +19,17 @@ public class RequestContext {
     public void setUserName(String userName) {
         this.userName = userName;
     }
+
+    /**
+     * Returns the trace recording the stage latencies of this request.
+     *
+     * @return  The trace or null if the request is not traced.
+     */
+    public QueryTrace getQueryTrace() {
+        return queryTrace;
+    }
+
+    public void setQueryTrace(QueryTrace queryTrace) {
+        this.queryTrace = queryTrace;
+    }
 }
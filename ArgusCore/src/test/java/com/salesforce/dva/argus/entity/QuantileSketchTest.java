@@ -0,0 +1,157 @@
+package com.salesforce.dva.argus.entity;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testQuantilesAreWithinRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 2048);
+        Random random = new Random(42);
+        double[] values = new double[10000];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 3);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[] { 0, 0.1, 0.5, 0.9, 0.99, 0.999, 1 }) {
+            double expected = values[(int) (q * (values.length - 1))];
+
+            assertEquals(expected, sketch.getQuantile(q), expected * 0.01);
+        }
+        assertEquals(values.length, sketch.getCount());
+    }
+
+    @Test
+    public void testNegativeAndZeroValues() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        sketch.add(-100);
+        sketch.add(0, 2);
+        sketch.add(100);
+        assertEquals(-100, sketch.getQuantile(0), 1);
+        assertEquals(0, sketch.getQuantile(0.5), 0);
+        assertEquals(100, sketch.getQuantile(1), 1);
+    }
+
+    @Test
+    public void testMergeMatchesSingleSketch() {
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+
+        for (int i = 1; i <= 1000; i++) {
+            all.add(i);
+            (i % 2 == 0 ? left : right).add(i);
+        }
+        left.merge(right);
+        assertEquals(all.getCount(), left.getCount());
+        assertEquals(all.toBuckets(), left.toBuckets());
+        for (double q : new double[] { 0.25, 0.5, 0.95 }) {
+            assertEquals(all.getQuantile(q), left.getQuantile(q), 0);
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeRoundTrip() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (int i = -50; i <= 500; i++) {
+            sketch.add(i * 1.5);
+        }
+
+        byte[] bytes = sketch.encode();
+        QuantileSketch decoded = QuantileSketch.decode(bytes);
+
+        assertEquals(sketch.getCount(), decoded.getCount());
+        assertEquals(sketch.toBuckets(), decoded.toBuckets());
+        assertTrue(bytes.length < 4 * sketch.getBinCount());
+        try {
+            QuantileSketch.decode(Arrays.copyOf(bytes, bytes.length - 1));
+            fail("Expected a truncated sketch to be rejected.");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage() != null);
+        }
+    }
+
+    @Test
+    public void testBinsAreBounded() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.add(Math.pow(10, i % 20));
+        }
+        assertTrue(sketch.getBinCount() <= 64);
+        assertEquals(100, sketch.getCount());
+        assertEquals(1e19, sketch.getQuantile(1), 1e19 * 0.01);
+
+        Map<HistogramBucket, Long> buckets = sketch.toBuckets();
+        long total = 0;
+
+        for (Map.Entry<HistogramBucket, Long> bucket : buckets.entrySet()) {
+            assertTrue(bucket.getKey().getLowerBound() < bucket.getKey().getUpperBound());
+            total += bucket.getValue();
+        }
+        assertEquals(100, total);
+    }
+
+    @Test
+    public void testDecodeRejectsOutOfRangeIndexes() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 2);
+
+        sketch.add(1.0);
+        sketch.add(2.0);
+
+        byte[] bytes = sketch.encode();
+        // Moves the first positive bin to the lowest int index, the zig zag encoding of Integer.MIN_VALUE being 0xFFFFFFFF.
+        byte[] corrupt = new byte[bytes.length + 4];
+
+        System.arraycopy(bytes, 0, corrupt, 0, 12);
+        corrupt[12] = (byte) 0xFF;
+        corrupt[13] = (byte) 0xFF;
+        corrupt[14] = (byte) 0xFF;
+        corrupt[15] = (byte) 0xFF;
+        corrupt[16] = 0x0F;
+        System.arraycopy(bytes, 13, corrupt, 17, bytes.length - 13);
+        try {
+            QuantileSketch.decode(corrupt);
+            fail("Expected an out of range bin index to be rejected.");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage() != null);
+        }
+    }
+
+    @Test
+    public void testBucketsAreCollapsedToLimit() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (int i = 1; i <= 1000; i++) {
+            sketch.add(i * 1.5);
+            sketch.add(-i * 1.5);
+        }
+        assertTrue(sketch.getBinCount() > 100);
+
+        Map<HistogramBucket, Long> buckets = sketch.toBuckets(100);
+        long total = 0;
+        float previousUpperBound = Float.NEGATIVE_INFINITY;
+
+        assertTrue(buckets.size() <= 100);
+        for (Map.Entry<HistogramBucket, Long> bucket : buckets.entrySet()) {
+            assertTrue(bucket.getKey().getLowerBound() < bucket.getKey().getUpperBound());
+            assertTrue(bucket.getKey().getLowerBound() >= previousUpperBound);
+            previousUpperBound = bucket.getKey().getUpperBound();
+            total += bucket.getValue();
+        }
+        assertEquals(sketch.getCount(), total);
+        assertEquals(sketch.toBuckets(), sketch.toBuckets(sketch.getBinCount()));
+    }
+}
@@ -229,6 +229,43 @@ public class MonitorServiceTest {
         assertEquals(expectedCounterValue, jmxValue, DOUBLE_COMPARISON_MAX_DELTA);
     }
 
+    @Test(timeout = 5000L)
+    public void testHistogramPublishedToJmx() throws Exception {
+        final MonitorService.Counter counter = MonitorService.Counter.ALERTS_EVALUATION_LATENCY_HISTOGRAM;
+        final DefaultMonitorService _monitorService = (DefaultMonitorService) system.getServiceFactory().getMonitorService();
+        _monitorService.setTSDBService(tsdbMock);
+        Field field = DefaultMonitorService.class.getDeclaredField("TIME_BETWEEN_RECORDINGS");
+
+        final int TIME_BETWEEN_RECORDINGS_MS = 2000;
+        final int RESET_TIME_AFTER_TEST_MS = 3000; // enough time for the histogram to have been published.
+        field.setAccessible(true);
+        field.setLong(null, TIME_BETWEEN_RECORDINGS_MS);
+        _monitorService.startRecordingCounters();
+
+        for (long value = 1; value <= 1000; value++) {
+            _monitorService.recordHistogram(counter, value, Collections.<String, String>emptyMap());
+        }
+
+        // jmx reports the last published interval, which is still empty
+        ObjectName jmxName = new ObjectName("ArgusMetrics:type=Histogram,scope=argus.core,metric=" + counter.getMetric() + ",host=" + HOSTNAME);
+        assertEquals(0L, mbeanServer.getAttribute(jmxName, "Count"));
+
+        // wait for MonitorThread to run
+        Thread.sleep(RESET_TIME_AFTER_TEST_MS);
+
+        assertEquals(1000L, mbeanServer.getAttribute(jmxName, "Count"));
+        assertEquals(1000L, mbeanServer.getAttribute(jmxName, "Max"));
+        assertEquals(500, (Long) mbeanServer.getAttribute(jmxName, "P50"), 500 / 32);
+        assertEquals(990, (Long) mbeanServer.getAttribute(jmxName, "P99"), 990 / 32);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecordHistogramRequiresHistogramCounter() {
+        MonitorService monitorService = system.getServiceFactory().getMonitorService();
+
+        monitorService.recordHistogram(MonitorService.Counter.ALERTS_EVALUATED, 1, Collections.<String, String>emptyMap());
+    }
+
     @Test
     public void testAlertsCreatedOnStartMonitoring() throws Exception {
         MonitorService monitorService = system.getServiceFactory().getMonitorService();
@@ -0,0 +1,106 @@
+package com.salesforce.dva.argus.service.alert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.Alert;
+import com.salesforce.dva.argus.service.AlertService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(org.mockito.junit.MockitoJUnitRunner.class)
+public class AlertDefinitionVersionCacheTest {
+
+    private static final BigInteger ID = BigInteger.valueOf(42);
+
+    @Mock
+    private AlertService alertService;
+    @Mock
+    private ObjectMapper mapper;
+    private AlertDefinitionVersionCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new AlertDefinitionVersionCache(alertService, mapper, false);
+    }
+
+    @Test
+    public void getSerializedAlert_readsDatabaseOnlyOnVersionMiss() throws Exception {
+        Alert v1 = _alert(1000L, false, true);
+
+        when(alertService.findAlertByPrimaryKey(ID)).thenReturn(v1);
+        when(mapper.writeValueAsString(v1)).thenReturn("v1");
+
+        assertEquals("v1", cache.getSerializedAlert(ID, 1000L));
+        assertEquals("v1", cache.getSerializedAlert(ID, 1000L));
+        assertEquals("v1", cache.getSerializedAlert(ID, 500L));
+        verify(alertService, times(1)).findAlertByPrimaryKey(ID);
+
+        Alert v2 = _alert(2000L, false, true);
+
+        when(alertService.findAlertByPrimaryKey(ID)).thenReturn(v2);
+        when(mapper.writeValueAsString(v2)).thenReturn("v2");
+
+        assertEquals("v2", cache.getSerializedAlert(ID, 2000L));
+        assertEquals("v2", cache.getSerializedAlert(ID, 1000L));
+        verify(alertService, times(2)).findAlertByPrimaryKey(ID);
+    }
+
+    @Test
+    public void getSerializedAlert_returnsNullForDeletedAlert() {
+        Alert deleted = _alert(1000L, true, true);
+
+        when(alertService.findAlertByPrimaryKey(ID)).thenReturn(deleted);
+        assertNull(cache.getSerializedAlert(ID, 1000L));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void refresh_appliesModifiedAlertsIncrementally() throws Exception {
+        Alert v2 = _alert(2000L, false, true);
+        Alert other = _alert(BigInteger.TEN, 3000L, false, true);
+
+        when(alertService.findAlertsModifiedAfterDate(any(Date.class))).thenReturn(Arrays.asList(v2, other));
+        when(mapper.writeValueAsString(v2)).thenReturn("v2");
+        when(mapper.writeValueAsString(other)).thenReturn("other");
+
+        cache.refresh();
+        assertEquals(2, cache.size());
+        assertEquals("v2", cache.getSerializedAlert(ID, 2000L));
+        verify(alertService, never()).findAlertByPrimaryKey(any());
+
+        Alert disabled = _alert(3000L, false, false);
+
+        when(alertService.findAlertsModifiedAfterDate(any(Date.class))).thenReturn(Collections.singletonList(disabled));
+        cache.refresh();
+        assertEquals(1, cache.size());
+    }
+
+    private static Alert _alert(long modified, boolean deleted, boolean enabled) {
+        return _alert(ID, modified, deleted, enabled);
+    }
+
+    private static Alert _alert(BigInteger id, long modified, boolean deleted, boolean enabled) {
+        Alert alert = mock(Alert.class);
+
+        when(alert.getId()).thenReturn(id);
+        when(alert.getModifiedDate()).thenReturn(new Date(modified));
+        when(alert.isDeleted()).thenReturn(deleted);
+        when(alert.isEnabled()).thenReturn(enabled);
+        return alert;
+    }
+}
@@ -0,0 +1,139 @@
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.metric.MetricQueryResult;
+import com.salesforce.dva.argus.service.metric.transform.MissingDataException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(org.mockito.junit.MockitoJUnitRunner.class)
+public class AlertQueryCoalescerTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @Mock
+    private MetricService metricService;
+
+    @Test
+    public void testIdenticalExpressionsInSameMinuteAreFetchedOnce() {
+        when(metricService.getMetrics(anyString(), anyLong())).thenReturn(_result());
+
+        AlertQueryCoalescer coalescer = new AlertQueryCoalescer(metricService, 100);
+        AtomicBoolean coalesced = new AtomicBoolean();
+
+        coalescer.getMetrics("-1h:scope:metric:avg", 10 * MINUTE + 5, coalesced);
+        assertFalse(coalesced.get());
+        coalescer.getMetrics(" -1h : scope:metric:avg ", 10 * MINUTE + 59000, coalesced);
+        assertTrue(coalesced.get());
+        verify(metricService, times(1)).getMetrics(anyString(), eq(10 * MINUTE + 5));
+
+        coalescer.getMetrics("-1h:scope:metric:avg", 11 * MINUTE, coalesced);
+        assertFalse(coalesced.get());
+        verify(metricService, times(1)).getMetrics(anyString(), eq(11 * MINUTE));
+        verify(metricService, times(2)).getMetrics(anyString(), anyLong());
+    }
+
+    @Test
+    public void testConcurrentCallersShareInFlightEvaluation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(metricService.getMetrics(anyString(), anyLong())).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return _result();
+        });
+
+        AlertQueryCoalescer coalescer = new AlertQueryCoalescer(metricService, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<MetricQueryResult>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit((Callable<MetricQueryResult>) () -> coalescer.getMetrics("-1h:scope:metric:avg", MINUTE)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<MetricQueryResult> future : futures) {
+                assertEquals(1, future.get(10, TimeUnit.SECONDS).getMetricsList().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(metricService, times(1)).getMetrics(anyString(), anyLong());
+    }
+
+    @Test
+    public void testCallersReceiveIndependentCopies() {
+        when(metricService.getMetrics(anyString(), anyLong())).thenReturn(_result());
+
+        AlertQueryCoalescer coalescer = new AlertQueryCoalescer(metricService, 100);
+        MetricQueryResult first = coalescer.getMetrics("-1h:scope:metric:avg", MINUTE);
+
+        first.getMetricsList().get(0).clearDatapoints();
+        first.getMetricsList().clear();
+
+        MetricQueryResult second = coalescer.getMetrics("-1h:scope:metric:avg", MINUTE);
+
+        assertNotSame(first, second);
+        assertEquals(1, second.getMetricsList().size());
+        assertEquals(1, second.getMetricsList().get(0).getDatapoints().size());
+        assertEquals(Integer.valueOf(3), second.getNumTSDBResults());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        when(metricService.getMetrics(anyString(), anyLong())).thenThrow(new MissingDataException("no data")).thenReturn(_result());
+
+        AlertQueryCoalescer coalescer = new AlertQueryCoalescer(metricService, 100);
+
+        try {
+            coalescer.getMetrics("-1h:scope:metric:avg", MINUTE);
+            fail("Expected the original exception to propagate.");
+        } catch (MissingDataException ex) {
+            assertEquals("no data", ex.getMessage());
+        }
+        assertEquals(1, coalescer.getMetrics("-1h:scope:metric:avg", MINUTE).getMetricsList().size());
+        verify(metricService, times(2)).getMetrics(anyString(), anyLong());
+    }
+
+    @Test
+    public void testNormalizePreservesWhitespaceInConstants() {
+        assertEquals("SUM(-1h:a:b:avg,#constant with space#)", AlertQueryCoalescer.normalize("SUM( -1h:a:b:avg,\n #constant with space# )"));
+    }
+
+    private static MetricQueryResult _result() {
+        Metric metric = new Metric("scope", "metric");
+
+        metric.setDatapoints(Collections.singletonMap(1000L, 1.0));
+
+        MetricQueryResult result = new MetricQueryResult();
+
+        result.setMetricsList(new ArrayList<>(Collections.singletonList(metric)));
+        result.setNumTSDBResults(3);
+        return result;
+    }
+}
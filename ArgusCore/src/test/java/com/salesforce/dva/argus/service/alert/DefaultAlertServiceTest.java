@@ -9,6 +9,7 @@ import static com.salesforce.dva.argus.service.metric.ElasticSearchConsumerOffse
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -41,6 +42,7 @@ import com.salesforce.dva.argus.service.alert.retriever.ImageDataRetrievalContex
 import com.salesforce.dva.argus.service.alert.retriever.ImageDataRetriever;
 import com.salesforce.dva.argus.service.alert.testing.AlertTestResults;
 import com.salesforce.dva.argus.service.metric.MetricQueryResult;
+import com.salesforce.dva.argus.util.MonitoringUtils;
 
 import com.salesforce.dva.argus.service.metric.transform.TransformFactory;
 import com.salesforce.dva.argus.service.monitor.DataLagService;
@@ -572,6 +574,31 @@ public class DefaultAlertServiceTest {
         assertEquals(1, _getActiveSize(notification.getActiveStatusMap()));
     }
 
+    @Test
+    public void testCoalescedQueryPerfCountersAreAttributedOnce() throws Exception {
+        UserService userService = system.getServiceFactory().getUserService();
+        SystemConfiguration configuration = system.getConfiguration();
+        Object coalescer = Whitebox.getInternalState(DefaultAlertService.class, "_queryCoalescer");
+        Alert alert1 = new Alert(userService.findAdminUser(), userService.findAdminUser(), "testAlert1", "-1h:scope:metric:avg", "* * * * *");
+        Alert alert2 = new Alert(userService.findAdminUser(), userService.findAdminUser(), "testAlert2", "-1h:scope:metric:avg", "* * * * *");
+        long evaluationTime = System.currentTimeMillis();
+
+        configuration.setProperty(DefaultAlertService.Property.ALERT_QUERY_COALESCING_ENABLED.getName(), "true");
+        alertService = new DefaultAlertService(configuration, _mqServiceMock, _metricServiceMock, _auditServiceMock, _tsdbServiceMock,
+                _mailServiceMock, _historyServiceMock, _monitorServiceMock, _imageDataRetrieverMock, system.getNotifierFactory(), _emProviderMock);
+        when(_metricServiceMock.getMetrics(anyString(), anyLong())).thenReturn(new MetricQueryResult());
+        Whitebox.setInternalState(DefaultAlertService.class, "_queryCoalescer", new AlertQueryCoalescer(_metricServiceMock, 10));
+        try {
+            Whitebox.invokeMethod(alertService, "_getAlertMetrics", alert1, evaluationTime);
+            Whitebox.invokeMethod(alertService, "_getAlertMetrics", alert2, evaluationTime);
+        } finally {
+            Whitebox.setInternalState(DefaultAlertService.class, "_queryCoalescer", coalescer);
+        }
+        verify(_metricServiceMock, times(1)).getMetrics(anyString(), anyLong());
+        verify(_monitorServiceMock, times(1)).modifyCustomCounter(eq(MonitoringUtils.ALERT_QUERY_COUNT), eq(1.0), any());
+        verify(_monitorServiceMock, times(1)).modifyCustomCounter(eq("alerts.query.coalesced"), eq(1.0), any());
+    }
+
     private int _getActiveSize(Map<String, Boolean> activeStatusMap) {
         int size = 0;
         for(Map.Entry<String, Boolean> entry : activeStatusMap.entrySet()) {
@@ -636,6 +663,68 @@ public class DefaultAlertServiceTest {
         verify(_imageDataRetrieverMock, never()).getImageURL(evaluatedMetricSnapshotDetails);
     }
 
+    @Test
+    public void testAsyncNotificationOutcomeIsPersistedInHistory() {
+        UserService userService = system.getServiceFactory().getUserService();
+        SystemConfiguration configuration = system.getConfiguration();
+        Alert alert = generateAlert("testAlert", userService.findAdminUser(), "-1h:"+METRIC_NAME);
+        alert.setEnabled(true);
+        _setAlertId(alert, "1");
+
+        Trigger trigger = getTrigger(alert, TriggerType.GREATER_THAN, "testTrigger", "2.0", "1");
+        alert.setTriggers(ImmutableList.of(trigger));
+
+        Notification notification = getNotification("EmailNotifier",
+                EmailNotifier.class.getName(), alert, ImmutableList.of("test@salesforce.com"));
+        alert.addNotification(notification);
+
+        Metric metric = createMetric();
+        History history = getHistory();
+
+        configuration.setProperty(DefaultAlertService.Property.NOTIFICATION_DISPATCH_ASYNC_ENABLED.getName(), "true");
+        alertService = new DefaultAlertService(configuration, _mqServiceMock, _metricServiceMock, _auditServiceMock, _tsdbServiceMock,
+                _mailServiceMock, _historyServiceMock, _monitorServiceMock, _imageDataRetrieverMock, system.getNotifierFactory(), _emProviderMock);
+        try {
+            alertService.sendNotification(trigger, metric, history, notification, alert, 2L, 500L, "triggered");
+            verify(_historyServiceMock, timeout(10000)).createHistory(eq(alert), contains("Delivery of notification `EmailNotifier` to EMAIL completed"),
+                    any(History.JobStatus.class), anyLong());
+            assertTrue(history.getMessage().contains("Queued notification `EmailNotifier` for delivery to EMAIL."));
+        } finally {
+            _disposeNotificationDispatcher();
+        }
+    }
+
+    @Test
+    public void testDisposeDiscardsSharedState() {
+        NotificationsCache notificationsCache = Whitebox.getInternalState(DefaultAlertService.class, "_notificationsCache");
+        NotificationDispatcher notificationDispatcher = mock(NotificationDispatcher.class);
+        AlertDefinitionVersionCache definitionVersionCache = mock(AlertDefinitionVersionCache.class);
+
+        Whitebox.setInternalState(DefaultAlertService.class, "_notificationsCache", mock(NotificationsCache.class));
+        Whitebox.setInternalState(DefaultAlertService.class, "_notificationDispatcher", notificationDispatcher);
+        Whitebox.setInternalState(DefaultAlertService.class, "_definitionVersionCache", definitionVersionCache);
+        Whitebox.setInternalState(DefaultAlertService.class, "_queryCoalescer", new AlertQueryCoalescer(_metricServiceMock, 10));
+        try {
+            alertService.dispose();
+        } finally {
+            Whitebox.setInternalState(DefaultAlertService.class, "_notificationsCache", notificationsCache);
+        }
+        verify(notificationDispatcher).dispose();
+        verify(definitionVersionCache).dispose();
+        assertNull(Whitebox.getInternalState(DefaultAlertService.class, "_notificationDispatcher"));
+        assertNull(Whitebox.getInternalState(DefaultAlertService.class, "_definitionVersionCache"));
+        assertNull(Whitebox.getInternalState(DefaultAlertService.class, "_queryCoalescer"));
+    }
+
+    private static void _disposeNotificationDispatcher() {
+        NotificationDispatcher notificationDispatcher = Whitebox.getInternalState(DefaultAlertService.class, "_notificationDispatcher");
+
+        if (notificationDispatcher != null) {
+            notificationDispatcher.dispose();
+            Whitebox.setInternalState(DefaultAlertService.class, "_notificationDispatcher", (Object) null);
+        }
+    }
+
     @Test
     public void testClearNotificationWhenImageSendingIsEnabled() {
         UserService userService = system.getServiceFactory().getUserService();
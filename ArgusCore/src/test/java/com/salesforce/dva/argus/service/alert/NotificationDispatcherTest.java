@@ -0,0 +1,159 @@
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.service.MonitorService;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+@RunWith(org.mockito.junit.MockitoJUnitRunner.class)
+public class NotificationDispatcherTest {
+
+    @Mock
+    private MonitorService monitorService;
+    private NotificationDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.dispose();
+        }
+    }
+
+    @Test
+    public void dispatch_retriesFailedDeliveryOffCallerThread() throws Exception {
+        dispatcher = new NotificationDispatcher(monitorService, 10, 1, 0, 3, 1, 10, 1000);
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<int[]> result = new CompletableFuture<>();
+        Thread caller = Thread.currentThread();
+
+        assertTrue(dispatcher.dispatch("PAGERDUTY", () -> {
+            assertFalse(Thread.currentThread() == caller);
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("endpoint unavailable");
+            }
+            return true;
+        }, (delivered, attempts, latency) -> result.complete(new int[] { delivered ? 1 : 0, attempts })));
+
+        int[] outcome = result.get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, outcome[0]);
+        assertEquals(3, outcome[1]);
+    }
+
+    @Test
+    public void dispatch_reportsFailureAfterRetriesExhausted() throws Exception {
+        dispatcher = new NotificationDispatcher(monitorService, 10, 1, 0, 2, 1, 10, 1000);
+
+        CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        dispatcher.dispatch("GOC", () -> false, (delivered, attempts, latency) -> result.complete(new int[] { delivered ? 1 : 0, attempts }));
+
+        int[] outcome = result.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, outcome[0]);
+        assertEquals(3, outcome[1]);
+    }
+
+    @Test
+    public void dispatch_dropsWhenQueueIsFull() throws Exception {
+        dispatcher = new NotificationDispatcher(monitorService, 1, 1, 0, 0, 1, 10, 1000);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> dropped = new CompletableFuture<>();
+
+        dispatcher.dispatch("EMAIL", () -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return true;
+        }, (delivered, attempts, latency) -> { });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch("EMAIL", () -> true, (delivered, attempts, latency) -> { }));
+        assertEquals(1, dispatcher.getQueueDepth("EMAIL"));
+        assertFalse(dispatcher.dispatch("EMAIL", () -> true, (delivered, attempts, latency) -> dropped.complete(delivered)));
+        assertFalse(dropped.get(1, TimeUnit.SECONDS));
+        verify(monitorService).modifyCustomCounter(eq(NotificationDispatcher.DROPPED_COUNTER), eq(1.0), anyMap());
+        release.countDown();
+    }
+
+    @Test
+    public void dispatch_openCircuitHoldsBackDeliveries() throws Exception {
+        dispatcher = new NotificationDispatcher(monitorService, 10, 1, 0, 0, 1, 1, 60000);
+
+        CompletableFuture<Boolean> first = new CompletableFuture<>();
+        CompletableFuture<int[]> second = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        dispatcher.dispatch("GUS", () -> {
+            calls.incrementAndGet();
+            return false;
+        }, (delivered, attempts, latency) -> first.complete(delivered));
+        assertFalse(first.get(10, TimeUnit.SECONDS));
+        dispatcher.dispatch("GUS", () -> {
+            calls.incrementAndGet();
+            return true;
+        }, (delivered, attempts, latency) -> second.complete(new int[] { delivered ? 1 : 0, attempts }));
+
+        int[] outcome = second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, outcome[0]);
+        assertEquals(0, outcome[1]);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void dispatch_doesNotRetryDeliveriesThatRetryOnTheirOwn() throws Exception {
+        dispatcher = new NotificationDispatcher(monitorService, 10, 1, 0, 3, 1, 10, 1000);
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        dispatcher.dispatch("PAGERDUTY", 0, () -> {
+            calls.incrementAndGet();
+            return false;
+        }, (delivered, attempts, latency) -> result.complete(new int[] { delivered ? 1 : 0, attempts }));
+
+        int[] outcome = result.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, outcome[0]);
+        assertEquals(1, outcome[1]);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void dispose_reportsPendingDeliveries() throws Exception {
+        dispatcher = new NotificationDispatcher(monitorService, 10, 1, 0, 3, 60000, 10, 1000);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> retrying = new CompletableFuture<>();
+        CompletableFuture<Boolean> queued = new CompletableFuture<>();
+
+        dispatcher.dispatch("EMAIL", () -> false, (delivered, attempts, latency) -> retrying.complete(delivered));
+        dispatcher.dispatch("EMAIL", () -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return true;
+        }, (delivered, attempts, latency) -> { });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        dispatcher.dispatch("EMAIL", () -> true, (delivered, attempts, latency) -> queued.complete(delivered));
+        dispatcher.dispose();
+        assertFalse(retrying.get(1, TimeUnit.SECONDS));
+        assertFalse(queued.get(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+}
@@ -45,8 +45,12 @@ import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.schema.ElasticSearchUtils;
 import com.salesforce.dva.argus.service.tsdb.AnnotationQuery;
 import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestClient;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -56,7 +60,6 @@ import org.mockito.ArgumentCaptor;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
-import org.powermock.reflect.Whitebox;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -67,6 +70,7 @@ import java.util.Map;
 import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.eq;
@@ -162,8 +166,12 @@ public class ElasticSearchAnnotationServiceTest {
             "      ]",
             "    }",
             "  },",
-            "  \"from\": 0,",
-            "  \"size\": 10000",
+            "  \"size\": 10000,",
+            "  \"sort\": [",
+            "    {",
+            "      \"ts\": \"asc\"",
+            "    }",
+            "  ]",
             "}");
 
     private static SystemConfiguration systemConfig;
@@ -273,7 +281,7 @@ public class ElasticSearchAnnotationServiceTest {
         AnnotationQuery annotationQuery = new AnnotationQuery("scope1", "metric1", null, "unittest", 1557809359073L, 1557809599073L);
         List<AnnotationQuery> queries = new ArrayList<>();
         queries.add(annotationQuery);
-        ElasticSearchAnnotationService spyService = _initializeSpyService(esAnnotationService, getReply, false);
+        ElasticSearchAnnotationService spyService = _initializeMultiSearchService(esAnnotationService, _multiSearchReply(getReply));
 
         List<Annotation> annotations = spyService.getAnnotations(queries);
         Annotation expectedAnnotation = new Annotation("unittest", "16ab4b56311", "unittest", "scope1", "metric1", 1557809559073L);
@@ -282,28 +290,94 @@ public class ElasticSearchAnnotationServiceTest {
         verify(restClient, times(1)).performRequest(requestCaptor.capture());
         Request capturedRequest = requestCaptor.getValue();
 
-        String queryJson = convertToPrettyJson(EntityUtils.toString(capturedRequest.getEntity()));
-        assertEquals(annotationQueryMustTermRange, queryJson);
-        String expectedURL = "/argus-annotation-*/_search";
-        assertEquals(expectedURL, capturedRequest.getEndpoint());
+        String[] lines = EntityUtils.toString(capturedRequest.getEntity()).split("\n");
+        assertEquals(2, lines.length);
+        JsonNode header = mapper.readTree(lines[0]);
+        List<String> expectedIndices = ElasticSearchAnnotationService.getIndexNames(1557809359073L, 1557809599073L);
+        assertEquals(expectedIndices.size(), header.get("index").size());
+        for (int i = 0; i < expectedIndices.size(); i++) {
+            assertEquals(expectedIndices.get(i), header.get("index").get(i).asText());
+        }
+        assertTrue(header.get("ignore_unavailable").asBoolean());
+        assertEquals(annotationQueryMustTermRange, convertToPrettyJson(lines[1]));
+        assertEquals("/_msearch", capturedRequest.getEndpoint());
+    }
+
+    @Test
+    public void testGetAnnotationsCombinesQueries() throws IOException {
+        List<AnnotationQuery> queries = Arrays.asList(
+                new AnnotationQuery("scope1", "metric1", null, "unittest", 1557809359073L, 1557809599073L),
+                new AnnotationQuery("scope2", "metric2", null, "unittest", 1557809359073L, 1557809599073L));
+        ElasticSearchAnnotationService spyService = _initializeMultiSearchService(esAnnotationService,
+                _multiSearchReply(getReply, getReply.replace("metric1", "metric2").replace("scope1", "scope2")));
+
+        List<Annotation> annotations = spyService.getAnnotations(queries);
+
+        assertEquals(2, annotations.size());
+        assertEquals("metric1", annotations.get(0).getMetric());
+        assertEquals("metric2", annotations.get(1).getMetric());
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(restClient, times(1)).performRequest(requestCaptor.capture());
+        assertEquals(4, EntityUtils.toString(requestCaptor.getValue().getEntity()).split("\n").length);
+    }
+
+    @Test
+    public void testGetAnnotationsPagesWithSearchAfter() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ElasticSearchAnnotationService.Property.ANNOTATION_ES_QUERY_PAGE_SIZE.getName(), "1");
+        ElasticSearchAnnotationService service = new ElasticSearchAnnotationService(new SystemConfiguration(properties), mock(MonitorService.class),
+                mock(ElasticSearchUtils.class));
+        AnnotationQuery annotationQuery = new AnnotationQuery("scope1", "metric1", null, "unittest", 1557809359073L, 1557809599073L);
+        String firstPage = getReply.replace("\"_score\": 0.0,", "\"_score\": 0.0, \"sort\": [1557809559073],");
+        String secondPage = "{\"hits\": {\"total\": 1, \"hits\": []}}";
+        ElasticSearchAnnotationService spyService = _initializeMultiSearchService(service, _multiSearchReply(firstPage),
+                _multiSearchReply(secondPage));
+
+        List<Annotation> annotations = spyService.getAnnotations(Arrays.asList(annotationQuery));
+
+        assertEquals(1, annotations.size());
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(restClient, times(2)).performRequest(requestCaptor.capture());
+        JsonNode secondQuery = mapper.readTree(EntityUtils.toString(requestCaptor.getAllValues().get(1).getEntity()).split("\n")[1]);
+        assertEquals(1557809559073L, secondQuery.get("search_after").get(0).asLong());
     }
 
     @Test (expected = RuntimeException.class)
-    public void testGetAnnotationsExceedingLimit(){
+    public void testGetAnnotationsExceedingLimit() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ElasticSearchAnnotationService.Property.ANNOTATION_ES_QUERY_PAGE_SIZE.getName(), "1");
+        properties.setProperty(ElasticSearchAnnotationService.Property.ANNOTATION_ES_QUERY_MAX_RESULTS.getName(), "1");
+        ElasticSearchAnnotationService service = new ElasticSearchAnnotationService(new SystemConfiguration(properties), mock(MonitorService.class),
+                mock(ElasticSearchUtils.class));
         AnnotationQuery annotationQuery = new AnnotationQuery("scope1", "metric1", null, "unittest", 1557809359073L, 1557809599073L);
         List<AnnotationQuery> queries = new ArrayList<>();
         queries.add(annotationQuery);
 
-        ElasticSearchAnnotationService spyService = null;
-        try {
-            spyService = _initializeSpyService(esAnnotationService, getReply, false);
-        } catch (IOException e) {
-            fail();
-        }
-        Whitebox.setInternalState(spyService, "ANNOTATION_INDEX_MAX_RESULT_WINDOW", 1);
+        ElasticSearchAnnotationService spyService = _initializeMultiSearchService(service, _multiSearchReply(getReply));
         spyService.getAnnotations(queries);
     }
 
+    @Test (expected = SystemException.class)
+    public void testGetAnnotationsFailedSearch() throws IOException {
+        AnnotationQuery annotationQuery = new AnnotationQuery("scope1", "metric1", null, "unittest", 1557809359073L, 1557809599073L);
+        ElasticSearchAnnotationService spyService = _initializeMultiSearchService(esAnnotationService,
+                _multiSearchReply("{\"error\": {\"type\": \"search_phase_execution_exception\"}, \"status\": 400}"));
+
+        spyService.getAnnotations(Arrays.asList(annotationQuery));
+    }
+
+    @Test
+    public void testGetIndexNames() {
+        long may14 = 1557809559073L;
+        List<String> indexNames = ElasticSearchAnnotationService.getIndexNames(may14 - 86400000L, may14);
+
+        assertEquals(Arrays.asList("argus-annotation-2019-05"), indexNames);
+        indexNames = ElasticSearchAnnotationService.getIndexNames(may14 - 60 * 86400000L, may14);
+        assertEquals(Arrays.asList("argus-annotation-2019-03", "argus-annotation-2019-04", "argus-annotation-2019-05"), indexNames);
+        indexNames = ElasticSearchAnnotationService.getIndexNames(0, may14);
+        assertEquals(Arrays.asList("argus-annotation-*"), indexNames);
+    }
+
     @Test
     public void testHashedSearchIdentifierAnnotationAndAnnotationQueryMatch(){
         Map<String, String> annotationQueryTags = new HashMap<>();
@@ -342,4 +416,22 @@ public class ElasticSearchAnnotationServiceTest {
 
         return spyService;
     }
-}
\ No newline at end of file
+
+    private String _multiSearchReply(String... responses) {
+        return "{\"took\": 10, \"responses\": [" + String.join(",", responses) + "]}";
+    }
+
+    private ElasticSearchAnnotationService _initializeMultiSearchService(ElasticSearchAnnotationService service, String... replies)
+            throws IOException {
+        restClient = mock(RestClient.class);
+        service.setESRestClient(restClient);
+
+        Response[] responses = new Response[replies.length];
+        for (int i = 0; i < replies.length; i++) {
+            responses[i] = mock(Response.class);
+            when(responses[i].getEntity()).thenReturn(new StringEntity(replies[i], ContentType.APPLICATION_JSON));
+        }
+        when(restClient.performRequest(any(Request.class))).thenReturn(responses[0], Arrays.copyOfRange(responses, 1, responses.length));
+        return spy(service);
+    }
+}
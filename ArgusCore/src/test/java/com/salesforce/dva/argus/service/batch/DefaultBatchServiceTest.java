@@ -0,0 +1,209 @@
+package com.salesforce.dva.argus.service.batch;
+
+import com.google.inject.Provider;
+import com.salesforce.dva.argus.TestUtils;
+import com.salesforce.dva.argus.entity.AsyncBatchedMetricQuery;
+import com.salesforce.dva.argus.entity.BatchMetricQuery;
+import com.salesforce.dva.argus.entity.BatchMetricQuery.Status;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.CacheService;
+import com.salesforce.dva.argus.service.DiscoveryService;
+import com.salesforce.dva.argus.service.MQService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.metric.MetricReader;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.system.SystemException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultBatchServiceTest {
+
+    private Map<String, String> _cache;
+    private Map<String, Set<String>> _sets;
+    private Deque<AsyncBatchedMetricQuery> _queue;
+    private CacheService _cacheService;
+    private TSDBService _tsdbService;
+    private DefaultBatchService _batchService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        _cache = new ConcurrentHashMap<>();
+        _sets = new ConcurrentHashMap<>();
+        _queue = new LinkedList<>();
+        _cacheService = mock(CacheService.class);
+        when(_cacheService.get(anyString())).thenAnswer(invocation -> _cache.get(invocation.<String>getArgument(0)));
+        when(_cacheService.get(anySet())).thenAnswer(invocation -> {
+            Map<String, String> entries = new HashMap<>();
+
+            for (String key : invocation.<Set<String>>getArgument(0)) {
+                entries.put(key, _cache.get(key));
+            }
+            return entries;
+        });
+        doAnswer(invocation -> _cache.put(invocation.getArgument(0), invocation.getArgument(1))).when(_cacheService)
+            .put(anyString(), any(), anyInt());
+        doAnswer(invocation -> {
+            _cache.putAll(invocation.<Map<String, String>>getArgument(0));
+            return null;
+        }).when(_cacheService).put(any(Map.class), anyInt());
+        doAnswer(invocation -> {
+            _cache.keySet().removeAll(invocation.<Set<String>>getArgument(0));
+            _sets.keySet().removeAll(invocation.<Set<String>>getArgument(0));
+            return null;
+        }).when(_cacheService).delete(anySet());
+        when(_cacheService.addToSet(anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            Set<String> members = _sets.computeIfAbsent(invocation.getArgument(0), key -> ConcurrentHashMap.newKeySet());
+
+            members.add(invocation.getArgument(1));
+            return (long) members.size();
+        });
+        when(_cacheService.getSetSizes(anySet())).thenAnswer(invocation -> {
+            Map<String, Long> sizes = new HashMap<>();
+
+            for (String key : invocation.<Set<String>>getArgument(0)) {
+                sizes.put(key, (long) _sets.getOrDefault(key, Collections.emptySet()).size());
+            }
+            return sizes;
+        });
+
+        MQService mqService = mock(MQService.class);
+
+        doAnswer(invocation -> _queue.addAll(invocation.getArgument(1))).when(mqService).enqueue(anyString(), any(List.class));
+        when(mqService.dequeue(anyString(), eq(AsyncBatchedMetricQuery.class), anyInt())).thenAnswer(invocation -> _queue.poll());
+        _tsdbService = mock(TSDBService.class);
+
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(
+            invocation -> Collections.singletonList(invocation.getArgument(0)));
+
+        Provider<MetricReader<Metric>> provider = () -> new MetricReader<>(_tsdbService, discoveryService, null);
+
+        _batchService = new DefaultBatchService(TestUtils.getConfiguration(), _cacheService, mqService, provider);
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+        when(_tsdbService.getMetrics(anyList())).thenAnswer(invocation -> _getMetrics(invocation.getArgument(0)));
+
+        BatchMetricQuery batch = new BatchMetricQuery(Arrays.asList("-1h:scope:a:avg", "-1h:scope:b:avg", "-1h:scope:c:avg"), 0, 60, "owner");
+
+        _batchService.enqueueBatch(batch);
+        assertEquals(Status.QUEUED, _batchService.findBatchById(batch.getBatchId()).getStatus());
+        assertEquals(String.valueOf(Status.QUEUED.toInt()), _batchService.findBatchesByOwnerName("owner").get(batch.getBatchId()));
+        _batchService.executeNextQuery(0);
+        assertEquals(Status.PROCESSING, _batchService.findBatchById(batch.getBatchId()).getStatus());
+        assertEquals(String.valueOf(Status.PROCESSING.toInt()), _batchService.findBatchesByOwnerName("owner").get(batch.getBatchId()));
+        verify(_cacheService, never()).expire(anySet(), eq(60));
+        _batchService.executeNextQuery(0);
+        _batchService.executeNextQuery(0);
+        assertNull(_batchService.executeNextQuery(0));
+
+        BatchMetricQuery result = _batchService.findBatchById(batch.getBatchId());
+
+        assertEquals(Status.DONE, result.getStatus());
+        assertEquals(3, result.getQueries().size());
+        for (AsyncBatchedMetricQuery query : result.getQueries()) {
+            assertEquals(Status.DONE, query.getStatus());
+            assertEquals("scope", query.getResult().getScope());
+        }
+        assertEquals(String.valueOf(Status.DONE.toInt()), _batchService.findBatchesByOwnerName("owner").get(batch.getBatchId()));
+        verify(_cacheService).expire(anySet(), eq(60));
+    }
+
+    @Test
+    public void testExecuteBatchWithError() throws Exception {
+        when(_tsdbService.getMetrics(anyList())).thenAnswer(invocation -> _getMetrics(invocation.getArgument(0)));
+
+        BatchMetricQuery batch = new BatchMetricQuery(Arrays.asList("-1h:scope:a:avg", "-1h:scope:failing:avg"), 0, 60, "owner");
+
+        _batchService.enqueueBatch(batch);
+        _batchService.executeNextQuery(0);
+        try {
+            _batchService.executeNextQuery(0);
+            fail("Expected the failed query to be reported.");
+        } catch (SystemException ex) {
+            assertTrue(ex.getMessage().startsWith("Failed to parse"));
+        }
+
+        BatchMetricQuery result = _batchService.findBatchById(batch.getBatchId());
+
+        assertEquals(Status.ERROR, result.getStatus());
+        assertEquals(Status.ERROR, result.getQueries().get(1).getStatus());
+        assertEquals(String.valueOf(Status.ERROR.toInt()), _batchService.findBatchesByOwnerName("owner").get(batch.getBatchId()));
+    }
+
+    @Test
+    public void testRedeliveredQueryIsCountedOnce() throws Exception {
+        when(_tsdbService.getMetrics(anyList())).thenAnswer(invocation -> _getMetrics(invocation.getArgument(0)));
+
+        BatchMetricQuery batch = new BatchMetricQuery(Arrays.asList("-1h:scope:a:avg", "-1h:scope:b:avg", "-1h:scope:c:avg"), 0, 60, "owner");
+
+        _batchService.enqueueBatch(batch);
+
+        AsyncBatchedMetricQuery first = _queue.peek();
+
+        _batchService.executeNextQuery(0);
+        // The first query is delivered again, e.g. after its processor timed out acknowledging it.
+        _queue.addFirst(first);
+        _batchService.executeNextQuery(0);
+        _batchService.executeNextQuery(0);
+        assertEquals(Status.PROCESSING, _batchService.findBatchById(batch.getBatchId()).getStatus());
+        assertEquals(String.valueOf(Status.PROCESSING.toInt()), _batchService.findBatchesByOwnerName("owner").get(batch.getBatchId()));
+        verify(_cacheService, never()).expire(anySet(), anyInt());
+        _batchService.executeNextQuery(0);
+        assertEquals(Status.DONE, _batchService.findBatchById(batch.getBatchId()).getStatus());
+        verify(_cacheService).expire(anySet(), eq(60));
+    }
+
+    @Test
+    public void testDeleteBatch() {
+        BatchMetricQuery batch = new BatchMetricQuery(Arrays.asList("-1h:scope:a:avg", "-1h:scope:b:avg"), 0, 60, "owner");
+
+        _batchService.enqueueBatch(batch);
+        _batchService.deleteBatch(batch.getBatchId());
+        assertNull(_batchService.findBatchById(batch.getBatchId()));
+        for (String key : _cache.keySet()) {
+            assertTrue(key, !key.startsWith("batch/" + batch.getBatchId()));
+        }
+    }
+
+    private static Map<MetricQuery, List<Metric>> _getMetrics(List<MetricQuery> queries) {
+        Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+        for (MetricQuery query : queries) {
+            if ("failing".equals(query.getMetric())) {
+                throw new IllegalStateException("Failed to read " + query.getMetric());
+            }
+            result.put(query, Collections.singletonList(new Metric(query.getScope(), query.getMetric())));
+        }
+        return result;
+    }
+}
@@ -57,6 +57,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.any;
 
 
@@ -342,6 +343,44 @@ public class RedisCacheServiceTest {
         verify(mockJedisClient, times(1)).getClusterNodes();
     }
 
+    @Test
+    public void testAddToSet() {
+        JedisCluster mockJedisClient = mock(JedisCluster.class);
+        CacheRedisClient mockedCachedRedisClient = mock(CacheRedisClient.class);
+        when(mockedCachedRedisClient.getJedisClusterClient()).thenReturn(mockJedisClient);
+        when(mockJedisClient.eval(anyString(), eq(1), eq("set"), eq("2"), eq("10"))).thenReturn(3L);
+
+        RedisCacheService redisCacheService = new RedisCacheService(config, mockedCachedRedisClient);
 
+        assertEquals(3L, redisCacheService.addToSet("set", "2", 10));
+        verify(mockJedisClient, never()).sadd(anyString(), any(String[].class));
+    }
+
+    @Test(expected = SystemException.class)
+    public void testAddToSetFailureIsPropagated() {
+        JedisCluster mockJedisClient = mock(JedisCluster.class);
+        CacheRedisClient mockedCachedRedisClient = mock(CacheRedisClient.class);
+        when(mockedCachedRedisClient.getJedisClusterClient()).thenReturn(mockJedisClient);
+        when(mockJedisClient.eval(anyString(), anyInt(), any(String[].class))).thenThrow(new RuntimeException("Cluster is down"));
 
+        RedisCacheService redisCacheService = new RedisCacheService(config, mockedCachedRedisClient);
+
+        redisCacheService.addToSet("set", "1", 10);
+    }
+
+    @Test
+    public void testGetSetSizes() {
+        JedisCluster mockJedisClient = mock(JedisCluster.class);
+        CacheRedisClient mockedCachedRedisClient = mock(CacheRedisClient.class);
+        when(mockedCachedRedisClient.getJedisClusterClient()).thenReturn(mockJedisClient);
+        when(mockJedisClient.scard("set1")).thenReturn(2L);
+        when(mockJedisClient.scard("set2")).thenReturn(0L);
+
+        RedisCacheService redisCacheService = new RedisCacheService(config, mockedCachedRedisClient);
+        Map<String, Long> sizes = redisCacheService.getSetSizes(new HashSet<>(Arrays.asList("set1", "set2")));
+
+        assertEquals(2, sizes.size());
+        assertEquals(Long.valueOf(2), sizes.get("set1"));
+        assertEquals(Long.valueOf(0), sizes.get("set2"));
+    }
 }
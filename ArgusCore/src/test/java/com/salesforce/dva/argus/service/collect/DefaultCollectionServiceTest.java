@@ -1,5 +1,6 @@
 package com.salesforce.dva.argus.service.collect;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.type.CollectionType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -7,6 +8,7 @@ import com.salesforce.dva.argus.entity.Annotation;
 import com.salesforce.dva.argus.entity.Histogram;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.entity.PrincipalUser;
+import com.salesforce.dva.argus.entity.QuantileSketch;
 import com.salesforce.dva.argus.service.AnnotationStorageService;
 import com.salesforce.dva.argus.service.AuditService;
 import com.salesforce.dva.argus.service.MQService;
@@ -35,10 +37,12 @@ import java.util.Map;
 
 import static com.salesforce.dva.argus.service.MQService.MQQueue.ANNOTATION;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -129,6 +133,40 @@ public class DefaultCollectionServiceTest {
         verify(wardenService).modifyPolicyCounter(user, WardenService.PolicyCounter.DATAPOINTS_PER_HOUR, metricCount * 2);
     }
 
+    @Test
+    public void testSubmitMetricsPartitionedBySeries() {
+        Properties config = new Properties();
+        config.put(DefaultCollectionService.Property.COLLECTION_METRIC_PARTITIONED.getName(), "true");
+        DefaultCollectionService service = new DefaultCollectionService(mqService, tsdbService, auditService, annotationStorageService,
+                new SystemConfiguration(config), schemaService, wardenService, monitorService, namespaceService);
+        List<Metric> metrics = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Metric metric = new Metric("scope" + (i % 5), "metric");
+            metric.setTag("host", "host" + i);
+            metric.addDatapoint(1000L, 1.0);
+            metrics.add(metric);
+        }
+        when(user.isPrivileged()).thenReturn(true);
+        service.submitMetrics(user, metrics);
+
+        ArgumentCaptor<String> keyCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List> batchCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mqService, atLeastOnce()).enqueue(eq(MQService.MQQueue.METRIC.getQueueName()), keyCaptor.capture(), batchCaptor.capture());
+
+        int total = 0;
+        assertEquals(5, keyCaptor.getAllValues().size());
+        for (int i = 0; i < keyCaptor.getAllValues().size(); i++) {
+            String key = keyCaptor.getAllValues().get(i);
+            for (Object batch : batchCaptor.getAllValues().get(i)) {
+                for (Metric metric : (List<Metric>) batch) {
+                    assertEquals(metric.getScope() + ":" + metric.getMetric(), key);
+                    total++;
+                }
+            }
+        }
+        assertEquals(20, total);
+    }
+
     @Test
     public void testSubmitAnnotation() {
         Annotation annotation = TestUtils.createAnnotation();
@@ -198,6 +236,71 @@ public class DefaultCollectionServiceTest {
         assertEquals(2, collectionService.commitHistograms(2, 60000));
     }
 
+    @Test
+    public void testSubmitHistogramMalformedSketch() {
+        Histogram histogram = new Histogram("scope", "metric");
+        histogram.setTimestamp(1000L);
+        histogram.setSketch(new byte[] { 1, 2, 3 });
+        collectionService.submitHistogram(user, histogram);
+        verify(monitorService).modifyCounter(MonitorService.Counter.HISTOGRAM_DROPPED, 1, null);
+    }
+
+    @Test
+    public void testCommitHistogramsMergesSketches() {
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        for (int i = 1; i <= 100; i++) {
+            first.add(i);
+            second.add(i * 10);
+        }
+        List<Histogram> messages = Arrays.asList(_sketchHistogram("host1", first), _sketchHistogram("host1", second),
+                _sketchHistogram("host2", first), TestUtils.createHistogram(4));
+        when(mqService.dequeue(eq(MQService.MQQueue.HISTOGRAM.getQueueName()), eq(Histogram.class), anyInt(), anyInt())).thenReturn(messages);
+        assertEquals(4, collectionService.commitHistograms(4, 60000));
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(tsdbService).putHistograms(captor.capture());
+        List<Histogram> committed = captor.getValue();
+        assertEquals(3, committed.size());
+
+        long merged = 0;
+        for (long count : committed.get(0).getBuckets().values()) {
+            merged += count;
+        }
+        assertEquals(200, merged);
+        assertNull(committed.get(0).getSketch());
+    }
+
+    private static Histogram _sketchHistogram(String host, QuantileSketch sketch) {
+        Histogram histogram = new Histogram("scope", "latency");
+        histogram.setTag("host", host);
+        histogram.setTimestamp(1000L);
+        histogram.setSketch(sketch.encode());
+        return histogram;
+    }
+
+    @Test
+    public void testRollupDropsAreCounted() {
+        Properties config = new Properties();
+        config.put(DefaultCollectionService.Property.COLLECTION_ROLLUP_ENABLED.getName(), "true");
+        config.put(DefaultCollectionService.Property.COLLECTION_ROLLUP_INTERVALS.getName(), "1m");
+        DefaultCollectionService service = new DefaultCollectionService(mqService, tsdbService, auditService, annotationStorageService,
+                new SystemConfiguration(config), schemaService, wardenService, monitorService, namespaceService);
+        long now = System.currentTimeMillis();
+        Metric metric = new Metric("scope", "metric");
+        metric.addDatapoint(now - 3600000L, 1.0);
+        metric.addDatapoint(now + 120000L, 1.0);
+        when(mqService.dequeue(eq(MQService.MQQueue.METRIC.getQueueName()), any(JavaType.class), anyInt(), anyInt()))
+                .thenReturn(new ArrayList<Serializable>(Arrays.asList(new ArrayList<>(Arrays.asList(metric)))));
+
+        service.commitMetrics(1, 1000);
+        verify(monitorService).modifyCustomCounter(eq("collection.rollup.dropped.late"), eq(1.0), any());
+
+        service.dispose();
+        verify(monitorService).modifyCustomCounter(eq("collection.rollup.dropped.partial"), eq(1.0), any());
+        verify(tsdbService).putMetrics(any());
+    }
+
     @Test
     public void submitAnnotations_testAnnotationSizeLessThanMax() {
         Annotation a = TestUtils.createAnnotation();
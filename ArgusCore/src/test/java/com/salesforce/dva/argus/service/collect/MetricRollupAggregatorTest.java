@@ -0,0 +1,138 @@
+package com.salesforce.dva.argus.service.collect;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.metric.MetricRollups.Interval;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricRollupAggregatorTest {
+
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public void testWindowIsEmittedWhenNextWindowStarts() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Collections.singletonList(Interval.ONE_HOUR), 0, 0L);
+
+        assertTrue(aggregator.aggregate(Arrays.asList(_metric("host1", 10L, 1.0, 20L, 5.0, 30L, 3.0)), 40L).isEmpty());
+
+        Map<String, Metric> rollups = _byName(aggregator.aggregate(Arrays.asList(_metric("host1", HOUR + 5, 7.0)), HOUR + 10));
+
+        assertEquals(5, rollups.size());
+        assertEquals(9.0, rollups.get("cpu__rollup_1h_sum").getDatapoints().get(0L), 0.0);
+        assertEquals(3.0, rollups.get("cpu__rollup_1h_count").getDatapoints().get(0L), 0.0);
+        assertEquals(1.0, rollups.get("cpu__rollup_1h_min").getDatapoints().get(0L), 0.0);
+        assertEquals(5.0, rollups.get("cpu__rollup_1h_max").getDatapoints().get(0L), 0.0);
+        assertEquals(3.0, rollups.get("cpu__rollup_1h_avg").getDatapoints().get(0L), 0.0);
+        assertEquals("host1", rollups.get("cpu__rollup_1h_sum").getTag("host"));
+    }
+
+    @Test
+    public void testWindowIsEmittedAfterGracePeriod() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Arrays.asList(Interval.ONE_MINUTE, Interval.ONE_HOUR), 1000, 0L);
+
+        aggregator.aggregate(Arrays.asList(_metric("host1", 0L, 1.0), _metric("host2", 0L, 2.0)), 0L);
+        assertEquals(4, aggregator.size());
+        assertTrue(aggregator.flush(60000L).isEmpty());
+        assertEquals(10, aggregator.flush(61000L).size());
+        assertEquals(10, aggregator.flush(HOUR + 1000L).size());
+    }
+
+    @Test
+    public void testLateDatapointsAreDropped() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Collections.singletonList(Interval.ONE_MINUTE), 0, 0L);
+
+        aggregator.aggregate(Arrays.asList(_metric("host1", 60000L, 1.0)), 60000L);
+        aggregator.aggregate(Arrays.asList(_metric("host1", 1000L, 1.0)), 60000L);
+        assertEquals(1, aggregator.getDroppedLate());
+        assertEquals(5, aggregator.flush(120000L).size());
+        aggregator.aggregate(Arrays.asList(_metric("host1", 61000L, 1.0)), 120000L);
+        assertEquals(2, aggregator.getDroppedLate());
+    }
+
+    @Test
+    public void testOutOfOrderDatapointsWithinGracePeriodAreAggregated() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Collections.singletonList(Interval.ONE_MINUTE), 30000, 0L);
+
+        assertTrue(aggregator.aggregate(Arrays.asList(_metric("host1", 60000L, 1.0)), 61000L).isEmpty());
+        assertTrue(aggregator.aggregate(Arrays.asList(_metric("host1", 1000L, 2.0, 2000L, 4.0)), 62000L).isEmpty());
+        assertEquals(0, aggregator.getDroppedLate());
+
+        Map<String, Metric> rollups = _byName(aggregator.flush(90000L));
+
+        assertEquals(5, rollups.size());
+        assertEquals(6.0, rollups.get("cpu__rollup_1m_sum").getDatapoints().get(0L), 0.0);
+        assertEquals(2.0, rollups.get("cpu__rollup_1m_count").getDatapoints().get(0L), 0.0);
+        assertEquals(1.0, _byName(aggregator.flush(150000L)).get("cpu__rollup_1m_sum").getDatapoints().get(60000L), 0.0);
+    }
+
+    @Test
+    public void testWindowsStartedBeforeTheAggregatorAreNotEmitted() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Collections.singletonList(Interval.ONE_MINUTE), 0, 30000L);
+
+        aggregator.aggregate(Arrays.asList(_metric("host1", 10000L, 1.0, 40000L, 1.0, 60000L, 1.0)), 50000L);
+        assertEquals(2, aggregator.getDroppedPartial());
+
+        List<Metric> rollups = aggregator.flush(120000L);
+
+        assertEquals(5, rollups.size());
+        assertEquals(1.0, _byName(rollups).get("cpu__rollup_1m_count").getDatapoints().get(60000L), 0.0);
+    }
+
+    @Test
+    public void testCloseEmitsEndedWindowsOnly() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Collections.singletonList(Interval.ONE_MINUTE), 60000, 0L);
+
+        aggregator.aggregate(Arrays.asList(_metric("host1", 1000L, 1.0, 61000L, 2.0, 62000L, 3.0)), 90000L);
+
+        Map<String, Metric> rollups = _byName(aggregator.close(90000L));
+
+        assertEquals(5, rollups.size());
+        assertEquals(1.0, rollups.get("cpu__rollup_1m_sum").getDatapoints().get(0L), 0.0);
+        assertEquals(2, aggregator.getDroppedPartial());
+        assertTrue(aggregator.flush(Long.MAX_VALUE / 2).isEmpty());
+    }
+
+    @Test
+    public void testIdleSeriesAreEvicted() {
+        MetricRollupAggregator aggregator = new MetricRollupAggregator(Collections.singletonList(Interval.ONE_MINUTE), 0, 0L);
+
+        for (int i = 0; i < 2000; i++) {
+            aggregator.aggregate(Arrays.asList(_metric("host" + i, 0L, i)), 0L);
+        }
+        assertEquals(2000, aggregator.size());
+        assertEquals(10000, aggregator.flush(60000L).size());
+        aggregator.flush(180000L);
+        assertEquals(0, aggregator.size());
+        aggregator.aggregate(Arrays.asList(_metric("host1", 180000L, 1.0)), 180000L);
+        assertEquals(1, aggregator.size());
+    }
+
+    private static Metric _metric(String host, Object... datapoints) {
+        Metric metric = new Metric("system", "cpu");
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", host);
+        metric.setTags(tags);
+        for (int i = 0; i < datapoints.length; i += 2) {
+            metric.addDatapoint(((Number) datapoints[i]).longValue(), ((Number) datapoints[i + 1]).doubleValue());
+        }
+        return metric;
+    }
+
+    private static Map<String, Metric> _byName(List<Metric> metrics) {
+        Map<String, Metric> result = new HashMap<>();
+
+        for (Metric metric : metrics) {
+            result.put(metric.getMetric(), metric);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.DiscoveryService;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.QueryStoreService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.metric.transform.TransformFactory;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.util.QueryContext;
+import com.salesforce.dva.argus.util.TSDBQueryExpression;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricQueryProcessorTest {
+
+    private TSDBService _tsdbService;
+    private MetricQueryProcessor _processor;
+
+    @Before
+    public void setUp() {
+        SystemConfiguration config = new SystemConfiguration(new Properties());
+        MonitorService monitorService = mock(MonitorService.class);
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+
+        _tsdbService = mock(TSDBService.class);
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(invocation -> Collections.singletonList(invocation.getArgument(0)));
+        when(_tsdbService.getMetrics(anyList())).thenAnswer(invocation -> {
+            Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+            for (MetricQuery query : invocation.<List<MetricQuery>>getArgument(0)) {
+                Metric first = new Metric(query.getScope(), query.getMetric());
+                Metric second = new Metric(query.getScope(), query.getMetric());
+
+                first.setTag("host", "a");
+                first.addDatapoint(1000L, 1.0);
+                second.setTag("host", "b");
+                second.addDatapoint(1000L, 2.0);
+                result.put(query, Arrays.asList(first, second));
+            }
+            return result;
+        });
+        _processor = new MetricQueryProcessor(_tsdbService, discoveryService, monitorService, new TransformFactory(_tsdbService),
+            mock(QueryStoreService.class), config, new QueryAdmissionController(config, monitorService));
+    }
+
+    @Test
+    public void testSharedSubexpressionsAreEvaluatedOnce() {
+        Map<String, MetricQueryResult> evaluated = new HashMap<>();
+        MetricQueryResult raw = _processor.evaluateQuery(_leaf("scope", 0L), 3600000L, evaluated);
+        MetricQueryResult sum = _processor.evaluateQuery(_transform("SUM", _leaf("scope", 0L)), 3600000L, evaluated);
+        MetricQueryResult sumAgain = _processor.evaluateQuery(_transform("SUM", _leaf("scope", 0L)), 3600000L, evaluated);
+
+        verify(_tsdbService, times(1)).getMetrics(anyList());
+        assertEquals(2, raw.getMetricsList().size());
+        assertEquals(1, sum.getMetricsList().size());
+        assertEquals(Double.valueOf(3.0), sum.getMetricsList().get(0).getDatapoints().get(1000L));
+        assertEquals(sum.getMetricsList(), sumAgain.getMetricsList());
+
+        // Results handed out are copies, so a transform modifying its input does not affect later reuse.
+        sum.getMetricsList().get(0).setDatapoints(Collections.singletonMap(1000L, 0.0));
+        assertEquals(Double.valueOf(3.0), _processor.evaluateQuery(_transform("SUM", _leaf("scope", 0L)), 3600000L, evaluated)
+            .getMetricsList().get(0).getDatapoints().get(1000L));
+    }
+
+    @Test
+    public void testEvaluationWithoutReuse() {
+        _processor.evaluateQuery(_leaf("scope", 0L), 3600000L);
+        _processor.evaluateQuery(_leaf("scope", 0L), 3600000L);
+        verify(_tsdbService, times(2)).getMetrics(anyList());
+    }
+
+    @Test
+    public void testCanonicalKey() {
+        assertEquals(MetricQueryProcessor.getCanonicalKey(_transform("SUM", _leaf("scope", 0L))),
+            MetricQueryProcessor.getCanonicalKey(_transform("SUM", _leaf("scope", 0L))));
+        assertNotEquals(MetricQueryProcessor.getCanonicalKey(_leaf("scope", 0L)), MetricQueryProcessor.getCanonicalKey(_leaf("scope", 1000L)));
+        assertNotEquals(MetricQueryProcessor.getCanonicalKey(_leaf("scope", 0L)), MetricQueryProcessor.getCanonicalKey(_leaf("other", 0L)));
+        assertNotEquals(MetricQueryProcessor.getCanonicalKey(_transform("SUM", _leaf("scope", 0L))),
+            MetricQueryProcessor.getCanonicalKey(_transform("AVERAGE", _leaf("scope", 0L))));
+    }
+
+    private static QueryContext _leaf(String scope, long start) {
+        TSDBQueryExpression expression = new TSDBQueryExpression();
+
+        expression.setScope(scope);
+        expression.setMetric("metric");
+        expression.setTags(Collections.singletonMap("host", "*"));
+        expression.setAggregator(Aggregator.AVG);
+        expression.setStartTimestamp(start);
+        expression.setEndTimestamp(3600000L);
+
+        QueryContext context = new QueryContext();
+
+        context.setExpression(expression);
+        return context;
+    }
+
+    private static QueryContext _transform(String transform, QueryContext child) {
+        QueryContext context = new QueryContext();
+
+        context.setTransform(transform);
+        context.setChildContexts(Collections.singletonList(child));
+        child.setParentContext(context);
+        return context;
+    }
+}
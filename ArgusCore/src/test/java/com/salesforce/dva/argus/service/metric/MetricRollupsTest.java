@@ -0,0 +1,111 @@
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.metric.MetricRollups.Interval;
+import com.salesforce.dva.argus.service.metric.MetricRollups.RollupPlan;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MetricRollupsTest {
+
+    private static final long HOUR = 3600000L;
+    private static final List<Interval> INTERVALS = MetricRollups.parseIntervals("1h,1m");
+
+    @Test
+    public void testParseIntervals() {
+        assertEquals(Arrays.asList(Interval.ONE_MINUTE, Interval.ONE_HOUR), INTERVALS);
+    }
+
+    @Test
+    public void testPlanSplitsQueryAtClosedWindows() {
+        MetricQuery query = _query(Aggregator.MAX, 2 * HOUR, HOUR / 2, 10 * HOUR);
+        RollupPlan plan = MetricRollups.plan(query, INTERVALS, 0, 8 * HOUR + 5);
+        List<MetricQuery> queries = plan.getQueries();
+
+        assertEquals(3, queries.size());
+        assertEquals("cpu__rollup_1h_max", queries.get(0).getMetric());
+        assertEquals(2 * HOUR, (long) queries.get(0).getStartTimestamp());
+        assertEquals(8 * HOUR - 1, (long) queries.get(0).getEndTimestamp());
+        assertEquals("cpu", queries.get(1).getMetric());
+        assertEquals(HOUR / 2, (long) queries.get(1).getStartTimestamp());
+        assertEquals(2 * HOUR - 1, (long) queries.get(1).getEndTimestamp());
+        assertEquals(8 * HOUR, (long) queries.get(2).getStartTimestamp());
+        assertEquals(10 * HOUR, (long) queries.get(2).getEndTimestamp());
+    }
+
+    @Test
+    public void testPlanSelectsStatistic() {
+        assertEquals("cpu__rollup_1h_sum", _rollupQuery(Aggregator.ZIMSUM, HOUR).getMetric());
+        assertEquals("cpu__rollup_1m_min", _rollupQuery(Aggregator.MIN, 5 * 60000L).getMetric());
+        assertEquals("cpu__rollup_1h_avg", _rollupQuery(Aggregator.AVG, HOUR).getMetric());
+        assertEquals("cpu__rollup_1m_avg", _rollupQuery(Aggregator.AVG, 60000L).getMetric());
+
+        MetricQuery count = _rollupQuery(Aggregator.COUNT, HOUR);
+
+        assertEquals("cpu__rollup_1h_count", count.getMetric());
+        assertEquals(Aggregator.SUM, count.getDownsampler());
+    }
+
+    @Test
+    public void testPlanFallsBackToRawQuery() {
+        assertNull(MetricRollups.plan(_query(Aggregator.AVG, 2 * HOUR, 0, 10 * HOUR), Collections.singletonList(Interval.ONE_HOUR), 0, 10 * HOUR));
+        assertNull(MetricRollups.plan(_query(Aggregator.DEV, HOUR, 0, 10 * HOUR), INTERVALS, 0, 10 * HOUR));
+        assertNull(MetricRollups.plan(_query(Aggregator.MAX, 90000L, 0, 10 * HOUR), INTERVALS, 0, 10 * HOUR));
+        assertNull(MetricRollups.plan(_query(Aggregator.MAX, HOUR, 0, 10 * HOUR), INTERVALS, 1, 10 * HOUR));
+        assertNull(MetricRollups.plan(_query(Aggregator.MAX, HOUR, 9 * HOUR, 10 * HOUR), INTERVALS, 0, 9 * HOUR + 5));
+
+        MetricQuery raw = new MetricQuery("system", "cpu", null, 0L, 10 * HOUR);
+
+        assertNull(MetricRollups.plan(raw, INTERVALS, 0, 10 * HOUR));
+    }
+
+    @Test
+    public void testMergeRenamesRollupsAndAddsRawDatapoints() {
+        MetricQuery query = _query(Aggregator.MAX, HOUR, HOUR / 2, 3 * HOUR);
+        RollupPlan plan = MetricRollups.plan(query, INTERVALS, 0, 2 * HOUR);
+        List<MetricQuery> queries = plan.getQueries();
+        Map<MetricQuery, List<Metric>> results = new HashMap<>();
+
+        results.put(queries.get(0), Arrays.asList(_metric(queries.get(0).getMetric(), HOUR, 5.0)));
+        results.put(queries.get(1), Arrays.asList(_metric("cpu", 0L, 3.0)));
+        results.put(queries.get(2), Arrays.asList(_metric("cpu", 2 * HOUR, 4.0)));
+
+        List<Metric> merged = plan.merge(results);
+
+        assertEquals(1, merged.size());
+        assertEquals("cpu", merged.get(0).getMetric());
+        assertEquals(3, merged.get(0).getDatapoints().size());
+        assertEquals(5.0, merged.get(0).getDatapoints().get(HOUR), 0.0);
+    }
+
+    private static MetricQuery _rollupQuery(Aggregator downsampler, long period) {
+        return MetricRollups.plan(_query(downsampler, period, 0, 10 * HOUR), INTERVALS, 0, 10 * HOUR).getQueries().get(0);
+    }
+
+    private static MetricQuery _query(Aggregator downsampler, long period, long start, long end) {
+        MetricQuery query = new MetricQuery("system", "cpu", null, start, end);
+
+        query.setAggregator(Aggregator.SUM);
+        query.setDownsampler(downsampler);
+        query.setDownsamplingPeriod(period);
+        return query;
+    }
+
+    private static Metric _metric(String name, long time, double value) {
+        Metric metric = new Metric("system", name);
+
+        metric.setTag("host", "host1");
+        metric.addDatapoint(time, value);
+        return metric;
+    }
+}
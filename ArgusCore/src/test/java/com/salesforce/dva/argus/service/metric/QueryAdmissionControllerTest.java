@@ -0,0 +1,148 @@
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionController.Admission;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionController.Property;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionException.Reason;
+import com.salesforce.dva.argus.service.metric.QueryCostEstimator.Estimate;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.util.QueryContext;
+import com.salesforce.dva.argus.util.TSDBQueryExpression;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class QueryAdmissionControllerTest {
+
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public void testEstimate() {
+        QueryCostEstimator estimator = new QueryCostEstimator(100, 1000, HOUR);
+        QueryContext single = _context("scope", "metric", "host", "a", HOUR);
+        QueryContext alternatives = _context("scope", "metric", "host", "a|b", HOUR);
+        QueryContext wildcard = _context("scope", "metric", "host", "*", HOUR);
+
+        assertEquals(60, estimator.estimate(single).getDatapoints());
+        assertEquals(120, estimator.estimate(alternatives).getDatapoints());
+        assertEquals(6000, estimator.estimate(wildcard).getDatapoints());
+
+        estimator.recordCardinality(wildcard.getExpression(), 5);
+        assertEquals(300, estimator.estimate(wildcard).getDatapoints());
+
+        QueryContext transform = new QueryContext();
+
+        transform.setTransform("ANOMALY_RPCA");
+        transform.setChildContexts(Collections.singletonList(single));
+
+        Estimate estimate = estimator.estimate(transform);
+
+        assertEquals(60, estimate.getDatapoints());
+        assertEquals(60 + 60 * 8, estimate.getCost());
+    }
+
+    @Test
+    public void testDisabledControllerAdmitsEverything() {
+        QueryAdmissionController controller = new QueryAdmissionController(new SystemConfiguration(new Properties()), mock(MonitorService.class));
+
+        assertNull(controller.admit("user", Collections.singletonList(_context("scope", "metric", "host", "*", 1000 * HOUR))));
+    }
+
+    @Test
+    public void testOverBudgetQueryIsRejected() {
+        QueryAdmissionController controller = _controller(1000, 10000, 1000);
+
+        try {
+            controller.admit("user", Collections.singletonList(_context("scope", "metric", "host", "*", HOUR)));
+            fail("Expected the query to be rejected.");
+        } catch (QueryAdmissionException ex) {
+            assertEquals(Reason.OVER_BUDGET, ex.getReason());
+            assertTrue(ex.getMessage().contains("6,000"));
+        }
+        assertEquals(0, controller.getInFlightCost());
+    }
+
+    @Test
+    public void testQueueTimeout() {
+        QueryAdmissionController controller = _controller(100, 60, 50);
+        Admission admission = controller.admit("a", Collections.singletonList(_context("scope", "metric", "host", "a", HOUR)));
+
+        try {
+            controller.admit("b", Collections.singletonList(_context("scope", "metric", "host", "a", HOUR)));
+            fail("Expected the query to time out.");
+        } catch (QueryAdmissionException ex) {
+            assertEquals(Reason.QUEUE_TIMEOUT, ex.getReason());
+        }
+        assertEquals(0, controller.getWaitingCount());
+        controller.release(admission, 60);
+        assertEquals(0, controller.getInFlightCost());
+    }
+
+    @Test
+    public void testWaitingQueriesAreAdmittedFairly() throws Exception {
+        QueryAdmissionController controller = _controller(100, 60, 10000);
+        List<QueryContext> contexts = Collections.singletonList(_context("scope", "metric", "host", "a", HOUR));
+        Admission first = controller.admit("heavy", contexts);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for (String user : Arrays.asList("heavy", "heavy", "light")) {
+            Thread thread = new Thread(() -> {
+                Admission admission = controller.admit(user, contexts);
+
+                order.add(user);
+                controller.release(admission, 60);
+            });
+
+            threads.add(thread);
+            thread.start();
+            while (controller.getWaitingCount() < threads.size()) {
+                Thread.sleep(5);
+            }
+        }
+        controller.release(first, 60);
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals(Arrays.asList("light", "heavy", "heavy"), order);
+    }
+
+    private static QueryAdmissionController _controller(long maxQueryCost, long capacity, long timeoutMillis) {
+        Properties properties = new Properties();
+
+        properties.put(Property.ADMISSION_ENABLED.getName(), "true");
+        properties.put(Property.ADMISSION_MAX_QUERY_COST.getName(), String.valueOf(maxQueryCost));
+        properties.put(Property.ADMISSION_CAPACITY.getName(), String.valueOf(capacity));
+        properties.put(Property.ADMISSION_QUEUE_TIMEOUT_MS.getName(), String.valueOf(timeoutMillis));
+        return new QueryAdmissionController(new SystemConfiguration(properties), mock(MonitorService.class));
+    }
+
+    private static QueryContext _context(String scope, String metric, String tagKey, String tagValue, long range) {
+        TSDBQueryExpression expression = new TSDBQueryExpression();
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put(tagKey, tagValue);
+        expression.setScope(scope);
+        expression.setMetric(metric);
+        expression.setTags(tags);
+        expression.setStartTimestamp(0L);
+        expression.setEndTimestamp(range);
+
+        QueryContext context = new QueryContext();
+
+        context.setExpression(expression);
+        return context;
+    }
+}
@@ -214,7 +214,7 @@ public class AnomalyDetectionGaussianDensityTransformTest {
         expected.put(43200L, 0.0);
         expected.put(54000L, 0.43);
         expected.put(64800L, 28.97);
-        expected.put(75600L, 99.99);
+        expected.put(75600L, 100.0);
         expected.put(86400L, 3.05);
         expected.put(97200L, 0.37);
         expected.put(108000L, 7.34);
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the anomaly detection transforms produce the same scores as the implementations in {@link LegacyAnomalyDetection}, on seeded
+ * series large enough for contextual detection to be scored in parallel.
+ */
+public class AnomalyDetectionParityTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void gaussianDensityParityTest() {
+        Map<Long, Double> datapoints = series(1L, 5000, 60000L, false);
+
+        assertScores(LegacyAnomalyDetection.gaussian(datapoints, true), transform(new AnomalyDetectionGaussianDensityTransform(), datapoints));
+    }
+
+    @Test
+    public void gaussianZScoreParityTest() {
+        Map<Long, Double> datapoints = series(2L, 5000, 60000L, false);
+
+        assertScores(LegacyAnomalyDetection.gaussian(datapoints, false), transform(new AnomalyDetectionGaussianZScoreTransform(), datapoints));
+    }
+
+    @Test
+    public void gaussianDensityContextualParityTest() {
+        Map<Long, Double> datapoints = series(3L, 3000, 60L, false);
+
+        assertScores(LegacyAnomalyDetection.gaussianContextual(datapoints, 7200L, true),
+            transform(new AnomalyDetectionGaussianDensityTransform(), datapoints, "2h"));
+    }
+
+    @Test
+    public void gaussianDensityContextualUnderflowParityTest() {
+        Map<Long, Double> datapoints = series(8L, 2500, 60L, false);
+
+        // Wide enough intervals for the probability density of the spike to underflow
+        datapoints.put(1000L + 2200 * 60L, 1e5);
+        assertScores(LegacyAnomalyDetection.gaussianContextual(datapoints, 120000L, true),
+            transform(new AnomalyDetectionGaussianDensityTransform(), datapoints, "2000m"));
+    }
+
+    @Test
+    public void gaussianZScoreContextualParityTest() {
+        Map<Long, Double> datapoints = series(4L, 3000, 60L, true);
+
+        assertScores(LegacyAnomalyDetection.gaussianContextual(datapoints, 7200L, false),
+            transform(new AnomalyDetectionGaussianZScoreTransform(), datapoints, "2h"));
+    }
+
+    @Test
+    public void kmeansParityTest() throws Exception {
+        Map<Long, Double> datapoints = series(5L, 2000, 60000L, true);
+
+        assertScores(LegacyAnomalyDetection.kmeans(datapoints, 3), transform(new AnomalyDetectionKMeansTransform(), datapoints, "3"));
+    }
+
+    @Test
+    public void rpcaParityTest() {
+        Map<Long, Double> datapoints = series(6L, 60 * 24 + 7, 60000L, false);
+
+        assertScores(LegacyAnomalyDetection.rpca(datapoints, 3600000L), transform(new AnomalyDetectionRPCATransform(), datapoints, "1h"));
+    }
+
+    @Test
+    public void stlParityTest() {
+        Map<Long, Double> datapoints = series(7L, 24 * 14, 3600000L, false);
+
+        assertScores(LegacyAnomalyDetection.stl(datapoints, 24, false), transform(new AnomalySTLTransform(), datapoints, "24", "anomalyScore"));
+        assertScores(LegacyAnomalyDetection.stl(datapoints, 24, true), transform(new AnomalySTLTransform(), datapoints, "24", "resid"));
+    }
+
+    /* A seasonal series with gaussian noise and occasional spikes, optionally rounded so that values repeat. */
+    private static Map<Long, Double> series(long seed, int size, long period, boolean rounded) {
+        Random random = new Random(seed);
+        Map<Long, Double> datapoints = new TreeMap<>();
+
+        for (int i = 0; i < size; i++) {
+            double value = 100 + 20 * Math.sin(2 * Math.PI * i / 60) + random.nextGaussian() * 5;
+
+            if (random.nextInt(100) == 0) {
+                value *= 3;
+            }
+            datapoints.put(1000L + i * period, rounded ? Math.rint(value) : value);
+        }
+        return datapoints;
+    }
+
+    private static Map<Long, Double> transform(Transform transform, Map<Long, Double> datapoints, String... constants) {
+        Metric metric = new Metric("test-scope", "test-metric");
+        List<Metric> metrics = new ArrayList<>();
+
+        metric.setDatapoints(datapoints);
+        metrics.add(metric);
+        List<Metric> result = constants.length == 0 ? transform.transform(null, metrics) : transform.transform(null, metrics, Arrays.asList(constants));
+
+        return result.get(0).getDatapoints();
+    }
+
+    private static void assertScores(Map<Long, Double> expected, Map<Long, Double> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Long, Double> entry : expected.entrySet()) {
+            assertEquals("Score at " + entry.getKey(), entry.getValue(), actual.get(entry.getKey()), TOLERANCE);
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.github.brandtg.stl.StlDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import weka.clusterers.SimpleKMeans;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The anomaly detection algorithms as implemented before the transforms were reworked over primitive arrays, kept as the reference for
+ * {@link AnomalyDetectionParityTest}. Every method returns the scores of the transform it mirrors, keyed by timestamp.
+ */
+final class LegacyAnomalyDetection {
+
+    private LegacyAnomalyDetection() { }
+
+    static Map<Long, Double> gaussian(Map<Long, Double> metricData, boolean density) {
+        double mean = 0;
+        for (Double value : metricData.values()) {
+            mean += value;
+        }
+        mean /= metricData.size();
+
+        double variance = 0;
+        for (Double value : metricData.values()) {
+            variance += Math.pow((value - mean), 2);
+        }
+        variance /= metricData.size();
+
+        Map<Long, Double> predictions = new HashMap<>();
+        for (Map.Entry<Long, Double> entry : metricData.entrySet()) {
+            if (variance == 0.0) {
+                predictions.put(entry.getKey(), 0.0);
+            } else if (density) {
+                double probabilityDensity = (1.0/Math.sqrt(2.0 * Math.PI * variance)) *
+                        Math.exp((-1.0 * Math.pow((entry.getValue() - mean), 2.0)) / (2.0 * variance));
+                if (probabilityDensity != 0.0) {
+                    predictions.put(entry.getKey(), -1.0 * Math.log(probabilityDensity));
+                }
+            } else {
+                predictions.put(entry.getKey(), Math.abs((entry.getValue() - mean) / Math.sqrt(variance)));
+            }
+        }
+        return normalize(predictions);
+    }
+
+    static Map<Long, Double> gaussianContextual(Map<Long, Double> metricData, long detectionIntervalInSeconds, boolean density) {
+        Long[] timestamps = metricData.keySet().toArray(new Long[metricData.size()]);
+        Arrays.sort(timestamps);
+
+        Map<Long, Double> predictions = new HashMap<>();
+        int currentIndex = 0;
+        while (currentIndex < timestamps.length && timestamps[currentIndex] <= timestamps[0] + detectionIntervalInSeconds) {
+            predictions.put(timestamps[currentIndex++], 0.0);
+        }
+        for (int i = currentIndex; i < timestamps.length; i++) {
+            Map<Long, Double> intervalData = new HashMap<>();
+            for (int j = i; j >= 0 && timestamps[j] >= timestamps[i] - detectionIntervalInSeconds; j--) {
+                intervalData.put(timestamps[j], metricData.get(timestamps[j]));
+            }
+
+            Double score = gaussian(intervalData, density).get(timestamps[i]);
+            if (score != null) {
+                predictions.put(timestamps[i], score);
+            }
+        }
+        return predictions;
+    }
+
+    static Map<Long, Double> kmeans(Map<Long, Double> metricData, int k) throws Exception {
+        List<Double> metricDataValues = new ArrayList<>(metricData.values());
+        FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute("metric_value"));
+
+        Instances trainingData = new Instances("metric_value_data", attributes, 0);
+        for (Double val : metricData.values()) {
+            trainingData.add(new Instance(1.0, new double[] { val }));
+        }
+
+        SimpleKMeans model = new SimpleKMeans();
+        model.setNumClusters(k);
+        model.setMaxIterations(20);
+        model.setPreserveInstancesOrder(true);
+        model.buildClusterer(trainingData);
+
+        Instances clusterCentroids = model.getClusterCentroids();
+        int[] centroidAssignments = model.getAssignments();
+        Map<Instance, Double> meanDistancesToCentroids = new HashMap<>();
+        for (int i = 0; i < clusterCentroids.numInstances(); i++) {
+            int countAssignedInstances = 0;
+            double sumDistancesToCentroid = 0.0;
+            Instance centroidInstance = clusterCentroids.instance(i);
+            for (int j = 0; j < trainingData.numInstances(); j++) {
+                if (i == centroidAssignments[j]) {
+                    sumDistancesToCentroid += Math.abs(trainingData.instance(j).value(0) - centroidInstance.value(0));
+                    countAssignedInstances++;
+                }
+            }
+            meanDistancesToCentroids.put(centroidInstance, sumDistancesToCentroid / countAssignedInstances);
+        }
+
+        Map<Long, Double> predictions = new HashMap<>();
+        for (Map.Entry<Long, Double> entry : metricData.entrySet()) {
+            int instanceIndex = metricDataValues.indexOf(entry.getValue());
+            Instance valueInstance = trainingData.instance(instanceIndex);
+            Instance centroidInstance = clusterCentroids.instance(centroidAssignments[instanceIndex]);
+            if (meanDistancesToCentroids.get(centroidInstance) != 0.0) {
+                double distanceToCentroid = Math.abs(valueInstance.value(0) - centroidInstance.value(0));
+                predictions.put(entry.getKey(), distanceToCentroid / meanDistancesToCentroids.get(centroidInstance));
+            }
+        }
+        return normalize(predictions);
+    }
+
+    static Map<Long, Double> rpca(Map<Long, Double> metricData, long seasonLengthInMilliseconds) {
+        Long[] timestamps = metricData.keySet().toArray(new Long[metricData.size()]);
+        Arrays.sort(timestamps);
+
+        int frequency = 0;
+        while (frequency < timestamps.length && timestamps[frequency] - timestamps[0] < seasonLengthInMilliseconds) {
+            frequency++;
+        }
+
+        double[] values = new double[timestamps.length];
+        double mean = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = metricData.get(timestamps[i]);
+            mean += values[i];
+        }
+        mean /= values.length;
+
+        double squaredSum = 0;
+        for (double value : values) {
+            squaredSum += Math.pow((value - mean), 2);
+        }
+        double stdDev = Math.sqrt(squaredSum / values.length);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = stdDev == 0.0 ? 0.0 : (values[i] - mean) / stdDev;
+        }
+
+        int numSeasons = values.length / frequency;
+        double[][] matrix = new double[frequency][numSeasons];
+        for (int n = 0; n < frequency * numSeasons; n++) {
+            matrix[n % frequency][n / frequency] = values[n];
+        }
+
+        double[][] noise = new Rpca(matrix, 1, 1.4/3).getE().getData();
+        Map<Long, Double> predictions = new HashMap<>();
+        for (int n = 0; n < frequency * numSeasons; n++) {
+            predictions.put(timestamps[n], Math.abs(noise[n % frequency][n / frequency]));
+        }
+        return normalize(predictions);
+    }
+
+    static Map<Long, Double> stl(Map<Long, Double> metricData, int season, boolean resid) {
+        Map<Long, Double> sorted = new TreeMap<>(metricData);
+        double[] times = new double[sorted.size()];
+        double[] values = new double[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Long, Double> entry : sorted.entrySet()) {
+            times[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+
+        double[] remainder = new StlDecomposition(season).decompose(times, values).getRemainder();
+        double mean = 0;
+        for (double value : remainder) {
+            mean += value;
+        }
+        mean /= remainder.length;
+
+        double sd = 0;
+        for (double value : remainder) {
+            sd += Math.pow(value - mean, 2);
+        }
+        sd = Math.sqrt(sd / remainder.length);
+
+        double maxNormProb = normPDF(0);
+        Map<Long, Double> predictions = new HashMap<>();
+        for (i = 0; i < remainder.length; i++) {
+            predictions.put((long) times[i], resid ? remainder[i] : (maxNormProb - normPDF((remainder[i] - mean) / sd)) / maxNormProb * 100);
+        }
+        return predictions;
+    }
+
+    private static double normPDF(double x) {
+        return Math.exp(-x*x / 2) / (Math.sqrt(2 * Math.PI));
+    }
+
+    private static Map<Long, Double> normalize(Map<Long, Double> predictions) {
+        double min = 0.0;
+        double max = 0.0;
+        boolean isMinMaxSet = false;
+        for (Double value : predictions.values()) {
+            if (!isMinMaxSet) {
+                min = value;
+                max = value;
+                isMinMaxSet = true;
+            } else if (value < min) {
+                min = value;
+            } else if (value > max) {
+                max = value;
+            }
+        }
+
+        Map<Long, Double> normalized = new HashMap<>();
+        for (Map.Entry<Long, Double> entry : predictions.entrySet()) {
+            normalized.put(entry.getKey(), max - min == 0.0 ? 0.0 : (entry.getValue() - min) * (100.0 / (max - min)));
+        }
+        return normalized;
+    }
+
+    /* The matrix based implementation of RPCA, from the Netflix Surus project. */
+    static class Rpca {
+
+        private RealMatrix X;
+        private RealMatrix L;
+        private RealMatrix S;
+        private RealMatrix E;
+
+        private double lpenalty;
+        private double spenalty;
+
+        private static final int MAX_ITERS = 228;
+
+        Rpca(double[][] data, double lpenalty, double spenalty) {
+            this.X = MatrixUtils.createRealMatrix(data);
+            this.lpenalty = lpenalty;
+            this.spenalty = spenalty;
+            initMatrices();
+            computeRSVD();
+        }
+
+        Rpca(RealMatrix X, double lpenalty, double spenalty) {
+            this.X = X;
+            this.lpenalty = lpenalty;
+            this.spenalty = spenalty;
+            initMatrices();
+            computeRSVD();
+        }
+
+        private void initMatrices() {
+            this.L = MatrixUtils.createRealMatrix(this.X.getRowDimension(), this.X.getColumnDimension());
+            this.S = MatrixUtils.createRealMatrix(this.X.getRowDimension(), this.X.getColumnDimension());
+            this.E = MatrixUtils.createRealMatrix(this.X.getRowDimension(), this.X.getColumnDimension());
+        }
+
+        private void computeRSVD() {
+            double mu = X.getColumnDimension() * X.getRowDimension() / (4 * l1norm(X.getData()));
+            double objPrev = 0.5*Math.pow(X.getFrobeniusNorm(), 2);
+            double obj = objPrev;
+            double tol = 1e-8 * objPrev;
+            double diff = 2 * tol;
+            int iter = 0;
+
+            while(diff > tol && iter < MAX_ITERS) {
+                double nuclearNorm = computeS(mu);
+                double l1Norm = computeL(mu);
+                double l2Norm = computeE();
+
+                obj = computeObjective(nuclearNorm, l1Norm, l2Norm);
+                diff = Math.abs(objPrev - obj);
+                objPrev = obj;
+
+                mu = computeDynamicMu();
+
+                iter = iter + 1;
+            }
+        }
+
+        private double[] softThreshold(double[] x, double penalty) {
+            for(int i = 0; i < x.length; i++) {
+                x[i] = Math.signum(x[i]) * Math.max(Math.abs(x[i]) - penalty, 0);
+            }
+            return x;
+        }
+
+        private double[][] softThreshold(double[][] x, double penalty) {
+            for(int i = 0; i < x.length; i++) {
+                for(int j = 0; j < x[i].length; j++) {
+                    x[i][j] = Math.signum(x[i][j]) * Math.max(Math.abs(x[i][j]) - penalty, 0);
+                }
+            }
+            return x;
+        }
+
+        private double sum(double[] x) {
+            double sum = 0;
+            for (int i = 0; i < x.length; i++)
+                sum += x[i];
+            return (sum);
+        }
+
+        private double l1norm(double[][] x) {
+            double l1norm = 0;
+            for (int i = 0; i < x.length; i++) {
+                for (int j = 0; j < x[i].length; j++) {
+                    l1norm += Math.abs(x[i][j]);
+                }
+            }
+            return l1norm;
+        }
+
+        private double computeL(double mu) {
+            double LPenalty = lpenalty * mu;
+            SingularValueDecomposition svd = new SingularValueDecomposition(X.subtract(S));
+            double[] penalizedD = softThreshold(svd.getSingularValues(), LPenalty);
+            RealMatrix D_matrix = MatrixUtils.createRealDiagonalMatrix(penalizedD);
+            L = svd.getU().multiply(D_matrix).multiply(svd.getVT());
+            return sum(penalizedD) * LPenalty;
+        }
+
+        private double computeS(double mu) {
+            double SPenalty = spenalty * mu;
+            double[][] penalizedS = softThreshold(X.subtract(L).getData(), SPenalty);
+            S = MatrixUtils.createRealMatrix(penalizedS);
+            return l1norm(penalizedS) * SPenalty;
+        }
+
+        private double computeE() {
+            E = X.subtract(L).subtract(S);
+            double norm = E.getFrobeniusNorm();
+            return Math.pow(norm, 2);
+        }
+
+        private double computeObjective(double nuclearnorm, double l1norm, double l2norm) {
+            return 0.5*l2norm + nuclearnorm + l1norm;
+        }
+
+        private double computeDynamicMu() {
+            int m = E.getRowDimension();
+            int n = E.getColumnDimension();
+
+            double E_sd = standardDeviation(E.getData());
+            double mu = E_sd * Math.sqrt(2*Math.max(m,n));
+
+            return Math.max(.01, mu);
+        }
+
+        private double standardDeviation(double[][] x) {
+            DescriptiveStatistics stats = new DescriptiveStatistics();
+            for (int i = 0; i < x.length; i ++)
+                for (int j = 0; j < x[i].length; j++)
+                    stats.addValue(x[i][j]);
+            return stats.getStandardDeviation();
+        }
+
+        public RealMatrix getL() {
+            return L;
+        }
+
+        public RealMatrix getS() {
+            return S;
+        }
+
+        public RealMatrix getE() {
+            return E;
+        }
+
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
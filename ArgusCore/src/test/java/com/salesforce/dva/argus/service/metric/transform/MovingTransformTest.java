@@ -32,11 +32,16 @@
 package com.salesforce.dva.argus.service.metric.transform;
 
 import com.salesforce.dva.argus.entity.Metric;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 import org.junit.Test;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
 
@@ -356,6 +361,160 @@ public class MovingTransformTest {
         movingTransform.transform(null, metrics, constants);
     }
 
+    @Test
+    public void testMovingMinMaxTransformWithTimeInterval() {
+        Map<Long, Double> datapoints = new HashMap<Long, Double>();
+
+        datapoints.put(1000L, 1.0);
+        datapoints.put(2000L, 2.0);
+        datapoints.put(3000L, 3.0);
+        datapoints.put(5000L, 10.0);
+        datapoints.put(6000L, 2.0);
+        datapoints.put(7000L, 3.0);
+        datapoints.put(10000L, 15.0);
+
+        Map<Long, Double> expectedMin = new HashMap<Long, Double>();
+
+        expectedMin.put(1000L, 1.0);
+        expectedMin.put(2000L, 1.0);
+        expectedMin.put(3000L, 2.0);
+        expectedMin.put(5000L, 10.0);
+        expectedMin.put(6000L, 2.0);
+        expectedMin.put(7000L, 2.0);
+        expectedMin.put(10000L, 15.0);
+
+        Map<Long, Double> expectedMax = new HashMap<Long, Double>();
+
+        expectedMax.put(1000L, 1.0);
+        expectedMax.put(2000L, 2.0);
+        expectedMax.put(3000L, 3.0);
+        expectedMax.put(5000L, 10.0);
+        expectedMax.put(6000L, 10.0);
+        expectedMax.put(7000L, 3.0);
+        expectedMax.put(10000L, 15.0);
+
+        assertEquals(expectedMin, new MovingValueMapping().mapping(datapoints, Arrays.asList("2s", "min")));
+        assertEquals(expectedMax, new MovingValueMapping().mapping(datapoints, Arrays.asList("2s", "max")));
+    }
+
+    @Test
+    public void testMovingEmptyDatapoints() {
+        assertEquals(Collections.emptyMap(), new MovingValueMapping().mapping(new HashMap<Long, Double>(), Arrays.asList("2s", "median")));
+    }
+
+    @Test
+    public void testMovingTransformParityWithSortedWindow() {
+        Random random = new Random(42);
+
+        for (String window : Arrays.asList("1s", "5s", "30s", "10m")) {
+            for (String type : Arrays.asList("avg", "sum", "median", "min", "max", "p5", "p90", "p99")) {
+                for (int run = 0; run < 5; run++) {
+                    Map<Long, Double> datapoints = new HashMap<>();
+                    long timestamp = 1000L;
+
+                    for (int i = 0; i < 500; i++) {
+                        timestamp += 1000L * (1 + random.nextInt(3));
+                        // Small value range so that duplicates are common.
+                        datapoints.put(timestamp, random.nextInt(10) == 0 ? null : (double) random.nextInt(20) - 5);
+                    }
+
+                    List<String> constants = Arrays.asList(window, type);
+
+                    assertEquals(window + " " + type, _referenceMoving(datapoints, constants), new MovingValueMapping().mapping(datapoints, constants));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMovingMedianParityWithNaN() {
+        Map<Long, Double> datapoints = new HashMap<>();
+
+        datapoints.put(1000L, 1.0);
+        datapoints.put(2000L, Double.NaN);
+        datapoints.put(3000L, 3.0);
+        datapoints.put(4000L, 5.0);
+        datapoints.put(5000L, 4.0);
+
+        List<String> constants = Arrays.asList("3s", "median");
+
+        assertEquals(_referenceMoving(datapoints, constants), new MovingValueMapping().mapping(datapoints, constants));
+    }
+
+    /* The original sort based implementation, used as the reference for parity. */
+    private Map<Long, Double> _referenceMoving(Map<Long, Double> originalDatapoints, List<String> constants) {
+        String type = constants.get(1);
+        long windowSizeInMillis = _windowInMillis(constants.get(0));
+        Map<Long, Double> movingDatapoints = new TreeMap<>();
+        Map<Long, Double> sortedDatapoints = new TreeMap<>();
+
+        for (Map.Entry<Long, Double> entry : originalDatapoints.entrySet()) {
+            sortedDatapoints.put(entry.getKey(), entry.getValue() == null ? 0.0 : entry.getValue());
+        }
+
+        Long[] timestamps = sortedDatapoints.keySet().toArray(new Long[sortedDatapoints.size()]);
+        List<Double> numberArr = new ArrayList<>();
+        double sum = sortedDatapoints.get(timestamps[0]);
+        int count = 1;
+
+        numberArr.add(sum);
+        movingDatapoints.put(timestamps[0], sum);
+        for (int head = 1, tail = 0; head < timestamps.length; head++) {
+            if (tail == 0) {
+                while (timestamps[head] - timestamps[0] < windowSizeInMillis) {
+                    if (head >= timestamps.length - 1) {
+                        break;
+                    }
+                    movingDatapoints.put(timestamps[head - 1], _referenceValue(sum, numberArr, count, type));
+                    sum += sortedDatapoints.get(timestamps[head]);
+                    numberArr.add(sortedDatapoints.get(timestamps[head]));
+                    head++;
+                    count++;
+                }
+                movingDatapoints.put(timestamps[head - 1], _referenceValue(sum, numberArr, count, type));
+            }
+            sum += sortedDatapoints.get(timestamps[head]);
+            numberArr.add(sortedDatapoints.get(timestamps[head]));
+            while (timestamps[head] - timestamps[tail] >= windowSizeInMillis) {
+                sum -= sortedDatapoints.get(timestamps[tail]);
+                numberArr.remove(sortedDatapoints.get(timestamps[tail]));
+                count--;
+                tail++;
+            }
+            count++;
+            movingDatapoints.put(timestamps[head], _referenceValue(sum, numberArr, count, type));
+        }
+        return movingDatapoints;
+    }
+
+    private double _referenceValue(double sum, List<Double> numberArr, int count, String type) {
+        double[] numbers = new double[numberArr.size()];
+
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = numberArr.get(i);
+        }
+        switch (type) {
+            case "avg":
+                return sum / count;
+            case "sum":
+                return sum;
+            case "median":
+                return new Percentile().evaluate(numbers, 50.0);
+            case "min":
+                return Collections.min(numberArr);
+            case "max":
+                return Collections.max(numberArr);
+            default:
+                return new Percentile().evaluate(numbers, Double.parseDouble(type.substring(1)));
+        }
+    }
+
+    private long _windowInMillis(String window) {
+        long digits = Long.parseLong(window.substring(0, window.length() - 1));
+
+        return window.endsWith("m") ? digits * 60000L : digits * 1000L;
+    }
+
     @Test
     public void testMovingAvgTransformScopeName() {
         Transform movingAvgTransform = new MetricMappingTransform(new MovingValueMapping());
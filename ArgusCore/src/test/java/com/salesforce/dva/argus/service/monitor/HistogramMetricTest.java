@@ -0,0 +1,116 @@
+package com.salesforce.dva.argus.service.monitor;
+
+import com.google.common.collect.ImmutableMap;
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramMetricTest {
+    private static final String SCOPE = "test.scope";
+    private static final String METRIC_NAME = "test.name";
+    private static final Map<String, String> TAGS = ImmutableMap.of("host", "localhost");
+    private HistogramMetric hm;
+
+    @Before
+    public void setUp() {
+        final Metric m = new Metric(SCOPE, METRIC_NAME);
+        m.setTags(TAGS);
+        hm = new HistogramMetric(m);
+    }
+
+    @Test
+    public void getObjectName_test() {
+        assertEquals("ArgusMetrics:type=Histogram,scope=test.scope,metric=test.name,host=localhost", hm.getObjectName());
+    }
+
+    @Test
+    public void computeNewSnapshotAndReset_testPercentiles() {
+        for (long value = 1; value <= 10000; value++) {
+            hm.record(value);
+        }
+
+        HistogramMetric.Snapshot snapshot = hm.computeNewSnapshotAndReset();
+
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000, snapshot.getMax());
+        _assertWithinPrecision(5000, snapshot.getP50());
+        _assertWithinPrecision(9000, snapshot.getP90());
+        _assertWithinPrecision(9900, snapshot.getP99());
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(63, snapshot.getValueAtPercentile(0.63));
+
+        // jmx reports the published snapshot
+        assertEquals(10000, hm.getCount());
+        assertEquals(snapshot.getP99(), hm.getValue(), 0.0);
+
+        HistogramMetric.Snapshot next = hm.computeNewSnapshotAndReset();
+
+        assertEquals(0, next.getCount());
+        assertEquals(0, next.getP99());
+        assertEquals(0, next.getMax());
+    }
+
+    @Test
+    public void record_testValuesOutOfRange() {
+        hm.record(-5);
+        hm.record(Long.MAX_VALUE);
+
+        HistogramMetric.Snapshot snapshot = hm.computeNewSnapshotAndReset();
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getP50());
+        assertEquals(HistogramMetric.HIGHEST_TRACKABLE_VALUE, snapshot.getMax());
+        assertEquals(HistogramMetric.HIGHEST_TRACKABLE_VALUE, snapshot.getP99());
+    }
+
+    @Test
+    public void record_testParallelRecords() throws Exception {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final int workerCount = 4;
+        final int iterations = 10000;
+        final Thread[] workers = new Thread[workerCount];
+
+        for (int i = 0; i < workers.length; i++) {
+            final long value = (i + 1) * 100;
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        gate.await();
+                        for (int j = 0; j < iterations; j++) {
+                            hm.record(value);
+                        }
+                    } catch (InterruptedException ex) {
+                        org.junit.Assert.fail("This should never happen.");
+                    }
+                }
+            });
+
+            thread.setDaemon(true);
+            thread.start();
+            workers[i] = thread;
+        }
+        gate.countDown();
+        for (Thread worker : workers) {
+            worker.join(1500);
+        }
+
+        HistogramMetric.Snapshot snapshot = hm.computeNewSnapshotAndReset();
+
+        assertEquals(workerCount * iterations, snapshot.getCount());
+        assertEquals(400, snapshot.getMax());
+        _assertWithinPrecision(200, snapshot.getP50());
+        _assertWithinPrecision(400, snapshot.getP90());
+    }
+
+    private static void _assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 32);
+    }
+}
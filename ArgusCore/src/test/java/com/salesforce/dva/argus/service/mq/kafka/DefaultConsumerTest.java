@@ -0,0 +1,142 @@
+package com.salesforce.dva.argus.service.mq.kafka;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.Annotation;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DefaultConsumerTest {
+
+    private static final String TOPIC = "argus-test";
+    private static final String METRIC_JSON = "{ \"scope\" : \"testscope\", \"metric\" : \"testmetric\", \"tags\" : { \"testtagkey\" : \"testtagvalue\" } }";
+
+    private ObjectMapper mapper;
+    private Producer producer;
+    private DefaultConsumer consumer;
+
+    @Before
+    public void setUp() {
+        mapper = new ObjectMapper();
+        producer = mock(Producer.class);
+    }
+
+    @After
+    public void tearDown() {
+        consumer.shutdown();
+    }
+
+    @Test
+    public void testDequeueDrainsBufferedMessagesInBatches() throws Exception {
+        consumer = _createConsumer(false);
+        for (int i = 0; i < 10; i++) {
+            consumer.bufferMessage(TOPIC, _bytes("message" + i));
+        }
+
+        List<String> first = consumer.dequeueFromBuffer(TOPIC, String.class, 100, 4);
+        List<String> rest = consumer.dequeueFromBuffer(TOPIC, String.class, 100, -1);
+
+        assertEquals(Arrays.asList("message0", "message1", "message2", "message3"), first);
+        assertEquals(Arrays.asList("message4", "message5", "message6", "message7", "message8", "message9"), rest);
+        assertTrue(consumer.dequeueFromBuffer(TOPIC, String.class, 10, -1).isEmpty());
+    }
+
+    @Test
+    public void testDeserializeOnPollUsesRequestedType() throws Exception {
+        consumer = _createConsumer(true);
+
+        JavaType metricType = mapper.getTypeFactory().constructType(Metric.class);
+
+        consumer.dequeueFromBuffer(TOPIC, Metric.class, 0, 1);
+        consumer.bufferMessage(TOPIC, _bytes(METRIC_JSON));
+        verify(consumer).deserialize(any(byte[].class), eq(metricType));
+
+        clearInvocations(consumer);
+
+        List<Metric> metrics = consumer.dequeueFromBuffer(TOPIC, Metric.class, 100, 1);
+
+        assertEquals(1, metrics.size());
+        assertEquals("testmetric", metrics.get(0).getMetric());
+        assertEquals("testtagvalue", metrics.get(0).getTag("testtagkey"));
+        verify(consumer, never()).deserialize(any(byte[].class), any(JavaType.class));
+    }
+
+    @Test
+    public void testDeserializeOnPollStopsWhenTopicIsDequeuedAsAnotherType() throws Exception {
+        consumer = _createConsumer(true);
+        consumer.dequeueFromBuffer(TOPIC, Metric.class, 0, 1);
+        consumer.dequeueFromBuffer(TOPIC, Annotation.class, 0, 1);
+        consumer.bufferMessage(TOPIC, _bytes(METRIC_JSON));
+        verify(consumer, never()).deserialize(any(byte[].class), any(JavaType.class));
+
+        List<Metric> metrics = consumer.dequeueFromBuffer(TOPIC, Metric.class, 100, 1);
+
+        assertEquals("testmetric", metrics.get(0).getMetric());
+        verify(consumer, times(1)).deserialize(any(byte[].class), any(JavaType.class));
+    }
+
+    @Test
+    public void testMessageDecodedOnPollIsDequeuedFromRawBytes() throws Exception {
+        consumer = _createConsumer(true);
+        consumer.dequeueFromBuffer(TOPIC, Metric.class, 0, 1);
+        consumer.bufferMessage(TOPIC, _bytes(METRIC_JSON));
+
+        assertEquals(Collections.singletonList(METRIC_JSON), consumer.dequeueFromBuffer(TOPIC, String.class, 100, 1));
+    }
+
+    @Test
+    public void testShutdownEnqueuesRawUnflushedMessages() throws Exception {
+        consumer = _createConsumer(true);
+        consumer.dequeueFromBuffer(TOPIC, Metric.class, 0, 1);
+        consumer.bufferMessage(TOPIC, _bytes(METRIC_JSON));
+        consumer.bufferMessage(TOPIC, _bytes("not json"));
+        consumer.shutdown();
+
+        verify(producer).enqueue(TOPIC, Arrays.asList(METRIC_JSON, "not json"));
+        verify(producer).shutdown();
+    }
+
+    @Test
+    public void testShutdownDoesNotEnqueueDequeuedMessages() throws Exception {
+        consumer = _createConsumer(false);
+        consumer.bufferMessage(TOPIC, _bytes("message"));
+        consumer.dequeueFromBuffer(TOPIC, String.class, 100, 1);
+        consumer.shutdown();
+
+        verify(producer, never()).enqueue(anyString(), anyList());
+    }
+
+    private DefaultConsumer _createConsumer(boolean deserializeOnPoll) {
+        DefaultConsumer consumer = spy(new DefaultConsumer(new SystemConfiguration(new Properties()), mapper, 100, deserializeOnPoll));
+
+        doReturn(producer).when(consumer).createProducer();
+        return consumer;
+    }
+
+    private static byte[] _bytes(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+}
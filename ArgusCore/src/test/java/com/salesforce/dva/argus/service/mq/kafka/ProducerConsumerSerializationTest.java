@@ -12,6 +12,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 
@@ -66,4 +70,18 @@ public class ProducerConsumerSerializationTest {
         assertEquals(m, result);
     }
 
+    @Test
+    public void serialize_deserializeBytes_testMetricList() throws Exception {
+        Metric m1 = new Metric("testscope", "testmetric1");
+        Metric m2 = new Metric("testscope", "testmetric2");
+        m1.setDatapoints(ImmutableMap.of(1549656000000L, 3.14));
+        m2.setTag("testtagkey", "testtagvalue");
+
+        ArrayList<Metric> metrics = new ArrayList<>(Arrays.asList(m1, m2));
+        byte[] bytes = producer.serialize(metrics).getBytes(StandardCharsets.UTF_8);
+        List<Metric> result = consumer.deserialize(bytes, mapper.getTypeFactory().constructCollectionType(ArrayList.class, Metric.class));
+
+        assertEquals(metrics, result);
+    }
+
 }
@@ -78,6 +78,26 @@ public class AbstractSchemaServiceTest {
 		assertEquals(scopesCreatedCount, 0);
 	}
 
+	@Test
+	public void testPutEverythingCachedWithSeenIndex() {
+		Properties config = new Properties();
+		config.put(AbstractSchemaService.Property.SEEN_INDEX_ENABLED.getName(), "true");
+		ElasticSearchSchemaService service = new ElasticSearchSchemaService(new SystemConfiguration(config), mock(MonitorService.class),
+				mock(ElasticSearchUtils.class));
+		List<Metric> metrics = TestUtils.createRandomMetrics(myClassName, "test-scope", "test-metric", 10);
+
+		ElasticSearchSchemaService spyService = _initializeSpyService(service);
+
+		spyService.put(metrics);
+		assertEquals(metricsCreatedCount, metrics.size());
+
+		initCounters();
+		spyService.put(metrics);
+		assertEquals(metricsCreatedCount, 0);
+		assertEquals(scopesCreatedCount, 0);
+		service.dispose();
+	}
+
 	@Test
 	public void testPutPartialCached() {
 		List<Metric> metrics = TestUtils.createRandomMetrics(myClassName, "test-scope", "test-metric", 10);
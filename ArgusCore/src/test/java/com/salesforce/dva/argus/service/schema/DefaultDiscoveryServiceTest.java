@@ -46,8 +46,10 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -86,6 +88,7 @@ public class DefaultDiscoveryServiceTest {
     public void testWildcardQueriesMatchWithinLimit() {
 
     	SchemaService schemaServiceMock = mock(SchemaService.class);
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenCallRealMethod();
         List<MetricSchemaRecord> records = new ArrayList<>();
         records.add(new MetricSchemaRecord(null, "scope0", "metric0", "source", "unittest"));
         records.add(new MetricSchemaRecord(null, "scope1", "metric1", "source", "unittest"));
@@ -114,6 +117,7 @@ public class DefaultDiscoveryServiceTest {
     public void testWildcardQueriesMatchMultipleTags() {
 
     	SchemaService schemaServiceMock = mock(SchemaService.class);
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenCallRealMethod();
 
         MetricSchemaRecordQuery queryForTag1 = new MetricSchemaRecordQueryBuilder().scope("scope0")
 																        		   .metric("metric0")
@@ -158,6 +162,7 @@ public class DefaultDiscoveryServiceTest {
     public void testWildcardQueriesMatchMultipleTags1() {
 
     	SchemaService schemaServiceMock = mock(SchemaService.class);
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenCallRealMethod();
 
         MetricSchemaRecordQuery queryForTag1 = new MetricSchemaRecordQueryBuilder().scope("scope0")
 																	     		   .metric("metric0")
@@ -194,6 +199,7 @@ public class DefaultDiscoveryServiceTest {
     public void testWildcardQueriesMatchExceedingLimit() {
 
     	SchemaService schemaServiceMock = mock(SchemaService.class);
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenCallRealMethod();
         List<MetricSchemaRecord> records = new ArrayList<>();
         records.add(new MetricSchemaRecord(null, "scope", "metric0", "source", "unittest"));
         records.add(new MetricSchemaRecord(null, "scope", "metric1", "source", "unittest"));
@@ -237,10 +243,42 @@ public class DefaultDiscoveryServiceTest {
         assertEquals(30, queries.size());
     }
 
+    @Test
+    public void testWildcardQueriesStopReadingRecordsAtLimit() {
+
+        SchemaService schemaServiceMock = mock(SchemaService.class);
+        AtomicInteger consumed = new AtomicInteger();
+        Iterator<MetricSchemaRecord> records = new Iterator<MetricSchemaRecord>() {
+
+            @Override
+            public boolean hasNext() {
+                return consumed.get() < 100000;
+            }
+
+            @Override
+            public MetricSchemaRecord next() {
+                return new MetricSchemaRecord(null, "scope", "metric" + consumed.getAndIncrement(), "source", "unittest");
+            }
+        };
+
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenReturn(records);
+        DefaultDiscoveryService discoveryService = new DefaultDiscoveryService(schemaServiceMock, system.getConfiguration(), monitorService);
+
+        MetricQuery query = new MetricQuery("scope", "metric*", null, System.currentTimeMillis() - (250 * 24 * 60 * 60 * 1000L), System.currentTimeMillis());
+        try {
+            discoveryService.getMatchingQueries(query);
+            fail("Expected the wildcard expansion limit to be exceeded.");
+        } catch (WildcardExpansionLimitExceededException ex) {
+            assertTrue(consumed.get() < 100);
+        }
+        verify(schemaServiceMock, never()).get(any(MetricSchemaRecordQuery.class));
+    }
+
     @Test
     public void testWildcardQueriesMatchWithDownsampling() {
 
     	SchemaService schemaServiceMock = mock(SchemaService.class);
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenCallRealMethod();
         List<MetricSchemaRecord> records = new ArrayList<>();
         records.add(new MetricSchemaRecord(null, "scope", "metric0", "source", "unittest"));
         records.add(new MetricSchemaRecord(null, "scope", "metric1", "source", "unittest"));
@@ -290,6 +328,7 @@ public class DefaultDiscoveryServiceTest {
     public void testWildcardQueriesNoMatch() {
 
     	SchemaService schemaServiceMock = mock(SchemaService.class);
+        when(schemaServiceMock.getIterator(any(MetricSchemaRecordQuery.class))).thenCallRealMethod();
         List<MetricSchemaRecord> records = new ArrayList<>();
         when(schemaServiceMock.get(any(MetricSchemaRecordQuery.class))).thenReturn(records);
         DefaultDiscoveryService discoveryService = new DefaultDiscoveryService(schemaServiceMock, system.getConfiguration(), monitorService);
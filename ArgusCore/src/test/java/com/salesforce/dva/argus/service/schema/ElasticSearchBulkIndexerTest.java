@@ -0,0 +1,165 @@
+package com.salesforce.dva.argus.service.schema;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.MetricSchemaRecord;
+import com.salesforce.dva.argus.service.schema.ElasticSearchBulkIndexer.BulkIndexResult;
+import com.salesforce.dva.argus.service.schema.MetricSchemaRecordList.HashAlgorithm;
+import com.salesforce.dva.argus.system.SystemException;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ElasticSearchBulkIndexerTest {
+
+    private static final ObjectMapper MAPPER = ElasticSearchSchemaService._getMetadataObjectMapper(new MetricSchemaRecordList.IndexSerializer());
+
+    private ElasticSearchBulkIndexer _indexer;
+
+    @Before
+    public void setUp() {
+        _indexer = new ElasticSearchBulkIndexer(2, 1024, 3, 1);
+    }
+
+    @After
+    public void tearDown() {
+        _indexer.shutdown();
+    }
+
+    @Test
+    public void testBatchesAreCutBySize() {
+        MetricSchemaRecordList records = _createRecords(50);
+        List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+
+        BulkIndexResult<MetricSchemaRecord> result = _indexer.submit("metadata_index", "metadata_type", records, MAPPER, (url, entity) -> {
+            assertEquals("/metadata_index/metadata_type/_bulk", url);
+            bodies.add(EntityUtils.toString(entity));
+            return _response(Collections.emptyList(), Collections.emptyList());
+        });
+
+        assertTrue(result.await().isEmpty());
+        assertTrue(result.getBatchCount() > 1);
+        assertEquals(result.getBatchCount(), bodies.size());
+
+        int lines = 0;
+        for (String body : bodies) {
+            assertTrue(body.length() <= 1024);
+            assertTrue(body.endsWith("\n"));
+            lines += body.split("\n").length;
+        }
+        assertEquals(100, lines);
+    }
+
+    @Test
+    public void testOnlyRejectedItemsAreRetried() {
+        MetricSchemaRecordList records = _createRecords(5);
+        List<String> ids = new ArrayList<>(records.getIdSet());
+        String rejectedId = ids.get(0);
+        AtomicInteger requests = new AtomicInteger();
+
+        BulkIndexResult<MetricSchemaRecord> result = _indexer.submit("metadata_index", "metadata_type", records, MAPPER, (url, entity) -> {
+            String body = EntityUtils.toString(entity);
+            if (requests.incrementAndGet() == 1) {
+                assertEquals(10, body.split("\n").length);
+                return _response(Collections.singletonList(rejectedId), Collections.emptyList());
+            }
+            assertEquals(2, body.split("\n").length);
+            assertTrue(body.contains(rejectedId));
+            return _response(Collections.emptyList(), Collections.emptyList());
+        });
+
+        assertTrue(result.await().isEmpty());
+        assertEquals(2, requests.get());
+        assertEquals(1, result.getRejectedCount());
+    }
+
+    @Test
+    public void testFailedAndExhaustedItemsAreReported() {
+        MetricSchemaRecordList records = _createRecords(3);
+        List<String> ids = new ArrayList<>(records.getIdSet());
+        AtomicInteger requests = new AtomicInteger();
+
+        BulkIndexResult<MetricSchemaRecord> result = _indexer.submit("metadata_index", "metadata_type", records, MAPPER, (url, entity) -> {
+            if (requests.incrementAndGet() == 1) {
+                return _response(Collections.singletonList(ids.get(0)), Collections.singletonList(ids.get(1)));
+            }
+            return _response(Collections.singletonList(ids.get(0)), Collections.emptyList());
+        });
+
+        Set<MetricSchemaRecord> failed = result.await();
+
+        assertEquals(4, requests.get());
+        assertEquals(2, failed.size());
+        assertTrue(failed.contains(records.getRecord(ids.get(0))));
+        assertTrue(failed.contains(records.getRecord(ids.get(1))));
+    }
+
+    @Test
+    public void testBackoffDoesNotHoldWorkers() {
+        ElasticSearchBulkIndexer indexer = new ElasticSearchBulkIndexer(1, 1024, 3, 200);
+        MetricSchemaRecordList records = _createRecords(50);
+        List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            BulkIndexResult<MetricSchemaRecord> result = indexer.submit("metadata_index", "metadata_type", records, MAPPER, (url, entity) -> {
+                String body = EntityUtils.toString(entity);
+                bodies.add(body);
+                if (bodies.size() == 1) {
+                    Matcher matcher = Pattern.compile("\"_id\" : \"([^\"]+)\"").matcher(body);
+                    assertTrue(matcher.find());
+                    return _response(Collections.singletonList(matcher.group(1)), Collections.emptyList());
+                }
+                return _response(Collections.emptyList(), Collections.emptyList());
+            });
+
+            assertTrue(result.await().isEmpty());
+            assertEquals(result.getBatchCount() + 1, bodies.size());
+            assertEquals(2, bodies.get(bodies.size() - 1).split("\n").length);
+            assertTrue(result.getCompletedAt() - result.getSubmittedAt() >= 200);
+        } finally {
+            indexer.shutdown();
+        }
+    }
+
+    @Test(expected = SystemException.class)
+    public void testRequestFailureSurfaces() {
+        _indexer.submit("metadata_index", "metadata_type", _createRecords(3), MAPPER, (url, entity) -> {
+            throw new IOException("connection refused");
+        }).await();
+    }
+
+    private MetricSchemaRecordList _createRecords(int count) {
+        Set<MetricSchemaRecord> records = new HashSet<>();
+
+        for (int i = 0; i < count; i++) {
+            records.add(new MetricSchemaRecord(null, "scope" + i, "metric" + i, "tagk", "tagv" + i));
+        }
+        return new MetricSchemaRecordList(records, HashAlgorithm.MD5);
+    }
+
+    private String _response(List<String> rejectedIds, List<String> failedIds) {
+        StringBuilder sb = new StringBuilder("{\"took\":1,\"errors\":").append(!rejectedIds.isEmpty() || !failedIds.isEmpty()).append(",\"items\":[");
+        List<String> items = new ArrayList<>();
+
+        for (String id : rejectedIds) {
+            items.add("{\"index\":{\"_id\":\"" + id + "\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\"}}}");
+        }
+        for (String id : failedIds) {
+            items.add("{\"index\":{\"_id\":\"" + id + "\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\"}}}");
+        }
+        return sb.append(String.join(",", items)).append("]}").toString();
+    }
+}
@@ -33,6 +33,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -365,6 +366,56 @@ public class ElasticSearchSchemaServiceTest {
     }
 
 
+    @Test
+    public void testGetIteratorWithSearchAfter() throws IOException {
+        String hit = "{\"_index\":\"metadata_index\",\"_type\":\"metadata_type\",\"_id\":\"%s\",\"_score\":null,"
+                + "\"_source\":{\"scope\":\"system\",\"metric\":\"%s\",\"tagk\":\"host\",\"tagv\":\"h1\"},\"sort\":[\"system\",\"%s\",\"host\",\"h1\",null]}";
+        String page = "{\"took\":1,\"timed_out\":false,\"hits\":{\"total\":3,\"max_score\":null,\"hits\":[%s]}}";
+        String[] replies = new String[] {
+                String.format(page, String.format(hit, "1", "m1", "m1") + "," + String.format(hit, "2", "m2", "m2")),
+                String.format(page, String.format(hit, "3", "m3", "m3"))
+        };
+        Properties config = new Properties();
+        config.put(ElasticSearchSchemaService.Property.ELASTICSEARCH_SEARCH_AFTER_ENABLED.getName(), "true");
+        config.put(ElasticSearchSchemaService.Property.ELASTICSEARCH_SEARCH_AFTER_PAGE_SIZE.getName(), "2");
+        ElasticSearchSchemaService service = spy(new ElasticSearchSchemaService(new SystemConfiguration(config), mock(MonitorService.class),
+                mock(ElasticSearchUtils.class)));
+        ObjectMapper mapper = new ObjectMapper();
+        AtomicInteger callCount = new AtomicInteger();
+        restClient = mock(RestClient.class);
+        service.setRestClient(restClient);
+        doAnswer(invocation -> {
+            Request request = invocation.getArgument(0, Request.class);
+            JsonNode tree = mapper.readTree(EntityUtils.toString(request.getEntity()));
+            assertFalse(request.getEndpoint().contains("scroll"));
+            assertEquals(2, tree.get("size").asInt());
+            assertEquals(5, tree.get("sort").size());
+            if (callCount.get() == 0) {
+                assertNull(tree.get("search_after"));
+            } else {
+                assertEquals("m2", tree.get("search_after").get(1).asText());
+            }
+            return null;
+        }).when(restClient).performRequest(any(Request.class));
+        doAnswer(invocation -> replies[callCount.getAndIncrement()]).when(service).extractResponse(any());
+        MetricSchemaRecordQuery query = new MetricSchemaRecordQuery.MetricSchemaRecordQueryBuilder().scope("system*")
+                .metric("*")
+                .tagKey("*")
+                .tagValue("*")
+                .namespace("*")
+                .limit(0)
+                .build();
+
+        Iterator<MetricSchemaRecord> records = service.getIterator(query);
+        assertEquals("m1", records.next().getMetric());
+        verify(restClient, times(1)).performRequest(any(Request.class));
+        assertEquals("m2", records.next().getMetric());
+        assertEquals("m3", records.next().getMetric());
+        assertFalse(records.hasNext());
+        verify(restClient, times(2)).performRequest(any(Request.class));
+        service.dispose();
+    }
+
     @Test
     public void testGetUniqueUsingScopeSchemaIndex() throws IOException {
 
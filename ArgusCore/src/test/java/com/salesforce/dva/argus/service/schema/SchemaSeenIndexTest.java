@@ -0,0 +1,69 @@
+package com.salesforce.dva.argus.service.schema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaSeenIndexTest {
+
+	private static final long WINDOW = 1000L;
+
+	@Test
+	public void testKeysAgeOutWithTheirWindow() {
+		SchemaSeenIndex index = new SchemaSeenIndex(WINDOW, 3);
+
+		index.put("first", 0);
+		index.put("second", WINDOW);
+		assertTrue(index.contains("first", 2 * WINDOW));
+		assertTrue(index.contains("second", 2 * WINDOW));
+		assertFalse(index.contains("third", 2 * WINDOW));
+
+		// The window of the first key rotates out, the second key is still remembered.
+		assertFalse(index.contains("first", 3 * WINDOW));
+		assertTrue(index.contains("second", 3 * WINDOW));
+		index.put("third", 3 * WINDOW);
+		assertFalse(index.contains("first", 3 * WINDOW));
+		assertTrue(index.contains("third", 3 * WINDOW));
+		assertFalse(index.contains("second", 4 * WINDOW));
+	}
+
+	@Test
+	public void testSetsGrowAndClear() {
+		SchemaSeenIndex index = new SchemaSeenIndex(WINDOW, 2);
+
+		for (int i = 0; i < 10000; i++) {
+			index.put("key" + i, 0);
+			index.put("key" + i, 0);
+		}
+		assertEquals(10000, index.size());
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(index.contains("key" + i, WINDOW));
+		}
+		index.clear();
+		assertEquals(0, index.size());
+		assertFalse(index.contains("key1", WINDOW));
+	}
+
+	@Test
+	public void testKeysIndexedTogetherExpireSpreadOverAWindow() {
+		SchemaSeenIndex index = new SchemaSeenIndex(WINDOW, 3);
+		int keys = 1000;
+
+		for (int i = 0; i < keys; i++) {
+			index.put("key" + i, 0);
+		}
+
+		int seen = 0;
+
+		for (int i = 0; i < keys; i++) {
+			assertTrue(index.contains("key" + i, 2 * WINDOW - 1));
+			if (index.contains("key" + i, 2 * WINDOW + WINDOW / 2)) {
+				seen++;
+			}
+			assertFalse(index.contains("key" + i, 3 * WINDOW));
+		}
+		assertTrue(seen > keys / 4 && seen < keys * 3 / 4);
+	}
+}
@@ -1,9 +1,17 @@
 package com.salesforce.dva.argus.service.tsdb;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -13,10 +21,12 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -24,6 +34,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
@@ -39,6 +50,7 @@ import org.mockito.stubbing.Answer;
 import com.salesforce.dva.argus.entity.Annotation;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemException;
 
 import org.junit.BeforeClass;
@@ -283,6 +295,150 @@ public class AbstractTSDBServiceTest {
         verify(spyService, times(1)).executeHttpRequest(any(), urlCaptor.capture(), any(), contentCaptor.capture());
     }
 
+    @Test
+    public void testAsyncPutAndGetMetrics() {
+        WireMockServer mockServer = new WireMockServer(wireMockConfig().dynamicPort());
+        mockServer.start();
+        try {
+            String endpoint = "http://localhost:" + mockServer.port();
+            Properties props = new Properties();
+
+            props.putAll(system.getConfiguration());
+            props.setProperty(AbstractTSDBService.Property.TSD_ASYNC_IO_ENABLED.getName(), "true");
+            props.setProperty(AbstractTSDBService.Property.TSD_ENDPOINT_READ.getName(), endpoint);
+            props.setProperty(AbstractTSDBService.Property.TSD_ENDPOINT_BACKUP_READ.getName(), "");
+            props.setProperty(AbstractTSDBService.Property.TSD_ENDPOINT_WRITE.getName(), endpoint);
+            mockServer.stubFor(post(urlEqualTo("/api/put")).willReturn(aResponse().withStatus(204)));
+            mockServer.stubFor(post(urlEqualTo("/api/query")).willReturn(aResponse().withStatus(200).withBody(
+                    "[{\"metric\":\"metric-__-scope\",\"tags\":{\"host\":\"host1\"},\"aggregateTags\":[],\"tsuids\":[\"000001\"],\"dps\":{\"1477386300\":1.0}}]")));
+
+            DefaultTSDBService service = new DefaultTSDBService(new SystemConfiguration(props), mock(MonitorService.class));
+            try {
+                List<Metric> metrics = new ArrayList<>();
+
+                for (int i = 0; i < 120; i++) {
+                    Metric metric = new Metric("scope", "metric" + i);
+
+                    metric.setDatapoints(ImmutableMap.of(1477386300000L, 1.0));
+                    metrics.add(metric);
+                }
+                service.putMetrics(metrics);
+                mockServer.verify(3, postRequestedFor(urlEqualTo("/api/put")).withHeader("Content-Type", containing("application/json")));
+
+                List<MetricQuery> queries = new ArrayList<>();
+
+                for (int i = 0; i < 10; i++) {
+                    queries.add(new MetricQuery("scope", "metric", null, 1477386300000L - i, 1477386400000L));
+                }
+
+                Map<MetricQuery, List<Metric>> result = service.getMetrics(queries);
+
+                assertEquals(queries.size(), result.size());
+                for (List<Metric> m : result.values()) {
+                    assertEquals(1, m.size());
+                    assertEquals("scope", m.get(0).getScope());
+                }
+            } finally {
+                service.dispose();
+            }
+        } finally {
+            mockServer.stop();
+        }
+    }
+
+    @Test
+    public void testGetMetricsSplitsLongQueriesIntoChunks() {
+        WireMockServer mockServer = new WireMockServer(wireMockConfig().dynamicPort());
+        mockServer.start();
+        try {
+            String endpoint = "http://localhost:" + mockServer.port();
+            Properties props = new Properties();
+
+            props.putAll(system.getConfiguration());
+            props.setProperty(AbstractTSDBService.Property.TSD_QUERY_CHUNKING_ENABLED.getName(), "true");
+            props.setProperty(AbstractTSDBService.Property.TSD_QUERY_CHUNK_TARGET_SAMPLES.getName(), "24");
+            props.setProperty(AbstractTSDBService.Property.TSD_ENDPOINT_READ.getName(), endpoint);
+            props.setProperty(AbstractTSDBService.Property.TSD_ENDPOINT_BACKUP_READ.getName(), "");
+            mockServer.stubFor(post(urlEqualTo("/api/query")).willReturn(aResponse().withStatus(200).withBody(
+                    "[{\"metric\":\"metric-__-scope\",\"tags\":{\"host\":\"host1\"},\"aggregateTags\":[],\"tsuids\":[\"000001\"],\"dps\":{\"1477386300000\":1.0}}]")));
+
+            DefaultTSDBService service = new DefaultTSDBService(new SystemConfiguration(props), mock(MonitorService.class));
+            try {
+                long start = 1477267200000L; // aligned to a day
+                MetricQuery query = new MetricQuery("scope", "metric", null, start, start + 3 * 86400000L - 1);
+
+                query.setAggregator(MetricQuery.Aggregator.NONE);
+                query.setDownsampler(MetricQuery.Aggregator.AVG);
+                query.setDownsamplingPeriod(3600000L);
+
+                List<Metric> metrics = service.getMetrics(Collections.singletonList(query)).get(query);
+
+                // one request per day, and the data point is only kept from the chunk covering it
+                mockServer.verify(3, postRequestedFor(urlEqualTo("/api/query")));
+                assertEquals(1, metrics.size());
+                assertEquals(ImmutableMap.of(1477386300000L, 1.0), metrics.get(0).getDatapoints());
+                assertEquals(query, metrics.get(0).getQuery());
+            } finally {
+                service.dispose();
+            }
+        } finally {
+            mockServer.stop();
+        }
+    }
+
+    @Test(expected = SystemException.class)
+    public void testAsyncPutFailureSurfaces() {
+        WireMockServer mockServer = new WireMockServer(wireMockConfig().dynamicPort());
+        mockServer.start();
+        try {
+            String endpoint = "http://localhost:" + mockServer.port();
+            Properties props = new Properties();
+
+            props.putAll(system.getConfiguration());
+            props.setProperty(AbstractTSDBService.Property.TSD_ASYNC_IO_ENABLED.getName(), "true");
+            props.setProperty(AbstractTSDBService.Property.TSD_ENDPOINT_WRITE.getName(), endpoint);
+            mockServer.stubFor(post(urlEqualTo("/api/put")).willReturn(aResponse().withStatus(500).withBody("{\"error\":{\"code\":\"500\"}}")));
+
+            DefaultTSDBService service = new DefaultTSDBService(new SystemConfiguration(props), mock(MonitorService.class));
+            try {
+                Metric metric = new Metric("scope", "metric");
+
+                metric.setDatapoints(ImmutableMap.of(1477386300000L, 1.0));
+                service.putMetrics(Collections.singletonList(metric));
+            } finally {
+                service.dispose();
+            }
+        } finally {
+            mockServer.stop();
+        }
+    }
+
+    @Test
+    public void testSyncPutStopsSendingChunksToFailedEndpoint() throws IOException {
+        DefaultTSDBService service = new DefaultTSDBService(system.getConfiguration(), system.getServiceFactory().getMonitorService());
+        AbstractTSDBService spyService = _initializeSpyService(service);
+        List<Metric> metrics = new ArrayList<>();
+
+        doThrow(new IOException("connect timed out")).when(spyService).executeHttpRequest(any(), any(), any(), any());
+        for (int i = 0; i < 120; i++) {
+            Metric metric = new Metric("scope", "metric" + i);
+
+            metric.setDatapoints(ImmutableMap.of(1477386300000L, 1.0));
+            metrics.add(metric);
+        }
+        try {
+            spyService.putMetrics(metrics);
+            fail("Expected the put to fail");
+        } catch (SystemException ex) {
+            int retries = Integer.parseInt(AbstractTSDBService.Property.TSD_RETRY_COUNT.getDefaultValue());
+
+            // One request to the first endpoint and one per retry, although the metrics are split into three chunks
+            verify(spyService, times(1 + retries)).executeHttpRequest(any(), any(), any(), any());
+        } finally {
+            service.dispose();
+        }
+    }
+
     private AnnotationQuery toQuery(Annotation annotation) {
         String scope = annotation.getScope();
         String metric = annotation.getMetric();
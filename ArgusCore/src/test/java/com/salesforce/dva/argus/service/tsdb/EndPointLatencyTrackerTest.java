@@ -0,0 +1,91 @@
+package com.salesforce.dva.argus.service.tsdb;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EndPointLatencyTrackerTest {
+
+	private static final String END_POINT = "http://localhost:4466";
+
+	@Test
+	public void testNoHedgeDelayBeforeMinSamples() {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(95, 10, 5, 30000);
+
+		assertEquals(-1, tracker.getHedgeDelayMillis(END_POINT));
+		for (int i = 0; i < EndPointLatencyTracker.MIN_SAMPLES - 1; i++) {
+			tracker.recordSuccess(END_POINT, 100);
+		}
+		assertEquals(-1, tracker.getHedgeDelayMillis(END_POINT));
+		tracker.recordSuccess(END_POINT, 100);
+		assertEquals(100, tracker.getHedgeDelayMillis(END_POINT));
+	}
+
+	@Test
+	public void testHedgeDelayTracksPercentile() {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(95, 10, 5, 30000);
+
+		for (int i = 1; i <= 100; i++) {
+			tracker.recordSuccess(END_POINT, i);
+		}
+		assertEquals(95, tracker.getHedgeDelayMillis(END_POINT));
+		assertEquals(50, tracker.getLatencyPercentile(END_POINT, 50));
+		assertEquals(100, tracker.getLatencyPercentile(END_POINT, 100));
+	}
+
+	@Test
+	public void testHedgeDelayRespectsMinimum() {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(95, 50, 5, 30000);
+
+		for (int i = 0; i < EndPointLatencyTracker.MIN_SAMPLES; i++) {
+			tracker.recordSuccess(END_POINT, 1);
+		}
+		assertEquals(50, tracker.getHedgeDelayMillis(END_POINT));
+	}
+
+	@Test
+	public void testSampleWindowEvictsOldLatencies() {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(100, 0, 5, 30000);
+
+		for (int i = 0; i < EndPointLatencyTracker.SAMPLE_WINDOW; i++) {
+			tracker.recordSuccess(END_POINT, 1000);
+		}
+		for (int i = 0; i < EndPointLatencyTracker.SAMPLE_WINDOW; i++) {
+			tracker.recordSuccess(END_POINT, 10);
+		}
+		assertEquals(10, tracker.getHedgeDelayMillis(END_POINT));
+	}
+
+	@Test
+	public void testCircuitOpensAfterConsecutiveFailures() {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(95, 10, 3, 30000);
+
+		tracker.recordFailure(END_POINT);
+		tracker.recordFailure(END_POINT);
+		assertFalse(tracker.isCircuitOpen(END_POINT));
+		tracker.recordFailure(END_POINT);
+		assertTrue(tracker.isCircuitOpen(END_POINT));
+		tracker.recordSuccess(END_POINT, 10);
+		assertFalse(tracker.isCircuitOpen(END_POINT));
+	}
+
+	@Test
+	public void testSuccessResetsFailureCount() {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(95, 10, 2, 30000);
+
+		tracker.recordFailure(END_POINT);
+		tracker.recordSuccess(END_POINT, 10);
+		tracker.recordFailure(END_POINT);
+		assertFalse(tracker.isCircuitOpen(END_POINT));
+	}
+
+	@Test
+	public void testCircuitClosesAfterOpenInterval() throws InterruptedException {
+		EndPointLatencyTracker tracker = new EndPointLatencyTracker(95, 10, 1, 20);
+
+		tracker.recordFailure(END_POINT);
+		assertTrue(tracker.isCircuitOpen(END_POINT));
+		Thread.sleep(50);
+		assertFalse(tracker.isCircuitOpen(END_POINT));
+	}
+}
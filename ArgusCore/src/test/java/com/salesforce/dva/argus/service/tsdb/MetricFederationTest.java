@@ -37,6 +37,8 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -281,6 +283,107 @@ public class MetricFederationTest {
 		assertEquals("{1477386300=7.0, 1477386500=6.0, 1477386600=7.0}", queryMetricsMap.get(queries.get(0)).get(0).getDatapoints().toString());
 	}
 
+	@Test
+	public void testChunkedTimeFederationAlignsChunksToDownsamplingPeriod() {
+		long day = 86400000L;
+		MetricQuery query = _getDownsampledQuery(1500000000123L, 1500000000123L + 30 * day, 60000L);
+
+		ChunkedTimeQueryFederation queryFederation = new ChunkedTimeQueryFederation(1440, 1000000, 32);
+		List<MetricQuery> chunks = queryFederation.federateQueries(Collections.singletonList(query)).get(query);
+
+		assertEquals(31, chunks.size());
+		assertEquals(query.getStartTimestamp(), chunks.get(0).getStartTimestamp());
+		assertEquals(query.getEndTimestamp(), chunks.get(chunks.size() - 1).getEndTimestamp());
+		for (int i = 1; i < chunks.size(); i++) {
+			assertEquals(0, chunks.get(i).getStartTimestamp() % day);
+			assertEquals(chunks.get(i).getStartTimestamp() - 1, (long) chunks.get(i - 1).getEndTimestamp());
+		}
+	}
+
+	@Test
+	public void testChunkedTimeFederationDoesNotSplitShortOrRawQueries() {
+		ChunkedTimeQueryFederation queryFederation = new ChunkedTimeQueryFederation(1440, 1000000, 32);
+		MetricQuery shortQuery = _getDownsampledQuery(1500000000000L, 1500000000000L + 43200000L, 60000L);
+		MetricQuery rawQuery = new MetricQuery("scope", "metric", null, 1500000000000L, 1500000000000L + 30 * 86400000L);
+
+		Map<MetricQuery, List<MetricQuery>> chunks = queryFederation.federateQueries(Arrays.asList(shortQuery, rawQuery));
+
+		assertEquals(Collections.singletonList(shortQuery), chunks.get(shortQuery));
+		assertEquals(Collections.singletonList(rawQuery), chunks.get(rawQuery));
+	}
+
+	@Test
+	public void testChunkedTimeFederationAdaptsToResponseSize() {
+		long day = 86400000L;
+		MetricQuery query = _getDownsampledQuery(1500000000000L, 1500000000000L + 7 * day, 60000L);
+		ChunkedTimeQueryFederation queryFederation = new ChunkedTimeQueryFederation(1440, 1000000, 32);
+
+		assertEquals(day, queryFederation.getChunkMillis(query));
+
+		// 1000 series at one sample per minute, so a chunk may only span 1000 minutes
+		queryFederation.recordResponseSize(query, 1000 * 7 * 1440);
+		assertEquals(1000 * 60000L, queryFederation.getChunkMillis(query));
+
+		// the number of chunks is bounded
+		queryFederation.recordResponseSize(query, 100000 * 7 * 1440L);
+		assertEquals(7 * day / 32, queryFederation.getChunkMillis(query));
+
+		// the chunk size never drops below the minimum
+		MetricQuery shortQuery = _getDownsampledQuery(1500000000000L, 1500000000000L + day, 60000L);
+
+		queryFederation.recordResponseSize(shortQuery, 100000 * 1440L);
+		assertEquals(ChunkedTimeQueryFederation.MIN_CHUNK_MILLIS, queryFederation.getChunkMillis(shortQuery));
+	}
+
+	@Test
+	public void testChunkedTimeFederationJoinDropsPartialBuckets() {
+		long hour = 3600000L;
+		long start = 1500076800000L; // aligned to a day
+		MetricQuery query = _getDownsampledQuery(start, start + 48 * hour, hour);
+		ChunkedTimeQueryFederation queryFederation = new ChunkedTimeQueryFederation(24, 1000000, 32);
+		Map<MetricQuery, List<MetricQuery>> mapQuerySubQueries = queryFederation.federateQueries(Collections.singletonList(query));
+		List<MetricQuery> subQueries = mapQuerySubQueries.get(query);
+
+		assertEquals(3, subQueries.size());
+
+		Map<MetricQuery, List<Metric>> subQueryMetricsMap = new HashMap<>();
+
+		subQueryMetricsMap.put(subQueries.get(0), Arrays.asList(_getMetric("a", start, 1.0, start + 23 * hour, 2.0, start + 24 * hour, 99.0),
+				_getMetric("b", start, 5.0)));
+		subQueryMetricsMap.put(subQueries.get(1), Arrays.asList(_getMetric("a", start + 23 * hour, 99.0, start + 24 * hour, 3.0, start + 48 * hour,
+				99.0)));
+		subQueryMetricsMap.put(subQueries.get(2), Arrays.asList(_getMetric("a", start + 47 * hour, 99.0, start + 48 * hour, 4.0),
+				_getMetric("b", start + 48 * hour, 6.0)));
+
+		List<Metric> metrics = queryFederation.join(mapQuerySubQueries, subQueryMetricsMap).get(query);
+
+		assertEquals(2, metrics.size());
+		assertEquals("{host=a}", metrics.get(0).getTags().toString());
+		assertEquals("{" + start + "=1.0, " + (start + 23 * hour) + "=2.0, " + (start + 24 * hour) + "=3.0, " + (start + 48 * hour) + "=4.0}",
+				metrics.get(0).getDatapoints().toString());
+		assertEquals("{" + start + "=5.0, " + (start + 48 * hour) + "=6.0}", metrics.get(1).getDatapoints().toString());
+		assertEquals(query, metrics.get(1).getQuery());
+	}
+
+	private static MetricQuery _getDownsampledQuery(long start, long end, long period) {
+		MetricQuery query = new MetricQuery("scope", "metric", null, start, end);
+
+		query.setAggregator(MetricQuery.Aggregator.SUM);
+		query.setDownsampler(MetricQuery.Aggregator.AVG);
+		query.setDownsamplingPeriod(period);
+		return query;
+	}
+
+	private static Metric _getMetric(String host, Object... datapoints) {
+		Metric metric = new Metric("scope", "metric");
+
+		metric.setTag("host", host);
+		for (int i = 0; i < datapoints.length; i += 2) {
+			metric.addDatapoint((Long) datapoints[i], (Double) datapoints[i + 1]);
+		}
+		return metric;
+	}
+
 	private  List<Metric> getMetricsFromMetricString(String content){
 		List<Metric> metrics = null;
 		try {
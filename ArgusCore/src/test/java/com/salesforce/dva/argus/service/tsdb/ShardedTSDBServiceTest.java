@@ -0,0 +1,170 @@
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.tsdb.AbstractTSDBService.Property;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class ShardedTSDBServiceTest {
+
+	private static final String PRIMARY = "http://primary:4466";
+	private static final String BACKUP = "http://backup:4466";
+
+	private MonitorService _monitorService;
+	private ShardedTSDBService _service;
+
+	@Before
+	public void setUp() {
+		_monitorService = mock(MonitorService.class);
+	}
+
+	@After
+	public void tearDown() {
+		if (_service != null) {
+			_service.dispose();
+		}
+	}
+
+	@Test
+	public void testPrimaryWins() throws Exception {
+		ShardedTSDBService service = _createService(true);
+		List<Metric> primary = _metrics("primary");
+
+		_primeHedgeDelay(service);
+		doReturn(CompletableFuture.completedFuture(primary)).when(service).read(eq(PRIMARY), anyString());
+
+		assertEquals(primary, service.readSubQuery(_query()).get(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		verify(service, never()).read(eq(BACKUP), anyString());
+	}
+
+	@Test
+	public void testHedgeWinsAfterDelay() throws Exception {
+		ShardedTSDBService service = _createService(true);
+		List<Metric> backup = _metrics("backup");
+
+		_primeHedgeDelay(service);
+		doReturn(new CompletableFuture<List<Metric>>()).when(service).read(eq(PRIMARY), anyString());
+		doReturn(CompletableFuture.completedFuture(backup)).when(service).read(eq(BACKUP), anyString());
+
+		long start = System.currentTimeMillis();
+
+		assertEquals(backup, service.readSubQuery(_query()).get(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 20);
+		verify(_monitorService).modifyCustomCounter(eq("query.hedged"), anyDouble(), any());
+	}
+
+	@Test
+	public void testFallbackWhenPrimaryFails() throws Exception {
+		ShardedTSDBService service = _createService(false);
+		List<Metric> backup = _metrics("backup");
+		CompletableFuture<List<Metric>> failed = new CompletableFuture<>();
+
+		failed.completeExceptionally(new SystemException("Primary is down"));
+		doReturn(failed).when(service).read(eq(PRIMARY), anyString());
+		doReturn(CompletableFuture.completedFuture(backup)).when(service).read(eq(BACKUP), anyString());
+
+		assertEquals(backup, service.readSubQuery(_query()).get(5, TimeUnit.SECONDS));
+		verify(service, timeout(1000)).read(eq(BACKUP), anyString());
+	}
+
+	@Test
+	public void testOpenCircuitReadsBackupOnly() throws Exception {
+		ShardedTSDBService service = _createService(true);
+		List<Metric> backup = _metrics("backup");
+
+		for (int i = 0; i < 2; i++) {
+			service.getLatencyTracker().recordFailure(PRIMARY);
+		}
+		doReturn(CompletableFuture.completedFuture(backup)).when(service).read(eq(BACKUP), anyString());
+
+		assertEquals(backup, service.readSubQuery(_query()).get(5, TimeUnit.SECONDS));
+		verify(service, never()).read(eq(PRIMARY), anyString());
+	}
+
+	@Test
+	public void testOpenCircuitIsIgnoredWhenHedgingIsDisabled() throws Exception {
+		ShardedTSDBService service = _createService(false);
+		List<Metric> primary = _metrics("primary");
+
+		for (int i = 0; i < 2; i++) {
+			service.getLatencyTracker().recordFailure(PRIMARY);
+		}
+		doReturn(CompletableFuture.completedFuture(primary)).when(service).read(eq(PRIMARY), anyString());
+
+		assertEquals(primary, service.readSubQuery(_query()).get(5, TimeUnit.SECONDS));
+		verify(service, never()).read(eq(BACKUP), anyString());
+	}
+
+	@Test
+	public void testGetMetricsSkipsSubQueryFailedOnPrimaryAndBackup() {
+		ShardedTSDBService service = _createService(false);
+		CompletableFuture<List<Metric>> failed = new CompletableFuture<>();
+		MetricQuery query = new MetricQuery("scope", "metric", new HashMap<>(), 0L, 60000L);
+
+		failed.completeExceptionally(new SystemException("TSDB is down"));
+		doReturn(failed).when(service).read(anyString(), anyString());
+
+		Map<MetricQuery, List<Metric>> result = service.getMetrics(Collections.singletonList(query));
+
+		assertTrue(result.get(query).isEmpty());
+	}
+
+	private ShardedTSDBService _createService(boolean hedgeEnabled) {
+		Properties props = new Properties();
+
+		props.put(Property.TSD_ENDPOINT_READ.getName(), PRIMARY);
+		props.put(Property.TSD_ENDPOINT_BACKUP_READ.getName(), BACKUP);
+		props.put(Property.TSD_ENDPOINT_WRITE.getName(), PRIMARY);
+		props.put(Property.TSD_CONNECTION_COUNT.getName(), "10");
+		props.put(Property.TSDB_READ_HEDGE_ENABLED.getName(), String.valueOf(hedgeEnabled));
+		props.put(Property.TSDB_READ_HEDGE_MIN_DELAY_MS.getName(), "20");
+		props.put(Property.TSDB_READ_CIRCUIT_FAILURE_THRESHOLD.getName(), "2");
+		_service = spy(new ShardedTSDBService(new SystemConfiguration(props), _monitorService, null));
+		return _service;
+	}
+
+	private static void _primeHedgeDelay(ShardedTSDBService service) {
+		for (int i = 0; i < EndPointLatencyTracker.MIN_SAMPLES; i++) {
+			service.getLatencyTracker().recordSuccess(PRIMARY, 1);
+		}
+	}
+
+	private static MetricQuery _query() {
+		MetricQuery query = new MetricQuery("scope", "metric", new HashMap<>(), 0L, 60000L);
+		MetricQuery.MetricQueryContext context = query.new MetricQueryContext();
+
+		context.setReadEndPoint(PRIMARY);
+		query.setMetricQueryContext(context);
+		return query;
+	}
+
+	private static List<Metric> _metrics(String scope) {
+		return Collections.singletonList(new Metric(scope, "metric"));
+	}
+}
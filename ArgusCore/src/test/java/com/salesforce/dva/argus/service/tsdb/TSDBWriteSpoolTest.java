@@ -0,0 +1,129 @@
+package com.salesforce.dva.argus.service.tsdb;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TSDBWriteSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunksAreReplayedInOrder() throws Exception {
+        List<String> sent = new ArrayList<>();
+        TSDBWriteSpool spool = new TSDBWriteSpool(folder.getRoot(), 4096, 4, 1, 1, (path, body, id) -> sent.add(path + " " + body), false);
+
+        long first = spool.append("/api/put", "[1]");
+        long second = spool.append("/api/histogram", "[2]");
+
+        assertTrue(second > first);
+        while (spool.replayOnce()) { }
+        assertEquals(2, sent.size());
+        assertEquals("/api/put [1]", sent.get(0));
+        assertEquals("/api/histogram [2]", sent.get(1));
+        assertEquals(0, spool.getPendingBytes());
+        spool.dispose();
+    }
+
+    @Test
+    public void testFailedReplayKeepsChunk() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        List<Long> sent = new ArrayList<>();
+        TSDBWriteSpool spool = new TSDBWriteSpool(folder.getRoot(), 4096, 4, 1, 1, (path, body, id) -> {
+            if (fail.get()) {
+                throw new IllegalStateException("TSDB unavailable");
+            }
+            sent.add(id);
+        }, false);
+        long id = spool.append("/api/put", "[1]");
+
+        try {
+            spool.replayOnce();
+            fail("Expected the replay to fail.");
+        } catch (IllegalStateException ex) {
+            assertTrue(spool.getPendingBytes() > 0);
+        }
+        fail.set(false);
+        assertTrue(spool.replayOnce());
+        assertFalse(spool.replayOnce());
+        assertEquals(1, sent.size());
+        assertEquals(id, (long) sent.get(0));
+        spool.dispose();
+    }
+
+    @Test
+    public void testReplayPositionSurvivesRestart() throws Exception {
+        File dir = folder.getRoot();
+        List<String> sent = new ArrayList<>();
+        TSDBWriteSpool spool = new TSDBWriteSpool(dir, 4096, 4, 1, 1, (path, body, id) -> sent.add(body), false);
+
+        spool.append("/api/put", "[1]");
+        spool.append("/api/put", "[2]");
+        assertTrue(spool.replayOnce());
+        spool.dispose();
+
+        TSDBWriteSpool recovered = new TSDBWriteSpool(dir, 4096, 4, 1, 1, (path, body, id) -> sent.add(body), false);
+
+        while (recovered.replayOnce()) { }
+        assertEquals(2, sent.size());
+        assertEquals("[1]", sent.get(0));
+        assertEquals("[2]", sent.get(1));
+        recovered.dispose();
+    }
+
+    @Test
+    public void testDiskUsageIsBounded() throws Exception {
+        List<String> sent = new ArrayList<>();
+        TSDBWriteSpool spool = new TSDBWriteSpool(folder.getRoot(), 256, 2, 1, 1, (path, body, id) -> sent.add(body), false);
+        StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            body.append('x');
+        }
+        for (int i = 0; i < 10; i++) {
+            spool.append("/api/put", i + body.toString());
+        }
+        assertTrue(spool.getDroppedChunks() > 0);
+        assertTrue(folder.getRoot().listFiles().length <= 2);
+        while (spool.replayOnce()) { }
+        assertEquals(10, sent.size() + spool.getDroppedChunks());
+        assertTrue(sent.get(sent.size() - 1).startsWith("9"));
+        assertEquals(-1, spool.append("/api/put", body.toString() + body + body));
+        spool.dispose();
+    }
+
+    @Test(timeout = 10000)
+    public void testEvictingSegmentWithCorruptLengthTerminates() throws Exception {
+        List<String> sent = new ArrayList<>();
+        TSDBWriteSpool spool = new TSDBWriteSpool(folder.getRoot(), 256, 2, 1, 1, (path, body, id) -> sent.add(body), false);
+        StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            body.append('x');
+        }
+        spool.append("/api/put", "0" + body);
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), "spool-0.wal"), "rw")) {
+            file.seek(TSDBWriteSpool.HEADER_BYTES);
+            file.writeInt(-4);
+        }
+        spool.append("/api/put", "1" + body);
+        spool.append("/api/put", "2" + body);
+        assertEquals(0, spool.getDroppedChunks());
+        while (spool.replayOnce()) { }
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(0).startsWith("1"));
+        spool.dispose();
+    }
+}
@@ -235,7 +235,7 @@ public class AlertUtilsTest {
 		CachedDiscoveryService service = new CachedDiscoveryService(cacheServiceMock, discoveryServiceMock, system.getConfiguration(), null);
 		Provider<MetricReader<MetricQuery>> queryprovider = () -> new MetricReader<>(system.getServiceFactory().getTSDBService(), service,null);
 
-		DefaultMetricService _mServiceMock = new DefaultMetricService(system.getServiceFactory().getMonitorService(),null, null,queryprovider, system.getConfiguration());
+		DefaultMetricService _mServiceMock = new DefaultMetricService(system.getServiceFactory().getMonitorService(),null, null,queryprovider, system.getConfiguration(), null);
 
 		for(Map.Entry<String, List<String>> currentSuite: testSuite.entrySet()) {
 			List<String> actualOutput = _mServiceMock.extractDCFromMetricQuery(_mServiceMock.getQueries(currentSuite.getKey()));
@@ -0,0 +1,62 @@
+package com.salesforce.dva.argus.util;
+
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryTraceTest {
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.setRequestContext(null);
+    }
+
+    @Test
+    public void testUntracedRequest() {
+        RequestContextHolder.setRequestContext(new RequestContext("user"));
+
+        QueryTrace.Span first = QueryTrace.startSpan(Stage.TSDB);
+        QueryTrace.Span second = QueryTrace.startSpan(Stage.PARSE);
+
+        first.close();
+        second.close();
+        assertTrue(first == second);
+    }
+
+    @Test
+    public void testTracedRequest() {
+        RequestContext context = new RequestContext("user");
+        QueryTrace trace = new QueryTrace();
+
+        context.setQueryTrace(trace);
+        RequestContextHolder.setRequestContext(context);
+        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.DISCOVERY)) {
+            try (QueryTrace.Span nested = QueryTrace.startSpan(Stage.CACHE)) {
+                assertEquals(0, trace.getCount(Stage.CACHE));
+            }
+        }
+        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.CACHE)) {
+            assertEquals(1, trace.getCount(Stage.CACHE));
+        }
+        assertEquals(1, trace.getCount(Stage.DISCOVERY));
+        assertEquals(2, trace.getCount(Stage.CACHE));
+        assertEquals(0, trace.getCount(Stage.TSDB));
+        assertTrue(trace.getNanos(Stage.DISCOVERY) > 0);
+    }
+
+    @Test
+    public void testToServerTiming() {
+        QueryTrace trace = new QueryTrace();
+
+        assertEquals("", trace.toServerTiming());
+        trace.record(Stage.PARSE, 250000);
+        trace.record(Stage.TSDB, 12000000);
+        trace.record(Stage.TSDB, 3500000);
+        trace.record(Stage.SERIALIZATION, 1000000);
+        assertEquals("parse;dur=0.250;desc=\"1\", tsdb;dur=15.500;desc=\"2\"", trace.toServerTiming());
+        assertEquals(1, trace.getCount(Stage.SERIALIZATION));
+    }
+}
@@ -32,6 +32,7 @@ package com.salesforce.dva.argus.sdk;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
@@ -43,6 +44,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -53,6 +55,7 @@ import org.apache.http.util.EntityUtils;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * HTTP based API client for Argus.
@@ -64,6 +67,7 @@ class ArgusHttpClient {
     //~ Static fields/initializers *******************************************************************************************************************
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String GZIP_ENCODING = "gzip";
 
     static {
         MAPPER.setVisibility(PropertyAccessor.GETTER, Visibility.ANY);
@@ -139,8 +143,52 @@ class ArgusHttpClient {
 
         return ArgusResponse.generateResponse(_doHttpRequest(requestType, url, json));
     }
-    
-    
+
+    /* Execute a request given by type requestType, streaming the payload as gzip compressed JSON. */
+    ArgusResponse executeCompressedHttpRequest(RequestType requestType, String url, Object payload) throws IOException {
+        url = _endpoint + url;
+        return ArgusResponse.generateResponse(_doCompressedHttpRequest(requestType, url, payload));
+    }
+
+    /* Execute a GET request accepting the given binary media type. The response body is kept as raw bytes. */
+    ArgusResponse executeBinaryHttpRequest(String url, String mediaType) throws IOException {
+        url = _endpoint + url;
+        return ArgusResponse.generateBinaryResponse(_doBinaryHttpRequest(url, mediaType));
+    }
+
+    /* The binary request call.  Factored for test mocking. */
+    HttpResponse _doBinaryHttpRequest(String url, String mediaType) throws IOException {
+        HttpGet httpGet = new HttpGet(url);
+
+        httpGet.setHeader(HttpHeaders.ACCEPT, mediaType);
+        httpGet.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+        return _httpClient.execute(httpGet, _httpContext);
+    }
+
+    /* The compressed request call. The payload is serialized directly into the gzip stream, so no intermediate JSON string is created. */
+    HttpResponse _doCompressedHttpRequest(RequestType requestType, String url, Object payload) throws IOException {
+        HttpEntity entity = _createCompressedEntity(payload);
+
+        switch (requestType) {
+            case POST:
+
+                HttpPost post = new HttpPost(url);
+
+                post.setEntity(entity);
+                post.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+                return _httpClient.execute(post, _httpContext);
+            case PUT:
+
+                HttpPut httpput = new HttpPut(url);
+
+                httpput.setEntity(entity);
+                httpput.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+                return _httpClient.execute(httpput, _httpContext);
+            default:
+                throw new IllegalArgumentException(" Request Type " + requestType + " does not support a compressed payload. ");
+        }
+    }
+
 
     /* The actual request call.  Factored for test mocking. */
     HttpResponse _doHttpRequest(RequestType requestType, String url, String json) throws IOException {
@@ -183,6 +231,21 @@ class ArgusHttpClient {
         }
     }
 
+    /* Creates a streaming entity that writes the payload as gzip compressed JSON. */
+    HttpEntity _createCompressedEntity(Object payload) {
+        EntityTemplate entity = new EntityTemplate((out) -> {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+
+            MAPPER.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(gzip, payload);
+            gzip.finish();
+        });
+
+        entity.setChunked(true);
+        entity.setContentEncoding(GZIP_ENCODING);
+        entity.setContentType(ContentType.APPLICATION_JSON.getMimeType());
+        return entity;
+    }
+
     //~ Enums ****************************************************************************************************************************************
 
     /**
@@ -211,12 +274,18 @@ class ArgusHttpClient {
         private final String _message;
         private final String _errorMessage;
         private final String _result;
+        private final byte[] _rawResult;
 
         private ArgusResponse(int status, String message, String errorMessage, String result) {
+            this(status, message, errorMessage, result, null);
+        }
+
+        private ArgusResponse(int status, String message, String errorMessage, String result, byte[] rawResult) {
             _status = status;
             _message = message;
             _errorMessage = errorMessage;
             _result = result;
+            _rawResult = rawResult;
         }
 
         static ArgusResponse generateResponse(HttpResponse response) throws IOException {
@@ -238,6 +307,18 @@ class ArgusHttpClient {
             return new ArgusResponse(status, message, errorMessage, result);
         }
 
+        static ArgusResponse generateBinaryResponse(HttpResponse response) throws IOException {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            byte[] body = entity == null ? null : EntityUtils.toByteArray(entity);
+
+            if (status >= 200 && status < 300) {
+                return new ArgusResponse(status, response.getStatusLine().getReasonPhrase(), null, null, body);
+            }
+            return new ArgusResponse(status, null, response.getStatusLine().getReasonPhrase(),
+                body == null ? null : new String(body, StandardCharsets.UTF_8), body);
+        }
+
         /**
          * Returns the HTTP status code for the response.
          *
@@ -273,6 +354,15 @@ class ArgusHttpClient {
         public String getResult() {
             return _result;
         }
+
+        /**
+         * Returns the response body of a binary request as raw bytes.
+         *
+         * @return  The response body, or null if the request was not a binary request or the response has no body.
+         */
+        public byte[] getRawResult() {
+            return _rawResult;
+        }
     }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
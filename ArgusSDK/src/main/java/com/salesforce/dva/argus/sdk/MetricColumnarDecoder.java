@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.sdk;
+
+import com.salesforce.dva.argus.sdk.entity.Metric;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decodes metric query results returned in the binary columnar format, which is requested with the {@link #MEDIA_TYPE} media type. Compared
+ * to JSON, timestamps shared by several metrics are sent once and values are sent as raw doubles, so decoding involves no number parsing.
+ *
+ * <p>All multi-byte fixed width values are big endian. A varint is an unsigned integer written 7 bits at a time, least significant group first,
+ * with the high bit of each byte set when more bytes follow. A string reference is a varint that is 0 for null or the dictionary index plus 1.
+ * Version 1 has the following layout:</p>
+ *
+ * <pre>
+ * magic        4 bytes  "ARGC"
+ * version      1 byte   1
+ * dictionary   varint count, then per string a varint byte length and the UTF-8 bytes
+ * metrics      varint total number of metrics
+ * groups       varint count, then per group of metrics sharing the same timestamps:
+ *   timestamps   varint count n, then the first timestamp as an 8 byte long and n - 1 varint deltas to the previous timestamp
+ *   columns      varint count, then per metric:
+ *     position     varint position of the metric in the result
+ *     fields       string references to scope, metric, namespace, display name and units
+ *     tags         varint count, then string references to each tag key and value
+ *     flags        1 byte, bit 0 set if a null bitmap follows
+ *     nulls        (n + 7) / 8 bytes, bit i of byte i / 8 set if value i is null
+ *     values       n 8 byte IEEE-754 doubles
+ * </pre>
+ */
+public class MetricColumnarDecoder {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The media type of the columnar format. */
+    public static final String MEDIA_TYPE = "application/x-argus-columnar";
+
+    /** The highest layout version this decoder reads. */
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = { 'A', 'R', 'G', 'C' };
+    private static final int FLAG_NULL_VALUES = 1;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    private MetricColumnarDecoder() { }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Decodes a columnar document.
+     *
+     * @param   bytes  The encoded metrics. Cannot be null.
+     *
+     * @return  The metrics in the order they were returned by the query.
+     *
+     * @throws  IOException  If the document is truncated, malformed or of an unsupported version.
+     */
+    public static List<Metric> decode(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Decodes a columnar document from a stream. The stream is not closed.
+     *
+     * @param   input  The stream to read the encoded metrics from. Cannot be null.
+     *
+     * @return  The metrics in the order they were returned by the query.
+     *
+     * @throws  IOException  If the document is truncated, malformed or of an unsupported version.
+     */
+    public static List<Metric> decode(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        byte[] magic = new byte[MAGIC.length];
+
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not an Argus columnar document.");
+        }
+
+        int version = in.readUnsignedByte();
+
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported columnar format version " + version + ".");
+        }
+
+        String[] dictionary = new String[_readCount(in)];
+
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] value = new byte[_readCount(in)];
+
+            in.readFully(value);
+            dictionary[i] = new String(value, StandardCharsets.UTF_8);
+        }
+
+        Metric[] metrics = new Metric[_readCount(in)];
+        int groups = _readCount(in);
+
+        for (int group = 0; group < groups; group++) {
+            long[] timestamps = new long[_readCount(in)];
+
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = i == 0 ? in.readLong() : timestamps[i - 1] + _readVarLong(in);
+            }
+
+            int columns = _readCount(in);
+
+            for (int column = 0; column < columns; column++) {
+                int position = _readCount(in);
+
+                if (position >= metrics.length || metrics[position] != null) {
+                    throw new IOException("Invalid metric position " + position + ".");
+                }
+                metrics[position] = _readColumn(in, dictionary, timestamps);
+            }
+        }
+        for (int i = 0; i < metrics.length; i++) {
+            if (metrics[i] == null) {
+                throw new IOException("Missing metric at position " + i + ".");
+            }
+        }
+        return new ArrayList<>(Arrays.asList(metrics));
+    }
+
+    private static Metric _readColumn(DataInputStream in, String[] dictionary, long[] timestamps) throws IOException {
+        Metric metric = new Metric();
+
+        metric.setScope(_readString(in, dictionary));
+        metric.setMetric(_readString(in, dictionary));
+        metric.setNamespace(_readString(in, dictionary));
+        metric.setDisplayName(_readString(in, dictionary));
+        metric.setUnits(_readString(in, dictionary));
+
+        int tagCount = _readCount(in);
+        Map<String, String> tags = new HashMap<>();
+
+        for (int i = 0; i < tagCount; i++) {
+            tags.put(_readString(in, dictionary), _readString(in, dictionary));
+        }
+        metric.setTags(tags);
+
+        byte[] nulls = null;
+
+        if ((in.readUnsignedByte() & FLAG_NULL_VALUES) != 0) {
+            nulls = new byte[(timestamps.length + 7) / 8];
+            in.readFully(nulls);
+        }
+
+        Map<Long, Double> datapoints = new TreeMap<>();
+
+        for (int i = 0; i < timestamps.length; i++) {
+            double value = in.readDouble();
+
+            datapoints.put(timestamps[i], nulls != null && (nulls[i / 8] & (1 << (i % 8))) != 0 ? null : value);
+        }
+        metric.setDatapoints(datapoints);
+        return metric;
+    }
+
+    private static String _readString(DataInputStream in, String[] dictionary) throws IOException {
+        int reference = _readCount(in);
+
+        if (reference > dictionary.length) {
+            throw new IOException("Invalid string reference " + reference + ".");
+        }
+        return reference == 0 ? null : dictionary[reference - 1];
+    }
+
+    private static int _readCount(DataInputStream in) throws IOException {
+        long value = _readVarLong(in);
+
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid count " + value + ".");
+        }
+        return (int) value;
+    }
+
+    private static long _readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
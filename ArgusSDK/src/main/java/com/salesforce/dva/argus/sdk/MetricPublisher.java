@@ -0,0 +1,605 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.sdk;
+
+import com.salesforce.dva.argus.sdk.ArgusService.PutResult;
+import com.salesforce.dva.argus.sdk.entity.Metric;
+import com.salesforce.dva.argus.sdk.exceptions.ArgusServiceException;
+import com.salesforce.dva.argus.sdk.exceptions.TokenExpiredException;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Asynchronously publishes metrics to Argus.  Metrics are held in a bounded in-memory buffer and are flushed in batches either when the
+ * configured batch size is reached or when the flush interval elapses, whichever occurs first.  Batches are submitted as gzip compressed
+ * requests by a pool of sender threads that share the pooled connection manager of the underlying client, so the number of in-flight
+ * requests should not exceed the maximum number of connections the service was created with.  Failed batches are retried with exponential
+ * backoff.  Metrics that cannot be buffered or delivered are reported to the configured {@link DropHandler}.  Metrics of a delivered batch that
+ * the server reports as failed are counted by {@link #getRejectedCount()}, since the response does not identify them.
+ *
+ * <p>Instances are thread safe.</p>
+ */
+public class MetricPublisher implements AutoCloseable {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final MetricService _metricService;
+    private final Config _config;
+    private final DropHandler _dropHandler;
+    private final BlockingQueue<Metric> _buffer;
+    private final ScheduledExecutorService _flusher;
+    private final ExecutorService _senders;
+    private final Semaphore _inFlight;
+    private final AtomicBoolean _flushPending = new AtomicBoolean(false);
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+    private final ReadWriteLock _closeLock = new ReentrantReadWriteLock();
+    private final AtomicLong _publishedCount = new AtomicLong();
+    private final AtomicLong _droppedCount = new AtomicLong();
+    private final AtomicLong _rejectedCount = new AtomicLong();
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates and starts a new MetricPublisher object.
+     *
+     * @param   metricService  The metric service used to submit batches. Cannot be null.
+     * @param   config         The publisher configuration. Cannot be null.
+     * @param   dropHandler    The handler notified of metrics that could not be delivered. May be null.
+     *
+     * @throws  IllegalArgumentException  If the service or configuration is null or the configuration is invalid.
+     */
+    MetricPublisher(MetricService metricService, Config config, DropHandler dropHandler) {
+        if (metricService == null) {
+            throw new IllegalArgumentException("The metric service cannot be null.");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("The publisher configuration cannot be null.");
+        }
+        config.validate();
+        _metricService = metricService;
+        _config = config;
+        _dropHandler = dropHandler;
+        _buffer = new ArrayBlockingQueue<>(config.getBufferSize());
+        _inFlight = new Semaphore(config.getMaxInFlightRequests());
+        _flusher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("argus-metric-flusher"));
+        _senders = Executors.newFixedThreadPool(config.getMaxInFlightRequests(), new NamedThreadFactory("argus-metric-sender"));
+        _flusher.scheduleWithFixedDelay(this::_scheduledFlush, config.getFlushIntervalMillis(), config.getFlushIntervalMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Adds a metric to the publish buffer.  This method never blocks.  If the buffer is full or the publisher is closed, the metric is
+     * reported to the drop handler.
+     *
+     * @param   metric  The metric to publish. Cannot be null.
+     *
+     * @return  True if the metric was buffered, false if it was dropped.
+     */
+    public boolean publish(Metric metric) {
+        if (metric == null) {
+            throw new IllegalArgumentException("Cannot publish a null metric.");
+        }
+        // Holding the read lock keeps close() from draining the buffer and stopping the flusher between the check and the offer.
+        _closeLock.readLock().lock();
+        try {
+            if (_closed.get()) {
+                _drop(Collections.singletonList(metric), DropReason.CLOSED, null);
+                return false;
+            }
+            if (!_buffer.offer(metric)) {
+                _drop(Collections.singletonList(metric), DropReason.BUFFER_FULL, null);
+                return false;
+            }
+            if (_buffer.size() >= _config.getBatchSize() && _flushPending.compareAndSet(false, true)) {
+                _flusher.execute(this::_flush);
+            }
+            return true;
+        } finally {
+            _closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a list of metrics to the publish buffer.
+     *
+     * @param   metrics  The metrics to publish. Cannot be null.
+     *
+     * @return  The number of metrics that were buffered.
+     */
+    public int publish(List<Metric> metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Cannot publish a null metric list.");
+        }
+
+        int count = 0;
+
+        for (Metric metric : metrics) {
+            if (publish(metric)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of metrics currently held in the buffer.
+     *
+     * @return  The number of buffered metrics.
+     */
+    public int getBufferedCount() {
+        return _buffer.size();
+    }
+
+    /**
+     * Returns the number of metrics successfully submitted since the publisher was created.
+     *
+     * @return  The number of submitted metrics.
+     */
+    public long getPublishedCount() {
+        return _publishedCount.get();
+    }
+
+    /**
+     * Returns the number of metrics the server reported as failed in batches that were otherwise accepted.
+     *
+     * @return  The number of rejected metrics.
+     */
+    public long getRejectedCount() {
+        return _rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of metrics dropped since the publisher was created.
+     *
+     * @return  The number of dropped metrics.
+     */
+    public long getDroppedCount() {
+        return _droppedCount.get();
+    }
+
+    /**
+     * Stops accepting metrics, flushes the buffer and waits up to the configured close timeout for in-flight requests to complete.  Metrics
+     * that could not be submitted before the timeout are reported to the drop handler.
+     */
+    @Override
+    public void close() {
+        _closeLock.writeLock().lock();
+        try {
+            if (!_closed.compareAndSet(false, true)) {
+                return;
+            }
+        } finally {
+            _closeLock.writeLock().unlock();
+        }
+        _flusher.execute(this::_flush);
+        _flusher.shutdown();
+        try {
+            long deadline = System.currentTimeMillis() + _config.getCloseTimeoutMillis();
+
+            // The flusher must be stopped before the senders are, so that no batch is handed to a sender pool that was shut down.
+            if (!_flusher.awaitTermination(_config.getCloseTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                _flusher.shutdownNow();
+                _flusher.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            _senders.shutdown();
+            _senders.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            _flusher.shutdownNow();
+            _senders.shutdownNow();
+
+            List<Metric> remaining = new ArrayList<>();
+
+            _buffer.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                _drop(remaining, DropReason.CLOSED, null);
+            }
+        }
+    }
+
+    private void _scheduledFlush() {
+        if (_flushPending.compareAndSet(false, true)) {
+            _flush();
+        }
+    }
+
+    /* Drains the buffer into batches and hands each one to a sender.  Blocks on the in-flight limit, which back pressures into the buffer. */
+    private void _flush() {
+        _flushPending.set(false);
+        try {
+            while (!_buffer.isEmpty()) {
+                List<Metric> batch = new ArrayList<>(_config.getBatchSize());
+
+                _buffer.drainTo(batch, _config.getBatchSize());
+                if (batch.isEmpty()) {
+                    break;
+                }
+                _inFlight.acquire();
+                try {
+                    _senders.execute(() -> _send(batch));
+                } catch (RejectedExecutionException ex) {
+                    _inFlight.release();
+                    _drop(batch, DropReason.CLOSED, ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void _send(List<Metric> batch) {
+        try {
+            Throwable lastError = null;
+
+            for (int attempt = 0; attempt <= _config.getMaxRetries(); attempt++) {
+                if (attempt > 0 && !_backoff(attempt)) {
+                    break;
+                }
+                try {
+                    PutResult result = _metricService.putMetricsCompressed(batch);
+                    long failed = Math.min(batch.size(), _parseCount(result.getFailCount()));
+
+                    _publishedCount.addAndGet(batch.size() - failed);
+                    _rejectedCount.addAndGet(failed);
+                    return;
+                } catch (ArgusServiceException ex) {
+                    lastError = ex;
+                    if (!_isRetryable(ex.getStatus())) {
+                        _drop(batch, DropReason.REJECTED, ex);
+                        return;
+                    }
+                } catch (TokenExpiredException ex) {
+                    _drop(batch, DropReason.REJECTED, ex);
+                    return;
+                } catch (IOException | RuntimeException ex) {
+                    lastError = ex;
+                }
+            }
+            _drop(batch, DropReason.RETRIES_EXHAUSTED, lastError);
+        } finally {
+            _inFlight.release();
+        }
+    }
+
+    /* The counts of a put result are strings, and are missing from responses of older servers. */
+    private static long _parseCount(String count) {
+        try {
+            return Math.max(0, Long.parseLong(count));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private boolean _isRetryable(int status) {
+        return status == 429 || status >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    private boolean _backoff(int attempt) {
+        long delay = Math.min(_config.getMaxBackoffMillis(), _config.getInitialBackoffMillis() << Math.min(attempt - 1, 30));
+
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void _drop(List<Metric> metrics, DropReason reason, Throwable cause) {
+        _droppedCount.addAndGet(metrics.size());
+        if (_dropHandler != null) {
+            try {
+                _dropHandler.onDrop(metrics, reason, cause);
+            } catch (RuntimeException ex) {
+                // The handler must never break the publishing threads.
+            }
+        }
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The reason a set of metrics was dropped.
+     */
+    public static enum DropReason {
+
+        /** The buffer was full when the metric was published. */
+        BUFFER_FULL,
+        /** The publisher was closed before the metric could be submitted. */
+        CLOSED,
+        /** The server rejected the request with a non-retryable error. */
+        REJECTED,
+        /** The request failed after all retry attempts. */
+        RETRIES_EXHAUSTED;
+    }
+
+    //~ Inner Interfaces *****************************************************************************************************************************
+
+    /**
+     * Callback notified when metrics cannot be delivered.  Implementations are invoked from the publishing and sender threads and should
+     * return quickly.
+     */
+    public interface DropHandler {
+
+        /**
+         * Invoked when metrics are dropped.
+         *
+         * @param  metrics  The dropped metrics. Will never be null or empty.
+         * @param  reason   The reason the metrics were dropped.
+         * @param  cause    The error that caused the drop. May be null.
+         */
+        void onDrop(List<Metric> metrics, DropReason reason, Throwable cause);
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * Configuration for a metric publisher.  The defaults buffer up to 100,000 metrics, submit batches of 1,000 metrics at least once per
+     * second and allow four concurrent requests.
+     */
+    public static class Config {
+
+        private int _bufferSize = 100000;
+        private int _batchSize = 1000;
+        private long _flushIntervalMillis = 1000;
+        private int _maxInFlightRequests = 4;
+        private int _maxRetries = 3;
+        private long _initialBackoffMillis = 100;
+        private long _maxBackoffMillis = 10000;
+        private long _closeTimeoutMillis = 30000;
+
+        /**
+         * Returns the maximum number of buffered metrics.
+         *
+         * @return  The buffer size.
+         */
+        public int getBufferSize() {
+            return _bufferSize;
+        }
+
+        /**
+         * Sets the maximum number of buffered metrics.
+         *
+         * @param   bufferSize  The buffer size. Must be greater than 0.
+         *
+         * @return  This configuration.
+         */
+        public Config setBufferSize(int bufferSize) {
+            _bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Returns the maximum number of metrics submitted per request.
+         *
+         * @return  The batch size.
+         */
+        public int getBatchSize() {
+            return _batchSize;
+        }
+
+        /**
+         * Sets the maximum number of metrics submitted per request.  A flush is triggered as soon as this many metrics are buffered.
+         *
+         * @param   batchSize  The batch size. Must be greater than 0.
+         *
+         * @return  This configuration.
+         */
+        public Config setBatchSize(int batchSize) {
+            _batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Returns the maximum time in milliseconds a metric remains buffered before it is flushed.
+         *
+         * @return  The flush interval in milliseconds.
+         */
+        public long getFlushIntervalMillis() {
+            return _flushIntervalMillis;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds a metric remains buffered before it is flushed.
+         *
+         * @param   flushIntervalMillis  The flush interval in milliseconds. Must be greater than 0.
+         *
+         * @return  This configuration.
+         */
+        public Config setFlushIntervalMillis(long flushIntervalMillis) {
+            _flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Returns the maximum number of concurrent requests.
+         *
+         * @return  The maximum number of in-flight requests.
+         */
+        public int getMaxInFlightRequests() {
+            return _maxInFlightRequests;
+        }
+
+        /**
+         * Sets the maximum number of concurrent requests.  This should not exceed the maximum number of connections of the service.
+         *
+         * @param   maxInFlightRequests  The maximum number of in-flight requests. Must be greater than 0.
+         *
+         * @return  This configuration.
+         */
+        public Config setMaxInFlightRequests(int maxInFlightRequests) {
+            _maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        /**
+         * Returns the number of times a failed batch is retried.
+         *
+         * @return  The maximum number of retries.
+         */
+        public int getMaxRetries() {
+            return _maxRetries;
+        }
+
+        /**
+         * Sets the number of times a failed batch is retried.
+         *
+         * @param   maxRetries  The maximum number of retries. Cannot be negative.
+         *
+         * @return  This configuration.
+         */
+        public Config setMaxRetries(int maxRetries) {
+            _maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Returns the delay in milliseconds before the first retry.
+         *
+         * @return  The initial backoff in milliseconds.
+         */
+        public long getInitialBackoffMillis() {
+            return _initialBackoffMillis;
+        }
+
+        /**
+         * Sets the delay in milliseconds before the first retry.  The delay doubles on each subsequent retry.
+         *
+         * @param   initialBackoffMillis  The initial backoff in milliseconds. Cannot be negative.
+         *
+         * @return  This configuration.
+         */
+        public Config setInitialBackoffMillis(long initialBackoffMillis) {
+            _initialBackoffMillis = initialBackoffMillis;
+            return this;
+        }
+
+        /**
+         * Returns the maximum delay in milliseconds between retries.
+         *
+         * @return  The maximum backoff in milliseconds.
+         */
+        public long getMaxBackoffMillis() {
+            return _maxBackoffMillis;
+        }
+
+        /**
+         * Sets the maximum delay in milliseconds between retries.
+         *
+         * @param   maxBackoffMillis  The maximum backoff in milliseconds. Cannot be negative.
+         *
+         * @return  This configuration.
+         */
+        public Config setMaxBackoffMillis(long maxBackoffMillis) {
+            _maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /**
+         * Returns the maximum time in milliseconds to wait for buffered metrics to be submitted on close.
+         *
+         * @return  The close timeout in milliseconds.
+         */
+        public long getCloseTimeoutMillis() {
+            return _closeTimeoutMillis;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds to wait for buffered metrics to be submitted on close.
+         *
+         * @param   closeTimeoutMillis  The close timeout in milliseconds. Cannot be negative.
+         *
+         * @return  This configuration.
+         */
+        public Config setCloseTimeoutMillis(long closeTimeoutMillis) {
+            _closeTimeoutMillis = closeTimeoutMillis;
+            return this;
+        }
+
+        private void validate() {
+            _requireArgument(_bufferSize > 0, "Buffer size must be greater than 0.");
+            _requireArgument(_batchSize > 0, "Batch size must be greater than 0.");
+            _requireArgument(_flushIntervalMillis > 0, "Flush interval must be greater than 0.");
+            _requireArgument(_maxInFlightRequests > 0, "Maximum in-flight requests must be greater than 0.");
+            _requireArgument(_maxRetries >= 0, "Maximum retries cannot be negative.");
+            _requireArgument(_initialBackoffMillis >= 0 && _maxBackoffMillis >= 0, "Backoff cannot be negative.");
+            _requireArgument(_closeTimeoutMillis >= 0, "Close timeout cannot be negative.");
+        }
+
+        private static void _requireArgument(boolean condition, String message) {
+            if (!condition) {
+                throw new IllegalArgumentException(message);
+            }
+        }
+    }
+
+    /* Creates named daemon threads so an unclosed publisher never prevents JVM shutdown. */
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String _prefix;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            _prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, _prefix + "-" + _count.incrementAndGet());
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
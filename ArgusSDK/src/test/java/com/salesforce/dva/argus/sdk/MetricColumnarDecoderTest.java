@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.sdk;
+
+import com.salesforce.dva.argus.sdk.entity.Metric;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricColumnarDecoderTest {
+
+    @Test
+    public void testDecode() throws IOException {
+        List<Metric> expected = Arrays.asList(_metric("other", Collections.<String, String>emptyMap(), 2000L, 20.0, 3000L, 30.0),
+            _metric("metric", Collections.singletonMap("host", "a"), 1000L, 1.0, 2000L, null));
+
+        expected.get(0).setNamespace("namespace");
+        expected.get(1).setUnits("ms");
+        assertEquals(expected, MetricColumnarDecoder.decode(createDocument()));
+    }
+
+    @Test
+    public void testRejectsUnsupportedVersion() throws IOException {
+        byte[] document = createDocument();
+
+        document[4] = (byte) (MetricColumnarDecoder.VERSION + 1);
+        try {
+            MetricColumnarDecoder.decode(document);
+            fail("Expected the version to be rejected.");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("version"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedDocument() throws IOException {
+        byte[] document = createDocument();
+
+        MetricColumnarDecoder.decode(Arrays.copyOf(document, document.length - 1));
+    }
+
+    /**
+     * Creates a document with two groups, written in the reverse of the result order: a metric with a null value at position 1 and a metric
+     * with a namespace at position 0.
+     */
+    static byte[] createDocument() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeBytes("ARGC");
+        out.writeByte(1);
+        out.writeByte(7);
+        for (String value : new String[] { "scope", "metric", "ms", "host", "a", "other", "namespace" }) {
+            out.writeByte(value.length());
+            out.writeBytes(value);
+        }
+        out.writeByte(2);
+        out.writeByte(2);
+
+        out.writeByte(2);
+        out.writeLong(1000);
+        out.write(new byte[] { (byte) 0xE8, 0x07 });
+        out.writeByte(1);
+        out.write(new byte[] { 1, 1, 2, 0, 0, 3, 1, 4, 5, 1, 2 });
+        out.writeDouble(1.0);
+        out.writeDouble(0.0);
+
+        out.writeByte(2);
+        out.writeLong(2000);
+        out.write(new byte[] { (byte) 0xE8, 0x07 });
+        out.writeByte(1);
+        out.write(new byte[] { 0, 1, 6, 7, 0, 0, 0, 0 });
+        out.writeDouble(20.0);
+        out.writeDouble(30.0);
+        return bytes.toByteArray();
+    }
+
+    private static Metric _metric(String name, Map<String, String> tags, Long t1, Double v1, Long t2, Double v2) {
+        Metric metric = new Metric();
+        Map<Long, Double> datapoints = new TreeMap<>();
+
+        datapoints.put(t1, v1);
+        datapoints.put(t2, v2);
+        metric.setScope("scope");
+        metric.setMetric(name);
+        metric.setTags(new HashMap<>(tags));
+        metric.setDatapoints(datapoints);
+        return metric;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
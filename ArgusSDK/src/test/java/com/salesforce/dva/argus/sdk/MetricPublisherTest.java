@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.sdk;
+
+import com.salesforce.dva.argus.sdk.entity.Metric;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class MetricPublisherTest extends AbstractTest {
+
+    private static final String ENDPOINT = "https://localhost:8080/argusws";
+
+    @Test
+    public void testCompressedEntityRoundTrip() throws IOException {
+        ArgusHttpClient client = new ArgusHttpClient(ENDPOINT, 10, 10, 10);
+        List<Metric> metrics = Collections.singletonList(_constructMetric(0));
+        HttpEntity entity = client._createCompressedEntity(metrics);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        entity.writeTo(out);
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+
+        try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            byte[] buffer = new byte[1024];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+        }
+        assertEquals(client.toJson(metrics), new String(decompressed.toByteArray(), "UTF-8"));
+        client.dispose();
+    }
+
+    @Test
+    public void testFlushOnBatchSize() throws Exception {
+        ArgusHttpClient client = _getMockedClient(200);
+        List<Metric> dropped = new CopyOnWriteArrayList<>();
+        MetricPublisher.Config config = new MetricPublisher.Config().setBatchSize(2).setFlushIntervalMillis(60000);
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, (metrics, reason, cause) -> dropped.addAll(metrics));
+
+            assertEquals(4, publisher.publish(_constructMetrics(4)));
+            _awaitPublished(publisher, 4);
+            publisher.close();
+            assertEquals(4, publisher.getPublishedCount());
+            assertTrue(dropped.isEmpty());
+            verify(client, atLeast(2))._doCompressedHttpRequest(eq(ArgusHttpClient.RequestType.POST), eq(ENDPOINT + "/collection/metrics"), any());
+        }
+    }
+
+    @Test
+    public void testCloseFlushesBuffer() throws Exception {
+        ArgusHttpClient client = _getMockedClient(200);
+        MetricPublisher.Config config = new MetricPublisher.Config().setBatchSize(100).setFlushIntervalMillis(60000);
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, null);
+
+            publisher.publish(_constructMetrics(3));
+            publisher.close();
+            assertEquals(3, publisher.getPublishedCount());
+            assertEquals(0, publisher.getBufferedCount());
+            assertFalse(publisher.publish(_constructMetric(3)));
+            assertEquals(1, publisher.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testBufferOverflowIsDropped() throws Exception {
+        ArgusHttpClient client = _getMockedClient(200);
+        List<MetricPublisher.DropReason> reasons = new CopyOnWriteArrayList<>();
+        MetricPublisher.Config config = new MetricPublisher.Config().setBufferSize(2).setBatchSize(10).setFlushIntervalMillis(60000);
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, (metrics, reason, cause) -> reasons.add(reason));
+
+            assertEquals(2, publisher.publish(_constructMetrics(3)));
+            assertEquals(Collections.singletonList(MetricPublisher.DropReason.BUFFER_FULL), reasons);
+            publisher.close();
+            assertEquals(2, publisher.getPublishedCount());
+        }
+    }
+
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        ArgusHttpClient client = _getMockedClient(503);
+        List<MetricPublisher.DropReason> reasons = new CopyOnWriteArrayList<>();
+        MetricPublisher.Config config = new MetricPublisher.Config().setBatchSize(1).setMaxRetries(2).setInitialBackoffMillis(1);
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, (metrics, reason, cause) -> reasons.add(reason));
+
+            publisher.publish(_constructMetric(0));
+            publisher.close();
+            assertEquals(Collections.singletonList(MetricPublisher.DropReason.RETRIES_EXHAUSTED), reasons);
+            assertEquals(0, publisher.getPublishedCount());
+            verify(client, times(3))._doCompressedHttpRequest(any(), anyString(), any());
+        }
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried() throws Exception {
+        ArgusHttpClient client = _getMockedClient(400);
+        List<MetricPublisher.DropReason> reasons = new CopyOnWriteArrayList<>();
+        MetricPublisher.Config config = new MetricPublisher.Config().setBatchSize(1).setMaxRetries(2).setInitialBackoffMillis(1);
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, (metrics, reason, cause) -> reasons.add(reason));
+
+            publisher.publish(_constructMetric(0));
+            publisher.close();
+            assertEquals(Collections.singletonList(MetricPublisher.DropReason.REJECTED), reasons);
+            verify(client, times(1))._doCompressedHttpRequest(any(), anyString(), any());
+        }
+    }
+
+    @Test
+    public void testFailedMetricsOfAcceptedBatchAreCounted() throws Exception {
+        ArgusHttpClient client = _getMockedClient(200, "{\"Error Messages\":[\"Invalid metric\"],\"Errors\":\"1\",\"Success\":\"2\"}");
+        MetricPublisher.Config config = new MetricPublisher.Config().setBatchSize(100).setFlushIntervalMillis(60000);
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, null);
+
+            publisher.publish(_constructMetrics(3));
+            publisher.close();
+            assertEquals(2, publisher.getPublishedCount());
+            assertEquals(1, publisher.getRejectedCount());
+            assertEquals(0, publisher.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testPublishRacingCloseIsAccountedFor() throws Exception {
+        ArgusHttpClient client = _getMockedClient(200, "{\"Error Messages\":[],\"Errors\":\"0\",\"Success\":\"1\"}");
+        MetricPublisher.Config config = new MetricPublisher.Config().setBatchSize(1).setFlushIntervalMillis(60000);
+        int threads = 4;
+        int perThread = 500;
+
+        try(ArgusService argusService = new ArgusService(client)) {
+            MetricPublisher publisher = argusService.getMetricService().createPublisher(config, null);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch started = new CountDownLatch(threads);
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    started.countDown();
+                    for (int j = 0; j < perThread; j++) {
+                        publisher.publish(_constructMetric(j));
+                    }
+                }));
+            }
+            started.await();
+            publisher.close();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+            assertEquals(threads * perThread, publisher.getPublishedCount() + publisher.getDroppedCount());
+            assertEquals(0, publisher.getBufferedCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConfig() throws IOException {
+        try(ArgusService argusService = new ArgusService(_getMockedClient(200))) {
+            argusService.getMetricService().createPublisher(new MetricPublisher.Config().setBatchSize(0), null);
+        }
+    }
+
+    private ArgusHttpClient _getMockedClient(int status) throws IOException {
+        return _getMockedClient(status, "{\"Error Messages\":[],\"Errors\":\"0\",\"Success\":\"1\"}");
+    }
+
+    private ArgusHttpClient _getMockedClient(int status, String body) throws IOException {
+        ArgusHttpClient client = spy(new ArgusHttpClient(ENDPOINT, 10, 10, 10));
+
+        doAnswer((invocation) -> {
+            HttpResponse mockedResponse = mock(HttpResponse.class);
+            StatusLine mockedStatusLine = mock(StatusLine.class);
+
+            when(mockedStatusLine.getStatusCode()).thenReturn(status);
+            when(mockedStatusLine.getReasonPhrase()).thenReturn(status == 200 ? "success" : "failure");
+            when(mockedResponse.getEntity()).thenReturn(new StringEntity(body));
+            when(mockedResponse.getStatusLine()).thenReturn(mockedStatusLine);
+            return mockedResponse;
+        }).when(client)._doCompressedHttpRequest(any(), anyString(), any());
+        return client;
+    }
+
+    private void _awaitPublished(MetricPublisher publisher, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (publisher.getPublishedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Metric> _constructMetrics(int count) {
+        List<Metric> result = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            result.add(_constructMetric(i));
+        }
+        return result;
+    }
+
+    private Metric _constructMetric(int index) {
+        Metric result = new Metric();
+
+        result.setScope("TestScope");
+        result.setMetric("TestMetric" + index);
+        return result;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
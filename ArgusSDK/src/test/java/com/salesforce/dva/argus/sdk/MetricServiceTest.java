@@ -35,6 +35,9 @@ import com.salesforce.dva.argus.sdk.ArgusService.PutResult;
 import com.salesforce.dva.argus.sdk.entity.Metric;
 import com.salesforce.dva.argus.sdk.exceptions.TokenExpiredException;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.ByteArrayEntity;
 import org.junit.Test;
 import java.io.IOException;
 import java.util.Arrays;
@@ -44,6 +47,10 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 public class MetricServiceTest extends AbstractTest {
 
@@ -70,6 +77,26 @@ public class MetricServiceTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testGetMetricsColumnar() throws IOException, TokenExpiredException {
+        String endpoint = "https://localhost:8080/argusws";
+        ArgusHttpClient client = spy(new ArgusHttpClient(endpoint, 10, 10, 10));
+        HttpResponse response = mock(HttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        byte[] document = MetricColumnarDecoderTest.createDocument();
+
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(statusLine.getReasonPhrase()).thenReturn("OK");
+        when(response.getStatusLine()).thenReturn(statusLine);
+        when(response.getEntity()).thenReturn(new ByteArrayEntity(document));
+        doReturn(response).when(client)._doBinaryHttpRequest(endpoint + "/metrics?expression=-1d:scope:metric:avg", MetricColumnarDecoder.MEDIA_TYPE);
+        try(ArgusService argusService = new ArgusService(client)) {
+            List<Metric> result = argusService.getMetricService().getMetricsColumnar(Arrays.asList("-1d:scope:metric:avg"));
+
+            assertEquals(MetricColumnarDecoder.decode(document), result);
+        }
+    }
+
     private Metric _constructMetric() throws JsonProcessingException {
         Metric result = new Metric();
         Map<String, String> fields = new TreeMap<>();
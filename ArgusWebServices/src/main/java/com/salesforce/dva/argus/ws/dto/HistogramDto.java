@@ -57,6 +57,7 @@ public class HistogramDto extends TSDBEntityDto {
     private Long underflow = 0L;
     private Long overflow = 0L;
     private Map<HistogramBucket, Long> buckets;
+    private byte[] sketch;
 
     //~ Methods **************************************************************************************************************************************
 
@@ -229,6 +230,24 @@ public class HistogramDto extends TSDBEntityDto {
         this.buckets = buckets;
     }
     
+    /**
+     * Returns the encoded quantile sketch.
+     *
+     * @return  The base64 encoded quantile sketch. Can be null.
+     */
+    public byte[] getSketch() {
+        return sketch;
+    }
+
+    /**
+     * Sets the encoded quantile sketch. When present it is used instead of the buckets.
+     *
+     * @param  sketch  The encoded quantile sketch.
+     */
+    public void setSketch(byte[] sketch) {
+        this.sketch = sketch;
+    }
+
     /**
      * Add a new bucket with count to exisitng buckets
      *
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.dto;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups of metric expressions evaluated together at the same relative time, for example the queries of the charts on a dashboard.
+ */
+public class MetricGroupsQueryDto extends BaseDto {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private Long relativeTo;
+    private LinkedHashMap<String, List<String>> queries = new LinkedHashMap<>();
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the time the expressions are relative to.
+     *
+     * @return  The time in milliseconds since the epoch, or null for the current time.
+     */
+    public Long getRelativeTo() {
+        return relativeTo;
+    }
+
+    /**
+     * Sets the time the expressions are relative to.
+     *
+     * @param  relativeTo  The time in milliseconds since the epoch, or null for the current time.
+     */
+    public void setRelativeTo(Long relativeTo) {
+        this.relativeTo = relativeTo;
+    }
+
+    /**
+     * Returns the expressions keyed by group identifier, in the order the groups are evaluated.
+     *
+     * @return  The expression groups.
+     */
+    public Map<String, List<String>> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Sets the expressions keyed by group identifier.
+     *
+     * @param  queries  The expression groups.
+     */
+    public void setQueries(LinkedHashMap<String, List<String>> queries) {
+        this.queries = queries;
+    }
+
+    @Override
+    public Object createExample() {
+        MetricGroupsQueryDto result = new MetricGroupsQueryDto();
+
+        result.setRelativeTo(System.currentTimeMillis());
+        result.getQueries().put("chart1", Arrays.asList("-1h:scope:metric{host=*}:avg"));
+        result.getQueries().put("chart2", Arrays.asList("SUM(-1h:scope:metric{host=*}:avg)"));
+        return result;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -34,6 +34,8 @@ package com.salesforce.dva.argus.ws.filter;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -47,7 +49,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.LoggerFactory;
 
 import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemMain;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
 import com.salesforce.dva.argus.util.RequestContext;
 import com.salesforce.dva.argus.util.RequestContextHolder;
 import com.salesforce.dva.argus.ws.listeners.ArgusWebServletListener;
@@ -61,8 +66,6 @@ public class PerfFilter implements Filter {
 
 	//~ Instance fields ******************************************************************************************************************************
 
-	protected final SystemMain system = ArgusWebServletListener.getSystem();
-	private MonitorService monitorService = system.getServiceFactory().getMonitorService();
 	public static final String DATA_READ_PER_MIN = "perf.ws.read.count";
 	public static final String DATA_READ_QUERY_LATENCY = "perf.ws.read.latency";
 	public static final String DATA_WRITE_PER_MIN = "perf.ws.write.count";
@@ -80,6 +83,34 @@ public class PerfFilter implements Filter {
 	public static final String DATA_READ_NUM_TIME_SERIES = "perf.ws.read.num.time.series";
 	public static final String DATA_READ_NUM_DISCOVERY_RESULTS = "perf.ws.read.num.discovery.results";
 	public static final String DATA_READ_NUM_DISCOVERY_QUERIES = "perf.ws.read.num.discovery.queries";
+	public static final String DATA_STAGE_LATENCY = "perf.ws.stage.latency";
+	public static final String DATA_STAGE_COUNT = "perf.ws.stage.count";
+	public static final String DATA_LATENCY_HISTOGRAM = "perf.ws.latency.histogram";
+	public static final String TAGS_STAGE_KEY = "stage";
+	/** The request header asking for the stage breakdown of the request, returned in the Server-Timing response header. */
+	public static final String TRACE_HEADER = "X-Argus-Trace";
+	protected final SystemMain system;
+	private final MonitorService monitorService;
+	private final double traceSampleRate;
+
+	//~ Constructors *********************************************************************************************************************************
+
+	/** Creates a new PerfFilter reporting to the monitor service of the running system. */
+	public PerfFilter() {
+		this(ArgusWebServletListener.getSystem());
+	}
+
+	private PerfFilter(SystemMain system) {
+		this(system, system.getServiceFactory().getMonitorService(),
+				Double.parseDouble(system.getConfiguration().getValue(SystemConfiguration.Property.QUERY_TRACE_SAMPLE_RATE)));
+	}
+
+	/* Used by tests to report to the given monitor service. */
+	PerfFilter(SystemMain system, MonitorService monitorService, double traceSampleRate) {
+		this.system = system;
+		this.monitorService = monitorService;
+		this.traceSampleRate = traceSampleRate;
+	}
 
 	//~ Methods **************************************************************************************************************************************
 
@@ -101,15 +132,22 @@ public class PerfFilter implements Filter {
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 		HttpServletRequest req = HttpServletRequest.class.cast(request);
 		long start = System.currentTimeMillis();
+		RequestContext context = new RequestContext(_getUserName(req));
 
+		if (_isTraced(req)) {
+			context.setQueryTrace(new QueryTrace());
+		}
 		try {
-			RequestContextHolder.setRequestContext(new RequestContext(_getUserName(req)));
+			RequestContextHolder.setRequestContext(context);
 			chain.doFilter(request, response);
 		} finally {
 			long delta = System.currentTimeMillis() - start;
 			HttpServletResponse resp = HttpServletResponse.class.cast(response);
 
 			updateCounters(req, resp, delta);
+			if (context.getQueryTrace() != null) {
+				updateStageCounters(req, context.getQueryTrace());
+			}
 		}
 	}
 
@@ -127,6 +165,8 @@ public class PerfFilter implements Filter {
 			if (endPoint != null && !endPoint.isEmpty()) {
 				tags.put(TAGS_ENDPOINT_KEY, endPoint);
 			}
+			/* The latency distribution is kept per method and endpoint only, as a histogram per user would be too costly. */
+			monitorService.recordCustomHistogram(DATA_LATENCY_HISTOGRAM, delta, new HashMap<>(tags));
 
 			String username = _getUserName(req);
 			if(!username.isEmpty()) {
@@ -192,6 +232,34 @@ public class PerfFilter implements Filter {
 		}
 	}
 
+	private void updateStageCounters(HttpServletRequest req, QueryTrace trace) {
+		try {
+			Map<String, String> tags = new HashMap<>();
+			String endPoint = _getEndpoint(req);
+
+			tags.put(TAGS_METHOD_KEY, req.getMethod());
+			if (endPoint != null && !endPoint.isEmpty()) {
+				tags.put(TAGS_ENDPOINT_KEY, endPoint);
+			}
+			for (Stage stage : Stage.values()) {
+				if (trace.getCount(stage) > 0) {
+					Map<String, String> stageTags = new HashMap<>(tags);
+
+					stageTags.put(TAGS_STAGE_KEY, stage.getName());
+					monitorService.modifyCustomCounter(DATA_STAGE_COUNT, 1, stageTags);
+					monitorService.recordCustomHistogram(DATA_STAGE_LATENCY, TimeUnit.NANOSECONDS.toMillis(trace.getNanos(stage)), stageTags);
+				}
+			}
+		} catch (Exception e) {
+			LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
+		}
+	}
+
+	/* Requests asking for their stage breakdown are always traced, all others are sampled. */
+	private boolean _isTraced(HttpServletRequest req) {
+		return Boolean.parseBoolean(req.getHeader(TRACE_HEADER)) || (traceSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < traceSampleRate);
+	}
+
 	private String _getEndpoint(HttpServletRequest req) {
 		String pathInfo = req.getPathInfo();
 		if(pathInfo != null) {
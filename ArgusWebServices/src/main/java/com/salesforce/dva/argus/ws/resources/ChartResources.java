@@ -2,6 +2,7 @@ package com.salesforce.dva.argus.ws.resources;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,8 +23,11 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import com.salesforce.dva.argus.entity.*;
+import com.salesforce.dva.argus.entity.Chart.ChartQuery;
+import com.salesforce.dva.argus.entity.Chart.ChartQueryType;
 import com.salesforce.dva.argus.service.ChartService;
 import com.salesforce.dva.argus.service.DashboardService;
+import com.salesforce.dva.argus.ws.annotation.Compressible;
 import com.salesforce.dva.argus.ws.annotation.Description;
 import com.salesforce.dva.argus.ws.dto.ChartDto;
 
@@ -269,30 +273,73 @@ public class ChartResources extends AbstractResource {
 			@QueryParam("ownerName") String ownerName,
 			@QueryParam("entityId") BigInteger entityId) {
 		
-		PrincipalUser remoteUser = getRemoteUser(req);
-		PrincipalUser owner;
-		owner = validateAndGetOwner(req,ownerName);
+		PrincipalUser owner = validateAndGetOwner(req,ownerName);
 		List<Chart> result = new ArrayList<>();
 		if(entityId == null) {
 			result.addAll(_chartService.getChartsByOwner(owner));
 		} else {
-		    Dashboard dashboard = _dService.findDashboardByPrimaryKey(entityId);
-		    if(dashboard==null)
-            {
-                throw new WebApplicationException(entityId + ": Dashboard does not exist.", Status.NOT_FOUND);
-            }
-		    else if(dashboard.isShared() || remoteUser.isPrivileged())
-            {
-                result.addAll(_chartService.getChartsForEntity(entityId));
-            }
-            else {
-                result.addAll(_chartService.getChartsByOwnerForEntity(owner, entityId));
-            }
+			result.addAll(_getChartsForEntity(req, owner, entityId));
 		}
 
 		return ChartDto.transformToDto(result);
 	}
 
+	/**
+	 * Evaluates the metric queries of all charts associated with an entity at the same relative time. Series and transforms shared by the charts
+	 * are evaluated once, and the result of each chart is streamed as soon as it is available.
+	 *
+	 * @param   req         The HttpServlet request object. Cannot be null.
+	 * @param   entityId    The id of the entity, typically a dashboard, the charts are associated with. Cannot be null.
+	 * @param   relativeTo  The time the queries are relative to. Defaults to the current time.
+	 *
+	 * @return  A JSON array with the metrics or the error of each chart, identified by the chart id.
+	 *
+	 * @throws  WebApplicationException  An exception with 404 NOT_FOUND will be thrown if the entity does not exist.
+	 */
+	@GET
+	@Path("/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Compressible
+	@Description("Evaluates the metric queries of all charts associated with an entity and streams the result of each chart.")
+	public Response getChartMetrics(@Context HttpServletRequest req,
+			@QueryParam("entityId") BigInteger entityId,
+			@QueryParam("relativeTo") Long relativeTo) {
+		if (entityId == null) {
+			throw new WebApplicationException("Entity Id cannot be null.", Status.BAD_REQUEST);
+		}
+
+		PrincipalUser owner = validateAndGetOwner(req, null);
+		Map<String, List<String>> expressionGroups = new LinkedHashMap<>();
+
+		for (Chart chart : _getChartsForEntity(req, owner, entityId)) {
+			List<String> expressions = new ArrayList<>();
+
+			for (ChartQuery query : chart.getQueries()) {
+				if (ChartQueryType.METRIC.equals(query.getType())) {
+					expressions.add(query.getQuery());
+				}
+			}
+			if (!expressions.isEmpty()) {
+				expressionGroups.put(chart.getId().toString(), expressions);
+			}
+		}
+		return Response.ok(new MetricGroupStreamingOutput(system.getServiceFactory().getMetricService(), expressionGroups,
+				relativeTo == null ? System.currentTimeMillis() : relativeTo)).build();
+	}
+
+	private List<Chart> _getChartsForEntity(HttpServletRequest req, PrincipalUser owner, BigInteger entityId) {
+		PrincipalUser remoteUser = getRemoteUser(req);
+		Dashboard dashboard = _dService.findDashboardByPrimaryKey(entityId);
+
+		if (dashboard == null) {
+			throw new WebApplicationException(entityId + ": Dashboard does not exist.", Status.NOT_FOUND);
+		} else if (dashboard.isShared() || remoteUser.isPrivileged()) {
+			return _chartService.getChartsForEntity(entityId);
+		} else {
+			return _chartService.getChartsByOwnerForEntity(owner, entityId);
+		}
+	}
+
     /**
      * Updates an existing chart preferences.
      *
@@ -163,7 +163,8 @@ public class CollectionResources extends AbstractResource {
     }
     
     /**
-     * Submits externally collected histogram data.
+     * Submits externally collected histogram data. Each histogram carries either explicit buckets or a base64 encoded quantile sketch. Sketches
+     * submitted for the same series and time stamp are merged when committed.
      *
      * @param   req             The HTTP request.
      * @param   histogramDtos   The histogram DTOs to submit.
@@ -190,6 +191,7 @@ public class CollectionResources extends AbstractResource {
                 histogram.setTags(histogramDto.getTags());
                 histogram.setTimestamp(histogramDto.getTimestamp());
                 histogram.setBuckets(histogramDto.getBuckets());
+                histogram.setSketch(histogramDto.getSketch());
                 histogram.setOverflow(histogramDto.getOverflow());
                 histogram.setUnderflow(histogramDto.getUnderflow());
                 legalHistograms.add(histogram);
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import com.salesforce.dva.argus.ws.annotation.Compressible;
+
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses the responses of {@link Compressible} methods when the client accepts a gzip content encoding. Together with streamed response
+ * bodies this keeps large metric exports small on the wire without buffering them.
+ */
+@Provider
+@Compressible
+public class GZipWriterInterceptor implements WriterInterceptor {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final String GZIP_ENCODING = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    @Context
+    private HttpHeaders headers;
+
+    //~ Methods **************************************************************************************************************************************
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        context.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING))) {
+            context.proceed();
+            return;
+        }
+        context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+
+        GZIPOutputStream gzip = new GZIPOutputStream(context.getOutputStream(), BUFFER_SIZE);
+
+        context.setOutputStream(gzip);
+        context.proceed();
+        gzip.finish();
+    }
+
+    /**
+     * Indicates whether an Accept-Encoding header value allows a gzip encoded response.
+     *
+     * @param   acceptEncoding  The header value. May be null.
+     *
+     * @return  True if gzip is listed and not disabled with a zero quality value.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+
+            if (GZIP_ENCODING.equalsIgnoreCase(parts[0].trim())) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim().replace(" ", "");
+
+                    if (param.startsWith("q=") && _parseQuality(param.substring(2)) == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double _parseQuality(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
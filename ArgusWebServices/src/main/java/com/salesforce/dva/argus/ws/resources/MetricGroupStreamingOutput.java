@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.MetricService.MetricQueryResultHandler;
+import com.salesforce.dva.argus.service.metric.MetricQueryResult;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionException;
+import com.salesforce.dva.argus.service.schema.WildcardExpansionLimitExceededException;
+import com.salesforce.dva.argus.system.SystemAssert;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Evaluates groups of metric expressions, such as the queries of the charts on a dashboard, and streams the result of each group as soon as it
+ * has been evaluated. Sub-expressions shared by several groups are evaluated only once. The response is a JSON array with one object per group,
+ * holding either the metrics of the group or the status and message of the error that prevented its evaluation:
+ *
+ * <pre>
+ * [{"id":"chart1","metrics":[...]},{"id":"chart2","error":{"status":400,"message":"..."}}]
+ * </pre>
+ *
+ * <p>The metric service is disposed once the response has been written.</p>
+ */
+public class MetricGroupStreamingOutput implements StreamingOutput {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final MetricService _metricService;
+    private final Map<String, List<String>> _expressionGroups;
+    private final long _relativeTo;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new MetricGroupStreamingOutput object.
+     *
+     * @param  metricService     The metric service used to evaluate the expressions. Cannot be null.
+     * @param  expressionGroups  The expressions keyed by group identifier. Cannot be null.
+     * @param  relativeTo        The time the expressions are relative to.
+     */
+    public MetricGroupStreamingOutput(MetricService metricService, Map<String, List<String>> expressionGroups, long relativeTo) {
+        SystemAssert.requireArgument(metricService != null, "Metric service cannot be null.");
+        SystemAssert.requireArgument(expressionGroups != null, "Expression groups cannot be null.");
+        _metricService = metricService;
+        _expressionGroups = expressionGroups;
+        _relativeTo = relativeTo;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try(JsonGenerator generator = MetricStreamingOutput.createJsonGenerator(output)) {
+            generator.writeStartArray();
+            _metricService.getMetrics(_expressionGroups, _relativeTo, new MetricQueryResultHandler() {
+
+                    @Override
+                    public void onResult(String groupId, MetricQueryResult result) {
+                        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.SERIALIZATION)) {
+                            generator.writeStartObject();
+                            generator.writeStringField("id", groupId);
+                            generator.writeArrayFieldStart("metrics");
+                            for (Metric metric : result.getMetricsList()) {
+                                MetricStreamingOutput.writeMetric(generator, metric);
+                            }
+                            generator.writeEndArray();
+                            generator.writeEndObject();
+                            generator.flush();
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }
+
+                    @Override
+                    public void onError(String groupId, RuntimeException ex) {
+                        try {
+                            generator.writeStartObject();
+                            generator.writeStringField("id", groupId);
+                            generator.writeObjectFieldStart("error");
+                            generator.writeNumberField("status", getStatus(ex).getStatusCode());
+                            generator.writeStringField("message", ex.getMessage());
+                            generator.writeEndObject();
+                            generator.writeEndObject();
+                            generator.flush();
+                        } catch (IOException ioe) {
+                            throw new UncheckedIOException(ioe);
+                        }
+                    }
+                });
+            generator.writeEndArray();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            _metricService.dispose();
+        }
+    }
+
+    /**
+     * Returns the status a single query failing with the given exception would be answered with.
+     *
+     * @param   ex  The exception.
+     *
+     * @return  The corresponding status.
+     */
+    static Status getStatus(RuntimeException ex) {
+        if (ex instanceof IllegalArgumentException || ex instanceof WildcardExpansionLimitExceededException) {
+            return Status.BAD_REQUEST;
+        }
+        if (ex instanceof QueryAdmissionException) {
+            return QueryAdmissionException.Reason.OVER_BUDGET.equals(((QueryAdmissionException) ex).getReason()) ? Status.BAD_REQUEST
+                                                                                                               : Status.SERVICE_UNAVAILABLE;
+        }
+        return Status.INTERNAL_SERVER_ERROR;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -35,14 +35,19 @@ import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.entity.PrincipalUser;
 import com.salesforce.dva.argus.service.MetricService;
 import com.salesforce.dva.argus.service.metric.MetricQueryResult;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionException;
 import com.salesforce.dva.argus.service.schema.WildcardExpansionLimitExceededException;
 import com.salesforce.dva.argus.system.SystemAssert;
+import com.salesforce.dva.argus.ws.annotation.Compressible;
 import com.salesforce.dva.argus.ws.annotation.Description;
-import com.salesforce.dva.argus.ws.dto.MetricDto;
+import com.salesforce.dva.argus.ws.dto.MetricGroupsQueryDto;
 import com.salesforce.dva.argus.ws.filter.PerfFilter;
+import com.salesforce.dva.argus.ws.resources.MetricStreamingOutput.Format;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
@@ -54,7 +59,6 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 /**
  * Provides methods to query and transform metrics.
@@ -67,9 +71,6 @@ public class MetricResources extends AbstractResource {
 
 	//~ Instance fields ******************************************************************************************************************************
 
-	private final String COMMA = ",";
-	private final String NEW_LINE = "\n";
-	private final String EMPTY = "";
 	private final int DEFAULT_TTL = 1800;
 
 	//~ Methods **************************************************************************************************************************************
@@ -80,18 +81,19 @@ public class MetricResources extends AbstractResource {
 	 * @param   req          The HttpServlet request object. Cannot be null.
 	 * @param   expressions  The expressions to evaluate.
 	 *
-	 * @return  The resulting metrics.
+	 * @return  The resulting metrics, streamed as a JSON array.
 	 */
 	@GET
 	@Produces(MediaType.APPLICATION_JSON + ";qs=1")
+	@Compressible
 	@Description("Performs a metric query using the given expression.")
-	public List<MetricDto> getMetricsJSON(@Context HttpServletRequest req,
+	public Response getMetricsJSON(@Context HttpServletRequest req,
 			@QueryParam("expression") List<String> expressions) {
 
 		try {
 			List<Metric> metrics = _getMetrics(req, expressions);
 
-			return MetricDto.transformToDto(metrics);
+			return Response.ok(new MetricStreamingOutput(metrics, Format.JSON)).build();
 		} catch(WebApplicationException wax) {
 			throw wax;
 		}
@@ -114,6 +116,7 @@ public class MetricResources extends AbstractResource {
 	 */
 	@GET
 	@Produces("application/ms-excel;qs=0")
+	@Compressible
 	@Description("Downloads the metric data in CSV format.")
 	public Response getMetricsCSV(@Context HttpServletRequest req,
 			@QueryParam("expression") List<String> expressions) {
@@ -122,7 +125,7 @@ public class MetricResources extends AbstractResource {
 		try {
 			List<Metric> metrics = _getMetrics(req, expressions);
 
-			response = Response.ok(_convertToCSV(metrics));
+			response = Response.ok(new MetricStreamingOutput(metrics, Format.CSV));
 		} catch(WebApplicationException wax) {
 			throw wax;
 		} catch (Exception ex) {
@@ -132,6 +135,62 @@ public class MetricResources extends AbstractResource {
 		return response.build();
 	}
 
+	/**
+	 * Performs a metric query using the given expression and returns the result in the binary columnar format.
+	 *
+	 * @param   req          The HttpServlet request object. Cannot be null.
+	 * @param   expressions  The expressions to evaluate.
+	 *
+	 * @return  The resulting metrics in the columnar format.
+	 */
+	@GET
+	@Produces(MetricStreamingOutput.COLUMNAR_MEDIA_TYPE + ";qs=0")
+	@Compressible
+	@Description("Performs a metric query using the given expression and returns the result in a compact binary columnar format.")
+	public Response getMetricsColumnar(@Context HttpServletRequest req,
+			@QueryParam("expression") List<String> expressions) {
+
+		try {
+			List<Metric> metrics = _getMetrics(req, expressions);
+
+			return Response.ok(new MetricStreamingOutput(metrics, Format.COLUMNAR)).build();
+		} catch(WebApplicationException wax) {
+			throw wax;
+		}
+		catch(Exception ex) {
+			if (ex.getCause()!=null && ex.getCause().getMessage()!=null && ex.getCause().getMessage().contains("code=400")) {
+				throw new WebApplicationException(ex.getMessage(), Status.BAD_REQUEST);
+			} else {
+				throw new WebApplicationException(ex.getMessage(), Status.INTERNAL_SERVER_ERROR);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates groups of metric expressions, such as the queries of the charts on a dashboard, at the same relative time. Sub-expressions
+	 * shared by the groups are evaluated once, and the result of each group is streamed as soon as it is available.
+	 *
+	 * @param   req    The HttpServlet request object. Cannot be null.
+	 * @param   query  The expression groups. Cannot be null.
+	 *
+	 * @return  A JSON array with the metrics or the error of each group.
+	 */
+	@POST
+	@Path("/bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Compressible
+	@Description("Evaluates groups of metric expressions together and streams the result of each group.")
+	public Response getMetricGroups(@Context HttpServletRequest req, MetricGroupsQueryDto query) {
+		validateAndGetOwner(req, null);
+		SystemAssert.requireArgument(query != null && query.getQueries() != null && !query.getQueries().isEmpty(),
+				"Expression groups cannot be null or empty");
+
+		long relativeTo = query.getRelativeTo() == null ? System.currentTimeMillis() : query.getRelativeTo();
+
+		return Response.ok(new MetricGroupStreamingOutput(system.getServiceFactory().getMetricService(), query.getQueries(), relativeTo)).build();
+	}
+
 	/**
 	 * Start an async batch metric query
 	 *
@@ -188,6 +247,10 @@ public class MetricResources extends AbstractResource {
 			} catch(IllegalArgumentException | WildcardExpansionLimitExceededException e) {
 				metricService.dispose();
 				throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+			} catch(QueryAdmissionException e) {
+				metricService.dispose();
+				throw new WebApplicationException(e.getMessage(),
+						QueryAdmissionException.Reason.OVER_BUDGET.equals(e.getReason()) ? Status.BAD_REQUEST : Status.SERVICE_UNAVAILABLE);
 			}
 
 		metricService.dispose();
@@ -202,59 +265,5 @@ public class MetricResources extends AbstractResource {
 		final MetricService metricService = system.getServiceFactory().getMetricService();
 		return metricService.getAsyncMetrics(expressions, System.currentTimeMillis(), ttl, owner.getUserName());
 	}
-
-	private String _convertToCSV(List<Metric> metrics) {
-		if (metrics == null || metrics.size() == 0) {
-			return EMPTY;
-		}
-
-		StringBuilder result = new StringBuilder();
-
-		result.append("Timestamp");
-		result.append(COMMA);
-		for (Metric metric : metrics) {
-			result.append(_getMetricExpression(metric));
-			result.append(COMMA);
-		}
-		result.deleteCharAt(result.length() - 1);
-
-		TreeSet<Long> timestamps = new TreeSet<Long>();
-
-		for (Metric metric : metrics) {
-			timestamps.addAll(metric.getDatapoints().keySet());
-		}
-		for (Long timestamp : timestamps) {
-			result.append(NEW_LINE);
-			result.append(timestamp);
-			result.append(COMMA);
-			for (Metric metric : metrics) {
-				result.append(metric.getDatapoints().get(timestamp) != null ? metric.getDatapoints().get(timestamp) : EMPTY);
-				result.append(COMMA);
-			}
-			result.deleteCharAt(result.length() - 1);
-		}
-		return result.toString();
-	}
-
-	private String _getMetricExpression(Metric metric) {
-		StringBuilder result = new StringBuilder();
-
-		result.append("\"");
-		if (metric != null) {
-			result.append(metric.getScope());
-			result.append(":" + metric.getMetric());
-			if (metric.getTags() != null && metric.getTags().size() > 0) {
-				result.append("{");
-				for (Entry<String, String> tag : metric.getTags().entrySet()) {
-					result.append(tag.getKey() + "=" + tag.getValue());
-					result.append(COMMA);
-				}
-				result.deleteCharAt(result.length() - 1);
-				result.append("}");
-			}
-		}
-		result.append("\"");
-		return result.toString();
-	}
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
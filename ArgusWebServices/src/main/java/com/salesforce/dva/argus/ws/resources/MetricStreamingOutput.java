@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.system.SystemAssert;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes metrics straight to the response stream. JSON is emitted with a streaming generator in the same shape as the serialized metric DTOs,
+ * without copying the metrics into DTOs first. CSV rows are produced by merging the sorted data points of all metrics by timestamp, so neither
+ * the set of distinct timestamps nor the whole document is held in memory. Since no content length is known up front, responses are sent
+ * with chunked transfer encoding.
+ *
+ * <p>The columnar format is a compact binary alternative to JSON. Metrics sharing the same timestamps are written as one group with a single
+ * delta encoded timestamp column and one column of raw IEEE-754 doubles per metric, and all scope, metric and tag strings are written once to a
+ * dictionary. The layout is documented by the decoder in the Argus SDK, {@code MetricColumnarDecoder}.</p>
+ */
+public class MetricStreamingOutput implements StreamingOutput {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The media type of the columnar format. */
+    public static final String COLUMNAR_MEDIA_TYPE = "application/x-argus-columnar";
+
+    /** The magic bytes at the start of a columnar document. */
+    static final byte[] COLUMNAR_MAGIC = { 'A', 'R', 'G', 'C' };
+
+    /** The version of the columnar layout written. */
+    static final int COLUMNAR_VERSION = 1;
+    private static final int FLAG_NULL_VALUES = 1;
+    private static final char COMMA = ',';
+    private static final char NEW_LINE = '\n';
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final List<Metric> _metrics;
+    private final Format _format;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new MetricStreamingOutput object.
+     *
+     * @param  metrics  The metrics to write. Cannot be null.
+     * @param  format   The format to write the metrics in. Cannot be null.
+     */
+    public MetricStreamingOutput(List<Metric> metrics, Format format) {
+        SystemAssert.requireArgument(metrics != null, "Metrics cannot be null.");
+        SystemAssert.requireArgument(format != null, "Format cannot be null.");
+        _metrics = metrics;
+        _format = format;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (QueryTrace.Span span = QueryTrace.startSpan(Stage.SERIALIZATION)) {
+            switch (_format) {
+                case JSON:
+                    _writeJSON(output);
+                    break;
+                case CSV:
+                    _writeCSV(output);
+                    break;
+                default:
+                    _writeColumnar(output);
+            }
+        }
+    }
+
+    private void _writeJSON(OutputStream output) throws IOException {
+        try(JsonGenerator generator = createJsonGenerator(output)) {
+            generator.writeStartArray();
+            for (Metric metric : _metrics) {
+                writeMetric(generator, metric);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Creates a JSON generator that does not close the underlying stream.
+     *
+     * @param   output  The stream to write to.
+     *
+     * @return  The generator.
+     *
+     * @throws  IOException  If the generator cannot be created.
+     */
+    static JsonGenerator createJsonGenerator(OutputStream output) throws IOException {
+        return JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+    }
+
+    /**
+     * Writes a metric as a JSON object in the same shape as a serialized metric DTO.
+     *
+     * @param   generator  The generator to write to.
+     * @param   metric     The metric to write.
+     *
+     * @throws  IOException  If the metric cannot be written.
+     */
+    static void writeMetric(JsonGenerator generator, Metric metric) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("scope", metric.getScope());
+        generator.writeStringField("metric", metric.getMetric());
+        _writeStringMap(generator, "tags", metric.getTags());
+        generator.writeStringField("namespace", metric.getNamespace());
+        generator.writeStringField("displayName", metric.getDisplayName());
+        generator.writeStringField("units", metric.getUnits());
+        generator.writeObjectFieldStart("datapoints");
+        for (Entry<Long, Double> datapoint : metric.getDatapoints().entrySet()) {
+            generator.writeFieldName(String.valueOf(datapoint.getKey()));
+            if (datapoint.getValue() == null) {
+                generator.writeNull();
+            } else {
+                generator.writeNumber(datapoint.getValue());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeNullField("metatagsKey");
+        generator.writeNullField("metatags");
+        generator.writeEndObject();
+    }
+
+    private static void _writeStringMap(JsonGenerator generator, String name, Map<String, String> values) throws IOException {
+        if (values == null) {
+            generator.writeNullField(name);
+            return;
+        }
+        generator.writeObjectFieldStart(name);
+        for (Entry<String, String> entry : values.entrySet()) {
+            generator.writeStringField(entry.getKey(), entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    private void _writeCSV(OutputStream output) throws IOException {
+        if (_metrics.isEmpty()) {
+            return;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(_metrics.size());
+        String[] row = new String[_metrics.size()];
+
+        writer.write("Timestamp");
+        for (int i = 0; i < _metrics.size(); i++) {
+            Metric metric = _metrics.get(i);
+            Cursor cursor = new Cursor(i, metric.getDatapoints().entrySet().iterator());
+
+            writer.write(COMMA);
+            writer.write(_getMetricExpression(metric));
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        while (!cursors.isEmpty()) {
+            long timestamp = cursors.peek()._timestamp;
+
+            while (!cursors.isEmpty() && cursors.peek()._timestamp == timestamp) {
+                Cursor cursor = cursors.poll();
+
+                row[cursor._column] = cursor._value == null ? null : cursor._value.toString();
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+            writer.write(NEW_LINE);
+            writer.write(Long.toString(timestamp));
+            for (int i = 0; i < row.length; i++) {
+                writer.write(COMMA);
+                if (row[i] != null) {
+                    writer.write(row[i]);
+                    row[i] = null;
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void _writeColumnar(OutputStream output) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        Map<Set<Long>, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < _metrics.size(); i++) {
+            Metric metric = _metrics.get(i);
+
+            for (String value : new String[] { metric.getScope(), metric.getMetric(), metric.getNamespace(), metric.getDisplayName(),
+                    metric.getUnits() }) {
+                _addToDictionary(dictionary, value);
+            }
+            if (metric.getTags() != null) {
+                for (Entry<String, String> tag : metric.getTags().entrySet()) {
+                    _addToDictionary(dictionary, tag.getKey());
+                    _addToDictionary(dictionary, tag.getValue());
+                }
+            }
+            groups.computeIfAbsent(metric.getDatapoints().keySet(), k -> new ArrayList<>()).add(i);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+
+        out.write(COLUMNAR_MAGIC);
+        out.writeByte(COLUMNAR_VERSION);
+        _writeVarLong(out, dictionary.size());
+        for (String value : dictionary.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            _writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+        _writeVarLong(out, _metrics.size());
+        _writeVarLong(out, groups.size());
+        for (Entry<Set<Long>, List<Integer>> group : groups.entrySet()) {
+            Set<Long> timestamps = group.getKey();
+            long previous = 0;
+            boolean first = true;
+
+            _writeVarLong(out, timestamps.size());
+            for (Long timestamp : timestamps) {
+                if (first) {
+                    out.writeLong(timestamp);
+                    first = false;
+                } else {
+                    _writeVarLong(out, timestamp - previous);
+                }
+                previous = timestamp;
+            }
+            _writeVarLong(out, group.getValue().size());
+            for (int position : group.getValue()) {
+                _writeColumn(out, dictionary, position, _metrics.get(position));
+            }
+        }
+        out.flush();
+    }
+
+    private static void _writeColumn(DataOutputStream out, Map<String, Integer> dictionary, int position, Metric metric) throws IOException {
+        _writeVarLong(out, position);
+        for (String value : new String[] { metric.getScope(), metric.getMetric(), metric.getNamespace(), metric.getDisplayName(),
+                metric.getUnits() }) {
+            _writeVarLong(out, _getReference(dictionary, value));
+        }
+
+        Map<String, String> tags = metric.getTags() == null ? new HashMap<>() : metric.getTags();
+
+        _writeVarLong(out, tags.size());
+        for (Entry<String, String> tag : tags.entrySet()) {
+            _writeVarLong(out, _getReference(dictionary, tag.getKey()));
+            _writeVarLong(out, _getReference(dictionary, tag.getValue()));
+        }
+
+        Map<Long, Double> datapoints = metric.getDatapoints();
+
+        if (datapoints.containsValue(null)) {
+            byte[] nulls = new byte[(datapoints.size() + 7) / 8];
+            int i = 0;
+
+            for (Double value : datapoints.values()) {
+                if (value == null) {
+                    nulls[i / 8] |= 1 << (i % 8);
+                }
+                i++;
+            }
+            out.writeByte(FLAG_NULL_VALUES);
+            out.write(nulls);
+        } else {
+            out.writeByte(0);
+        }
+        for (Double value : datapoints.values()) {
+            out.writeDouble(value == null ? Double.NaN : value);
+        }
+    }
+
+    private static void _addToDictionary(Map<String, Integer> dictionary, String value) {
+        if (value != null && !dictionary.containsKey(value)) {
+            dictionary.put(value, dictionary.size());
+        }
+    }
+
+    private static int _getReference(Map<String, Integer> dictionary, String value) {
+        return value == null ? 0 : dictionary.get(value) + 1;
+    }
+
+    private static void _writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static String _getMetricExpression(Metric metric) {
+        StringBuilder result = new StringBuilder();
+
+        result.append('"');
+        result.append(metric.getScope()).append(':').append(metric.getMetric());
+        if (metric.getTags() != null && !metric.getTags().isEmpty()) {
+            result.append('{');
+            for (Entry<String, String> tag : metric.getTags().entrySet()) {
+                result.append(tag.getKey()).append('=').append(tag.getValue()).append(COMMA);
+            }
+            result.setCharAt(result.length() - 1, '}');
+        }
+        result.append('"');
+        return result.toString();
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The supported output formats.
+     */
+    public enum Format {
+
+        /** An array of metric objects. */
+        JSON,
+        /** One row per timestamp and one column per metric. */
+        CSV,
+        /** Versioned binary columnar layout with a shared timestamp column per group of aligned metrics. */
+        COLUMNAR
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The position within the sorted data points of one metric.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final int _column;
+        private final Iterator<Entry<Long, Double>> _datapoints;
+        private long _timestamp;
+        private Double _value;
+
+        Cursor(int column, Iterator<Entry<Long, Double>> datapoints) {
+            _column = column;
+            _datapoints = datapoints;
+        }
+
+        boolean advance() {
+            if (!_datapoints.hasNext()) {
+                return false;
+            }
+
+            Entry<Long, Double> datapoint = _datapoints.next();
+
+            _timestamp = datapoint.getKey();
+            _value = datapoint.getValue();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int result = Long.compare(_timestamp, other._timestamp);
+
+            return result != 0 ? result : Integer.compare(_column, other._column);
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
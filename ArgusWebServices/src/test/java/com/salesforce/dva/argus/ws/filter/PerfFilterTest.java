@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.filter;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.monitor.HistogramMetric;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
+import com.salesforce.dva.argus.util.RequestContextHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PerfFilterTest {
+
+    private Map<String, HistogramMetric> _histograms;
+    private MonitorService _monitorService;
+
+    @Before
+    public void setUp() {
+        _histograms = new HashMap<>();
+        _monitorService = mock(MonitorService.class);
+        doAnswer(invocation -> {
+            Map<String, String> tags = invocation.getArgument(2);
+            String key = invocation.getArgument(0) + ":" + tags.get(PerfFilter.TAGS_STAGE_KEY);
+
+            _histograms.computeIfAbsent(key, k -> new HistogramMetric(new Metric("scope", k))).record(invocation.<Long>getArgument(1));
+            return null;
+        }).when(_monitorService).recordCustomHistogram(anyString(), anyLong(), anyMap());
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.setRequestContext(null);
+    }
+
+    @Test
+    public void testStageLatenciesAreRecordedAsHistograms() throws Exception {
+        PerfFilter filter = new PerfFilter(null, _monitorService, 0);
+
+        for (long millis : new long[] { 2, 4, 40 }) {
+            filter.doFilter(_request("true"), mock(HttpServletResponse.class), _chain(millis));
+        }
+
+        HistogramMetric.Snapshot tsdb = _histograms.get(PerfFilter.DATA_STAGE_LATENCY + ":tsdb").computeNewSnapshotAndReset();
+
+        assertEquals(3, tsdb.getCount());
+        assertEquals(4, tsdb.getP50());
+        assertEquals(40, tsdb.getP90());
+        assertEquals(40, tsdb.getMax());
+        assertNull(_histograms.get(PerfFilter.DATA_STAGE_LATENCY + ":parse"));
+        verify(_monitorService, never()).modifyCustomCounter(eq(PerfFilter.DATA_STAGE_LATENCY), anyDouble(), anyMap());
+    }
+
+    @Test
+    public void testUntracedRequestRecordsNoStages() throws Exception {
+        new PerfFilter(null, _monitorService, 0).doFilter(_request(null), mock(HttpServletResponse.class), _chain(2));
+        assertNull(_histograms.get(PerfFilter.DATA_STAGE_LATENCY + ":tsdb"));
+        assertEquals(1, _histograms.get(PerfFilter.DATA_LATENCY_HISTOGRAM + ":null").computeNewSnapshotAndReset().getCount());
+    }
+
+    private static HttpServletRequest _request(String traceHeader) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getPathInfo()).thenReturn("/metrics");
+        when(request.getHeader(PerfFilter.TRACE_HEADER)).thenReturn(traceHeader);
+        return request;
+    }
+
+    /* A chain whose request spends the given time reading from the TSDB, if it is traced. */
+    private static FilterChain _chain(long millis) {
+        return (request, response) -> {
+            if (RequestContextHolder.getRequestContext().getQueryTrace() != null) {
+                RequestContextHolder.getRequestContext().getQueryTrace().record(Stage.TSDB, TimeUnit.MILLISECONDS.toNanos(millis));
+            }
+        };
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GZipReaderInterceptorTest {
+
+    private static final String BODY = "[{\"scope\":\"scope\",\"metric\":\"metric\",\"datapoints\":{\"1000\":\"1.0\"}}]";
+
+    @Test
+    public void testGzipBodyIsDecompressed() throws Exception {
+        ReaderInterceptorContext context = _context("gzip", new ByteArrayInputStream(_gzip(BODY)));
+        InputStream[] body = new InputStream[1];
+
+        when(context.proceed()).thenAnswer(invocation -> {
+            body[0] = context.getInputStream();
+            return null;
+        });
+        new GZipReaderInterceptor().aroundReadFrom(context);
+        assertEquals(BODY, _read(body[0]));
+        assertFalse(context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testEncodingIsCaseInsensitive() throws Exception {
+        ReaderInterceptorContext context = _context(" GZIP ", new ByteArrayInputStream(_gzip(BODY)));
+
+        new GZipReaderInterceptor().aroundReadFrom(context);
+        assertEquals(BODY, _read(context.getInputStream()));
+    }
+
+    @Test
+    public void testUncompressedBodyIsPassedThrough() throws Exception {
+        InputStream original = new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8));
+        ReaderInterceptorContext context = _context(null, original);
+
+        new GZipReaderInterceptor().aroundReadFrom(context);
+        assertSame(original, context.getInputStream());
+        verify(context, never()).setInputStream(any());
+        verify(context).proceed();
+    }
+
+    /* A context whose input stream property behaves like the JAX-RS runtime's. */
+    private static ReaderInterceptorContext _context(String encoding, InputStream input) {
+        ReaderInterceptorContext context = mock(ReaderInterceptorContext.class);
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        InputStream[] stream = { input };
+
+        if (encoding != null) {
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+        when(context.getHeaders()).thenReturn(headers);
+        when(context.getInputStream()).thenAnswer(invocation -> stream[0]);
+        doAnswer(invocation -> {
+            stream[0] = invocation.getArgument(0);
+            return null;
+        }).when(context).setInputStream(any());
+        return context;
+    }
+
+    private static byte[] _gzip(String body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String _read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.MetricService.MetricQueryResultHandler;
+import com.salesforce.dva.argus.service.metric.MetricQueryResult;
+import com.salesforce.dva.argus.service.metric.QueryAdmissionException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class MetricGroupStreamingOutputTest {
+
+    @Test
+    public void testWritesResultsAndErrorsPerGroup() throws Exception {
+        MetricService metricService = mock(MetricService.class);
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        Metric metric = new Metric("scope", "metric");
+        MetricQueryResult result = new MetricQueryResult();
+
+        metric.addDatapoint(1000L, 1.0);
+        result.setMetricsList(Arrays.asList(metric));
+        groups.put("1", Collections.singletonList("-1h:scope:metric:avg"));
+        groups.put("2", Collections.singletonList("-1h:scope:other:avg"));
+        groups.put("3", Collections.singletonList("-1h:scope:*:avg"));
+        doAnswer(invocation -> {
+            MetricQueryResultHandler handler = invocation.getArgument(2);
+
+            handler.onResult("1", result);
+            handler.onError("2", new IllegalArgumentException("Illegal expression."));
+            handler.onError("3", new QueryAdmissionException(QueryAdmissionException.Reason.QUEUE_TIMEOUT, "Busy."));
+            return null;
+        }).when(metricService).getMetrics(anyMap(), eq(5000L), any(MetricQueryResultHandler.class));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new MetricGroupStreamingOutput(metricService, groups, 5000L).write(output);
+
+        JsonNode response = new ObjectMapper().readTree(output.toByteArray());
+
+        assertEquals(3, response.size());
+        assertEquals("1", response.get(0).get("id").asText());
+        assertEquals("scope", response.get(0).get("metrics").get(0).get("scope").asText());
+        assertEquals(1.0, response.get(0).get("metrics").get(0).get("datapoints").get("1000").asDouble(), 0.0);
+        assertFalse(response.get(0).has("error"));
+        assertEquals(400, response.get(1).get("error").get("status").asInt());
+        assertEquals("Illegal expression.", response.get(1).get("error").get("message").asText());
+        assertEquals(503, response.get(2).get("error").get("status").asInt());
+        verify(metricService).dispose();
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
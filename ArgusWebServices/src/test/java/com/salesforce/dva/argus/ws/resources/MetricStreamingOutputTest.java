@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.ws.dto.MetricDto;
+import com.salesforce.dva.argus.ws.resources.MetricStreamingOutput.Format;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricStreamingOutputTest {
+
+    @Test
+    public void testJSONMatchesSerializedDtos() throws Exception {
+        List<Metric> metrics = _createMetrics();
+        ObjectMapper mapper = new ObjectMapperProvider().getContext(null);
+        String expected = mapper.writeValueAsString(MetricDto.transformToDto(metrics));
+
+        assertEquals(mapper.readTree(expected), mapper.readTree(_write(metrics, Format.JSON)));
+    }
+
+    @Test
+    public void testCSVMergesTimestamps() throws Exception {
+        String expected = "Timestamp,\"scope:metric{host=a}\",\"scope:other\"\n"
+            + "1000,1.0,\n"
+            + "2000,2.0,20.0\n"
+            + "3000,,30.0\n"
+            + "4000,4.0,";
+
+        assertEquals(expected, _write(_createMetrics(), Format.CSV));
+    }
+
+    @Test
+    public void testColumnarLayout() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(expected);
+
+        out.write(MetricStreamingOutput.COLUMNAR_MAGIC);
+        out.writeByte(MetricStreamingOutput.COLUMNAR_VERSION);
+        out.writeByte(8);
+        for (String value : new String[] { "scope", "metric", "display", "ms", "host", "a", "other", "namespace" }) {
+            out.writeByte(value.length());
+            out.writeBytes(value);
+        }
+        out.writeByte(2);
+        out.writeByte(2);
+
+        // Timestamps 1000, 2000 and 4000 with varint deltas.
+        out.writeByte(3);
+        out.writeLong(1000);
+        out.write(new byte[] { (byte) 0xE8, 0x07, (byte) 0xD0, 0x0F });
+        out.writeByte(1);
+        out.write(new byte[] { 0, 1, 2, 0, 3, 4, 1, 5, 6, 0 });
+        out.writeDouble(1.0);
+        out.writeDouble(2.0);
+        out.writeDouble(4.0);
+
+        // Timestamps 2000 and 3000.
+        out.writeByte(2);
+        out.writeLong(2000);
+        out.write(new byte[] { (byte) 0xE8, 0x07 });
+        out.writeByte(1);
+        out.write(new byte[] { 1, 1, 7, 8, 0, 0, 0, 0 });
+        out.writeDouble(20.0);
+        out.writeDouble(30.0);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+        new MetricStreamingOutput(_createMetrics(), Format.COLUMNAR).write(actual);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testColumnarSharesTimestampsAndMarksNulls() throws Exception {
+        Metric first = new Metric("scope", "metric");
+        Metric second = new Metric("scope", "metric");
+        Map<Long, Double> datapoints = new TreeMap<>();
+
+        datapoints.put(1000L, 1.0);
+        datapoints.put(2000L, null);
+        first.setTag("host", "a");
+        first.setDatapoints(datapoints);
+        second.setTag("host", "b");
+        second.addDatapoint(1000L, 3.0);
+        second.addDatapoint(2000L, 4.0);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+        new MetricStreamingOutput(Arrays.asList(first, second), Format.COLUMNAR).write(actual);
+
+        byte[] bytes = actual.toByteArray();
+
+        // The dictionary holds scope, metric, host, a and b, followed by one group with a single timestamp column shared by both metrics.
+        assertEquals(95, bytes.length);
+        assertEquals(1, bytes[29]);
+        assertEquals(2, bytes[30]);
+        assertEquals(2, bytes[41]);
+
+        // The first column flags a null bitmap in which the second value is set.
+        assertEquals(1, bytes[51]);
+        assertEquals(2, bytes[52]);
+    }
+
+    @Test
+    public void testEmptyResults() throws Exception {
+        assertEquals("[]", _write(Collections.<Metric>emptyList(), Format.JSON));
+        assertEquals("", _write(Collections.<Metric>emptyList(), Format.CSV));
+        assertEquals(8, _write(Collections.<Metric>emptyList(), Format.COLUMNAR).length());
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(GZipWriterInterceptor.acceptsGzip("gzip, deflate"));
+        assertTrue(GZipWriterInterceptor.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertFalse(GZipWriterInterceptor.acceptsGzip("gzip;q=0"));
+        assertFalse(GZipWriterInterceptor.acceptsGzip("identity"));
+        assertFalse(GZipWriterInterceptor.acceptsGzip(null));
+    }
+
+    private static String _write(List<Metric> metrics, Format format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new MetricStreamingOutput(metrics, format).write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<Metric> _createMetrics() {
+        Metric first = new Metric("scope", "metric");
+        Metric second = new Metric("scope", "other");
+
+        first.setTag("host", "a");
+        first.setDisplayName("display");
+        first.setUnits("ms");
+        first.addDatapoint(1000L, 1.0);
+        first.addDatapoint(2000L, 2.0);
+        first.addDatapoint(4000L, 4.0);
+        second.setNamespace("namespace");
+        second.addDatapoint(2000L, 20.0);
+        second.addDatapoint(3000L, 30.0);
+        return new ArrayList<>(Arrays.asList(first, second));
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.dva.argus.ws.resources;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.util.QueryTrace;
+import com.salesforce.dva.argus.util.QueryTrace.Stage;
+import com.salesforce.dva.argus.util.RequestContext;
+import com.salesforce.dva.argus.util.RequestContextHolder;
+import com.salesforce.dva.argus.ws.resources.MetricStreamingOutput.Format;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QueryTraceResponseFilterTest {
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.setRequestContext(null);
+    }
+
+    @Test
+    public void testServerTimingHeader() throws Exception {
+        QueryTrace trace = _trace();
+
+        trace.record(Stage.TSDB, 2000000);
+
+        MultivaluedMap<String, Object> headers = _filter();
+
+        assertEquals("tsdb;dur=2.000;desc=\"1\"", headers.getFirst(QueryTrace.SERVER_TIMING_HEADER));
+    }
+
+    @Test
+    public void testUntracedRequest() throws Exception {
+        RequestContextHolder.setRequestContext(new RequestContext("user"));
+        assertFalse(_filter().containsKey(QueryTrace.SERVER_TIMING_HEADER));
+        _trace();
+        assertFalse(_filter().containsKey(QueryTrace.SERVER_TIMING_HEADER));
+    }
+
+    @Test
+    public void testSerializationSpan() throws Exception {
+        QueryTrace trace = _trace();
+
+        new MetricStreamingOutput(Collections.singletonList(new Metric("scope", "metric")), Format.JSON).write(new ByteArrayOutputStream());
+        assertEquals(1, trace.getCount(Stage.SERIALIZATION));
+    }
+
+    private QueryTrace _trace() {
+        RequestContext context = new RequestContext("user");
+        QueryTrace trace = new QueryTrace();
+
+        context.setQueryTrace(trace);
+        RequestContextHolder.setRequestContext(context);
+        return trace;
+    }
+
+    private MultivaluedMap<String, Object> _filter() throws Exception {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        ContainerResponseContext responseContext = mock(ContainerResponseContext.class);
+
+        when(responseContext.getHeaders()).thenReturn(headers);
+        new QueryTraceResponseFilter().filter(mock(ContainerRequestContext.class), responseContext);
+        return headers;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */